@@ -0,0 +1,54 @@
+// BinaryFormat.java
+
+package net.sf.gogui.binary;
+
+/** Constants of the compact binary game tree format.
+    Layout: the magic bytes and a version byte, the board size, the
+    application string, a string table with all comments, labels and
+    property values (sorted by decreasing frequency, so that frequent
+    strings get short references), followed by the nodes.
+    All integers are unsigned variable-length integers with seven bits per
+    byte (least significant group first), except the lengths of subtrees,
+    which are four-byte big-endian integers.
+    Each node starts with a flag set describing which parts follow, then
+    the number of children. A node with exactly one child is directly
+    followed by the child; if a node has more than one child, each child
+    subtree is prefixed with its length in bytes, so that readers can skip
+    variations without decoding them.
+    Points are encoded as <code>GoPoint.getIndex() + 1</code>, zero means
+    pass or no point. */
+final class BinaryFormat
+{
+    public static final byte[] MAGIC = { 'G', 'G', 'B' };
+
+    public static final int VERSION = 1;
+
+    public static final int FLAG_MOVE = 1;
+
+    public static final int FLAG_COMMENT = 1 << 1;
+
+    public static final int FLAG_SETUP = 1 << 2;
+
+    public static final int FLAG_PLAYER = 1 << 3;
+
+    public static final int FLAG_MARKED = 1 << 4;
+
+    public static final int FLAG_LABEL = 1 << 5;
+
+    public static final int FLAG_VALUE = 1 << 6;
+
+    public static final int FLAG_TIME = 1 << 7;
+
+    public static final int FLAG_SGF_PROPERTIES = 1 << 8;
+
+    public static final int FLAG_GAME_INFO = 1 << 9;
+
+    public static final int INFO_KOMI = 1;
+
+    public static final int INFO_TIME_SETTINGS = 1 << 1;
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private BinaryFormat()
+    {
+    }
+}
@@ -0,0 +1,415 @@
+// BinaryReader.java
+
+package net.sf.gogui.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import net.sf.gogui.game.GameInfo;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.MarkType;
+import net.sf.gogui.game.Node;
+import net.sf.gogui.game.StringInfo;
+import net.sf.gogui.game.StringInfoColor;
+import net.sf.gogui.game.TimeSettings;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.BLACK_WHITE_EMPTY;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Komi;
+import net.sf.gogui.go.Move;
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.util.ProgressShow;
+
+/** Read a game tree in the compact binary format.
+    @see BinaryFormat */
+public final class BinaryReader
+{
+    /** Read game tree from stream.
+        The stream is closed after reading.
+        @param in Stream to read from.
+        @param progressShow Callback to show progress, can be null
+        @param size Size of stream if progressShow != null
+        @throws ErrorMessage If reading fails. */
+    public BinaryReader(InputStream in, ProgressShow progressShow, long size)
+        throws ErrorMessage
+    {
+        this(in, progressShow, size, false);
+    }
+
+    /** Read game tree from stream.
+        The stream is closed after reading.
+        @param in Stream to read from.
+        @param progressShow Callback to show progress, can be null
+        @param size Size of stream if progressShow != null
+        @param mainVariationOnly Skip all variations without decoding them.
+        @throws ErrorMessage If reading fails. */
+    public BinaryReader(InputStream in, ProgressShow progressShow, long size,
+                        boolean mainVariationOnly)
+        throws ErrorMessage
+    {
+        m_progressShow = progressShow;
+        m_mainVariationOnly = mainVariationOnly;
+        if (progressShow != null)
+            progressShow.showProgress(0);
+        try
+        {
+            m_data = readAll(in, size);
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage(e.getMessage());
+        }
+        finally
+        {
+            try
+            {
+                in.close();
+            }
+            catch (IOException e)
+            {
+                System.err.println("Could not close binary game stream");
+            }
+        }
+        try
+        {
+            read();
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            throw new ErrorMessage("Unexpected end of binary game file");
+        }
+        if (progressShow != null)
+            progressShow.showProgress(100);
+    }
+
+    /** Get application name stored in the file.
+        @return The application name or null, if unknown. */
+    public String getApplication()
+    {
+        return m_application;
+    }
+
+    /** Get game tree of loaded file.
+        @return The game tree. */
+    public GameTree getTree()
+    {
+        return m_tree;
+    }
+
+    /** Get warnings that occurred during loading.
+        The binary format has no warnings, the function exists for
+        compatibility with the other readers.
+        @return Always null. */
+    public String getWarnings()
+    {
+        return null;
+    }
+
+    /** Check if the start of a file has the magic bytes of the binary
+        format.
+        @param buffer Buffer containing the start of the file.
+        @param length Number of valid bytes in buffer.
+        @return true, if the buffer starts with the magic bytes. */
+    public static boolean isBinary(byte[] buffer, int length)
+    {
+        if (length < BinaryFormat.MAGIC.length)
+            return false;
+        for (int i = 0; i < BinaryFormat.MAGIC.length; ++i)
+            if (buffer[i] != BinaryFormat.MAGIC[i])
+                return false;
+        return true;
+    }
+
+    private final boolean m_mainVariationOnly;
+
+    private int m_boardSize;
+
+    private int m_numberNodes;
+
+    private int m_position;
+
+    private final byte[] m_data;
+
+    private String m_application;
+
+    private String[] m_strings;
+
+    private GameTree m_tree;
+
+    private final ProgressShow m_progressShow;
+
+    private void read() throws ErrorMessage
+    {
+        if (! isBinary(m_data, m_data.length))
+            throw new ErrorMessage("Not a binary game file");
+        m_position = BinaryFormat.MAGIC.length;
+        int version = m_data[m_position++];
+        if (version != BinaryFormat.VERSION)
+            throw new ErrorMessage("Unknown binary game file version "
+                                   + version);
+        m_boardSize = readInt();
+        if (m_boardSize < 1 || m_boardSize > GoPoint.MAX_SIZE)
+            throw new ErrorMessage("Invalid board size " + m_boardSize);
+        int applicationIndex = readInt();
+        m_strings = new String[readInt()];
+        for (int i = 0; i < m_strings.length; ++i)
+        {
+            int length = readInt();
+            m_strings[i] = new String(m_data, m_position, length,
+                                      StandardCharsets.UTF_8);
+            m_position += length;
+        }
+        if (applicationIndex > 0)
+            m_application = getString(applicationIndex - 1);
+        Node root = new Node();
+        readSubtree(root);
+        m_tree = new GameTree(m_boardSize, root);
+    }
+
+    private static byte[] readAll(InputStream in, long size)
+        throws IOException
+    {
+        int capacity = (size > 0 && size < Integer.MAX_VALUE) ? (int)size
+            : 4096;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(capacity);
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+            out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    private GoColor readColor() throws ErrorMessage
+    {
+        int c = m_data[m_position++];
+        if (c == 0)
+            return BLACK;
+        if (c == 1)
+            return WHITE;
+        throw new ErrorMessage("Invalid color in binary game file");
+    }
+
+    private double readDouble()
+    {
+        return Double.longBitsToDouble(readLong(8));
+    }
+
+    private void readGameInfo(GameInfo info) throws ErrorMessage
+    {
+        int flags = readInt();
+        info.setHandicap(readInt());
+        if ((flags & BinaryFormat.INFO_KOMI) != 0)
+            info.setKomi(new Komi(readDouble()));
+        if ((flags & BinaryFormat.INFO_TIME_SETTINGS) != 0)
+        {
+            long preByoyomi = readLong();
+            int byoyomiMoves = readInt();
+            if (byoyomiMoves > 0)
+                info.setTimeSettings(new TimeSettings(preByoyomi, readLong(),
+                                                      byoyomiMoves));
+            else
+                info.setTimeSettings(new TimeSettings(preByoyomi));
+        }
+        int n = readInt();
+        StringInfo[] stringInfo = StringInfo.values();
+        for (int i = 0; i < n; ++i)
+        {
+            StringInfo type = stringInfo[readInt()];
+            info.set(type, getString(readInt()));
+        }
+        n = readInt();
+        StringInfoColor[] stringInfoColor = StringInfoColor.values();
+        for (int i = 0; i < n; ++i)
+        {
+            StringInfoColor type = stringInfoColor[readInt()];
+            info.set(type, BLACK, readOptionalString());
+            info.set(type, WHITE, readOptionalString());
+        }
+    }
+
+    /** Read variable-length unsigned integer. */
+    private int readInt() throws ErrorMessage
+    {
+        long value = readLong();
+        if (value > Integer.MAX_VALUE)
+            throw new ErrorMessage("Invalid integer in binary game file");
+        return (int)value;
+    }
+
+    /** Read fixed-length big-endian integer. */
+    private long readLong(int numberBytes)
+    {
+        long value = 0;
+        for (int i = 0; i < numberBytes; ++i)
+            value = (value << 8) | (m_data[m_position++] & 0xFF);
+        return value;
+    }
+
+    /** Read variable-length unsigned long. */
+    private long readLong() throws ErrorMessage
+    {
+        long value = 0;
+        int shift = 0;
+        while (true)
+        {
+            byte b = m_data[m_position++];
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+            shift += 7;
+            if (shift > 63)
+                throw new ErrorMessage("Invalid integer in binary game file");
+        }
+    }
+
+    private void readNode(Node node) throws ErrorMessage
+    {
+        int flags = readInt();
+        if ((flags & BinaryFormat.FLAG_MOVE) != 0)
+        {
+            GoColor c = readColor();
+            node.setMove(Move.get(c, readPoint()));
+        }
+        if ((flags & BinaryFormat.FLAG_COMMENT) != 0)
+            node.setComment(getString(readInt()));
+        if ((flags & BinaryFormat.FLAG_SETUP) != 0)
+            for (GoColor c : BLACK_WHITE_EMPTY)
+            {
+                int n = readInt();
+                for (int i = 0; i < n; ++i)
+                    node.addStone(c, readPointNotNull());
+            }
+        if ((flags & BinaryFormat.FLAG_PLAYER) != 0)
+            node.setPlayer(readColor());
+        if ((flags & BinaryFormat.FLAG_MARKED) != 0)
+        {
+            MarkType[] markTypes = MarkType.values();
+            int numberTypes = readInt();
+            for (int i = 0; i < numberTypes; ++i)
+            {
+                MarkType type = markTypes[readInt()];
+                int n = readInt();
+                for (int j = 0; j < n; ++j)
+                    node.addMarked(readPointNotNull(), type);
+            }
+        }
+        if ((flags & BinaryFormat.FLAG_LABEL) != 0)
+        {
+            int n = readInt();
+            for (int i = 0; i < n; ++i)
+            {
+                GoPoint p = readPointNotNull();
+                node.setLabel(p, getString(readInt()));
+            }
+        }
+        if ((flags & BinaryFormat.FLAG_VALUE) != 0)
+            node.setValue(Float.intBitsToFloat((int)readLong(4)));
+        if ((flags & BinaryFormat.FLAG_TIME) != 0)
+        {
+            int movesLeftBlack = readInt() - 1;
+            int movesLeftWhite = readInt() - 1;
+            node.setMovesLeft(BLACK, movesLeftBlack);
+            node.setMovesLeft(WHITE, movesLeftWhite);
+            node.setTimeLeft(BLACK, readDouble());
+            node.setTimeLeft(WHITE, readDouble());
+        }
+        if ((flags & BinaryFormat.FLAG_SGF_PROPERTIES) != 0)
+        {
+            int numberKeys = readInt();
+            for (int i = 0; i < numberKeys; ++i)
+            {
+                String key = getString(readInt());
+                int numberValues = readInt();
+                ArrayList<String> values = new ArrayList<>(numberValues);
+                for (int j = 0; j < numberValues; ++j)
+                    values.add(getString(readInt()));
+                node.addSgfProperty(key, values);
+            }
+        }
+        if ((flags & BinaryFormat.FLAG_GAME_INFO) != 0)
+            readGameInfo(node.createGameInfo());
+        ++m_numberNodes;
+        if (m_progressShow != null && m_numberNodes % 1000 == 0)
+            m_progressShow.showProgress((int)(100L * m_position
+                                              / m_data.length));
+    }
+
+    private String readOptionalString() throws ErrorMessage
+    {
+        int index = readInt();
+        if (index == 0)
+            return null;
+        return getString(index - 1);
+    }
+
+    private GoPoint readPoint() throws ErrorMessage
+    {
+        int index = readInt();
+        if (index == 0)
+            return null;
+        --index;
+        int x = index % GoPoint.MAX_SIZE;
+        int y = index / GoPoint.MAX_SIZE;
+        if (x >= m_boardSize || y >= m_boardSize)
+            throw new ErrorMessage("Invalid point in binary game file");
+        return GoPoint.get(x, y);
+    }
+
+    private GoPoint readPointNotNull() throws ErrorMessage
+    {
+        GoPoint p = readPoint();
+        if (p == null)
+            throw new ErrorMessage("Missing point in binary game file");
+        return p;
+    }
+
+    /** Read a subtree into a node.
+        Nodes with a single child are read iteratively, so that the
+        recursion depth is only the nesting depth of variations. */
+    private void readSubtree(Node node) throws ErrorMessage
+    {
+        while (true)
+        {
+            readNode(node);
+            int numberChildren = readInt();
+            if (numberChildren == 0)
+                return;
+            if (numberChildren == 1)
+            {
+                Node child = new Node();
+                node.append(child);
+                node = child;
+                continue;
+            }
+            for (int i = 0; i < numberChildren; ++i)
+            {
+                int length = (int)readLong(4);
+                if (m_mainVariationOnly && i > 0)
+                {
+                    m_position += length;
+                    continue;
+                }
+                int end = m_position + length;
+                Node child = new Node();
+                node.append(child);
+                readSubtree(child);
+                if (m_position != end)
+                    throw new ErrorMessage("Invalid subtree length in binary"
+                                           + " game file");
+            }
+            return;
+        }
+    }
+
+    private String getString(int index) throws ErrorMessage
+    {
+        if (index >= m_strings.length)
+            throw new ErrorMessage("Invalid string reference in binary game"
+                                   + " file");
+        return m_strings[index];
+    }
+}
@@ -0,0 +1,409 @@
+// BinaryWriter.java
+
+package net.sf.gogui.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import net.sf.gogui.game.ConstGameInfo;
+import net.sf.gogui.game.ConstGameTree;
+import net.sf.gogui.game.ConstNode;
+import net.sf.gogui.game.ConstSgfProperties;
+import net.sf.gogui.game.MarkType;
+import net.sf.gogui.game.NodeUtil;
+import net.sf.gogui.game.StringInfo;
+import net.sf.gogui.game.StringInfoColor;
+import net.sf.gogui.game.TimeSettings;
+import net.sf.gogui.go.ConstPointList;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.BLACK_WHITE_EMPTY;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Komi;
+import net.sf.gogui.go.Move;
+import net.sf.gogui.util.ErrorMessage;
+
+/** Write a game tree in the compact binary format.
+    The format is intended as a cache and interchange format for programs
+    that load the same game trees many times; it preserves all information
+    stored in the tree, but is not human-readable.
+    @see BinaryFormat */
+public class BinaryWriter
+{
+    /** Write game tree in binary format.
+        The stream is closed after writing.
+        @param out Output stream.
+        @param tree Game tree to write.
+        @param application Application name, can be null.
+        @throws ErrorMessage If writing fails. */
+    public BinaryWriter(OutputStream out, ConstGameTree tree,
+                        String application) throws ErrorMessage
+    {
+        collectStrings(tree.getRootConst(), application);
+        writeBytes(BinaryFormat.MAGIC);
+        writeByte(BinaryFormat.VERSION);
+        writeInt(tree.getBoardSize());
+        writeOptionalString(application);
+        writeInt(m_strings.size());
+        for (String s : m_strings)
+        {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            writeBytes(bytes);
+        }
+        writeSubtree(tree.getRootConst());
+        try
+        {
+            out.write(m_data, 0, m_length);
+            out.close();
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage(e.getMessage());
+        }
+    }
+
+    private int m_length;
+
+    private byte[] m_data = new byte[4096];
+
+    /** Strings in the order of the string table. */
+    private final ArrayList<String> m_strings = new ArrayList<>();
+
+    /** Index of strings in the string table. */
+    private final Map<String,Integer> m_stringIndex = new HashMap<>();
+
+    private void collectString(Map<String,Integer> count, String s)
+    {
+        if (s == null)
+            return;
+        Integer n = count.get(s);
+        count.put(s, n == null ? 1 : n + 1);
+    }
+
+    private void collectStrings(ConstNode root, String application)
+    {
+        Map<String,Integer> count = new HashMap<>();
+        collectString(count, application);
+        ConstNode node = root;
+        while (node != null)
+        {
+            if (node.hasComment())
+                collectString(count, node.getComment());
+            Map<GoPoint,String> labels = node.getLabelsUnmodifiable();
+            if (labels != null)
+                for (String label : labels.values())
+                    collectString(count, label);
+            ConstSgfProperties props = node.getSgfPropertiesConst();
+            if (props != null)
+                for (String key : props.getKeys())
+                {
+                    collectString(count, key);
+                    for (int i = 0; i < props.getNumberValues(key); ++i)
+                        collectString(count, props.getValue(key, i));
+                }
+            ConstGameInfo info = node.getGameInfoConst();
+            if (info != null)
+            {
+                for (StringInfo type : StringInfo.values())
+                    collectString(count, info.get(type));
+                for (StringInfoColor type : StringInfoColor.values())
+                {
+                    collectString(count, info.get(type, BLACK));
+                    collectString(count, info.get(type, WHITE));
+                }
+            }
+            node = NodeUtil.nextNode(node);
+        }
+        m_strings.addAll(count.keySet());
+        Collections.sort(m_strings, (s1, s2) -> {
+            return Integer.compare(count.get(s2), count.get(s1));
+        });
+        for (int i = 0; i < m_strings.size(); ++i)
+            m_stringIndex.put(m_strings.get(i), i);
+    }
+
+    private static int getFlags(ConstNode node)
+    {
+        int flags = 0;
+        if (node.getMove() != null)
+            flags |= BinaryFormat.FLAG_MOVE;
+        if (node.hasComment())
+            flags |= BinaryFormat.FLAG_COMMENT;
+        if (node.hasSetup())
+            flags |= BinaryFormat.FLAG_SETUP;
+        if (node.getPlayer() != null)
+            flags |= BinaryFormat.FLAG_PLAYER;
+        for (MarkType type : MarkType.values())
+        {
+            ConstPointList marked = node.getMarkedConst(type);
+            if (marked != null && ! marked.isEmpty())
+            {
+                flags |= BinaryFormat.FLAG_MARKED;
+                break;
+            }
+        }
+        Map<GoPoint,String> labels = node.getLabelsUnmodifiable();
+        if (labels != null && ! labels.isEmpty())
+            flags |= BinaryFormat.FLAG_LABEL;
+        if (! Float.isNaN(node.getValue()))
+            flags |= BinaryFormat.FLAG_VALUE;
+        if (node.getMovesLeft(BLACK) != -1 || node.getMovesLeft(WHITE) != -1
+            || ! Double.isNaN(node.getTimeLeft(BLACK))
+            || ! Double.isNaN(node.getTimeLeft(WHITE)))
+            flags |= BinaryFormat.FLAG_TIME;
+        ConstSgfProperties props = node.getSgfPropertiesConst();
+        if (props != null && ! props.isEmpty())
+            flags |= BinaryFormat.FLAG_SGF_PROPERTIES;
+        if (node.getGameInfoConst() != null)
+            flags |= BinaryFormat.FLAG_GAME_INFO;
+        return flags;
+    }
+
+    private void ensureCapacity(int n)
+    {
+        if (m_length + n <= m_data.length)
+            return;
+        byte[] data = new byte[Math.max(2 * m_data.length, m_length + n)];
+        System.arraycopy(m_data, 0, data, 0, m_length);
+        m_data = data;
+    }
+
+    private void writeByte(int b)
+    {
+        ensureCapacity(1);
+        m_data[m_length++] = (byte)b;
+    }
+
+    private void writeBytes(byte[] bytes)
+    {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, m_data, m_length, bytes.length);
+        m_length += bytes.length;
+    }
+
+    private void writeColor(GoColor c)
+    {
+        writeByte(c == BLACK ? 0 : 1);
+    }
+
+    private void writeDouble(double value)
+    {
+        writeLong(Double.doubleToLongBits(value), 8);
+    }
+
+    private void writeGameInfo(ConstGameInfo info)
+    {
+        Komi komi = info.getKomi();
+        TimeSettings timeSettings = info.getTimeSettings();
+        int flags = 0;
+        if (komi != null)
+            flags |= BinaryFormat.INFO_KOMI;
+        if (timeSettings != null)
+            flags |= BinaryFormat.INFO_TIME_SETTINGS;
+        writeInt(flags);
+        writeInt(info.getHandicap());
+        if (komi != null)
+            writeDouble(komi.toDouble());
+        if (timeSettings != null)
+        {
+            writeLong(timeSettings.getPreByoyomi());
+            if (timeSettings.getUseByoyomi())
+            {
+                writeInt(timeSettings.getByoyomiMoves());
+                writeLong(timeSettings.getByoyomi());
+            }
+            else
+                writeInt(0);
+        }
+        int n = 0;
+        for (StringInfo type : StringInfo.values())
+            if (info.get(type) != null)
+                ++n;
+        writeInt(n);
+        for (StringInfo type : StringInfo.values())
+        {
+            String value = info.get(type);
+            if (value == null)
+                continue;
+            writeInt(type.ordinal());
+            writeString(value);
+        }
+        n = 0;
+        for (StringInfoColor type : StringInfoColor.values())
+            if (info.get(type, BLACK) != null || info.get(type, WHITE) != null)
+                ++n;
+        writeInt(n);
+        for (StringInfoColor type : StringInfoColor.values())
+        {
+            String black = info.get(type, BLACK);
+            String white = info.get(type, WHITE);
+            if (black == null && white == null)
+                continue;
+            writeInt(type.ordinal());
+            writeOptionalString(black);
+            writeOptionalString(white);
+        }
+    }
+
+    /** Write variable-length unsigned integer. */
+    private void writeInt(int value)
+    {
+        assert value >= 0;
+        writeLong(value);
+    }
+
+    /** Write fixed-length big-endian integer. */
+    private void writeLong(long value, int numberBytes)
+    {
+        ensureCapacity(numberBytes);
+        for (int i = numberBytes - 1; i >= 0; --i)
+            m_data[m_length++] = (byte)(value >>> (8 * i));
+    }
+
+    /** Write variable-length unsigned long. */
+    private void writeLong(long value)
+    {
+        assert value >= 0;
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0)
+        {
+            m_data[m_length++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        m_data[m_length++] = (byte)value;
+    }
+
+    private void writeNode(ConstNode node)
+    {
+        int flags = getFlags(node);
+        writeInt(flags);
+        if ((flags & BinaryFormat.FLAG_MOVE) != 0)
+        {
+            Move move = node.getMove();
+            writeColor(move.getColor());
+            writePoint(move.getPoint());
+        }
+        if ((flags & BinaryFormat.FLAG_COMMENT) != 0)
+            writeString(node.getComment());
+        if ((flags & BinaryFormat.FLAG_SETUP) != 0)
+            for (GoColor c : BLACK_WHITE_EMPTY)
+                writePointList(node.getSetup(c));
+        if ((flags & BinaryFormat.FLAG_PLAYER) != 0)
+            writeColor(node.getPlayer());
+        if ((flags & BinaryFormat.FLAG_MARKED) != 0)
+        {
+            int n = 0;
+            for (MarkType type : MarkType.values())
+            {
+                ConstPointList marked = node.getMarkedConst(type);
+                if (marked != null && ! marked.isEmpty())
+                    ++n;
+            }
+            writeInt(n);
+            for (MarkType type : MarkType.values())
+            {
+                ConstPointList marked = node.getMarkedConst(type);
+                if (marked == null || marked.isEmpty())
+                    continue;
+                writeInt(type.ordinal());
+                writePointList(marked);
+            }
+        }
+        if ((flags & BinaryFormat.FLAG_LABEL) != 0)
+        {
+            Map<GoPoint,String> labels = node.getLabelsUnmodifiable();
+            writeInt(labels.size());
+            for (Map.Entry<GoPoint,String> entry : labels.entrySet())
+            {
+                writePoint(entry.getKey());
+                writeString(entry.getValue());
+            }
+        }
+        if ((flags & BinaryFormat.FLAG_VALUE) != 0)
+            writeLong(Float.floatToIntBits(node.getValue()), 4);
+        if ((flags & BinaryFormat.FLAG_TIME) != 0)
+        {
+            writeInt(node.getMovesLeft(BLACK) + 1);
+            writeInt(node.getMovesLeft(WHITE) + 1);
+            writeDouble(node.getTimeLeft(BLACK));
+            writeDouble(node.getTimeLeft(WHITE));
+        }
+        if ((flags & BinaryFormat.FLAG_SGF_PROPERTIES) != 0)
+        {
+            ConstSgfProperties props = node.getSgfPropertiesConst();
+            ArrayList<String> keys = props.getKeys();
+            writeInt(keys.size());
+            for (String key : keys)
+            {
+                writeString(key);
+                int numberValues = props.getNumberValues(key);
+                writeInt(numberValues);
+                for (int i = 0; i < numberValues; ++i)
+                    writeString(props.getValue(key, i));
+            }
+        }
+        if ((flags & BinaryFormat.FLAG_GAME_INFO) != 0)
+            writeGameInfo(node.getGameInfoConst());
+    }
+
+    private void writeOptionalString(String s)
+    {
+        if (s == null)
+            writeInt(0);
+        else
+            writeInt(m_stringIndex.get(s) + 1);
+    }
+
+    private void writePoint(GoPoint p)
+    {
+        writeInt(p == null ? 0 : p.getIndex() + 1);
+    }
+
+    private void writePointList(ConstPointList list)
+    {
+        writeInt(list.size());
+        for (GoPoint p : list)
+            writePoint(p);
+    }
+
+    private void writeString(String s)
+    {
+        writeInt(m_stringIndex.get(s));
+    }
+
+    /** Write a subtree.
+        Nodes with a single child are written iteratively, so that the
+        recursion depth is only the nesting depth of variations. */
+    private void writeSubtree(ConstNode node)
+    {
+        while (true)
+        {
+            writeNode(node);
+            int numberChildren = node.getNumberChildren();
+            writeInt(numberChildren);
+            if (numberChildren == 0)
+                return;
+            if (numberChildren == 1)
+            {
+                node = node.getChildConst();
+                continue;
+            }
+            for (int i = 0; i < numberChildren; ++i)
+            {
+                int start = m_length;
+                writeLong(0, 4);
+                writeSubtree(node.getChildConst(i));
+                int length = m_length - start - 4;
+                for (int j = 0; j < 4; ++j)
+                    m_data[start + j] = (byte)(length >>> (8 * (3 - j)));
+            }
+            return;
+        }
+    }
+}
@@ -16,6 +16,38 @@ import net.sf.gogui.util.ObjectUtil;
 public class Game
     implements ConstGame
 {
+    /** Listener to modifications of the game tree.
+        Only modifications made through this class are reported; the
+        functions are called after the modification was done. */
+    public interface Listener
+    {
+        /** A node was appended as the last child of its father.
+            @param node The new node. */
+        void nodeAppended(ConstNode node);
+
+        /** The comment of a node changed.
+            @param node The node. */
+        void commentChanged(ConstNode node);
+
+        /** The marked points or labels of a node changed.
+            @param node The node. */
+        void markupChanged(ConstNode node);
+
+        /** The setup stones or the player to move of a node changed.
+            @param node The node. */
+        void setupChanged(ConstNode node);
+
+        /** The time or moves left of a node changed.
+            @param node The node. */
+        void timeChanged(ConstNode node);
+
+        /** Any other modification of the tree.
+            Used for modifications that cannot be described by one of the
+            other functions, like removing nodes or changing the game
+            information. */
+        void treeChanged();
+    }
+
     public Game(int boardSize)
     {
         this(boardSize, null, null, "", null);
@@ -44,6 +76,8 @@ public class Game
     {
         m_current.addMarked(point, type);
         setModified();
+        if (m_listener != null)
+            m_listener.markupChanged(m_current);
     }
 
     /** Clear modified flag.
@@ -63,6 +97,8 @@ public class Game
         m_current.append(node);
         m_current = node;
         setModified();
+        if (m_listener != null)
+            m_listener.nodeAppended(node);
     }
 
     /**
@@ -214,6 +250,7 @@ public class Game
     {
         m_tree.keepOnlyMainVariation();
         setModified();
+        fireTreeChanged();
     }
 
     public void keepOnlyPosition()
@@ -224,6 +261,7 @@ public class Game
         m_current = m_tree.getRoot();
         updateBoard();
         setModified();
+        fireTreeChanged();
     }
 
     /** Make current node the main variation. */
@@ -231,6 +269,7 @@ public class Game
     {
         NodeUtil.makeMainVariation(m_current);
         setModified();
+        fireTreeChanged();
     }
 
     public void play(Move move)
@@ -253,6 +292,8 @@ public class Game
         m_current = node;
         updateBoard();
         setModified();
+        if (m_listener != null)
+            m_listener.nodeAppended(node);
         m_clock.startMove(getToMove());
     }
 
@@ -263,6 +304,8 @@ public class Game
     {
         m_current.removeMarked(point, type);
         setModified();
+        if (m_listener != null)
+            m_listener.markupChanged(m_current);
     }
 
     public void resetClock()
@@ -291,6 +334,14 @@ public class Game
         m_clock.setListener(listener);
     }
 
+    /** Set listener to modifications of the game tree.
+        The listener is kept if the game is initialized with a new tree.
+        @param listener The listener or null to remove the listener. */
+    public void setListener(Listener listener)
+    {
+        m_listener = listener;
+    }
+
     /** Set comment in current node.
      * @param comment */
     public void setComment(String comment)
@@ -301,9 +352,14 @@ public class Game
     public void setComment(String comment, ConstNode node)
     {
         assert NodeUtil.getRoot(node) == getRoot();
-        if (! ObjectUtil.equals(comment, node.getComment()))
-            setModified();
+        boolean changed = ! ObjectUtil.equals(comment, node.getComment());
         ((Node)node).setComment(comment);
+        if (changed)
+        {
+            setModified();
+            if (m_listener != null)
+                m_listener.commentChanged(node);
+        }
     }
 
     public void setGameInfo(ConstGameInfo info, ConstNode node)
@@ -315,13 +371,15 @@ public class Game
             ((Node)node).getGameInfo().copyFrom(info);
             updateClock();
             setModified();
+            fireTreeChanged();
         }
     }
 
     public void setKomi(Komi komi)
     {
         Node node = m_tree.getGameInfoNode(m_current);
-        GameInfo info = node.getGameInfo();
+        // Copy, otherwise setGameInfo() does not detect the change
+        GameInfo info = new GameInfo(node.getGameInfo());
         info.setKomi(komi);
         setGameInfo(info, node); // updates m_modified
     }
@@ -331,15 +389,20 @@ public class Game
      * @param value */
     public void setLabel(GoPoint point, String value)
     {
-        if (! ObjectUtil.equals(value, m_current.getLabel(point)))
-            setModified();
+        boolean changed = ! ObjectUtil.equals(value, m_current.getLabel(point));
         m_current.setLabel(point, value);
+        if (changed)
+        {
+            setModified();
+            if (m_listener != null)
+                m_listener.markupChanged(m_current);
+        }
     }
 
     public void setPlayer(GoColor c, String name)
     {
         Node node = m_tree.getGameInfoNode(m_current);
-        GameInfo info = node.getGameInfo();
+        GameInfo info = new GameInfo(node.getGameInfo());
         info.set(StringInfoColor.NAME, c, name);
         setGameInfo(info, node); // updates m_modified
     }
@@ -347,7 +410,7 @@ public class Game
     public void setResult(String result)
     {
         Node node = m_tree.getGameInfoNode(m_current);
-        GameInfo info = node.getGameInfo();
+        GameInfo info = new GameInfo(node.getGameInfo());
         info.set(StringInfo.RESULT, result);
         setGameInfo(info, node); // updates m_modified
     }
@@ -356,11 +419,16 @@ public class Game
     {
         assert color != null;
         assert ! color.equals(EMPTY);
-        if (! ObjectUtil.equals(color, m_current.getPlayer())
-            || color.equals(m_board.getToMove()))
-            setModified();
+        boolean changed = (! ObjectUtil.equals(color, m_current.getPlayer())
+                           || color.equals(m_board.getToMove()));
         m_current.setPlayer(color);
         updateBoard();
+        if (changed)
+        {
+            setModified();
+            if (m_listener != null)
+                m_listener.setupChanged(m_current);
+        }
     }
 
     /** *  Change the time settings.If the current node is the root node, the clock will also be reset.
@@ -368,7 +436,7 @@ public class Game
     public void setTimeSettings(TimeSettings timeSettings)
     {
         Node node = m_tree.getGameInfoNode(m_current);
-        GameInfo info = node.getGameInfo();
+        GameInfo info = new GameInfo(node.getGameInfo());
         info.setTimeSettings(timeSettings);
         setGameInfo(info, node); // updates m_modified
         m_clock.setTimeSettings(timeSettings);
@@ -384,6 +452,17 @@ public class Game
     public void setTimeLeft(ConstNode node, GoColor c, double seconds)
     {
         ((Node)node).setTimeLeft(c, seconds);
+        if (m_listener != null)
+            m_listener.timeChanged(node);
+    }
+
+    /** Set modified flag.
+        Can be used for instance if the game tree was restored from changes
+        that are not yet saved in the game file.
+        @see #isModified() */
+    public void setModified()
+    {
+        m_modified = true;
     }
 
     public void setMovesLeft(GoColor c, int moves)
@@ -394,6 +473,8 @@ public class Game
     public void setMovesLeft(ConstNode node, GoColor c, int moves)
     {
         ((Node)node).setMovesLeft(c, moves);
+        if (m_listener != null)
+            m_listener.timeChanged(node);
     }
 
     /** Set a stone on the board or remove a stone.
@@ -411,6 +492,8 @@ public class Game
             if (oldColor == c)
             {
                 updateBoard();
+                if (m_listener != null)
+                    m_listener.setupChanged(m_current);
                 return;
             }
         }
@@ -418,6 +501,8 @@ public class Game
             m_current.addStone(c, p);
         setModified();
         updateBoard();
+        if (m_listener != null)
+            m_listener.setupChanged(m_current);
     }
 
     public void startClock()
@@ -436,6 +521,7 @@ public class Game
         m_current = father;
         m_current.removeChild(oldCurrentNode);
         setModified();
+        fireTreeChanged();
     }
 
     /** Remove children of currentNode. */
@@ -443,6 +529,7 @@ public class Game
     {
         NodeUtil.truncateChildren(m_current);
         setModified();
+        fireTreeChanged();
     }
 
     /** See #isModified() */
@@ -461,9 +548,12 @@ public class Game
 
     private final Clock m_clock;
 
-    private void setModified()
+    private Listener m_listener;
+
+    private void fireTreeChanged()
     {
-        m_modified = true;
+        if (m_listener != null)
+            m_listener.treeChanged();
     }
 
     private void updateBoard()
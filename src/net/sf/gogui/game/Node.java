@@ -578,6 +578,15 @@ public final class Node
             pointList.remove(point);
     }
 
+    /** Remove explicitely set color to play.
+        @see #getPlayer() */
+    public void removePlayer()
+    {
+        SetupInfo setupInfo = getSetupInfo();
+        if (setupInfo != null)
+            setupInfo.m_player = null;
+    }
+
     /** Remove setup at point.
         Remove any setup that was added with #addStone at a point.
         @param p Location of the setup. */
@@ -10,7 +10,11 @@ public class GameFile
     {
         SGF,
 
-        XML
+        XML,
+
+        /** Compact binary format.
+            @see net.sf.gogui.binary.BinaryWriter */
+        BINARY
     }
 
     public File m_file;
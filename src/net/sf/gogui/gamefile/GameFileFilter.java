@@ -7,13 +7,14 @@ import javax.swing.filechooser.FileFilter;
 import static net.sf.gogui.gamefile.I18n.i18n;
 import net.sf.gogui.util.FileUtil;
 
-/** Swing file filter for SGF or Jago XML files. */
+/** Swing file filter for SGF, Jago XML or binary game files. */
 public class GameFileFilter
     extends FileFilter
 {
     /** Accept function.
         @param file The file to check.
-        @return true if file has extension .sgf or .SGF or is a directory */
+        @return true if file has extension .sgf, .xml or .ggb (in lower or
+        upper case) or is a directory */
     @Override
     public boolean accept(File file)
     {
@@ -22,7 +23,9 @@ public class GameFileFilter
         return (FileUtil.hasExtension(file, "sgf")
                 || FileUtil.hasExtension(file, "SGF")
                 || FileUtil.hasExtension(file, "xml")
-                || FileUtil.hasExtension(file, "XML"));
+                || FileUtil.hasExtension(file, "XML")
+                || FileUtil.hasExtension(file, GameReader.BINARY_EXTENSION)
+                || FileUtil.hasExtension(file, "GGB"));
     }
 
     @Override
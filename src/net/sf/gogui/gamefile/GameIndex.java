@@ -0,0 +1,638 @@
+// GameIndex.java
+
+package net.sf.gogui.gamefile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.go.ConstBoard;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+import net.sf.gogui.go.PointList;
+import net.sf.gogui.sgf.SgfReader;
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.util.ProgressShow;
+
+/** Persistent index of the games in a collection of game files.
+    Each entry stores the root game information, the moves of the main
+    variation, the hash code of the final position, the canonical hash codes
+    of all positions in the main variation and the location of the
+    game (file and byte offset, SGF files can contain more than one game).
+    The index is created and updated with GameIndexer and queried with
+    GameQuery, so that queries do not need to read the game files. */
+public final class GameIndex
+{
+    /** Index entry for a single game. */
+    public static final class Entry
+    {
+        /** File containing the game. */
+        public File getFile()
+        {
+            return m_file;
+        }
+
+        /** Byte offset of the game in the file.
+            Non-zero only for games in SGF collection files. */
+        public long getOffset()
+        {
+            return m_offset;
+        }
+
+        /** Length of the game in bytes. */
+        public long getLength()
+        {
+            return m_length;
+        }
+
+        public int getBoardSize()
+        {
+            return m_boardSize;
+        }
+
+        /** Player name.
+            @param c The color.
+            @return The name or null, if unknown. */
+        public String getPlayer(GoColor c)
+        {
+            return (c == BLACK ? m_blackPlayer : m_whitePlayer);
+        }
+
+        /** Player rank.
+            @param c The color.
+            @return The rank or null, if unknown. */
+        public String getRank(GoColor c)
+        {
+            return (c == BLACK ? m_blackRank : m_whiteRank);
+        }
+
+        public String getDate()
+        {
+            return m_date;
+        }
+
+        public String getResult()
+        {
+            return m_result;
+        }
+
+        /** Komi as string or null, if unknown. */
+        public String getKomi()
+        {
+            return m_komi;
+        }
+
+        public int getHandicap()
+        {
+            return m_handicap;
+        }
+
+        /** Number of moves in the main variation.
+            Moves after a setup node (other than the root) are not
+            included. */
+        public int getNumberMoves()
+        {
+            return m_moves.length;
+        }
+
+        /** Move in the main variation.
+            @param i The index of the move in [0..getNumberMoves() - 1].
+            @return The move. */
+        public Move getMove(int i)
+        {
+            return decodeMove(m_moves[i]);
+        }
+
+        /** Setup stones in the root node. */
+        public PointList getSetup(GoColor c)
+        {
+            PointList result = new PointList();
+            for (short value : m_setup)
+            {
+                Move move = decodeMove(value);
+                if (move.getColor() == c)
+                    result.add(move.getPoint());
+            }
+            return result;
+        }
+
+        /** Hash code of the final position of the main variation.
+            @see PositionHash#getHash */
+        public long getFinalHash()
+        {
+            return m_finalHash;
+        }
+
+        /** Canonical hash code of a position in the main variation.
+            @param moveNumber The number of moves played after the setup
+            stones in [0..getNumberMoves()].
+            @return The hash code.
+            @see PositionHash#getCanonicalHash */
+        public long getPositionHash(int moveNumber)
+        {
+            return m_positions[moveNumber];
+        }
+
+        Entry(File file, long offset, long length, long fileLength,
+              long fileLastModified)
+        {
+            m_file = file;
+            m_offset = offset;
+            m_length = length;
+            m_fileLength = fileLength;
+            m_fileLastModified = fileLastModified;
+        }
+
+        String m_blackPlayer;
+
+        String m_whitePlayer;
+
+        String m_blackRank;
+
+        String m_whiteRank;
+
+        String m_date;
+
+        String m_result;
+
+        String m_komi;
+
+        int m_boardSize;
+
+        int m_handicap;
+
+        long m_finalHash;
+
+        /** Encoded setup stones (see encodeMove). */
+        short[] m_setup = new short[0];
+
+        /** Encoded moves of the main variation (see encodeMove). */
+        short[] m_moves = new short[0];
+
+        /** Canonical hash codes of all positions in the main variation.
+            Contains getNumberMoves() + 1 elements. */
+        long[] m_positions = new long[1];
+
+        final File m_file;
+
+        final long m_offset;
+
+        final long m_length;
+
+        /** Length of the file at the time of indexing. */
+        final long m_fileLength;
+
+        /** Modification time of the file at the time of indexing. */
+        final long m_fileLastModified;
+    }
+
+    /** Game position found by findPosition(). */
+    public static final class Match
+    {
+        public Entry getEntry()
+        {
+            return m_entry;
+        }
+
+        /** Number of moves played in the game when the position occurred.
+        */
+        public int getMoveNumber()
+        {
+            return m_moveNumber;
+        }
+
+        Match(Entry entry, int moveNumber)
+        {
+            m_entry = entry;
+            m_moveNumber = moveNumber;
+        }
+
+        private final Entry m_entry;
+
+        private final int m_moveNumber;
+    }
+
+    /** Construct empty index. */
+    public GameIndex()
+    {
+        m_entries = new ArrayList<>();
+    }
+
+    /** Read index file.
+        @param file The index file.
+        @return The index or an empty index, if the file does not exist or
+        was written by an incompatible version (it will be rebuilt by the
+        next update).
+        @throws ErrorMessage If reading the file fails. */
+    public static GameIndex read(File file) throws ErrorMessage
+    {
+        return read(file, null);
+    }
+
+    /** Read index file.
+        @param file The index file.
+        @param progressShow Callback to show progress, can be null
+        @return The index or an empty index, if the file does not exist or
+        was written by an incompatible version.
+        @throws ErrorMessage If reading the file fails. */
+    public static GameIndex read(File file, ProgressShow progressShow)
+        throws ErrorMessage
+    {
+        GameIndex index = new GameIndex();
+        if (! file.exists())
+            return index;
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file))))
+        {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            for (int i = 0; i < MAGIC.length; ++i)
+                if (magic[i] != MAGIC[i])
+                    throw new ErrorMessage("Not a game index file: " + file);
+            if (in.readUnsignedByte() != VERSION)
+                return index;
+            int size = in.readInt();
+            for (int i = 0; i < size; ++i)
+            {
+                index.m_entries.add(readEntry(in));
+                if (progressShow != null && (i + 1) % 1000 == 0)
+                    progressShow.showProgress((i + 1) * 100 / size);
+            }
+        }
+        catch (EOFException e)
+        {
+            throw new ErrorMessage("Truncated game index file: " + file);
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage(file + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    /** Read the game of an index entry.
+        @param entry The index entry.
+        @return The game tree.
+        @throws ErrorMessage If reading the game fails. */
+    public static GameTree readGame(Entry entry) throws ErrorMessage
+    {
+        File file = entry.getFile();
+        if (entry.getOffset() == 0 && entry.getLength() == file.length())
+            return new GameReader(file).getTree();
+        byte[] buffer = new byte[(int)entry.getLength()];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r"))
+        {
+            in.seek(entry.getOffset());
+            in.readFully(buffer);
+            return new SgfReader(new ByteArrayInputStream(buffer), file, null,
+                                 0).getTree();
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage(file + ": " + e.getMessage());
+        }
+    }
+
+    /** Get all entries.
+        @return Unmodifiable list of entries, sorted by file name and offset.
+    */
+    public List<Entry> getEntries()
+    {
+        return Collections.unmodifiableList(m_entries);
+    }
+
+    /** Find all games matching a query.
+        @param query The query.
+        @return The matching entries in index order. */
+    public List<Entry> query(GameQuery query)
+    {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : m_entries)
+            if (query.matches(entry))
+                result.add(entry);
+        return result;
+    }
+
+    /** Find all games in which a position occurs in the main variation.
+        Positions are compared by their canonical hash code, so that
+        symmetric positions and positions with exchanged colors are found
+        too. Only the first occurrence in each game is returned.
+        The search does not replay the games. It uses a sorted array of the
+        hash codes of all positions in the index, which is created by the
+        first search. A search needs a binary search in this array and
+        then time proportional to the number of matches.
+        @param board The position.
+        @return The games and move numbers, in index order. */
+    public List<Match> findPosition(ConstBoard board)
+    {
+        long hash = PositionHash.getCanonicalHash(board);
+        int size = board.getSize();
+        initPositionIndex();
+        List<Match> result = new ArrayList<>();
+        int lastEntryIndex = -1;
+        for (int i = findFirstPosition(hash);
+             i < m_positionHashes.length && m_positionHashes[i] == hash; ++i)
+        {
+            int entryIndex = m_positionEntries[i];
+            // A position can occur more than once in a game
+            if (entryIndex == lastEntryIndex)
+                continue;
+            lastEntryIndex = entryIndex;
+            Entry entry = m_entries.get(entryIndex);
+            if (entry.m_boardSize != size)
+                continue;
+            long[] positions = entry.m_positions;
+            for (int j = 0; j < positions.length; ++j)
+                if (positions[j] == hash)
+                {
+                    result.add(new Match(entry, j));
+                    break;
+                }
+        }
+        return result;
+    }
+
+    /** Write index file.
+        The index is written to a temporary file first, which replaces the
+        old index file only if writing succeeded.
+        @param file The index file.
+        @throws ErrorMessage If writing fails. */
+    public void write(File file) throws ErrorMessage
+    {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(tmpFile))))
+            {
+                out.write(MAGIC);
+                out.writeByte(VERSION);
+                out.writeInt(m_entries.size());
+                for (Entry entry : m_entries)
+                    writeEntry(out, entry);
+            }
+            Files.move(tmpFile.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e)
+        {
+            tmpFile.delete();
+            throw new ErrorMessage(file + ": " + e.getMessage());
+        }
+    }
+
+    public int size()
+    {
+        return m_entries.size();
+    }
+
+    /** Construct from entries (used by GameIndexer).
+        @param entries The entries, already sorted. */
+    GameIndex(List<Entry> entries)
+    {
+        m_entries = entries;
+    }
+
+    /** Encode a move as a short.
+        Bits 0-9 contain the point index + 1 (0 for pass), bit 10 is set for
+        White. */
+    static short encodeMove(GoColor c, GoPoint p)
+    {
+        int value = (p == null ? 0 : p.getIndex() + 1);
+        if (c == WHITE)
+            value |= WHITE_BIT;
+        return (short)value;
+    }
+
+    private static final byte[] MAGIC = { 'G', 'G', 'I' };
+
+    private static final int VERSION = 2;
+
+    private static final int WHITE_BIT = 1 << 10;
+
+    private static final int MAX_STRING_LENGTH = 16000;
+
+    private final List<Entry> m_entries;
+
+    /** Hash codes of all positions of all entries, sorted.
+        Created by initPositionIndex(). */
+    private long[] m_positionHashes;
+
+    /** Entry index for each element of m_positionHashes.
+        Elements with equal hash codes are sorted by entry index. */
+    private int[] m_positionEntries;
+
+    /** Decode a move encoded with encodeMove(). */
+    static Move decodeMove(short value)
+    {
+        GoColor c = ((value & WHITE_BIT) != 0 ? WHITE : BLACK);
+        int index = (value & (WHITE_BIT - 1)) - 1;
+        GoPoint p = null;
+        if (index >= 0)
+            p = GoPoint.get(index % GoPoint.MAX_SIZE,
+                            index / GoPoint.MAX_SIZE);
+        return Move.get(c, p);
+    }
+
+    /** Compare two elements of the position index by hash code and entry
+        index. */
+    private int comparePositions(int i, int j)
+    {
+        int result = Long.compare(m_positionHashes[i], m_positionHashes[j]);
+        if (result == 0)
+            result = Integer.compare(m_positionEntries[i],
+                                     m_positionEntries[j]);
+        return result;
+    }
+
+    /** Find the first element of the position index with a hash code.
+        @return The index of the element or the index where it would be
+        inserted. */
+    private int findFirstPosition(long hash)
+    {
+        int low = 0;
+        int high = m_positionHashes.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (m_positionHashes[mid] < hash)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private synchronized void initPositionIndex()
+    {
+        if (m_positionHashes != null)
+            return;
+        int numberPositions = 0;
+        for (Entry entry : m_entries)
+            numberPositions += entry.m_positions.length;
+        long[] hashes = new long[numberPositions];
+        int[] entries = new int[numberPositions];
+        int n = 0;
+        for (int i = 0; i < m_entries.size(); ++i)
+            for (long hash : m_entries.get(i).m_positions)
+            {
+                hashes[n] = hash;
+                entries[n] = i;
+                ++n;
+            }
+        m_positionHashes = hashes;
+        m_positionEntries = entries;
+        sortPositions(0, numberPositions);
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException
+    {
+        File file = new File(in.readUTF());
+        long offset = in.readLong();
+        long length = in.readLong();
+        long fileLength = in.readLong();
+        long fileLastModified = in.readLong();
+        Entry entry =
+            new Entry(file, offset, length, fileLength, fileLastModified);
+        entry.m_blackPlayer = readString(in);
+        entry.m_whitePlayer = readString(in);
+        entry.m_blackRank = readString(in);
+        entry.m_whiteRank = readString(in);
+        entry.m_date = readString(in);
+        entry.m_result = readString(in);
+        entry.m_komi = readString(in);
+        entry.m_boardSize = in.readUnsignedByte();
+        entry.m_handicap = in.readUnsignedByte();
+        entry.m_finalHash = in.readLong();
+        entry.m_setup = readShorts(in);
+        entry.m_moves = readShorts(in);
+        entry.m_positions = new long[entry.m_moves.length + 1];
+        for (int i = 0; i < entry.m_positions.length; ++i)
+            entry.m_positions[i] = in.readLong();
+        return entry;
+    }
+
+    private static short[] readShorts(DataInputStream in) throws IOException
+    {
+        short[] result = new short[in.readInt()];
+        for (int i = 0; i < result.length; ++i)
+            result[i] = in.readShort();
+        return result;
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        if (! in.readBoolean())
+            return null;
+        return in.readUTF();
+    }
+
+    /** Sort a range of the position index.
+        Quicksort on the two parallel arrays, which avoids creating an
+        object per position. Recurses only into the smaller part, so the
+        recursion depth is logarithmic. */
+    private void sortPositions(int begin, int end)
+    {
+        while (end - begin > 16)
+        {
+            int mid = (begin + end) >>> 1;
+            // Median of three as pivot, moved to end - 1
+            if (comparePositions(mid, begin) < 0)
+                swapPositions(mid, begin);
+            if (comparePositions(end - 1, begin) < 0)
+                swapPositions(end - 1, begin);
+            if (comparePositions(mid, end - 1) < 0)
+                swapPositions(mid, end - 1);
+            int pivot = end - 1;
+            int store = begin;
+            for (int i = begin; i < pivot; ++i)
+                if (comparePositions(i, pivot) < 0)
+                    swapPositions(i, store++);
+            swapPositions(store, pivot);
+            if (store - begin < end - store - 1)
+            {
+                sortPositions(begin, store);
+                begin = store + 1;
+            }
+            else
+            {
+                sortPositions(store + 1, end);
+                end = store;
+            }
+        }
+        for (int i = begin + 1; i < end; ++i)
+            for (int j = i; j > begin && comparePositions(j, j - 1) < 0; --j)
+                swapPositions(j, j - 1);
+    }
+
+    private void swapPositions(int i, int j)
+    {
+        long hash = m_positionHashes[i];
+        m_positionHashes[i] = m_positionHashes[j];
+        m_positionHashes[j] = hash;
+        int entry = m_positionEntries[i];
+        m_positionEntries[i] = m_positionEntries[j];
+        m_positionEntries[j] = entry;
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry)
+        throws IOException
+    {
+        out.writeUTF(entry.m_file.getPath());
+        out.writeLong(entry.m_offset);
+        out.writeLong(entry.m_length);
+        out.writeLong(entry.m_fileLength);
+        out.writeLong(entry.m_fileLastModified);
+        writeString(out, entry.m_blackPlayer);
+        writeString(out, entry.m_whitePlayer);
+        writeString(out, entry.m_blackRank);
+        writeString(out, entry.m_whiteRank);
+        writeString(out, entry.m_date);
+        writeString(out, entry.m_result);
+        writeString(out, entry.m_komi);
+        out.writeByte(entry.m_boardSize);
+        out.writeByte(entry.m_handicap);
+        out.writeLong(entry.m_finalHash);
+        writeShorts(out, entry.m_setup);
+        writeShorts(out, entry.m_moves);
+        for (long hash : entry.m_positions)
+            out.writeLong(hash);
+    }
+
+    private static void writeShorts(DataOutputStream out, short[] values)
+        throws IOException
+    {
+        out.writeInt(values.length);
+        for (short value : values)
+            out.writeShort(value);
+    }
+
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException
+    {
+        out.writeBoolean(s != null);
+        if (s != null)
+        {
+            // writeUTF is limited to 65535 bytes
+            if (s.length() > MAX_STRING_LENGTH)
+                s = s.substring(0, MAX_STRING_LENGTH);
+            out.writeUTF(s);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+// GameIndexer.java
+
+package net.sf.gogui.gamefile;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import net.sf.gogui.game.BoardUpdater;
+import net.sf.gogui.game.ConstGameInfo;
+import net.sf.gogui.game.ConstGameTree;
+import net.sf.gogui.game.ConstNode;
+import net.sf.gogui.game.NodeUtil;
+import net.sf.gogui.game.StringInfo;
+import net.sf.gogui.game.StringInfoColor;
+import net.sf.gogui.go.Board;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.EMPTY;
+import static net.sf.gogui.go.GoColor.WHITE;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Komi;
+import net.sf.gogui.go.Move;
+import net.sf.gogui.go.PointList;
+import net.sf.gogui.sgf.SgfReader;
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.util.FileUtil;
+import net.sf.gogui.util.ProgressShow;
+
+/** Creates or updates a GameIndex.
+    Files are indexed in parallel by a pool of threads. Files that did not
+    change since the last update (same size and modification time) are not
+    read again, entries of files that no longer exist are removed.
+    Entries of existing files outside the directories given to update() are
+    kept, so that directories can be added to an index one at a time. */
+public class GameIndexer
+{
+    /** Constructor.
+        @param index The existing index (can be empty). */
+    public GameIndexer(GameIndex index)
+    {
+        m_index = index;
+        m_numberThreads = Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getNumberIndexedFiles()
+    {
+        return m_numberIndexedFiles;
+    }
+
+    public int getNumberRemovedFiles()
+    {
+        return m_numberRemovedFiles;
+    }
+
+    public int getNumberUnchangedFiles()
+    {
+        return m_numberUnchangedFiles;
+    }
+
+    /** Warnings about files that could not be read in the last update.
+        @return The warnings, one per file. */
+    public List<String> getWarnings()
+    {
+        return m_warnings;
+    }
+
+    /** Set number of indexing threads.
+        @param numberThreads Number of threads (default: number of
+        processors). */
+    public void setNumberThreads(int numberThreads)
+    {
+        m_numberThreads = Math.max(1, numberThreads);
+    }
+
+    /** Update the index.
+        @param roots Game files or directories, which are searched
+        recursively for SGF, XML and binary game files.
+        @param progressShow Callback to show progress, can be null
+        @return The updated index.
+        @throws ErrorMessage If a root file does not exist. */
+    public GameIndex update(List<File> roots, ProgressShow progressShow)
+        throws ErrorMessage
+    {
+        m_warnings = Collections.synchronizedList(new ArrayList<String>());
+        m_numberIndexedFiles = 0;
+        m_numberRemovedFiles = 0;
+        m_numberUnchangedFiles = 0;
+        Map<File,List<GameIndex.Entry>> oldEntries = new HashMap<>();
+        for (GameIndex.Entry entry : m_index.getEntries())
+        {
+            List<GameIndex.Entry> list = oldEntries.get(entry.getFile());
+            if (list == null)
+            {
+                list = new ArrayList<>();
+                oldEntries.put(entry.getFile(), list);
+            }
+            list.add(entry);
+        }
+        TreeSet<File> fileSet = new TreeSet<>();
+        for (File root : roots)
+        {
+            if (! root.exists())
+                throw new ErrorMessage("File \"" + root + "\" not found");
+            findFiles(root.getAbsoluteFile(), fileSet);
+        }
+        for (File file : oldEntries.keySet())
+            if (! fileSet.contains(file))
+            {
+                if (file.exists())
+                    fileSet.add(file);
+                else
+                    ++m_numberRemovedFiles;
+            }
+        List<File> files = new ArrayList<>(fileSet);
+        List<Future<List<GameIndex.Entry>>> futures = new ArrayList<>();
+        ExecutorService executor =
+            Executors.newFixedThreadPool(m_numberThreads);
+        try
+        {
+            for (final File file : files)
+            {
+                List<GameIndex.Entry> list = oldEntries.get(file);
+                if (list != null && isUnchanged(list.get(0), file))
+                {
+                    ++m_numberUnchangedFiles;
+                    futures.add(null);
+                }
+                else
+                {
+                    ++m_numberIndexedFiles;
+                    futures.add(executor.submit(() -> indexFile(file)));
+                }
+            }
+            List<GameIndex.Entry> entries = new ArrayList<>();
+            for (int i = 0; i < files.size(); ++i)
+            {
+                Future<List<GameIndex.Entry>> future = futures.get(i);
+                if (future == null)
+                    entries.addAll(oldEntries.get(files.get(i)));
+                else
+                    entries.addAll(future.get());
+                if (progressShow != null)
+                    progressShow.showProgress((i + 1) * 100 / files.size());
+            }
+            return new GameIndex(entries);
+        }
+        catch (InterruptedException e)
+        {
+            throw new ErrorMessage("Interrupted");
+        }
+        catch (ExecutionException e)
+        {
+            throw new ErrorMessage(e.getCause().toString());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private int m_numberThreads;
+
+    private int m_numberIndexedFiles;
+
+    private int m_numberRemovedFiles;
+
+    private int m_numberUnchangedFiles;
+
+    private final GameIndex m_index;
+
+    private List<String> m_warnings = new ArrayList<>();
+
+    private static GameIndex.Entry createEntry(File file, long offset,
+                                               long length,
+                                               ConstGameTree tree)
+    {
+        GameIndex.Entry entry = new GameIndex.Entry(file, offset, length,
+                                                    file.length(),
+                                                    file.lastModified());
+        ConstNode root = tree.getRootConst();
+        ConstGameInfo info = tree.getGameInfoConst(root);
+        entry.m_blackPlayer = info.get(StringInfoColor.NAME, BLACK);
+        entry.m_whitePlayer = info.get(StringInfoColor.NAME, WHITE);
+        entry.m_blackRank = info.get(StringInfoColor.RANK, BLACK);
+        entry.m_whiteRank = info.get(StringInfoColor.RANK, WHITE);
+        entry.m_date = info.get(StringInfo.DATE);
+        entry.m_result = info.get(StringInfo.RESULT);
+        Komi komi = info.getKomi();
+        entry.m_komi = (komi == null ? null : komi.toString());
+        entry.m_handicap = info.getHandicap();
+        entry.m_boardSize = tree.getBoardSize();
+        short[] setup = new short[root.getSetup(BLACK).size()
+                                  + root.getSetup(WHITE).size()];
+        int n = 0;
+        for (GoPoint p : root.getSetup(BLACK))
+            setup[n++] = GameIndex.encodeMove(BLACK, p);
+        for (GoPoint p : root.getSetup(WHITE))
+            setup[n++] = GameIndex.encodeMove(WHITE, p);
+        entry.m_setup = setup;
+        // Moves are recorded up to the first setup after the root, later
+        // moves cannot be replayed from the move list alone
+        short[] moves = new short[NodeUtil.getNodesLeft(root)];
+        n = 0;
+        for (ConstNode node = root; node != null;
+             node = node.getChildConst())
+        {
+            if (node != root && node.hasSetup())
+                break;
+            Move move = node.getMove();
+            if (move != null)
+                moves[n++] = GameIndex.encodeMove(move.getColor(),
+                                                  move.getPoint());
+        }
+        entry.m_moves = Arrays.copyOf(moves, n);
+        entry.m_positions = getPositionHashes(entry);
+        Board board = new Board(tree.getBoardSize());
+        new BoardUpdater().update(tree, NodeUtil.getLast(root), board);
+        entry.m_finalHash = PositionHash.getHash(board);
+        return entry;
+    }
+
+    /** Find the start and end of all games in an SGF collection.
+        @return Pairs of start and end offsets. */
+    private static List<long[]> findGames(byte[] buffer)
+    {
+        List<long[]> result = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        boolean inValue = false;
+        for (int i = 0; i < buffer.length; ++i)
+        {
+            byte b = buffer[i];
+            if (inValue)
+            {
+                if (b == '\\')
+                    ++i;
+                else if (b == ']')
+                    inValue = false;
+            }
+            else if (b == '[')
+                inValue = true;
+            else if (b == '(')
+            {
+                if (depth == 0)
+                    start = i;
+                ++depth;
+            }
+            else if (b == ')' && depth > 0)
+            {
+                --depth;
+                if (depth == 0)
+                    result.add(new long[] { start, i + 1 });
+            }
+        }
+        return result;
+    }
+
+    /** Replay the main variation and compute the canonical hash codes of
+        all positions. */
+    private static long[] getPositionHashes(GameIndex.Entry entry)
+    {
+        int size = entry.getBoardSize();
+        long[] result = new long[entry.getNumberMoves() + 1];
+        Board board = new Board(size);
+        board.setup(entry.getSetup(BLACK), entry.getSetup(WHITE), null);
+        PositionHash.Canonical hash = new PositionHash.Canonical(size);
+        GoColor[] colors = new GoColor[GoPoint.NUMBER_INDEXES];
+        Arrays.fill(colors, EMPTY);
+        PointList changed = new PointList();
+        for (GoPoint p : board)
+            changed.add(p);
+        for (int i = 0; ; ++i)
+        {
+            // Update from the points that can have changed: the move point,
+            // captured stones and stones removed by suicide
+            for (GoPoint p : changed)
+            {
+                GoColor old = colors[p.getIndex()];
+                GoColor c = board.getColor(p);
+                if (old == c)
+                    continue;
+                if (old != EMPTY)
+                    hash.toggle(old, p);
+                if (c != EMPTY)
+                    hash.toggle(c, p);
+                colors[p.getIndex()] = c;
+            }
+            result[i] = hash.getHash();
+            if (i == entry.getNumberMoves())
+                break;
+            Move move = entry.getMove(i);
+            board.play(move);
+            changed.clear();
+            if (move.getPoint() != null)
+                changed.add(move.getPoint());
+            changed.addAllFromConst(board.getKilled());
+            changed.addAllFromConst(board.getSuicide());
+        }
+        return result;
+    }
+
+    private static void findFiles(File file, Set<File> files)
+    {
+        if (file.isDirectory())
+        {
+            File[] children = file.listFiles();
+            if (children != null)
+                for (File child : children)
+                    findFiles(child, files);
+        }
+        else if (isGameFile(file))
+            files.add(file);
+    }
+
+    private List<GameIndex.Entry> indexFile(File file)
+    {
+        List<GameIndex.Entry> result = new ArrayList<>();
+        try
+        {
+            byte[] buffer = null;
+            List<long[]> games = null;
+            if (FileUtil.hasExtension(file, "sgf")
+                || FileUtil.hasExtension(file, "SGF"))
+            {
+                buffer = Files.readAllBytes(file.toPath());
+                games = findGames(buffer);
+            }
+            if (games == null || games.size() <= 1)
+            {
+                // Use GameReader, which respects the SGF charset property
+                ConstGameTree tree = new GameReader(file).getTree();
+                result.add(createEntry(file, 0, file.length(), tree));
+                return result;
+            }
+            for (long[] game : games)
+            {
+                int start = (int)game[0];
+                int length = (int)(game[1] - game[0]);
+                SgfReader reader = new SgfReader(
+                    new ByteArrayInputStream(buffer, start, length), file,
+                    null, 0);
+                result.add(createEntry(file, start, length,
+                                       reader.getTree()));
+            }
+        }
+        catch (ErrorMessage | IOException e)
+        {
+            m_warnings.add(file + ": " + e.getMessage());
+            result.clear();
+        }
+        return result;
+    }
+
+    private static boolean isGameFile(File file)
+    {
+        return (FileUtil.hasExtension(file, "sgf")
+                || FileUtil.hasExtension(file, "SGF")
+                || FileUtil.hasExtension(file, "xml")
+                || FileUtil.hasExtension(file, "XML")
+                || FileUtil.hasExtension(file, GameReader.BINARY_EXTENSION)
+                || FileUtil.hasExtension(file, "GGB"));
+    }
+
+    private static boolean isUnchanged(GameIndex.Entry entry, File file)
+    {
+        return (entry.m_fileLength == file.length()
+                && entry.m_fileLastModified == file.lastModified());
+    }
+}
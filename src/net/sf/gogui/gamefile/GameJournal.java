@@ -0,0 +1,723 @@
+// GameJournal.java
+
+package net.sf.gogui.gamefile;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import net.sf.gogui.binary.BinaryReader;
+import net.sf.gogui.binary.BinaryWriter;
+import net.sf.gogui.game.ConstGame;
+import net.sf.gogui.game.ConstNode;
+import net.sf.gogui.game.Game;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.MarkType;
+import net.sf.gogui.game.Node;
+import net.sf.gogui.go.ConstPointList;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+import static net.sf.gogui.go.GoColor.BLACK_WHITE_EMPTY;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+import net.sf.gogui.go.PointList;
+import net.sf.gogui.util.ErrorMessage;
+
+/** Append-only journal of modifications to a game file.
+    Every modification reported by Game.Listener is appended as a small
+    record to a side file (the game file name with the extension
+    <code>.journal</code> appended), so that saving a change costs
+    O(change) instead of O(tree). The journal is compacted after a number
+    of records or if a modification cannot be described by a record (e.g.
+    removing nodes) by replacing it with a snapshot of the whole tree in
+    the binary format. The game file itself is never written by the
+    journal; it is only replaced by an explicit save.
+    The journal starts with the length and modification time of the game
+    file it belongs to, so that a journal left over from a crash is only
+    replayed on the file version it was written for.
+    Records are written with a single write call per record to the
+    operating system; a record torn by a crash is ignored at replay. */
+public class GameJournal
+    implements Game.Listener
+{
+    /** Number of records after which the journal is compacted. */
+    public static final int COMPACT_RECORDS = 1000;
+
+    /** Constructor.
+        Does not create the journal file; it is created with the first
+        record.
+        @param gameFile The game file.
+        @param game The game, which should also have this journal as its
+        listener.
+        @param application Application name for the snapshot.
+        @param version Application version for the snapshot. */
+    public GameJournal(GameFile gameFile, ConstGame game, String application,
+                       String version)
+    {
+        m_gameFile = gameFile;
+        m_game = game;
+        m_application = application;
+        m_version = version;
+        m_journalFile = getJournalFile(gameFile.m_file);
+    }
+
+    /** Stop journaling and close the journal file.
+        The journal file is kept; it will be replayed when the game file is
+        loaded again. */
+    public void close()
+    {
+        closeOut();
+        m_closed = true;
+    }
+
+    /** Replace the journal by a snapshot of the current game.
+        The snapshot is written to a temporary file, which is moved over
+        the journal, so that a crash leaves either the old or the new
+        journal. The game file is not modified.
+        @throws ErrorMessage If writing the snapshot fails. */
+    public void compact() throws ErrorMessage
+    {
+        if (m_closed)
+            return;
+        String application = m_application;
+        if (application != null && m_version != null)
+            application = application + ":" + m_version;
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        new BinaryWriter(snapshot, m_game.getTree(), application);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(10);
+        record.write(SNAPSHOT);
+        writeInt(record, 0);
+        writeInt(record, snapshot.size());
+        closeOut();
+        File tmpFile = new File(m_journalFile.getPath() + ".tmp");
+        try
+        {
+            try (FileOutputStream out = new FileOutputStream(tmpFile))
+            {
+                writeHeader(out);
+                ByteArrayOutputStream prefix = new ByteArrayOutputStream(5);
+                writeInt(prefix, record.size() + snapshot.size());
+                prefix.writeTo(out);
+                record.writeTo(out);
+                snapshot.writeTo(out);
+            }
+            Files.move(tmpFile.toPath(), m_journalFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage(e.getMessage());
+        }
+        m_numberRecords = 0;
+    }
+
+    /** Delete the journal.
+        Used if the game was saved by other means. */
+    public void discard()
+    {
+        closeOut();
+        m_numberRecords = 0;
+        if (m_journalFile.exists() && ! m_journalFile.delete())
+            System.err.println("Could not delete " + m_journalFile);
+    }
+
+    /** Get the name of the journal file for a game file.
+        @param file The game file.
+        @return The journal file. */
+    public static File getJournalFile(File file)
+    {
+        return new File(file.getPath() + ".journal");
+    }
+
+    /** Check if writing the journal failed.
+        If writing a record fails, the journal is disabled and the game must
+        be saved by other means.
+        @return The error or null, if no error occurred. */
+    public String getError()
+    {
+        return m_error;
+    }
+
+    @Override
+    public void commentChanged(ConstNode node)
+    {
+        ByteArrayOutputStream out = startRecord(COMMENT, node);
+        String comment = node.getComment();
+        writeString(out, comment == null ? "" : comment);
+        writeRecord(out);
+    }
+
+    @Override
+    public void markupChanged(ConstNode node)
+    {
+        ByteArrayOutputStream out = startRecord(MARKUP, node);
+        for (MarkType type : MarkType.values())
+        {
+            ConstPointList marked = node.getMarkedConst(type);
+            writePointList(out, marked == null ? PointList.getEmptyList()
+                           : marked);
+        }
+        Map<GoPoint,String> labels = node.getLabelsUnmodifiable();
+        if (labels == null)
+            writeInt(out, 0);
+        else
+        {
+            writeInt(out, labels.size());
+            for (Map.Entry<GoPoint,String> entry : labels.entrySet())
+            {
+                writePoint(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+        writeRecord(out);
+    }
+
+    @Override
+    public void nodeAppended(ConstNode node)
+    {
+        ByteArrayOutputStream out = startRecord(APPEND, node);
+        Move move = node.getMove();
+        if (move == null)
+            out.write(2);
+        else
+        {
+            writeColor(out, move.getColor());
+            writePoint(out, move.getPoint());
+        }
+        writeRecord(out);
+        if (node.getMovesLeft(BLACK) != -1 || node.getMovesLeft(WHITE) != -1
+            || ! Double.isNaN(node.getTimeLeft(BLACK))
+            || ! Double.isNaN(node.getTimeLeft(WHITE)))
+            timeChanged(node);
+    }
+
+    /** Replay a journal on a game tree read from a file.
+        A journal that does not belong to the current version of the file
+        is deleted without replaying it. A record torn by a crash at the end
+        of the journal is removed from the journal file, so that records
+        appended later follow the last complete record.
+        @param file The game file.
+        @param tree The game tree read from the file. Records are applied
+        to this tree until the journal contains a snapshot.
+        @return The game tree with the journal applied (a tree read from a
+        snapshot, if the journal contains one), or null if no journal for
+        the current version of the file exists.
+        @throws ErrorMessage If the journal contains records that do not
+        match the tree. */
+    public static GameTree replay(File file, GameTree tree)
+        throws ErrorMessage
+    {
+        File journalFile = getJournalFile(file);
+        if (! journalFile.exists())
+            return null;
+        boolean isValid;
+        // The stream must be closed before deleting the file on Windows
+        try (DataInputStream in = openJournal(journalFile))
+        {
+            isValid = readHeader(in, file);
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage(e.getMessage());
+        }
+        if (! isValid)
+        {
+            if (! journalFile.delete())
+                System.err.println("Could not delete " + journalFile);
+            return null;
+        }
+        long journalLength = journalFile.length();
+        // End of the last complete record
+        long end = MAGIC.length + getSize(file.length())
+            + getSize(file.lastModified());
+        try (DataInputStream in = openJournal(journalFile))
+        {
+            readHeader(in, file);
+            while (end < journalLength)
+            {
+                int length;
+                try
+                {
+                    length = readInt(in);
+                }
+                catch (EOFException e)
+                {
+                    // Length torn by a crash while writing
+                    break;
+                }
+                long recordEnd = end + getSize(length) + length;
+                if (recordEnd > journalLength)
+                    // Record torn by a crash while writing
+                    break;
+                byte[] record = new byte[length];
+                in.readFully(record);
+                tree = replayRecord(record, tree);
+                end = recordEnd;
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage(e.getMessage());
+        }
+        if (end < journalLength)
+        {
+            try (RandomAccessFile out =
+                 new RandomAccessFile(journalFile, "rw"))
+            {
+                out.setLength(end);
+            }
+            catch (IOException e)
+            {
+                throw new ErrorMessage(e.getMessage());
+            }
+        }
+        return tree;
+    }
+
+    @Override
+    public void setupChanged(ConstNode node)
+    {
+        ByteArrayOutputStream out = startRecord(SETUP, node);
+        GoColor player = node.getPlayer();
+        if (player == null)
+            out.write(2);
+        else
+            writeColor(out, player);
+        for (GoColor c : BLACK_WHITE_EMPTY)
+            writePointList(out, node.getSetup(c));
+        writeRecord(out);
+    }
+
+    @Override
+    public void timeChanged(ConstNode node)
+    {
+        ByteArrayOutputStream out = startRecord(TIME, node);
+        writeInt(out, node.getMovesLeft(BLACK) + 1);
+        writeInt(out, node.getMovesLeft(WHITE) + 1);
+        writeDouble(out, node.getTimeLeft(BLACK));
+        writeDouble(out, node.getTimeLeft(WHITE));
+        writeRecord(out);
+    }
+
+    @Override
+    public void treeChanged()
+    {
+        compactOrDisable();
+    }
+
+    private static final byte[] MAGIC = { 'G', 'G', 'J', 2 };
+
+    private static final int APPEND = 0;
+
+    private static final int COMMENT = 1;
+
+    private static final int MARKUP = 2;
+
+    private static final int SETUP = 3;
+
+    private static final int TIME = 4;
+
+    private static final int SNAPSHOT = 5;
+
+    private boolean m_closed;
+
+    private int m_numberRecords;
+
+    private final ConstGame m_game;
+
+    private final File m_journalFile;
+
+    private FileOutputStream m_out;
+
+    private final GameFile m_gameFile;
+
+    private String m_error;
+
+    private final String m_application;
+
+    private final String m_version;
+
+    private void closeOut()
+    {
+        if (m_out == null)
+            return;
+        try
+        {
+            m_out.close();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Could not close " + m_journalFile);
+        }
+        m_out = null;
+    }
+
+    private void compactOrDisable()
+    {
+        try
+        {
+            compact();
+        }
+        catch (ErrorMessage e)
+        {
+            disable(e.getMessage());
+        }
+    }
+
+    private void disable(String error)
+    {
+        m_error = error;
+        close();
+    }
+
+    /** Get the number of bytes of an integer written with writeLong(). */
+    private static int getSize(long value)
+    {
+        int size = 1;
+        while ((value & ~0x7FL) != 0)
+        {
+            ++size;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    private static Node getNode(GameTree tree, int[] path, int length)
+        throws ErrorMessage
+    {
+        Node node = tree.getRoot();
+        for (int i = 0; i < length; ++i)
+        {
+            if (path[i] >= node.getNumberChildren())
+                throw new ErrorMessage("Journal does not match game");
+            node = node.getChild(path[i]);
+        }
+        return node;
+    }
+
+    /** Get path from root to node as run-length encoded child indices.
+        Encoded as pairs of child index and number of repetitions, so that
+        the path has a constant size in the main variation. */
+    private static ArrayList<int[]> getPath(ConstNode node)
+    {
+        ArrayList<int[]> path = new ArrayList<>();
+        ConstNode father = node.getFatherConst();
+        while (father != null)
+        {
+            int index = father.getChildIndex(node);
+            if (! path.isEmpty() && path.get(path.size() - 1)[0] == index)
+                ++path.get(path.size() - 1)[1];
+            else
+                path.add(new int[] { index, 1 });
+            node = father;
+            father = node.getFatherConst();
+        }
+        return path;
+    }
+
+    private static DataInputStream openJournal(File journalFile)
+        throws IOException
+    {
+        return new DataInputStream(new BufferedInputStream(
+                                       new FileInputStream(journalFile)));
+    }
+
+    private void openOut() throws IOException
+    {
+        boolean exists = m_journalFile.exists();
+        m_out = new FileOutputStream(m_journalFile, true);
+        if (! exists)
+            writeHeader(m_out);
+    }
+
+    private static GoColor readColor(DataInputStream in)
+        throws IOException, ErrorMessage
+    {
+        int c = in.readUnsignedByte();
+        if (c == 0)
+            return BLACK;
+        if (c == 1)
+            return WHITE;
+        if (c == 2)
+            return null;
+        throw new ErrorMessage("Invalid color in journal");
+    }
+
+    private static boolean readHeader(DataInputStream in, File file)
+        throws IOException
+    {
+        byte[] magic = new byte[MAGIC.length];
+        try
+        {
+            in.readFully(magic);
+            for (int i = 0; i < MAGIC.length; ++i)
+                if (magic[i] != MAGIC[i])
+                    return false;
+            return (readLong(in) == file.length()
+                    && readLong(in) == file.lastModified());
+        }
+        catch (EOFException e)
+        {
+            return false;
+        }
+    }
+
+    private static int readInt(DataInputStream in) throws IOException
+    {
+        return (int)readLong(in);
+    }
+
+    private static long readLong(DataInputStream in) throws IOException
+    {
+        long value = 0;
+        int shift = 0;
+        while (true)
+        {
+            int b = in.readUnsignedByte();
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+            shift += 7;
+            if (shift > 63)
+                throw new IOException("Invalid integer in journal");
+        }
+    }
+
+    private static GoPoint readPoint(DataInputStream in) throws IOException
+    {
+        int index = readInt(in);
+        if (index == 0)
+            return null;
+        --index;
+        return GoPoint.get(index % GoPoint.MAX_SIZE,
+                           index / GoPoint.MAX_SIZE);
+    }
+
+    private static PointList readPointList(DataInputStream in)
+        throws IOException
+    {
+        int n = readInt(in);
+        PointList list = new PointList(n);
+        for (int i = 0; i < n; ++i)
+            list.add(readPoint(in));
+        return list;
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[readInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Apply a record to a tree.
+        @return The tree after applying the record; a new tree if the
+        record is a snapshot. */
+    private static GameTree replayRecord(byte[] record, GameTree tree)
+        throws IOException, ErrorMessage
+    {
+        DataInputStream in =
+            new DataInputStream(new ByteArrayInputStream(record));
+        int type = in.readUnsignedByte();
+        int numberRuns = readInt(in);
+        int length = 0;
+        int[] path = new int[16];
+        for (int i = 0; i < numberRuns; ++i)
+        {
+            int index = readInt(in);
+            int n = readInt(in);
+            for (int j = 0; j < n; ++j)
+            {
+                if (length == path.length)
+                    path = Arrays.copyOf(path, 2 * length);
+                path[length++] = index;
+            }
+        }
+        if (type == SNAPSHOT)
+        {
+            if (length != 0)
+                throw new ErrorMessage("Invalid snapshot in journal");
+            byte[] snapshot = new byte[readInt(in)];
+            in.readFully(snapshot);
+            return new BinaryReader(new ByteArrayInputStream(snapshot), null,
+                                    snapshot.length).getTree();
+        }
+        if (type == APPEND)
+        {
+            if (length == 0)
+                throw new ErrorMessage("Journal does not match game");
+            Node father = getNode(tree, path, length - 1);
+            if (father.getNumberChildren() != path[length - 1])
+                throw new ErrorMessage("Journal does not match game");
+            GoColor c = readColor(in);
+            Node node = new Node();
+            if (c != null)
+                node.setMove(Move.get(c, readPoint(in)));
+            father.append(node);
+            return tree;
+        }
+        Node node = getNode(tree, path, length);
+        switch (type)
+        {
+        case COMMENT:
+            node.setComment(readString(in));
+            break;
+        case MARKUP:
+            for (MarkType markType : MarkType.values())
+            {
+                PointList marked = node.getMarked(markType);
+                if (marked != null)
+                    for (GoPoint p : new PointList(marked))
+                        node.removeMarked(p, markType);
+                for (GoPoint p : readPointList(in))
+                    node.addMarked(p, markType);
+            }
+            Map<GoPoint,String> labels = node.getLabels();
+            if (labels != null)
+                labels.clear();
+            int numberLabels = readInt(in);
+            for (int i = 0; i < numberLabels; ++i)
+            {
+                GoPoint p = readPoint(in);
+                node.setLabel(p, readString(in));
+            }
+            break;
+        case SETUP:
+            {
+                GoColor player = readColor(in);
+                if (player == null)
+                    node.removePlayer();
+                else
+                    node.setPlayer(player);
+                for (GoColor c : BLACK_WHITE_EMPTY)
+                    for (GoPoint p : new PointList(node.getSetup(c)))
+                        node.removeSetup(p);
+                for (GoColor c : BLACK_WHITE_EMPTY)
+                    node.addStones(c, readPointList(in));
+            }
+            break;
+        case TIME:
+            node.setMovesLeft(BLACK, readInt(in) - 1);
+            node.setMovesLeft(WHITE, readInt(in) - 1);
+            node.setTimeLeft(BLACK, Double.longBitsToDouble(in.readLong()));
+            node.setTimeLeft(WHITE, Double.longBitsToDouble(in.readLong()));
+            break;
+        default:
+            throw new ErrorMessage("Unknown record type in journal");
+        }
+        return tree;
+    }
+
+    private ByteArrayOutputStream startRecord(int type, ConstNode node)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32);
+        out.write(type);
+        ArrayList<int[]> path = getPath(node);
+        writeInt(out, path.size());
+        for (int i = path.size() - 1; i >= 0; --i)
+        {
+            writeInt(out, path.get(i)[0]);
+            writeInt(out, path.get(i)[1]);
+        }
+        return out;
+    }
+
+    private static void writeColor(ByteArrayOutputStream out, GoColor c)
+    {
+        assert c != EMPTY;
+        out.write(c == BLACK ? 0 : 1);
+    }
+
+    private static void writeDouble(ByteArrayOutputStream out, double value)
+    {
+        long bits = Double.doubleToLongBits(value);
+        for (int i = 7; i >= 0; --i)
+            out.write((int)(bits >>> (8 * i)));
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value)
+    {
+        assert value >= 0;
+        writeLong(out, value);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.write((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int)value);
+    }
+
+    private static void writePoint(ByteArrayOutputStream out, GoPoint p)
+    {
+        writeInt(out, p == null ? 0 : p.getIndex() + 1);
+    }
+
+    private static void writePointList(ByteArrayOutputStream out,
+                                       ConstPointList list)
+    {
+        writeInt(out, list.size());
+        for (GoPoint p : list)
+            writePoint(out, p);
+    }
+
+    /** Write the journal header for the current version of the game file.
+        The header is written with a single write call. */
+    private void writeHeader(FileOutputStream out) throws IOException
+    {
+        File file = m_gameFile.m_file;
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(MAGIC);
+        writeLong(header, file.length());
+        writeLong(header, file.lastModified());
+        header.writeTo(out);
+    }
+
+    /** Write the record prefixed with its length in a single write call. */
+    private void writeRecord(ByteArrayOutputStream record)
+    {
+        if (m_closed)
+            return;
+        try
+        {
+            if (m_out == null)
+                openOut();
+            ByteArrayOutputStream out =
+                new ByteArrayOutputStream(record.size() + 5);
+            writeInt(out, record.size());
+            record.writeTo(out);
+            out.writeTo(m_out);
+        }
+        catch (IOException e)
+        {
+            disable(e.getMessage());
+            return;
+        }
+        if (++m_numberRecords >= COMPACT_RECORDS)
+            compactOrDisable();
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s)
+    {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,122 @@
+// GameQuery.java
+
+package net.sf.gogui.gamefile;
+
+import java.util.Locale;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+
+/** Query for games in a GameIndex.
+    All criteria that are set must match. String criteria are
+    case-insensitive; player names match if they contain the given text,
+    date and result match if they start with the given text. */
+public class GameQuery
+{
+    /** Match games in which a player plays with any color.
+        @param player Part of the player name, null for any player. */
+    public void setPlayer(String player)
+    {
+        m_player = toLowerCase(player);
+    }
+
+    /** Match games in which a player plays with a given color.
+        @param c The color.
+        @param player Part of the player name, null for any player. */
+    public void setPlayer(GoColor c, String player)
+    {
+        if (c == BLACK)
+            m_blackPlayer = toLowerCase(player);
+        else
+            m_whitePlayer = toLowerCase(player);
+    }
+
+    /** Match games by date.
+        @param date Start of the date (e.g. "2008" or "2008-05"), null for
+        any date. */
+    public void setDate(String date)
+    {
+        m_date = toLowerCase(date);
+    }
+
+    /** Match games by result.
+        @param result Start of the result (e.g. "B+"), null for any
+        result. */
+    public void setResult(String result)
+    {
+        m_result = toLowerCase(result);
+    }
+
+    /** Match games by board size.
+        @param size The board size, 0 for any size. */
+    public void setBoardSize(int size)
+    {
+        m_boardSize = size;
+    }
+
+    /** Match games by the number of moves in the main variation.
+        @param min Minimum number of moves.
+        @param max Maximum number of moves, -1 for no limit. */
+    public void setNumberMoves(int min, int max)
+    {
+        m_minMoves = min;
+        m_maxMoves = max;
+    }
+
+    public boolean matches(GameIndex.Entry entry)
+    {
+        if (m_boardSize > 0 && entry.getBoardSize() != m_boardSize)
+            return false;
+        int numberMoves = entry.getNumberMoves();
+        if (numberMoves < m_minMoves
+            || (m_maxMoves >= 0 && numberMoves > m_maxMoves))
+            return false;
+        if (m_player != null
+            && ! contains(entry.getPlayer(BLACK), m_player)
+            && ! contains(entry.getPlayer(WHITE), m_player))
+            return false;
+        if (m_blackPlayer != null
+            && ! contains(entry.getPlayer(BLACK), m_blackPlayer))
+            return false;
+        if (m_whitePlayer != null
+            && ! contains(entry.getPlayer(WHITE), m_whitePlayer))
+            return false;
+        if (m_date != null && ! startsWith(entry.getDate(), m_date))
+            return false;
+        return (m_result == null || startsWith(entry.getResult(), m_result));
+    }
+
+    private int m_boardSize;
+
+    private int m_minMoves;
+
+    private int m_maxMoves = -1;
+
+    private String m_player;
+
+    private String m_blackPlayer;
+
+    private String m_whitePlayer;
+
+    private String m_date;
+
+    private String m_result;
+
+    private static boolean contains(String s, String part)
+    {
+        return (s != null && s.toLowerCase(Locale.ENGLISH).contains(part));
+    }
+
+    private static boolean startsWith(String s, String prefix)
+    {
+        return (s != null
+                && s.trim().toLowerCase(Locale.ENGLISH).startsWith(prefix));
+    }
+
+    private static String toLowerCase(String s)
+    {
+        if (s == null)
+            return null;
+        return s.toLowerCase(Locale.ENGLISH);
+    }
+}
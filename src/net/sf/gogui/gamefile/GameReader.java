@@ -5,10 +5,10 @@ package net.sf.gogui.gamefile;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.InputStream;
 import java.io.IOException;
 import java.util.Locale;
+import net.sf.gogui.binary.BinaryReader;
 import net.sf.gogui.game.GameTree;
 import net.sf.gogui.util.ErrorMessage;
 import net.sf.gogui.util.FileUtil;
@@ -16,9 +16,13 @@ import net.sf.gogui.util.ProgressShow;
 import net.sf.gogui.sgf.SgfReader;
 import net.sf.gogui.xml.XmlReader;
 
-/** Read a game and detect automatically if it is SGF or XML. */
+/** Read a game and detect automatically if it is SGF, XML or the binary
+    format. */
 public class GameReader
 {
+    /** File name extension of the binary format. */
+    public static final String BINARY_EXTENSION = "ggb";
+
     /** Construct reader and read a game.
      * @param file
         @param progressShow Callback to show progress, can be null
@@ -48,6 +52,14 @@ public class GameReader
                 m_warnings = reader.getWarnings();
             }
             break;
+        case BINARY:
+            {
+                BinaryReader reader = new BinaryReader(in, progressShow,
+                                                       file.length());
+                m_tree = reader.getTree();
+                m_warnings = reader.getWarnings();
+            }
+            break;
         case SGF:
             {
                 SgfReader reader =
@@ -95,15 +107,19 @@ public class GameReader
                 return GameFile.Format.SGF;
             if (extension.equals("xml"))
                 return GameFile.Format.XML;
+            if (extension.equals(BINARY_EXTENSION))
+                return GameFile.Format.BINARY;
         }
-        FileReader reader = null;
+        InputStream reader = null;
         try
         {
-            reader = new FileReader(file);
-            char[] buffer = new char[5];
+            reader = new FileInputStream(file);
+            byte[] buffer = new byte[5];
             int n = reader.read(buffer, 0, 5);
-            if (n == 5 && new String(buffer).equals("<?xml"))
+            if (n == 5 && new String(buffer, "ISO-8859-1").equals("<?xml"))
                 return GameFile.Format.XML;
+            if (BinaryReader.isBinary(buffer, n))
+                return GameFile.Format.BINARY;
         }
         catch (IOException e)
         {
@@ -5,6 +5,7 @@ package net.sf.gogui.gamefile;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import net.sf.gogui.binary.BinaryWriter;
 import net.sf.gogui.game.ConstGameTree;
 import net.sf.gogui.sgf.SgfWriter;
 import net.sf.gogui.util.ErrorMessage;
@@ -35,6 +36,12 @@ public class GameWriter
                 xmlApplication = xmlApplication + ":" + version;
             new XmlWriter(out, tree, xmlApplication);
             break;
+        case BINARY:
+            String binaryApplication = application;
+            if (binaryApplication != null && version != null)
+                binaryApplication = binaryApplication + ":" + version;
+            new BinaryWriter(out, tree, binaryApplication);
+            break;
         }
     }
 }
@@ -0,0 +1,163 @@
+// LocalPattern.java
+
+package net.sf.gogui.gamefile;
+
+import net.sf.gogui.go.ConstBoard;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.util.ErrorMessage;
+
+/** Rectangular local pattern for PatternSearch.
+    Each cell is BLACK, WHITE, EMPTY or null (don't care). Cell coordinates
+    start at the top left corner, x counts columns and y counts rows
+    downwards (like the text representation). */
+public final class LocalPattern
+{
+    /** Construct pattern with only don't-care cells.
+        @param width The number of columns.
+        @param height The number of rows. */
+    public LocalPattern(int width, int height)
+    {
+        if (width < 1 || height < 1 || width > GoPoint.MAX_SIZE
+            || height > GoPoint.MAX_SIZE)
+            throw new IllegalArgumentException();
+        m_width = width;
+        m_height = height;
+        m_cells = new GoColor[width][height];
+    }
+
+    /** Create pattern from a region of a board.
+        @param board The board.
+        @param left Left column of the region.
+        @param bottom Bottom row of the region.
+        @param width Width of the region.
+        @param height Height of the region.
+        @return The pattern with the colors of the board points. */
+    public static LocalPattern fromBoard(ConstBoard board, int left,
+                                         int bottom, int width, int height)
+    {
+        LocalPattern pattern = new LocalPattern(width, height);
+        for (int x = 0; x < width; ++x)
+            for (int y = 0; y < height; ++y)
+            {
+                GoPoint p = GoPoint.get(left + x, bottom + height - 1 - y);
+                pattern.set(x, y, board.getColor(p));
+            }
+        return pattern;
+    }
+
+    /** Get cell.
+        @param x The column.
+        @param y The row (0 is the top row).
+        @return The color or null for don't care. */
+    public GoColor get(int x, int y)
+    {
+        return m_cells[x][y];
+    }
+
+    public int getHeight()
+    {
+        return m_height;
+    }
+
+    public int getWidth()
+    {
+        return m_width;
+    }
+
+    /** Parse pattern from text.
+        One line per row, all rows must have the same length. Characters:
+        'X' or '#' (black), 'O' (white), '.' or '+' (empty), '?' or '*'
+        (don't care). Whitespace between cells is ignored.
+        @param text The text.
+        @return The pattern.
+        @throws ErrorMessage If the text is not a valid pattern. */
+    public static LocalPattern parse(String text) throws ErrorMessage
+    {
+        String[] lines = text.trim().split("\\s*\n\\s*");
+        int width = -1;
+        String[] rows = new String[lines.length];
+        for (int i = 0; i < lines.length; ++i)
+        {
+            rows[i] = lines[i].replaceAll("\\s", "");
+            if (width < 0)
+                width = rows[i].length();
+            else if (rows[i].length() != width)
+                throw new ErrorMessage("Pattern rows must have equal length");
+        }
+        if (width <= 0 || width > GoPoint.MAX_SIZE
+            || rows.length > GoPoint.MAX_SIZE)
+            throw new ErrorMessage("Invalid pattern size");
+        LocalPattern pattern = new LocalPattern(width, rows.length);
+        for (int y = 0; y < rows.length; ++y)
+            for (int x = 0; x < width; ++x)
+            {
+                char c = rows[y].charAt(x);
+                switch (c)
+                {
+                case 'X':
+                case 'x':
+                case '#':
+                    pattern.set(x, y, BLACK);
+                    break;
+                case 'O':
+                case 'o':
+                    pattern.set(x, y, WHITE);
+                    break;
+                case '.':
+                case '+':
+                    pattern.set(x, y, EMPTY);
+                    break;
+                case '?':
+                case '*':
+                    break;
+                default:
+                    throw new ErrorMessage("Invalid character in pattern: "
+                                           + c);
+                }
+            }
+        return pattern;
+    }
+
+    /** Set cell.
+        @param x The column.
+        @param y The row (0 is the top row).
+        @param c The color or null for don't care. */
+    public void set(int x, int y, GoColor c)
+    {
+        m_cells[x][y] = c;
+    }
+
+    /** Text representation as accepted by parse(). */
+    @Override
+    public String toString()
+    {
+        StringBuilder buffer = new StringBuilder((m_width + 1) * m_height);
+        for (int y = 0; y < m_height; ++y)
+        {
+            for (int x = 0; x < m_width; ++x)
+            {
+                GoColor c = m_cells[x][y];
+                if (c == null)
+                    buffer.append('?');
+                else if (c == BLACK)
+                    buffer.append('X');
+                else if (c == WHITE)
+                    buffer.append('O');
+                else
+                    buffer.append('.');
+            }
+            buffer.append('\n');
+        }
+        return buffer.toString();
+    }
+
+    private final int m_width;
+
+    private final int m_height;
+
+    private final GoColor[][] m_cells;
+}
@@ -0,0 +1,430 @@
+// OpeningTrie.java
+
+package net.sf.gogui.gamefile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import net.sf.gogui.go.BoardUtil;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+import net.sf.gogui.util.ErrorMessage;
+
+/** Trie of the opening move sequences of a game collection.
+    Move sequences are normalized with respect to the 8 board symmetries:
+    of all symmetric variants of a sequence, the one with the smallest
+    encoded moves (compared move by move) is stored. This makes the
+    normalized sequence of a prefix a prefix of the normalized sequence, so
+    that games sharing an opening up to symmetry share a path in the trie.
+    Each node stores the number of games, and the number of wins for Black
+    and White, that reached it.
+    Only games of one board size without setup stones are added, and only
+    up to the first pass.
+    The nodes are stored in parallel arrays and are written to a file in
+    preorder with variable-length integers. */
+public final class OpeningTrie
+{
+    /** Opening found by getOpenings(). */
+    public static final class Opening
+    {
+        public int getBlackWins()
+        {
+            return m_blackWins;
+        }
+
+        /** Moves of the opening (normalized orientation). */
+        public List<Move> getMoves()
+        {
+            return Collections.unmodifiableList(m_moves);
+        }
+
+        public int getNumberGames()
+        {
+            return m_numberGames;
+        }
+
+        public int getWhiteWins()
+        {
+            return m_whiteWins;
+        }
+
+        private final int m_numberGames;
+
+        private final int m_blackWins;
+
+        private final int m_whiteWins;
+
+        private final List<Move> m_moves;
+
+        private Opening(List<Move> moves, int numberGames, int blackWins,
+                        int whiteWins)
+        {
+            m_moves = moves;
+            m_numberGames = numberGames;
+            m_blackWins = blackWins;
+            m_whiteWins = whiteWins;
+        }
+    }
+
+    /** Construct empty trie.
+        @param boardSize The board size of the games.
+        @param maxDepth The maximum number of moves stored per game. */
+    public OpeningTrie(int boardSize, int maxDepth)
+    {
+        m_boardSize = boardSize;
+        m_maxDepth = maxDepth;
+        int capacity = 1024;
+        m_move = new short[capacity];
+        m_firstChild = new int[capacity];
+        m_nextSibling = new int[capacity];
+        m_numberGames = new int[capacity];
+        m_blackWins = new int[capacity];
+        m_whiteWins = new int[capacity];
+        createNode((short)0);
+    }
+
+    /** Add a game.
+        @param entry The index entry of the game.
+        @return false, if the game was not added, because it has a different
+        board size or setup stones. */
+    public boolean add(GameIndex.Entry entry)
+    {
+        if (entry.getBoardSize() != m_boardSize
+            || entry.m_setup.length > 0)
+            return false;
+        short[] moves = getNormalizedMoves(entry);
+        String result = entry.getResult();
+        boolean blackWin = false;
+        boolean whiteWin = false;
+        if (result != null)
+        {
+            result = result.trim().toUpperCase(Locale.ENGLISH);
+            blackWin = result.startsWith("B+");
+            whiteWin = result.startsWith("W+");
+        }
+        int node = ROOT;
+        addGame(node, blackWin, whiteWin);
+        for (short move : moves)
+        {
+            node = getChild(node, move);
+            addGame(node, blackWin, whiteWin);
+        }
+        return true;
+    }
+
+    public int getBoardSize()
+    {
+        return m_boardSize;
+    }
+
+    public int getMaxDepth()
+    {
+        return m_maxDepth;
+    }
+
+    /** Number of games added to the trie. */
+    public int getNumberGames()
+    {
+        return m_numberGames[ROOT];
+    }
+
+    public int getNumberNodes()
+    {
+        return m_numberNodes;
+    }
+
+    /** Find balanced openings.
+        Returns the move sequences of a given length, which were played in
+        at least a minimum number of games with a known winner and in which
+        the fraction of Black wins is close to 0.5.
+        @param length The number of moves of the openings.
+        @param minGames The minimum number of games with a known winner.
+        @param maxImbalance The maximum difference between the fraction of
+        Black wins and 0.5 (0.5 accepts all openings).
+        @param maxNumber The maximum number of openings returned.
+        @return The openings, the most frequent first. */
+    public List<Opening> getOpenings(int length, int minGames,
+                                     double maxImbalance, int maxNumber)
+    {
+        List<int[]> nodes = new ArrayList<>();
+        findNodes(ROOT, 0, length, new int[length], nodes);
+        List<Opening> result = new ArrayList<>();
+        for (int[] path : nodes)
+        {
+            int node = path[path.length - 1];
+            int blackWins = m_blackWins[node];
+            int whiteWins = m_whiteWins[node];
+            int decided = blackWins + whiteWins;
+            if (decided == 0 || decided < minGames)
+                continue;
+            double fraction = (double)blackWins / decided;
+            if (Math.abs(fraction - 0.5) > maxImbalance)
+                continue;
+            List<Move> moves = new ArrayList<>(length);
+            for (int n : path)
+                moves.add(GameIndex.decodeMove(m_move[n]));
+            result.add(new Opening(moves, m_numberGames[node], blackWins,
+                                   whiteWins));
+        }
+        Collections.sort(result, (o1, o2) ->
+                         Integer.compare(o2.getNumberGames(),
+                                         o1.getNumberGames()));
+        if (result.size() > maxNumber)
+            result = new ArrayList<>(result.subList(0, maxNumber));
+        return result;
+    }
+
+    /** Read trie file.
+        @param file The file.
+        @return The trie.
+        @throws ErrorMessage If reading fails. */
+    public static OpeningTrie read(File file) throws ErrorMessage
+    {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file))))
+        {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (! Arrays.equals(magic, MAGIC))
+                throw new ErrorMessage("Not an opening trie file: " + file);
+            if (in.readUnsignedByte() != VERSION)
+                throw new ErrorMessage("Unsupported opening trie version: "
+                                       + file);
+            int boardSize = in.readUnsignedByte();
+            int maxDepth = readVarInt(in);
+            OpeningTrie trie = new OpeningTrie(boardSize, maxDepth);
+            trie.readNode(in, ROOT);
+            return trie;
+        }
+        catch (EOFException e)
+        {
+            throw new ErrorMessage("Truncated opening trie file: " + file);
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage(file + ": " + e.getMessage());
+        }
+    }
+
+    /** Write trie file.
+        The trie is written to a temporary file first, which replaces the
+        old file only if writing succeeded.
+        @param file The file.
+        @throws ErrorMessage If writing fails. */
+    public void write(File file) throws ErrorMessage
+    {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(tmpFile))))
+            {
+                out.write(MAGIC);
+                out.writeByte(VERSION);
+                out.writeByte(m_boardSize);
+                writeVarInt(out, m_maxDepth);
+                writeNode(out, ROOT);
+            }
+            Files.move(tmpFile.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e)
+        {
+            tmpFile.delete();
+            throw new ErrorMessage(file + ": " + e.getMessage());
+        }
+    }
+
+    private static final byte[] MAGIC = { 'G', 'G', 'T' };
+
+    private static final int VERSION = 1;
+
+    private static final int ROOT = 0;
+
+    private static final int NONE = -1;
+
+    private final int m_boardSize;
+
+    private final int m_maxDepth;
+
+    private int m_numberNodes;
+
+    /** Encoded move leading to the node (see GameIndex.encodeMove). */
+    private short[] m_move;
+
+    private int[] m_firstChild;
+
+    private int[] m_nextSibling;
+
+    private int[] m_numberGames;
+
+    private int[] m_blackWins;
+
+    private int[] m_whiteWins;
+
+    private void addGame(int node, boolean blackWin, boolean whiteWin)
+    {
+        ++m_numberGames[node];
+        if (blackWin)
+            ++m_blackWins[node];
+        if (whiteWin)
+            ++m_whiteWins[node];
+    }
+
+    private int createNode(short move)
+    {
+        if (m_numberNodes == m_move.length)
+        {
+            int capacity = 2 * m_move.length;
+            m_move = Arrays.copyOf(m_move, capacity);
+            m_firstChild = Arrays.copyOf(m_firstChild, capacity);
+            m_nextSibling = Arrays.copyOf(m_nextSibling, capacity);
+            m_numberGames = Arrays.copyOf(m_numberGames, capacity);
+            m_blackWins = Arrays.copyOf(m_blackWins, capacity);
+            m_whiteWins = Arrays.copyOf(m_whiteWins, capacity);
+        }
+        int node = m_numberNodes++;
+        m_move[node] = move;
+        m_firstChild[node] = NONE;
+        m_nextSibling[node] = NONE;
+        return node;
+    }
+
+    /** Collect the paths to all nodes at a given depth. */
+    private void findNodes(int node, int depth, int length, int[] path,
+                           List<int[]> result)
+    {
+        if (depth == length)
+        {
+            result.add(path.clone());
+            return;
+        }
+        for (int child = m_firstChild[node]; child != NONE;
+             child = m_nextSibling[child])
+        {
+            path[depth] = child;
+            findNodes(child, depth + 1, length, path, result);
+        }
+    }
+
+    /** Find or create the child of a node with a given move.
+        New children are prepended to the child list. */
+    private int getChild(int node, short move)
+    {
+        for (int child = m_firstChild[node]; child != NONE;
+             child = m_nextSibling[child])
+            if (m_move[child] == move)
+                return child;
+        int child = createNode(move);
+        m_nextSibling[child] = m_firstChild[node];
+        m_firstChild[node] = child;
+        return child;
+    }
+
+    /** Get the normalized moves of a game.
+        For each move, only the symmetries that produced the smallest
+        encoded moves so far are kept. */
+    private short[] getNormalizedMoves(GameIndex.Entry entry)
+    {
+        int numberMoves = Math.min(entry.getNumberMoves(), m_maxDepth);
+        short[] result = new short[numberMoves];
+        boolean[] isCandidate = new boolean[BoardUtil.NUMBER_ROTATIONS];
+        Arrays.fill(isCandidate, true);
+        short[] values = new short[BoardUtil.NUMBER_ROTATIONS];
+        for (int i = 0; i < numberMoves; ++i)
+        {
+            Move move = entry.getMove(i);
+            if (move.getPoint() == null)
+                return Arrays.copyOf(result, i);
+            short min = Short.MAX_VALUE;
+            for (int j = 0; j < BoardUtil.NUMBER_ROTATIONS; ++j)
+            {
+                if (! isCandidate[j])
+                    continue;
+                GoPoint p = BoardUtil.rotate(j, move.getPoint(), m_boardSize);
+                values[j] = GameIndex.encodeMove(move.getColor(), p);
+                if (values[j] < min)
+                    min = values[j];
+            }
+            for (int j = 0; j < BoardUtil.NUMBER_ROTATIONS; ++j)
+                if (values[j] != min)
+                    isCandidate[j] = false;
+            result[i] = min;
+        }
+        return result;
+    }
+
+    private void readNode(DataInputStream in, int node) throws IOException
+    {
+        m_numberGames[node] = readVarInt(in);
+        m_blackWins[node] = readVarInt(in);
+        m_whiteWins[node] = readVarInt(in);
+        int numberChildren = readVarInt(in);
+        int last = NONE;
+        for (int i = 0; i < numberChildren; ++i)
+        {
+            int child = createNode(in.readShort());
+            if (last == NONE)
+                m_firstChild[node] = child;
+            else
+                m_nextSibling[last] = child;
+            last = child;
+            readNode(in, child);
+        }
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException
+    {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+        throw new IOException("Invalid variable-length integer");
+    }
+
+    private void writeNode(DataOutputStream out, int node) throws IOException
+    {
+        writeVarInt(out, m_numberGames[node]);
+        writeVarInt(out, m_blackWins[node]);
+        writeVarInt(out, m_whiteWins[node]);
+        int numberChildren = 0;
+        for (int child = m_firstChild[node]; child != NONE;
+             child = m_nextSibling[child])
+            ++numberChildren;
+        writeVarInt(out, numberChildren);
+        for (int child = m_firstChild[node]; child != NONE;
+             child = m_nextSibling[child])
+        {
+            out.writeShort(m_move[child]);
+            writeNode(out, child);
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value)
+        throws IOException
+    {
+        while ((value & ~0x7f) != 0)
+        {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+}
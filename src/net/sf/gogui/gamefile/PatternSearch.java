@@ -0,0 +1,384 @@
+// PatternSearch.java
+
+package net.sf.gogui.gamefile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import net.sf.gogui.go.Board;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+import net.sf.gogui.go.PointList;
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.util.ProgressShow;
+
+/** Search games in a GameIndex for a local pattern.
+    The games are replayed from the moves stored in the index (the game
+    files are not read) by a pool of threads. A game matches at the first
+    move that creates the pattern, that is, after the move the pattern
+    matches the board in one of its 8 symmetries and a point changed by the
+    move (the move itself or a captured stone) is inside the pattern region.
+    The pattern must fit completely on the board.
+    For each matching game, the next move is counted as continuation, in
+    the coordinates of the original pattern, or as tenuki if it is outside
+    the pattern region. */
+public class PatternSearch
+{
+    /** Constructor.
+        @param pattern The pattern. */
+    public PatternSearch(LocalPattern pattern)
+    {
+        m_pattern = pattern;
+        m_symmetries = createSymmetries(pattern);
+        m_numberThreads = Runtime.getRuntime().availableProcessors();
+        m_continuations = new int[pattern.getWidth()][pattern.getHeight()];
+    }
+
+    /** Format the pattern with the number of continuations at each cell.
+        Cells with continuations show the count, other cells the character
+        of the text representation of the pattern.
+        @return One line per pattern row. */
+    public String formatContinuations()
+    {
+        StringBuilder buffer = new StringBuilder();
+        String[] rows = m_pattern.toString().split("\n");
+        for (int y = 0; y < m_pattern.getHeight(); ++y)
+        {
+            for (int x = 0; x < m_pattern.getWidth(); ++x)
+            {
+                int n = m_continuations[x][y];
+                if (n > 0)
+                    buffer.append(String.format("%5d", n));
+                else
+                    buffer.append(String.format("%5c", rows[y].charAt(x)));
+            }
+            buffer.append('\n');
+        }
+        return buffer.toString();
+    }
+
+    /** Number of matching games followed by a move at a pattern cell.
+        @param x The column in the original pattern.
+        @param y The row in the original pattern.
+        @return The number of games. */
+    public int getContinuations(int x, int y)
+    {
+        return m_continuations[x][y];
+    }
+
+    /** Games found by the last search.
+        @return The games and the move numbers of the matches, in index
+        order. */
+    public List<GameIndex.Match> getMatches()
+    {
+        return m_matches;
+    }
+
+    /** Number of matching games, in which the match was the last move or
+        followed by a pass. */
+    public int getNumberNoContinuation()
+    {
+        return m_numberNoContinuation;
+    }
+
+    /** Number of matching games followed by a move outside the pattern. */
+    public int getNumberTenuki()
+    {
+        return m_numberTenuki;
+    }
+
+    public LocalPattern getPattern()
+    {
+        return m_pattern;
+    }
+
+    /** Search games.
+        @param index The game index.
+        @param query Only games matching this query are searched, null for
+        all games.
+        @throws ErrorMessage If the search was interrupted. */
+    public void search(GameIndex index, GameQuery query) throws ErrorMessage
+    {
+        search(index, query, null);
+    }
+
+    /** Search games.
+        @param index The game index.
+        @param query Only games matching this query are searched, null for
+        all games.
+        @param progressShow Callback to show progress, can be null
+        @throws ErrorMessage If the search was interrupted. */
+    public void search(GameIndex index, GameQuery query,
+                       ProgressShow progressShow) throws ErrorMessage
+    {
+        final List<GameIndex.Entry> entries;
+        if (query == null)
+            entries = index.getEntries();
+        else
+            entries = index.query(query);
+        final Result[] results = new Result[entries.size()];
+        int numberTasks = Math.min(m_numberThreads * 4, entries.size());
+        ExecutorService executor =
+            Executors.newFixedThreadPool(m_numberThreads);
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numberTasks; ++i)
+            {
+                final int start = i * entries.size() / numberTasks;
+                final int end = (i + 1) * entries.size() / numberTasks;
+                futures.add(executor.submit(() -> {
+                            Board board = new Board(GoPoint.DEFAULT_SIZE);
+                            for (int j = start; j < end; ++j)
+                                results[j] = searchGame(entries.get(j),
+                                                        board);
+                        }));
+            }
+            for (int i = 0; i < futures.size(); ++i)
+            {
+                futures.get(i).get();
+                if (progressShow != null)
+                    progressShow.showProgress((i + 1) * 100
+                                              / futures.size());
+            }
+        }
+        catch (InterruptedException e)
+        {
+            throw new ErrorMessage("Interrupted");
+        }
+        catch (ExecutionException e)
+        {
+            throw new ErrorMessage(e.getCause().toString());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        m_matches = new ArrayList<>();
+        for (int[] column : m_continuations)
+            Arrays.fill(column, 0);
+        m_numberTenuki = 0;
+        m_numberNoContinuation = 0;
+        for (int i = 0; i < results.length; ++i)
+        {
+            Result result = results[i];
+            if (result == null)
+                continue;
+            m_matches.add(new GameIndex.Match(entries.get(i),
+                                              result.m_moveNumber));
+            if (result.m_x >= 0)
+                ++m_continuations[result.m_x][result.m_y];
+            else if (result.m_x == TENUKI)
+                ++m_numberTenuki;
+            else
+                ++m_numberNoContinuation;
+        }
+    }
+
+    /** Set number of search threads.
+        @param numberThreads Number of threads (default: number of
+        processors). */
+    public void setNumberThreads(int numberThreads)
+    {
+        m_numberThreads = Math.max(1, numberThreads);
+    }
+
+    /** One of the symmetric variants of the pattern. */
+    private static final class Symmetry
+    {
+        public int m_width;
+
+        public int m_height;
+
+        /** Cell colors indexed by x * m_height + y (null for don't
+            care). */
+        public GoColor[] m_cells;
+
+        /** Column of the cell in the original pattern. */
+        public int[] m_originalX;
+
+        /** Row of the cell in the original pattern. */
+        public int[] m_originalY;
+
+        public boolean hasSameCells(Symmetry symmetry)
+        {
+            return (m_width == symmetry.m_width
+                    && m_height == symmetry.m_height
+                    && Arrays.equals(m_cells, symmetry.m_cells));
+        }
+    }
+
+    /** Match of a single game. */
+    private static final class Result
+    {
+        public int m_moveNumber;
+
+        /** Continuation in original pattern coordinates, or TENUKI, or
+            NO_CONTINUATION. */
+        public int m_x;
+
+        public int m_y;
+    }
+
+    private static final int TENUKI = -1;
+
+    private static final int NO_CONTINUATION = -2;
+
+    private int m_numberThreads;
+
+    private int m_numberTenuki;
+
+    private int m_numberNoContinuation;
+
+    private final int[][] m_continuations;
+
+    private final LocalPattern m_pattern;
+
+    private final List<Symmetry> m_symmetries;
+
+    private List<GameIndex.Match> m_matches = new ArrayList<>();
+
+    /** Create the distinct symmetric variants of a pattern.
+        Bit 0 of the symmetry number flips columns, bit 1 flips rows and
+        bit 2 exchanges columns and rows (applied first). */
+    private static List<Symmetry> createSymmetries(LocalPattern pattern)
+    {
+        List<Symmetry> result = new ArrayList<>();
+        int width = pattern.getWidth();
+        int height = pattern.getHeight();
+        for (int i = 0; i < 8; ++i)
+        {
+            boolean transpose = ((i & 4) != 0);
+            Symmetry symmetry = new Symmetry();
+            symmetry.m_width = (transpose ? height : width);
+            symmetry.m_height = (transpose ? width : height);
+            int size = width * height;
+            symmetry.m_cells = new GoColor[size];
+            symmetry.m_originalX = new int[size];
+            symmetry.m_originalY = new int[size];
+            for (int x = 0; x < width; ++x)
+                for (int y = 0; y < height; ++y)
+                {
+                    int sx = (transpose ? y : x);
+                    int sy = (transpose ? x : y);
+                    if ((i & 1) != 0)
+                        sx = symmetry.m_width - 1 - sx;
+                    if ((i & 2) != 0)
+                        sy = symmetry.m_height - 1 - sy;
+                    int index = sx * symmetry.m_height + sy;
+                    symmetry.m_cells[index] = pattern.get(x, y);
+                    symmetry.m_originalX[index] = x;
+                    symmetry.m_originalY[index] = y;
+                }
+            boolean isDuplicate = false;
+            for (Symmetry s : result)
+                if (s.hasSameCells(symmetry))
+                    isDuplicate = true;
+            if (! isDuplicate)
+                result.add(symmetry);
+        }
+        return result;
+    }
+
+    /** Check if a symmetry matches with the top left corner of the pattern
+        at a board point. */
+    private static boolean matches(Symmetry symmetry, Board board, int left,
+                                   int top)
+    {
+        int index = 0;
+        for (int x = 0; x < symmetry.m_width; ++x)
+            for (int y = 0; y < symmetry.m_height; ++y, ++index)
+            {
+                GoColor c = symmetry.m_cells[index];
+                if (c != null
+                    && board.getColor(GoPoint.get(left + x, top - y)) != c)
+                    return false;
+            }
+        return true;
+    }
+
+    private Result searchGame(GameIndex.Entry entry, Board board)
+    {
+        int size = entry.getBoardSize();
+        board.init(size);
+        board.setup(entry.getSetup(BLACK), entry.getSetup(WHITE), null);
+        PointList changed = new PointList();
+        // Positions already tried for the current move and symmetry, marked
+        // with the value of stamp, indexed by left * size + top
+        int[] tried = new int[size * size];
+        int stamp = 0;
+        int numberMoves = entry.getNumberMoves();
+        for (int i = 0; i < numberMoves; ++i)
+        {
+            Move move = entry.getMove(i);
+            board.play(move);
+            GoPoint p = move.getPoint();
+            if (p == null)
+                continue;
+            changed.clear();
+            // Suicide stones include the move point
+            if (board.getSuicide().isEmpty())
+                changed.add(p);
+            changed.addAllFromConst(board.getSuicide());
+            changed.addAllFromConst(board.getKilled());
+            for (Symmetry symmetry : m_symmetries)
+            {
+                ++stamp;
+                int width = symmetry.m_width;
+                int height = symmetry.m_height;
+                for (GoPoint q : changed)
+                {
+                    // All positions of the pattern region containing q
+                    int minLeft = Math.max(q.getX() - width + 1, 0);
+                    int maxLeft = Math.min(q.getX(), size - width);
+                    int minTop = Math.max(q.getY(), height - 1);
+                    int maxTop = Math.min(q.getY() + height - 1, size - 1);
+                    for (int left = minLeft; left <= maxLeft; ++left)
+                        for (int top = minTop; top <= maxTop; ++top)
+                        {
+                            int index = left * size + top;
+                            if (tried[index] == stamp)
+                                continue;
+                            tried[index] = stamp;
+                            if (matches(symmetry, board, left, top))
+                                return createResult(entry, i + 1, symmetry,
+                                                    left, top);
+                        }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Result createResult(GameIndex.Entry entry, int moveNumber,
+                                       Symmetry symmetry, int left, int top)
+    {
+        Result result = new Result();
+        result.m_moveNumber = moveNumber;
+        result.m_x = NO_CONTINUATION;
+        if (moveNumber >= entry.getNumberMoves())
+            return result;
+        GoPoint p = entry.getMove(moveNumber).getPoint();
+        if (p == null)
+            return result;
+        int x = p.getX() - left;
+        int y = top - p.getY();
+        if (x < 0 || x >= symmetry.m_width || y < 0
+            || y >= symmetry.m_height)
+        {
+            result.m_x = TENUKI;
+            return result;
+        }
+        int index = x * symmetry.m_height + y;
+        result.m_x = symmetry.m_originalX[index];
+        result.m_y = symmetry.m_originalY[index];
+        return result;
+    }
+}
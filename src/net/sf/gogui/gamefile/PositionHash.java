@@ -0,0 +1,160 @@
+// PositionHash.java
+
+package net.sf.gogui.gamefile;
+
+import java.util.Random;
+import net.sf.gogui.go.BoardUtil;
+import net.sf.gogui.go.ConstBoard;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import net.sf.gogui.go.GoPoint;
+
+/** Zobrist hash codes of board positions.
+    The random numbers are generated with a fixed seed, so that hash codes
+    are stable and can be stored in index files. */
+public final class PositionHash
+{
+    /** Incrementally updated hash code, which is invariant under the
+        symmetries of the board and exchanging the colors.
+        Keeps the hash codes of all 8 symmetries (see BoardUtil.rotate),
+        each with and without exchanged colors, and uses the smallest as
+        canonical hash code. */
+    public static final class Canonical
+    {
+        /** Constructor.
+            @param size The board size. */
+        public Canonical(int size)
+        {
+            m_size = size;
+            m_rotated = new int[BoardUtil.NUMBER_ROTATIONS][];
+            for (int i = 0; i < BoardUtil.NUMBER_ROTATIONS; ++i)
+            {
+                m_rotated[i] = new int[GoPoint.NUMBER_INDEXES];
+                for (int x = 0; x < size; ++x)
+                    for (int y = 0; y < size; ++y)
+                    {
+                        GoPoint p = GoPoint.get(x, y);
+                        m_rotated[i][p.getIndex()] =
+                            BoardUtil.rotate(i, p, size).getIndex();
+                    }
+            }
+            clear();
+        }
+
+        /** Remove all stones. */
+        public void clear()
+        {
+            for (int i = 0; i < m_hash.length; ++i)
+                m_hash[i] = getSizeHash(m_size);
+        }
+
+        /** Canonical hash code of the current stones.
+            @return The smallest hash code of all symmetries. */
+        public long getHash()
+        {
+            long result = m_hash[0];
+            for (int i = 1; i < m_hash.length; ++i)
+                result = Math.min(result, m_hash[i]);
+            return result;
+        }
+
+        /** Add or remove a stone.
+            @param c The color of the stone (BLACK or WHITE).
+            @param p The point. */
+        public void toggle(GoColor c, GoPoint p)
+        {
+            int index = p.getIndex();
+            int c1 = (c == BLACK ? 0 : 1);
+            for (int i = 0; i < BoardUtil.NUMBER_ROTATIONS; ++i)
+            {
+                int rotated = m_rotated[i][index];
+                m_hash[2 * i] ^= s_hash[c1][rotated];
+                m_hash[2 * i + 1] ^= s_hash[1 - c1][rotated];
+            }
+        }
+
+        private final int m_size;
+
+        /** Point indexes of the symmetries. */
+        private final int[][] m_rotated;
+
+        /** Hash codes of the symmetries (each with and without exchanged
+            colors). */
+        private final long[] m_hash =
+            new long[2 * BoardUtil.NUMBER_ROTATIONS];
+    }
+
+    /** Canonical hash code of the stones on the board.
+        @param board The board.
+        @return The hash code, which is the same for all symmetric
+        positions and positions with exchanged colors.
+        @see Canonical */
+    public static long getCanonicalHash(ConstBoard board)
+    {
+        Canonical hash = new Canonical(board.getSize());
+        for (GoPoint p : board)
+        {
+            GoColor c = board.getColor(p);
+            if (c != GoColor.EMPTY)
+                hash.toggle(c, p);
+        }
+        return hash.getHash();
+    }
+
+    /** Hash code of the stones on the board.
+        Includes the board size, but not the color to move or the ko
+        point.
+        @param board The board.
+        @return The hash code. */
+    public static long getHash(ConstBoard board)
+    {
+        long hash = getSizeHash(board.getSize());
+        for (GoPoint p : board)
+        {
+            GoColor c = board.getColor(p);
+            if (c != GoColor.EMPTY)
+                hash ^= getHash(c, p.getIndex());
+        }
+        return hash;
+    }
+
+    /** Hash code of an empty board.
+        @param size The board size.
+        @return The hash code. */
+    public static long getSizeHash(int size)
+    {
+        return s_sizeHash[size];
+    }
+
+    /** Hash code of a single stone.
+        @param c The color of the stone (BLACK or WHITE).
+        @param index The point index (see GoPoint.getIndex()).
+        @return The hash code. */
+    public static long getHash(GoColor c, int index)
+    {
+        assert c.isBlackWhite();
+        return s_hash[c == BLACK ? 0 : 1][index];
+    }
+
+    private static final long[][] s_hash =
+        new long[2][GoPoint.NUMBER_INDEXES];
+
+    private static final long[] s_sizeHash = new long[GoPoint.MAX_SIZE + 1];
+
+    static
+    {
+        Random random = new Random(0x60605EEDL);
+        for (int i = 0; i < GoPoint.NUMBER_INDEXES; ++i)
+        {
+            s_hash[0][i] = random.nextLong();
+            s_hash[1][i] = random.nextLong();
+        }
+        for (int i = 0; i <= GoPoint.MAX_SIZE; ++i)
+            s_sizeHash[i] = random.nextLong();
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private PositionHash()
+    {
+    }
+}
@@ -0,0 +1,97 @@
+// GameSearchDialog.java
+
+package net.sf.gogui.gogui;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Font;
+import static java.text.MessageFormat.format;
+import java.util.List;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.ListSelectionModel;
+import net.sf.gogui.gamefile.GameIndex;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.gogui.I18n.i18n;
+import net.sf.gogui.gui.GuiUtil;
+
+/** Show the games found in a game index and let the user select one. */
+public final class GameSearchDialog
+{
+    /** Show dialog.
+        @param parent The parent component.
+        @param title The dialog title.
+        @param message Message shown above the list of games.
+        @param matches The games found.
+        @return The selected game or null, if the dialog was canceled. */
+    public static GameIndex.Match show(Component parent, String title,
+                                       String message,
+                                       List<GameIndex.Match> matches)
+    {
+        return show(parent, title, message, null, matches);
+    }
+
+    /** Show dialog with additional information.
+        @param parent The parent component.
+        @param title The dialog title.
+        @param message Message shown above the list of games.
+        @param details Text shown in a monospaced font below the list of
+        games, or null.
+        @param matches The games found.
+        @return The selected game or null, if the dialog was canceled. */
+    public static GameIndex.Match show(Component parent, String title,
+                                       String message, String details,
+                                       List<GameIndex.Match> matches)
+    {
+        String[] labels = new String[matches.size()];
+        for (int i = 0; i < labels.length; ++i)
+            labels[i] = getLabel(matches.get(i));
+        JList<String> list = new JList<>(labels);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setSelectedIndex(0);
+        list.setVisibleRowCount(15);
+        JPanel panel = new JPanel(new BorderLayout(0, GuiUtil.PAD));
+        panel.add(new JLabel(message), BorderLayout.NORTH);
+        panel.add(new JScrollPane(list), BorderLayout.CENTER);
+        if (details != null)
+        {
+            JTextArea textArea = new JTextArea(details);
+            textArea.setEditable(false);
+            textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN,
+                                      GuiUtil.getDefaultMonoFontSize()));
+            panel.add(textArea, BorderLayout.SOUTH);
+        }
+        int result =
+            JOptionPane.showConfirmDialog(parent, panel, title,
+                                          JOptionPane.OK_CANCEL_OPTION,
+                                          JOptionPane.PLAIN_MESSAGE);
+        if (result != JOptionPane.OK_OPTION || list.getSelectedIndex() < 0)
+            return null;
+        return matches.get(list.getSelectedIndex());
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private GameSearchDialog()
+    {
+    }
+
+    private static String getLabel(GameIndex.Match match)
+    {
+        GameIndex.Entry entry = match.getEntry();
+        return format(i18n("LB_GAME_SEARCH_MATCH"),
+                      notNull(entry.getPlayer(BLACK)),
+                      notNull(entry.getPlayer(WHITE)),
+                      notNull(entry.getDate()), notNull(entry.getResult()),
+                      match.getMoveNumber(), entry.getFile().getName());
+    }
+
+    private static String notNull(String s)
+    {
+        return (s == null ? "?" : s);
+    }
+}
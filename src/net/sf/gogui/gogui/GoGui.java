@@ -29,6 +29,7 @@ import java.io.StringReader;
 import java.net.URL;
 import static java.text.MessageFormat.format;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 import java.util.regex.Pattern;
@@ -54,6 +55,10 @@ import net.sf.gogui.game.StringInfo;
 import net.sf.gogui.game.StringInfoColor;
 import net.sf.gogui.game.TimeSettings;
 import net.sf.gogui.gamefile.GameFile;
+import net.sf.gogui.gamefile.GameIndex;
+import net.sf.gogui.gamefile.LocalPattern;
+import net.sf.gogui.gamefile.PatternSearch;
+import net.sf.gogui.gamefile.GameJournal;
 import net.sf.gogui.gamefile.GameReader;
 import net.sf.gogui.gamefile.GameWriter;
 import net.sf.gogui.go.Board;
@@ -127,7 +132,7 @@ import net.sf.gogui.thumbnail.ThumbnailPlatform;
 import net.sf.gogui.util.ErrorMessage;
 import net.sf.gogui.util.FileUtil;
 import net.sf.gogui.util.ObjectUtil;
-import net.sf.gogui.util.LineReader;
+import net.sf.gogui.util.LineBatcher;
 import net.sf.gogui.util.Platform;
 import net.sf.gogui.util.ProgressShow;
 import net.sf.gogui.util.StringUtil;
@@ -159,6 +164,7 @@ public class GoGui
     {
         int boardSize = m_prefs.getInt("boardsize", GoPoint.DEFAULT_SIZE);
         m_beepAfterMove = m_prefs.getBoolean("beep-after-move", true);
+        m_journal = m_prefs.getBoolean("journal", false);
         m_initialFile = file;
         m_gtpFile = gtpFile;
         m_gtpCommand = gtpCommand;
@@ -819,6 +825,112 @@ public class GoGui
         SwingUtilities.invokeLater(runnable);
     }
 
+    public void actionFindPosition()
+    {
+        if (! checkStateChangePossible())
+            return;
+        File file = getGameIndexFile();
+        if (file == null)
+            return;
+        GameIndex index = getCachedGameIndex(file);
+        FindPositionRunnable runnable =
+            new FindPositionRunnable(file, index, getBoard());
+        try
+        {
+            // Reading the index and the first search take long for large
+            // indexes, later searches need only a binary search
+            if (index == null)
+                GuiUtil.runProgress(this, i18n("LB_SEARCHING"), runnable);
+            else
+                runnable.run(null);
+        }
+        catch (ErrorMessage e)
+        {
+            showError(i18n("MSG_GAME_INDEX_READ_FAILED"), e);
+            return;
+        }
+        catch (Throwable t)
+        {
+            t.printStackTrace();
+            assert false;
+            return;
+        }
+        setGameIndex(file, runnable.getIndex());
+        List<GameIndex.Match> matches = runnable.getMatches();
+        if (matches.isEmpty())
+        {
+            showInfo(i18n("MSG_FIND_POSITION_NOT_FOUND"),
+                     i18n("MSG_FIND_POSITION_NOT_FOUND_2"), false);
+            return;
+        }
+        GameIndex.Match match =
+            GameSearchDialog.show(this, i18n("TIT_FIND_POSITION"),
+                                  format(i18n("LB_FIND_POSITION_FOUND"),
+                                         matches.size()),
+                                  matches);
+        if (match != null)
+            openGameIndexEntry(match.getEntry(), match.getMoveNumber());
+    }
+
+    public void actionFindPattern()
+    {
+        if (! checkStateChangePossible())
+            return;
+        File file = getGameIndexFile();
+        if (file == null)
+            return;
+        Move lastMove = getBoard().getLastMove();
+        PointList selected = GuiBoardUtil.getSelected(m_guiBoard);
+        LocalPattern pattern =
+            PatternDialog.getInitialPattern(getBoard(), selected,
+                                            lastMove == null ? null
+                                            : lastMove.getPoint());
+        pattern = PatternDialog.show(this, pattern, m_messageDialogs);
+        if (pattern == null)
+            return;
+        FindPatternRunnable runnable =
+            new FindPatternRunnable(file, getCachedGameIndex(file),
+                                    new PatternSearch(pattern));
+        try
+        {
+            GuiUtil.runProgress(this, i18n("LB_SEARCHING"), runnable);
+        }
+        catch (ErrorMessage e)
+        {
+            if (runnable.getIndex() == null)
+                showError(i18n("MSG_GAME_INDEX_READ_FAILED"), e);
+            else
+                showError(i18n("MSG_FIND_PATTERN_FAILED"), e);
+            return;
+        }
+        catch (Throwable t)
+        {
+            t.printStackTrace();
+            assert false;
+            return;
+        }
+        setGameIndex(file, runnable.getIndex());
+        PatternSearch search = runnable.getSearch();
+        List<GameIndex.Match> matches = search.getMatches();
+        if (matches.isEmpty())
+        {
+            showInfo(i18n("MSG_FIND_PATTERN_NOT_FOUND"),
+                     i18n("MSG_FIND_PATTERN_NOT_FOUND_2"), false);
+            return;
+        }
+        String details =
+            search.formatContinuations()
+            + format(i18n("LB_FIND_PATTERN_TENUKI"), search.getNumberTenuki(),
+                     search.getNumberNoContinuation());
+        GameIndex.Match match =
+            GameSearchDialog.show(this, i18n("TIT_FIND_PATTERN"),
+                                  format(i18n("LB_FIND_PATTERN_FOUND"),
+                                         matches.size()),
+                                  details, matches);
+        if (match != null)
+            openGameIndexEntry(match.getEntry(), match.getMoveNumber());
+    }
+
     public void actionForward(int n)
     {
         if (! checkStateChangePossible())
@@ -1499,6 +1611,15 @@ public class GoGui
         beginLengthyCommand();
     }
 
+    public void actionSelectGameIndex()
+    {
+        File file = FileDialogs.showOpen(this, i18n("TIT_SELECT_GAME_INDEX"));
+        if (file == null)
+            return;
+        m_prefs.put("game-index", file.toString());
+        m_gameIndex = null;
+    }
+
     public void actionSendFile()
     {
         if (! checkStateChangePossible())
@@ -1664,6 +1785,17 @@ public class GoGui
         m_prefs.putBoolean("comment-font-fixed", monoFont);
     }
 
+    public void actionToggleJournal()
+    {
+        m_journal = ! m_journal;
+        m_prefs.putBoolean("journal", m_journal);
+        // Modifications are still marked in the game and will be saved
+        // normally
+        if (! m_journal && m_gameJournal != null)
+            m_gameJournal.discard();
+        updateJournal();
+    }
+
     public void actionToggleCompletion()
     {
         m_commandCompletion = ! m_commandCompletion;
@@ -1831,6 +1963,11 @@ public class GoGui
         return m_comment.getMonoFont();
     }
 
+    public boolean getJournal()
+    {
+        return m_journal;
+    }
+
     public boolean getCompletion()
     {
         return m_commandCompletion;
@@ -2159,6 +2296,50 @@ public class GoGui
         AnalyzeShow.showGfx(text, m_guiBoard, m_statusBar, null);
     }
 
+    /** Shows the standard error output of the program in the GTP shell.
+        Receives the lines in batches in the event dispatch thread and
+        appends runs of lines with the same style with a single call. */
+    private class StdErrListener
+        implements LineBatcher.Listener
+    {
+        public void receivedLines(List<String> lines, int numberDropped)
+        {
+            if (m_shell == null)
+                return;
+            if (numberDropped > 0)
+                m_shell.receivedStdErr("[" + numberDropped + " lines of"
+                                       + " standard error not shown]\n",
+                                       false, false, true);
+            StringBuilder text = new StringBuilder();
+            boolean isLiveGfx = false;
+            boolean isWarning = false;
+            for (String line : lines)
+            {
+                boolean lineIsLiveGfx = m_liveGfx.handleLine(line);
+                boolean lineIsWarning =
+                    line.startsWith("warning:")
+                    || line.startsWith("Warning:")
+                    || line.startsWith("WARNING:");
+                if (text.length() > 0 && (lineIsLiveGfx != isLiveGfx
+                                          || lineIsWarning != isWarning))
+                {
+                    m_shell.receivedStdErr(text.toString(), false, isLiveGfx,
+                                           isWarning);
+                    text.setLength(0);
+                }
+                isLiveGfx = lineIsLiveGfx;
+                isWarning = lineIsWarning;
+                text.append(line);
+                text.append('\n');
+            }
+            if (text.length() > 0)
+                m_shell.receivedStdErr(text.toString(), false, isLiveGfx,
+                                       isWarning);
+        }
+
+        private final LiveGfx m_liveGfx = new LiveGfx(GoGui.this);
+    }
+
     private class AnalyzeContinue
         implements Runnable
     {
@@ -2227,6 +2408,95 @@ public class GoGui
         private GameReader m_reader;
     }
 
+    /** Reads the game index, if necessary, and searches a pattern in it. */
+    private static class FindPatternRunnable
+        implements GuiUtil.ProgressRunnable
+    {
+        /** Constructor.
+            @param file The index file.
+            @param index The index already read from the file or null.
+            @param search The pattern search. */
+        public FindPatternRunnable(File file, GameIndex index,
+                                   PatternSearch search)
+        {
+            m_file = file;
+            m_index = index;
+            m_search = search;
+        }
+
+        public GameIndex getIndex()
+        {
+            return m_index;
+        }
+
+        public PatternSearch getSearch()
+        {
+            return m_search;
+        }
+
+        public void run(ProgressShow progressShow) throws Throwable
+        {
+            // Reading the index is fast compared to replaying all games
+            if (m_index == null)
+                m_index = GameIndex.read(m_file);
+            m_search.search(m_index, null, progressShow);
+        }
+
+        private final File m_file;
+
+        private GameIndex m_index;
+
+        private final PatternSearch m_search;
+    }
+
+    /** Reads the game index, if necessary, and finds a position in it. */
+    private static class FindPositionRunnable
+        implements GuiUtil.ProgressRunnable
+    {
+        /** Constructor.
+            @param file The index file.
+            @param index The index already read from the file or null.
+            @param board The position to find. */
+        public FindPositionRunnable(File file, GameIndex index,
+                                    ConstBoard board)
+        {
+            m_file = file;
+            m_index = index;
+            m_board = board;
+        }
+
+        public GameIndex getIndex()
+        {
+            return m_index;
+        }
+
+        public List<GameIndex.Match> getMatches()
+        {
+            return m_matches;
+        }
+
+        public void run(ProgressShow progressShow) throws Throwable
+        {
+            if (m_index == null)
+                m_index = GameIndex.read(m_file, progressShow);
+            m_matches = m_index.findPosition(m_board);
+        }
+
+        private final File m_file;
+
+        private GameIndex m_index;
+
+        private final ConstBoard m_board;
+
+        private List<GameIndex.Match> m_matches;
+    }
+
+    /** Maximum number of lines of standard error output of the program
+        waiting to be shown in the GTP shell.
+        Older lines are dropped if the program writes faster than they can
+        be shown. */
+    private static final int MAX_STDERR_LINES = 2000;
+
     private boolean m_analyzeAutoRun;
 
     private boolean m_analyzeClearBoard;
@@ -2249,6 +2519,10 @@ public class GoGui
 
     private boolean m_beepAfterMove;
 
+    /** Save modifications of game files in an append-only journal.
+        @see GameJournal */
+    private boolean m_journal;
+
     private boolean m_computerBlack;
 
     private boolean m_computerWhite;
@@ -2303,6 +2577,17 @@ public class GoGui
     /** File corresponding to the current game. */
     private GameFile m_gameFile;
 
+    /** Journal for m_gameFile, null if journal is disabled or no file. */
+    private GameJournal m_gameJournal;
+
+    /** Game index used by actionFindPosition() and actionFindPattern(),
+        loaded on first use. */
+    private GameIndex m_gameIndex;
+
+    private File m_gameIndexFile;
+
+    private long m_gameIndexLastModified;
+
     private File m_initialFile;
 
     private final GameInfoPanel m_gameInfoPanel;
@@ -2543,6 +2828,11 @@ public class GoGui
             };
         GtpClient.IOCallback ioCallback = new GtpClient.IOCallback()
             {
+                public void closedStdErr()
+                {
+                    m_stdErr.flush();
+                }
+
                 public void receivedInvalidResponse(String s)
                 {
                     if (m_shell == null)
@@ -2561,21 +2851,7 @@ public class GoGui
 
                 public void receivedStdErr(String s)
                 {
-                    if (m_shell == null)
-                        return;
-                    m_lineReader.add(s);
-                    while (m_lineReader.hasLines())
-                    {
-                        String line = m_lineReader.getLine();
-                        boolean isLiveGfx = m_liveGfx.handleLine(line);
-                        boolean isWarning =
-                            line.startsWith("warning:")
-                            || line.startsWith("Warning:")
-                            || line.startsWith("WARNING:");
-                        boolean invokeLater = true;
-                        m_shell.receivedStdErr(line, invokeLater, isLiveGfx,
-                                               isWarning);
-                    }
+                    m_stdErr.add(s);
                 }
 
                 public void sentCommand(String s)
@@ -2584,9 +2860,10 @@ public class GoGui
                         m_shell.sentCommand(s);
                 }
 
-                private final LineReader m_lineReader = new LineReader();
-
-                private LiveGfx m_liveGfx = new LiveGfx(GoGui.this);
+                private final LineBatcher m_stdErr =
+                    new LineBatcher(MAX_STDERR_LINES,
+                                    SwingUtilities::invokeLater,
+                                    new StdErrListener());
             };
         GtpSynchronizer.Listener synchronizerCallback =
             new GtpSynchronizer.Listener() {
@@ -2827,6 +3104,9 @@ public class GoGui
         switch (result)
         {
         case 0:
+            // Changes are discarded, the journal must not restore them
+            if (m_gameJournal != null)
+                m_gameJournal.discard();
             m_game.clearModified();
             return true;
         case 1:
@@ -3503,6 +3783,34 @@ public class GoGui
         return ! (m_computerBlack || m_computerWhite);
     }
 
+    /** Get the game index file selected in the preferences.
+        Asks for the index file if none is selected.
+        @return The file or null, if no index is selected. */
+    private File getGameIndexFile()
+    {
+        File file = new File(m_prefs.get("game-index", ""));
+        if (! file.isFile())
+        {
+            actionSelectGameIndex();
+            file = new File(m_prefs.get("game-index", ""));
+            if (! file.isFile())
+                return null;
+        }
+        return file;
+    }
+
+    /** Get the game index read last time.
+        @param file The index file.
+        @return The index or null, if another file was read last time or
+        the file was modified since (e.g. by gogui-gamedb). */
+    private GameIndex getCachedGameIndex(File file)
+    {
+        if (m_gameIndex == null || ! file.equals(m_gameIndexFile)
+            || file.lastModified() != m_gameIndexLastModified)
+            return null;
+        return m_gameIndex;
+    }
+
     private boolean isOutOfSync()
     {
         return (m_gtp != null && m_gtp.isOutOfSync());
@@ -3521,9 +3829,33 @@ public class GoGui
             else
                 runnable.run(null);
             GameTree tree = runnable.getTree();
+            boolean journalReplayed = false;
+            boolean journalFailed = false;
+            if (m_journal)
+            {
+                try
+                {
+                    GameTree journalTree = GameJournal.replay(file, tree);
+                    if (journalTree != null)
+                    {
+                        tree = journalTree;
+                        journalReplayed = true;
+                    }
+                }
+                catch (ErrorMessage e)
+                {
+                    showError(i18n("MSG_JOURNAL_REPLAY_FAILED"), e);
+                    // Records may have been partially applied
+                    tree = new GameReader(file).getTree();
+                    journalFailed = true;
+                }
+            }
             initGame(tree.getBoardSize());
             m_menuBar.addRecent(file);
             m_game.init(tree);
+            // Replayed changes are only in the journal until saved
+            if (journalReplayed)
+                m_game.setModified();
             initGtp();
             if (move > 0)
             {
@@ -3533,6 +3865,8 @@ public class GoGui
                     m_game.gotoNode(node);
             }
             setFile(runnable.getGameFile());
+            if (journalFailed && m_gameJournal != null)
+                m_gameJournal.discard();
             FileDialogs.setLastFile(file);
             String warnings = runnable.getWarnings();
             if (warnings != null)
@@ -3573,6 +3907,45 @@ public class GoGui
         return true;
     }
 
+    /** Open a game found in a game index.
+        @param entry The index entry.
+        @param move The move number to go to. */
+    private void openGameIndexEntry(GameIndex.Entry entry, int move)
+    {
+        if (! checkSaveGame())
+            return;
+        File file = entry.getFile();
+        if (entry.getOffset() == 0 && entry.getLength() == file.length())
+        {
+            loadFile(file, move);
+            boardChangedBegin(false, true);
+            return;
+        }
+        // Game in SGF file with more than one game
+        GameTree tree;
+        try
+        {
+            tree = GameIndex.readGame(entry);
+        }
+        catch (ErrorMessage e)
+        {
+            showError(i18n("MSG_COULD_NOT_READ_FILE"), e);
+            return;
+        }
+        // Saving would overwrite the other games in the file, so the game
+        // is opened untitled and without a journal
+        setFile(null);
+        m_game.init(tree);
+        m_guiBoard.initSize(getBoard().getSize());
+        initGtp();
+        ConstNode node = NodeUtil.findByMoveNumber(getCurrentNode(), move);
+        if (node != null)
+            m_game.gotoNode(node);
+        m_computerBlack = false;
+        m_computerWhite = false;
+        boardChangedBegin(false, true);
+    }
+
     private void newGame(int size)
     {
         initGame(size);
@@ -3719,6 +4092,8 @@ public class GoGui
         {
             new GameWriter(gameFile, getTree(), i18n("LB_GOGUI"),
                            Version.get());
+            if (m_gameJournal != null)
+                m_gameJournal.discard();
         }
         catch (ErrorMessage e)
         {
@@ -3742,6 +4117,8 @@ public class GoGui
         gameFile.m_file = file;
         if (FileUtil.hasExtension(file, "xml"))
             gameFile.m_format = GameFile.Format.XML;
+        else if (FileUtil.hasExtension(file, GameReader.BINARY_EXTENSION))
+            gameFile.m_format = GameFile.Format.BINARY;
         else
             gameFile.m_format = GameFile.Format.SGF;
         return save(gameFile);
@@ -3958,9 +4335,20 @@ public class GoGui
         component.setCursor(Cursor.getDefaultCursor());
     }
 
+    /** Remember a game index read from a file.
+        @param file The index file.
+        @param index The index. */
+    private void setGameIndex(File file, GameIndex index)
+    {
+        m_gameIndex = index;
+        m_gameIndexFile = file;
+        m_gameIndexLastModified = file.lastModified();
+    }
+
     private void setFile(GameFile gameFile)
     {
         m_gameFile = gameFile;
+        updateJournal();
         setTitle();
     }
 
@@ -4373,6 +4761,23 @@ public class GoGui
         setCursor(getGlassPane(), Cursor.DEFAULT_CURSOR);
     }
 
+    /** Create journal for current file if journal is enabled. */
+    private void updateJournal()
+    {
+        if (m_gameJournal != null)
+        {
+            m_gameJournal.close();
+            m_gameJournal = null;
+        }
+        m_game.setListener(null);
+        if (m_journal && m_gameFile != null)
+        {
+            m_gameJournal = new GameJournal(m_gameFile, m_game,
+                                            i18n("LB_GOGUI"), Version.get());
+            m_game.setListener(m_gameJournal);
+        }
+    }
+
     private void updateViews(boolean gameTreeChanged)
     {
         updateViews(gameTreeChanged, false);
@@ -128,6 +128,10 @@ public class GoGuiActions
 
     public final GuiAction m_actionFindNextComment;
 
+    public final GuiAction m_actionFindPattern;
+
+    public final GuiAction m_actionFindPosition;
+
     public final GuiAction m_actionForward;
 
     public final GuiAction m_actionForwardTen;
@@ -208,6 +212,8 @@ public class GoGuiActions
 
     public final GuiAction m_actionScore;
 
+    public final GuiAction m_actionSelectGameIndex;
+
     public final GuiAction m_actionSendFile;
 
     public final GuiAction m_actionSetTimeLeft;
@@ -236,6 +242,8 @@ public class GoGuiActions
 
     public final GuiAction m_actionToggleCompletion;
 
+    public final GuiAction m_actionToggleJournal;
+
     public final GuiAction m_actionToggleCommentMonoFont;
 
     public final GuiAction m_actionToggleShowCursor;
@@ -356,6 +364,10 @@ public class GoGuiActions
             @Override
             public void actionPerformed(ActionEvent e) {
                 m_goGui.actionToggleCompletion(); } };
+        this.m_actionToggleJournal = new GuiAction(i18n("ACT_JOURNAL")) {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                m_goGui.actionToggleJournal(); } };
         this.m_actionToggleBeepAfterMove = new GuiAction(i18n("ACT_PLAY_SOUND")) {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -414,6 +426,10 @@ public class GoGuiActions
             @Override
             public void actionPerformed(ActionEvent e) {
                 m_goGui.actionSendFile(); } };
+        this.m_actionSelectGameIndex = new GuiAction(i18n("ACT_SELECT_GAME_INDEX")) {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                m_goGui.actionSelectGameIndex(); } };
         this.m_actionScore = new GuiAction(i18n("ACT_SCORE")) {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -599,6 +615,14 @@ public class GoGuiActions
                     @Override
                     public void actionPerformed(ActionEvent e) {
                         m_goGui.actionForward(1); } };
+        this.m_actionFindPattern = new GuiAction(i18n("ACT_FIND_PATTERN")) {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                m_goGui.actionFindPattern(); } };
+        this.m_actionFindPosition = new GuiAction(i18n("ACT_FIND_POSITION")) {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                m_goGui.actionFindPosition(); } };
         this.m_actionFindNextComment = new GuiAction(i18n("ACT_FIND_NEXT_COMMENT"), null, KeyEvent.VK_F4,
                 FUNCTION_KEY) {
                     @Override
@@ -867,6 +891,7 @@ public class GoGuiActions
         boolean commentMonoFont = m_goGui.getCommentMonoFont();
         m_actionToggleCommentMonoFont.setSelected(commentMonoFont);
         m_actionToggleCompletion.setSelected(m_goGui.getCompletion());
+        m_actionToggleJournal.setSelected(m_goGui.getJournal());
         m_actionToggleShowCursor.setSelected(guiBoard.getShowCursor());
         m_actionToggleShowGrid.setSelected(guiBoard.getShowGrid());
         m_actionToggleShowInfoPanel.setSelected(m_goGui.isInfoPanelShown());
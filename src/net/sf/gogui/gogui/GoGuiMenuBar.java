@@ -315,6 +315,10 @@ public class GoGuiMenuBar
         menu.add(actions.m_actionFindNext);
         menu.add(actions.m_actionFindNextComment);
         menu.addSeparator();
+        menu.add(actions.m_actionFindPosition);
+        menu.add(actions.m_actionFindPattern);
+        menu.add(actions.m_actionSelectGameIndex);
+        menu.addSeparator();
         menu.add(actions.m_actionMakeMainVariation);
         menu.add(actions.m_actionDeleteSideVariations);
         menu.add(actions.m_actionKeepOnlyPosition);
@@ -346,6 +350,7 @@ public class GoGuiMenuBar
         menu.add(createRecentMenu(listener));
         menu.add(actions.m_actionSave);
         menu.add(actions.m_actionSaveAs);
+        menu.addCheckBoxItem(actions.m_actionToggleJournal);
         menu.addSeparator();
         menu.add(createMenuImport(actions));
         menu.add(createMenuExport(actions));
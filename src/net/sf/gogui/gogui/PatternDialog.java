@@ -0,0 +1,110 @@
+// PatternDialog.java
+
+package net.sf.gogui.gogui;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Font;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import net.sf.gogui.gamefile.LocalPattern;
+import net.sf.gogui.go.ConstBoard;
+import net.sf.gogui.go.ConstPointList;
+import net.sf.gogui.go.GoPoint;
+import static net.sf.gogui.gogui.I18n.i18n;
+import net.sf.gogui.gui.GuiUtil;
+import net.sf.gogui.gui.MessageDialogs;
+import net.sf.gogui.util.ErrorMessage;
+
+/** Ask for a local pattern to search in the game index. */
+public final class PatternDialog
+{
+    /** Show dialog.
+        @param parent The parent component.
+        @param pattern The initial pattern.
+        @param messageDialogs Used for showing errors in the pattern.
+        @return The edited pattern or null, if the dialog was canceled. */
+    public static LocalPattern show(Component parent, LocalPattern pattern,
+                                    MessageDialogs messageDialogs)
+    {
+        JTextArea textArea = new JTextArea(pattern.toString());
+        textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN,
+                                  GuiUtil.getDefaultMonoFontSize()));
+        textArea.setRows(Math.max(pattern.getHeight(), 7) + 1);
+        textArea.setColumns(Math.max(pattern.getWidth(), 15) + 1);
+        JPanel panel = new JPanel(new BorderLayout(0, GuiUtil.PAD));
+        panel.add(new JLabel(i18n("LB_FIND_PATTERN")), BorderLayout.NORTH);
+        panel.add(new JScrollPane(textArea), BorderLayout.CENTER);
+        while (true)
+        {
+            int result =
+                JOptionPane.showConfirmDialog(parent, panel,
+                                              i18n("TIT_FIND_PATTERN"),
+                                              JOptionPane.OK_CANCEL_OPTION,
+                                              JOptionPane.PLAIN_MESSAGE);
+            if (result != JOptionPane.OK_OPTION)
+                return null;
+            try
+            {
+                return LocalPattern.parse(textArea.getText());
+            }
+            catch (ErrorMessage e)
+            {
+                messageDialogs.showError(parent,
+                                         i18n("MSG_FIND_PATTERN_INVALID"),
+                                         e.getMessage(), false);
+            }
+        }
+    }
+
+    /** Create the initial pattern from the board.
+        Uses the bounding box of the selected points, or a 5x5 region
+        around the last move, if no points are selected.
+        @param board The board.
+        @param selected The selected points.
+        @param lastMove The last move point or null.
+        @return The pattern. */
+    public static LocalPattern getInitialPattern(ConstBoard board,
+                                                 ConstPointList selected,
+                                                 GoPoint lastMove)
+    {
+        int size = board.getSize();
+        int left;
+        int right;
+        int bottom;
+        int top;
+        if (selected.size() > 0)
+        {
+            left = size;
+            right = -1;
+            bottom = size;
+            top = -1;
+            for (GoPoint p : selected)
+            {
+                left = Math.min(left, p.getX());
+                right = Math.max(right, p.getX());
+                bottom = Math.min(bottom, p.getY());
+                top = Math.max(top, p.getY());
+            }
+        }
+        else
+        {
+            int x = (lastMove == null ? 2 : lastMove.getX());
+            int y = (lastMove == null ? size - 3 : lastMove.getY());
+            left = Math.max(0, x - 2);
+            right = Math.min(size - 1, x + 2);
+            bottom = Math.max(0, y - 2);
+            top = Math.min(size - 1, y + 2);
+        }
+        return LocalPattern.fromBoard(board, left, bottom, right - left + 1,
+                                      top - bottom + 1);
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private PatternDialog()
+    {
+    }
+}
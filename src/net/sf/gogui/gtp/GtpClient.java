@@ -10,10 +10,12 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import net.sf.gogui.go.Move;
+import net.sf.gogui.util.IOThreads;
 import net.sf.gogui.util.StringUtil;
 import net.sf.gogui.util.ProcessUtil;
 
@@ -73,6 +75,16 @@ public final class GtpClient
         threads. */
     public interface IOCallback
     {
+        /** Called after the standard error stream of the program was
+            closed or could not be read anymore.
+            Called from the thread that reads standard error after the last
+            call of receivedStdErr(). Can be used to handle text after the
+            last line terminator. The default implementation does
+            nothing. */
+        default void closedStdErr()
+        {
+        }
+
         void receivedInvalidResponse(String s);
 
         void receivedResponse(boolean error, String s);
@@ -255,6 +267,10 @@ public final class GtpClient
     {
         assert ! command.trim().equals("");
         assert ! command.trim().startsWith("#");
+        // The end of the output of a dead program was already read, so
+        // waiting for a response would block forever
+        if (m_isProgramDead)
+            throwProgramDied();
         m_timeoutCallback = timeoutCallback;
         m_fullResponse = "";
         m_response = "";
@@ -263,8 +279,12 @@ public final class GtpClient
             command = Integer.toString(m_commandNumber) + " " + command;
         if (m_log)
             logOut(command);
+        long startTime = System.nanoTime();
         m_out.println(command);
         m_out.flush();
+        GtpRecorder recorder = m_recorder;
+        if (recorder != null)
+            recorder.sentCommand(command);
         try
         {
             if (m_out.checkError())
@@ -274,15 +294,110 @@ public final class GtpClient
             if (m_callback != null)
                 m_callback.sentCommand(command);
             readResponse(timeout);
+            addMetrics(command, startTime);
             return m_response;
         }
         catch (GtpError e)
         {
+            addMetrics(command, startTime);
             e.setCommand(command);
             throw e;
         }
     }
 
+    /** Send several commands without waiting for each response.
+        If there is more than one command, the commands are numbered and
+        written to the program up to MAX_PIPELINED commands ahead of the
+        responses, which are matched to the commands by their id. This
+        avoids a round trip per command for sequences of fast commands like
+        play or undo.
+        All commands are sent, even if one of them fails.
+        @param commands The commands to send
+        @param timeout Timeout in milliseconds for each response or -1, if no
+        timeout
+        @param timeoutCallback Timeout callback or null if no timeout.
+        @return The response texts of the commands.
+        @throws GtpError The error of the first failed command or response
+        with a wrong id, after the responses to all commands were read. */
+    public String[] sendBatch(List<String> commands, long timeout,
+                              TimeoutCallback timeoutCallback) throws GtpError
+    {
+        int size = commands.size();
+        if (size == 1)
+            return new String[] {
+                send(commands.get(0), timeout, timeoutCallback) };
+        if (m_isProgramDead)
+            throwProgramDied();
+        m_timeoutCallback = timeoutCallback;
+        m_fullResponse = "";
+        m_response = "";
+        String[] result = new String[size];
+        String[] sent = new String[size];
+        long[] startTime = new long[size];
+        int[] ids = new int[size];
+        int numberSent = 0;
+        GtpError error = null;
+        for (int i = 0; i < size; ++i)
+        {
+            if (numberSent < size)
+            {
+                while (numberSent < size
+                       && numberSent - i < MAX_PIPELINED)
+                {
+                    String command = commands.get(numberSent);
+                    assert ! command.trim().equals("");
+                    assert ! command.trim().startsWith("#");
+                    ids[numberSent] = ++m_commandNumber;
+                    command = Integer.toString(m_commandNumber) + " "
+                        + command;
+                    sent[numberSent] = command;
+                    if (m_log)
+                        logOut(command);
+                    startTime[numberSent] = System.nanoTime();
+                    m_out.println(command);
+                    GtpRecorder recorder = m_recorder;
+                    if (recorder != null)
+                        recorder.sentCommand(command);
+                    if (m_callback != null)
+                        m_callback.sentCommand(command);
+                    ++numberSent;
+                }
+                m_out.flush();
+            }
+            try
+            {
+                if (m_out.checkError())
+                    throwProgramDied();
+                m_fullResponse = "";
+                result[i] = readResponse(timeout);
+                addMetrics(sent[i], startTime[i]);
+            }
+            catch (GtpError e)
+            {
+                addMetrics(sent[i], startTime[i]);
+                e.setCommand(sent[i]);
+                if (isProgramDead())
+                    throw e;
+                if (error == null)
+                    error = e;
+            }
+            // Keep reading, the responses to the commands already sent
+            // must not be left in the stream
+            GtpError idError = checkResponseId(ids[i], sent[i]);
+            if (error == null)
+                error = idError;
+        }
+        if (error != null)
+            throw error;
+        return result;
+    }
+
+    @Override
+    public String[] sendBatch(List<String> commands) throws GtpError
+    {
+        return sendBatch(commands, -1, null);
+    }
+
     public void sendPlay(Move move, long timeout,
                          TimeoutCallback timeoutCallback) throws GtpError
     {
@@ -380,6 +495,42 @@ public final class GtpClient
         }
     }
 
+    /** Get the statistics of the GTP traffic.
+        @return The statistics or null, if not enabled.
+        @see #setMetrics(GtpMetrics) */
+    public GtpMetrics getMetrics()
+    {
+        return m_metrics;
+    }
+
+    /** Enable recording statistics of the GTP traffic.
+        Records latency, size and status of all commands sent after this
+        call and the size of the standard error output of the program.
+        @param metrics The statistics to add to or null to disable
+        recording. */
+    public void setMetrics(GtpMetrics metrics)
+    {
+        m_metrics = metrics;
+    }
+
+    /** Get the recorder of the GTP session.
+        @return The recorder or null, if not enabled.
+        @see #setRecorder(GtpRecorder) */
+    public GtpRecorder getRecorder()
+    {
+        return m_recorder;
+    }
+
+    /** Enable recording the GTP session.
+        Records all commands sent after this call, the responses and the
+        standard error output of the program. The recorder is not closed by
+        GtpClient.
+        @param recorder The recorder or null to disable recording. */
+    public void setRecorder(GtpRecorder recorder)
+    {
+        m_recorder = recorder;
+    }
+
     /** Was program forcefully terminated by calling destroyProcess()
      * @return  */
     public boolean wasKilled()
@@ -397,10 +548,10 @@ public final class GtpClient
         public String m_text;
     }
 
-    private class InputThread
-        extends Thread
+    private class InputReader
+        implements Runnable
     {
-        InputThread(InputStream in, BlockingQueue<Message> queue)
+        InputReader(InputStream in, BlockingQueue<Message> queue)
         {
             m_in = new BufferedReader(new InputStreamReader(in));
             m_queue = queue;
@@ -522,10 +673,10 @@ public final class GtpClient
         }
     }
 
-    private class ErrorThread
-        extends Thread
+    private class ErrorReader
+        implements Runnable
     {
-        public ErrorThread(InputStream in, BlockingQueue<Message> queue)
+        public ErrorReader(InputStream in, BlockingQueue<Message> queue)
         {
             m_in = new InputStreamReader(in);
             m_queue = queue;
@@ -546,16 +697,24 @@ public final class GtpClient
                     }
                     catch (IOException e)
                     {
-                        return;
+                        break;
                     }
                     if (n <= 0)
-                        return;
+                        break;
+                    GtpMetrics metrics = m_metrics;
+                    if (metrics != null)
+                        metrics.addStdErr(n);
                     String text = new String(buffer, 0, n);
+                    GtpRecorder recorder = m_recorder;
+                    if (recorder != null)
+                        recorder.receivedStdErr(text);
                     if (m_callback != null)
                         m_callback.receivedStdErr(text);
                     if (m_log)
                         logError(text);
                 }
+                if (m_callback != null)
+                    m_callback.closedStdErr();
             }
             catch (Throwable t)
             {
@@ -566,8 +725,19 @@ public final class GtpClient
         private final Reader m_in;
     }
 
+    /** Maximum number of commands written by sendBatch() before the
+        response to the first of them is read.
+        Must not exceed the capacity of the response queue, otherwise the
+        input thread and the program could block on writing responses while
+        sendBatch() blocks on writing commands. */
+    private static final int MAX_PIPELINED = 8;
+
     private InvalidResponseCallback m_invalidResponseCallback;
 
+    private volatile GtpMetrics m_metrics;
+
+    private volatile GtpRecorder m_recorder;
+
     private boolean m_autoNumber;
 
     private boolean m_anyCommandsResponded;
@@ -598,22 +768,65 @@ public final class GtpClient
 
     private TimeoutCallback m_timeoutCallback;
 
-    private InputThread m_inputThread;
+    private Thread m_inputThread;
 
-    private ErrorThread m_errorThread;
+    private Thread m_errorThread;
 
     private void init(InputStream in, OutputStream out, InputStream err)
     {
         m_out = new PrintWriter(out);
         m_isProgramDead = false;
         m_queue = new ArrayBlockingQueue<>(10);
-        m_inputThread = new InputThread(in, m_queue);
+        InputReader inputReader = new InputReader(in, m_queue);
         if (err != null)
+            m_errorThread = IOThreads.start("GtpClient stderr",
+                                            new ErrorReader(err, m_queue));
+        m_inputThread = IOThreads.start("GtpClient stdout", inputReader);
+    }
+
+    /** Add the last command to the statistics, if enabled.
+        Counts characters, each line terminator as one character (the
+        response contains a newline after each line, including the
+        terminating empty line). Does nothing, if no response was received
+        (e.g. if the program died). */
+    private void addMetrics(String command, long startTime)
+    {
+        GtpMetrics metrics = m_metrics;
+        if (metrics == null || m_fullResponse.isEmpty())
+            return;
+        boolean error = (m_fullResponse.charAt(0) != '=');
+        metrics.add(command, System.nanoTime() - startTime, error,
+                    command.length() + 1, m_fullResponse.length());
+    }
+
+    /** Check that the id of the last response matches the command.
+        Responses without id are accepted (some programs do not echo the
+        id, GTP requires responses in the order of the commands anyway).
+        @return The error, if the id does not match, otherwise null. */
+    private GtpError checkResponseId(int id, String command)
+    {
+        String response = m_fullResponse;
+        int length = response.length();
+        int i = 1;
+        while (i < length && Character.isDigit(response.charAt(i)))
+            ++i;
+        if (i == 1)
+            return null;
+        int responseId;
+        try
+        {
+            responseId = Integer.parseInt(response.substring(1, i));
+        }
+        catch (NumberFormatException e)
         {
-            m_errorThread = new ErrorThread(err, m_queue);
-            m_errorThread.start();
+            return null;
         }
-        m_inputThread.start();
+        if (responseId == id)
+            return null;
+        GtpError error = new GtpError("Response id " + responseId
+                                      + " does not match command id " + id);
+        error.setCommand(command);
+        return error;
     }
 
     private synchronized void logError(String text)
@@ -659,6 +872,9 @@ public final class GtpClient
             m_anyCommandsResponded = true;
             boolean error = (response.charAt(0) != '=');
             m_fullResponse = response;
+            GtpRecorder recorder = m_recorder;
+            if (recorder != null)
+                recorder.receivedResponse(response);
             if (m_callback != null)
                 m_callback.receivedResponse(error, m_fullResponse);
             assert response.length() >= 3;
@@ -4,7 +4,14 @@ package net.sf.gogui.gtp;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import net.sf.gogui.go.GoColor;
 import static net.sf.gogui.go.GoColor.BLACK;
 import static net.sf.gogui.go.GoColor.WHITE;
@@ -299,6 +306,73 @@ public abstract class GtpClientBase
         @throws GtpError containing the response if the command fails. */
     public abstract String send(String command) throws GtpError;
 
+    /** Send a command asynchronously without timeout.
+        @param command The command.
+        @return The future response text.
+        @see #sendAsync(String,long) */
+    public CompletableFuture<String> sendAsync(String command)
+    {
+        return sendAsync(command, -1);
+    }
+
+    /** Send a command asynchronously.
+        The commands are sent in the order of the calls by a single I/O
+        thread of this client, which is created when needed and terminates
+        after some time without commands. The synchronous send functions
+        must not be used while asynchronous commands are pending.
+        If the returned future is cancelled or the timeout expires while
+        the command is in progress, the command is interrupted, if the
+        program supports it (see isInterruptSupported()). Commands that are
+        cancelled before they were sent are skipped.
+        @param command The command.
+        @param timeout Timeout in milliseconds, measured from the start of
+        sending the command, or -1 for no timeout. If the timeout expires,
+        the future completes exceptionally with a GtpError.
+        @return The future response text. A failed command completes the
+        future exceptionally with a GtpError. */
+    public CompletableFuture<String> sendAsync(final String command,
+                                               final long timeout)
+    {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        future.whenComplete((response, e) -> {
+                if (e != null)
+                    interruptAsync(future);
+            });
+        getIOExecutor().execute(() -> runAsync(command, timeout, future));
+        return future;
+    }
+
+    /** Send several commands.
+        Subclasses that communicate through streams can write the commands
+        without waiting for each response (see GtpClient#sendBatch). This
+        implementation sends the commands one at a time.
+        All commands are sent, even if one of them fails.
+        @param commands The commands.
+        @return The response texts of the commands.
+        @throws GtpError The error of the first failed command. */
+    public String[] sendBatch(List<String> commands) throws GtpError
+    {
+        String[] result = new String[commands.size()];
+        GtpError error = null;
+        for (int i = 0; i < result.length; ++i)
+        {
+            try
+            {
+                result[i] = send(commands.get(i));
+            }
+            catch (GtpError e)
+            {
+                if (isProgramDead())
+                    throw e;
+                if (error == null)
+                    error = e;
+            }
+        }
+        if (error != null)
+            throw error;
+        return result;
+    }
+
     /** Send comment.
         @param comment comment line (must start with '#'). */
     public abstract void sendComment(String comment);
@@ -366,6 +440,14 @@ public abstract class GtpClientBase
             throw new GtpError("Interrupt not supported");
     }
 
+    /** Send a command in the I/O thread used by sendAsync().
+        The default implementation calls send(). Subclasses can reimplement
+        this function, if send() must be called from a certain thread. */
+    protected String sendInIOThread(String command) throws GtpError
+    {
+        return send(command);
+    }
+
     /** Enable lower case mode for play commands.
         For engines that don't implement GTP correctly and understand
         only lower case moves in the play command. */
@@ -378,8 +460,21 @@ public abstract class GtpClientBase
         Should do nothing if the concrete class does not create a process. */
     public abstract void waitForExit();
 
+    /** Time after which the idle I/O thread of sendAsync() terminates. */
+    private static final long IO_THREAD_KEEP_ALIVE = 60000;
+
+    /** Timer for the timeouts of sendAsync(), shared by all clients. */
+    private static ScheduledThreadPoolExecutor s_timer;
+
     private boolean m_isInterruptCommentSupported;
 
+    /** Asynchronous command in progress, protected by m_asyncLock. */
+    private CompletableFuture<String> m_asyncCommand;
+
+    private final Object m_asyncLock = new Object();
+
+    private ThreadPoolExecutor m_ioExecutor;
+
     protected String m_name;
 
     private String m_pid;
@@ -393,8 +488,102 @@ public abstract class GtpClientBase
 
     private String[] m_supportedCommands;
 
+    private synchronized ThreadPoolExecutor getIOExecutor()
+    {
+        if (m_ioExecutor == null)
+        {
+            m_ioExecutor =
+                new ThreadPoolExecutor(1, 1, IO_THREAD_KEEP_ALIVE,
+                                       TimeUnit.MILLISECONDS,
+                                       new LinkedBlockingQueue<Runnable>(),
+                                       (runnable) -> {
+                                           Thread thread =
+                                               new Thread(runnable,
+                                                          "GtpClient I/O");
+                                           thread.setDaemon(true);
+                                           return thread;
+                                       });
+            m_ioExecutor.allowCoreThreadTimeOut(true);
+        }
+        return m_ioExecutor;
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getTimer()
+    {
+        if (s_timer == null)
+        {
+            s_timer = new ScheduledThreadPoolExecutor(1, (runnable) -> {
+                    Thread thread = new Thread(runnable, "GtpClient timeout");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            s_timer.setRemoveOnCancelPolicy(true);
+        }
+        return s_timer;
+    }
+
+    /** Interrupt an asynchronous command, if it is still in progress. */
+    private void interruptAsync(CompletableFuture<String> future)
+    {
+        synchronized (m_asyncLock)
+        {
+            if (m_asyncCommand != future || ! isInterruptSupported())
+                return;
+            try
+            {
+                sendInterrupt();
+            }
+            catch (GtpError e)
+            {
+                System.err.println(e.getMessage());
+            }
+        }
+    }
+
     private void printInterrupted()
     {
         System.err.println("GtpClient: InterruptedException");
     }
+
+    private void runAsync(final String command, long timeout,
+                          final CompletableFuture<String> future)
+    {
+        synchronized (m_asyncLock)
+        {
+            if (future.isDone())
+                // Cancelled before it was sent
+                return;
+            m_asyncCommand = future;
+        }
+        ScheduledFuture<?> timer = null;
+        if (timeout >= 0)
+            timer = getTimer().schedule(() -> {
+                    GtpError error =
+                        new GtpError("Timeout after " + timeout + " ms");
+                    error.setCommand(command);
+                    future.completeExceptionally(error);
+                }, timeout, TimeUnit.MILLISECONDS);
+        String response = null;
+        Exception error = null;
+        try
+        {
+            response = sendInIOThread(command);
+        }
+        catch (GtpError | RuntimeException e)
+        {
+            error = e;
+        }
+        if (timer != null)
+            timer.cancel(false);
+        // Reset m_asyncCommand before completing the future, otherwise
+        // the completion handler would interrupt the finished command
+        synchronized (m_asyncLock)
+        {
+            m_asyncCommand = null;
+        }
+        if (error == null)
+            future.complete(response);
+        else
+            future.completeExceptionally(error);
+    }
 }
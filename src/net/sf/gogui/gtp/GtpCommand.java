@@ -15,7 +15,7 @@ import net.sf.gogui.util.StringUtil;
     Handles parsing the command line and storing the response to the command.
     Arguments containing whitespaces can be quoted with double quotes (").
     The responses are allowed to contain consecutive new lines.
-    They will be replaced in GtpEngine.mainLoop() by lines containing a single
+    They will be replaced in GtpEngine.respond() by lines containing a single
     space to form a valid GTP response. */
 public class GtpCommand
 {
@@ -3,14 +3,22 @@
 package net.sf.gogui.gtp;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import net.sf.gogui.go.GoPoint;
 import net.sf.gogui.go.InvalidPointException;
 import net.sf.gogui.go.PointList;
@@ -23,12 +31,12 @@ public class GtpEngine
     {
         this.m_commands = new TreeMap<>();
         m_log = log;
-        register("known_command", this::cmdKnownCommand);
-        register("list_commands", this::cmdListCommands);
-        register("name", this::cmdName);
-        register("protocol_version", this::cmdProtocolVersion);
+        registerConcurrent("known_command", this::cmdKnownCommand);
+        registerConcurrent("list_commands", this::cmdListCommands);
+        registerConcurrent("name", this::cmdName);
+        registerConcurrent("protocol_version", this::cmdProtocolVersion);
         register("quit", this::cmdQuit);
-        register("version", this::cmdVersion);
+        registerConcurrent("version", this::cmdVersion);
     }
 
     public void cmdKnownCommand(GtpCommand cmd) throws GtpError
@@ -120,33 +128,62 @@ public class GtpEngine
      * @throws java.io.IOException */
     public void mainLoop(InputStream in, OutputStream out) throws IOException
     {
-        m_out = new PrintStream(out);
+        m_out = new BufferedWriter(new OutputStreamWriter(out), 8192);
         m_in = in;
         ReadThread readThread = new ReadThread(this, m_in, m_log != null);
         readThread.start();
-        while (true)
+        ExecutorService executor = null;
+        if (m_numberThreads > 0)
+            executor = Executors.newFixedThreadPool(m_numberThreads, (r) -> {
+                    Thread thread = new Thread(r, "GtpEngine worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try
         {
-            GtpCommand cmd = readThread.getCommand();
-            if (cmd == null)
-                return;
-            boolean status = true;
-            String response;
-            try
+            while (true)
             {
-                handleCommand(cmd);
-                response = cmd.getResponse().toString();
+                GtpCommand cmd = readThread.getCommand();
+                if (cmd == null)
+                    return;
+                PendingResponse pending = new PendingResponse(cmd);
+                if (executor != null && isConcurrent(cmd.getCommand()))
+                {
+                    synchronized (m_pending)
+                    {
+                        m_pending.add(pending);
+                    }
+                    executor.execute(() -> {
+                            try
+                            {
+                                execute(pending);
+                            }
+                            catch (RuntimeException e)
+                            {
+                                StringUtil.printException(e);
+                                pending.m_status = false;
+                                pending.m_response = e.toString();
+                            }
+                            finish(pending);
+                        });
+                    continue;
+                }
+                waitPending();
+                execute(pending);
+                respond(pending);
+                // TODO: Use only quit flag not GtpCommand.isQuit once all
+                // subclasses use the new registered quit command
+                if (m_quit || cmd.isQuit())
+                    return;
             }
-            catch (GtpError e)
+        }
+        finally
+        {
+            if (executor != null)
             {
-                response = e.getMessage();
-                status = false;
+                waitPending();
+                executor.shutdown();
             }
-            String sanitizedResponse = response.replaceAll("\\n\\n", "\n \n");
-            respond(status, cmd.hasId(), cmd.getId(), sanitizedResponse);
-            // TODO: Use only quit flag not GtpCommand.isQuit once all
-            // subclasses use the new registered quit command
-            if (m_quit || cmd.isQuit())
-                return;
         }
     }
 
@@ -204,7 +241,16 @@ public class GtpEngine
         No newline will be appended. */
     public void printInvalidResponse(String text)
     {
-        m_out.print(text);
+        try
+        {
+            m_out.write(text);
+            m_out.flush();
+        }
+        catch (IOException e)
+        {
+            // Ignored like in PrintStream, the main loop ends when the
+            // input stream is closed
+        }
     }
 
     /** *  Register new command.If a command was already registered with the same name,
@@ -217,24 +263,17 @@ public class GtpEngine
         m_commands.put(command, callback);
     }
 
+    /** Write a response to the output stream.
+        Empty lines in the response are replaced by lines containing a single
+        space to form a valid GTP response.
+        @param status true for a success response, false for an error.
+        @param hasId true, if the command had an ID.
+        @param id The ID of the command.
+        @param response The response text. */
     public void respond(boolean status, boolean hasId, int id,
                         String response)
     {
-        StringBuilder fullResponse = new StringBuilder(256);
-        if (status)
-            fullResponse.append('=');
-        else
-            fullResponse.append('?');
-        if (hasId)
-            fullResponse.append(id);
-        fullResponse.append(' ');
-        fullResponse.append(response);
-        if (response.length() == 0
-            || response.charAt(response.length() - 1) != '\n')
-            fullResponse.append('\n');
-        m_out.println(fullResponse);
-        if (m_log != null)
-            m_log.println(fullResponse);
+        respond(status, hasId, id, (CharSequence)response);
     }
 
     /** Set quit flag for terminating command loop. */
@@ -257,10 +296,43 @@ public class GtpEngine
         m_version = version;
     }
 
+    /** Register a command that can be executed concurrently.
+        Like register(), but if concurrent execution is enabled with
+        setConcurrent(), the command can run in a worker thread at the same
+        time as other concurrent commands. The callback must not change the
+        state of the engine and must be thread-safe.
+        @param command The command name.
+        @param callback The callback. */
+    public final void registerConcurrent(String command,
+                                         GtpCallback callback)
+    {
+        register(command, callback);
+        m_concurrentCommands.add(command);
+    }
+
+    /** Enable concurrent execution of commands.
+        Commands registered with registerConcurrent() are handled by a pool
+        of worker threads, while the main loop continues reading commands.
+        Other commands wait until all previous concurrent commands are
+        finished, so they never overlap with them. Must be called before
+        mainLoop().
+        @param numberThreads The number of worker threads, 0 disables
+        concurrent execution (the default).
+        @param orderById If false, all responses are written in the order of
+        the commands. If true, responses to commands with an ID are written
+        as soon as they are finished, which may be out of order. */
+    public void setConcurrent(int numberThreads, boolean orderById)
+    {
+        assert numberThreads >= 0;
+        m_numberThreads = numberThreads;
+        m_orderById = orderById;
+    }
+
     public final void unregister(String command)
     {
         if (m_commands.containsKey(command))
             m_commands.remove(command);
+        m_concurrentCommands.remove(command);
     }
 
     protected boolean isInterrupted()
@@ -268,6 +340,38 @@ public class GtpEngine
         return m_interrupted;
     }
 
+    private static final class PendingResponse
+    {
+        public PendingResponse(GtpCommand command)
+        {
+            m_command = command;
+        }
+
+        public final GtpCommand m_command;
+
+        public boolean m_isFinished;
+
+        public boolean m_status;
+
+        public CharSequence m_response;
+    }
+
+    private boolean m_orderById;
+
+    private int m_numberThreads;
+
+    /** Concurrent commands, which are not finished or whose response is
+        not written yet, in the order of the commands. */
+    private final ArrayDeque<PendingResponse> m_pending = new ArrayDeque<>();
+
+    private final Set<String> m_concurrentCommands = new HashSet<>();
+
+    /** Reused buffer for the full response. */
+    private final StringBuilder m_fullResponse = new StringBuilder(256);
+
+    /** Reused buffer for copying m_fullResponse to the writer. */
+    private char[] m_chars = new char[256];
+
     private volatile boolean m_interrupted;
 
     private boolean m_quit;
@@ -285,7 +389,125 @@ public class GtpEngine
 
     private final PrintStream m_log;
 
-    private PrintStream m_out;
+    private Writer m_out;
+
+    private void execute(PendingResponse pending)
+    {
+        GtpCommand cmd = pending.m_command;
+        try
+        {
+            handleCommand(cmd);
+            pending.m_status = true;
+            pending.m_response = cmd.getResponse();
+        }
+        catch (GtpError e)
+        {
+            pending.m_status = false;
+            pending.m_response = e.getMessage();
+        }
+    }
+
+    /** Mark a concurrent command as finished and write all responses that
+        can be written. */
+    private void finish(PendingResponse pending)
+    {
+        synchronized (m_pending)
+        {
+            pending.m_isFinished = true;
+            if (m_orderById && pending.m_command.hasId())
+            {
+                m_pending.remove(pending);
+                respond(pending);
+            }
+            while (! m_pending.isEmpty() && m_pending.peek().m_isFinished)
+                respond(m_pending.poll());
+            m_pending.notifyAll();
+        }
+    }
+
+    private boolean isConcurrent(String command)
+    {
+        return m_concurrentCommands.contains(command);
+    }
+
+    private void respond(PendingResponse pending)
+    {
+        GtpCommand cmd = pending.m_command;
+        respond(pending.m_status, cmd.hasId(), cmd.getId(),
+                pending.m_response);
+    }
+
+    private void respond(boolean status, boolean hasId, int id,
+                         CharSequence response)
+    {
+        synchronized (m_fullResponse)
+        {
+            writeResponse(status, hasId, id, response);
+        }
+    }
+
+    /** Wait until all concurrent commands are finished. */
+    private void waitPending()
+    {
+        synchronized (m_pending)
+        {
+            while (! m_pending.isEmpty())
+            {
+                try
+                {
+                    m_pending.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    System.err.println("Interrupted");
+                    return;
+                }
+            }
+        }
+    }
+
+    private void writeResponse(boolean status, boolean hasId, int id,
+                               CharSequence response)
+    {
+        StringBuilder fullResponse = m_fullResponse;
+        fullResponse.setLength(0);
+        if (status)
+            fullResponse.append('=');
+        else
+            fullResponse.append('?');
+        if (hasId)
+            fullResponse.append(id);
+        fullResponse.append(' ');
+        char last = ' ';
+        int length = response.length();
+        for (int i = 0; i < length; ++i)
+        {
+            char c = response.charAt(i);
+            if (c == '\n' && last == '\n')
+                fullResponse.append(' ');
+            fullResponse.append(c);
+            last = c;
+        }
+        if (last != '\n')
+            fullResponse.append('\n');
+        fullResponse.append('\n');
+        length = fullResponse.length();
+        if (m_chars.length < length)
+            m_chars = new char[Math.max(length, 2 * m_chars.length)];
+        fullResponse.getChars(0, length, m_chars, 0);
+        try
+        {
+            m_out.write(m_chars, 0, length);
+            m_out.flush();
+        }
+        catch (IOException e)
+        {
+            // Ignored like in PrintStream, the main loop ends when the
+            // input stream is closed
+        }
+        if (m_log != null)
+            m_log.print(fullResponse);
+    }
 }
 
 /** Thread reading the command stream.
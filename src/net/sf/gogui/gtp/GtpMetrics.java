@@ -0,0 +1,325 @@
+// GtpMetrics.java
+
+package net.sf.gogui.gtp;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import net.sf.gogui.util.Table;
+
+/** Statistics of the GTP traffic of a program.
+    Records for each command name the number of commands and errors, a
+    latency histogram and the number of characters sent and received (line
+    terminators count as one character; the number of bytes on the streams
+    depends on the encoding). Also counts the characters written by the
+    program to standard error.
+    The latency histogram uses 16 intervals per power of two, so percentiles
+    have a relative error of less than 7 percent. The maximum is exact.
+    This class is thread-safe. */
+public class GtpMetrics
+{
+    /** Statistics for one command name.
+        Instances returned by GtpMetrics are copies, which are not updated
+        anymore. */
+    public static final class CommandMetrics
+    {
+        /** Get the number of characters received.
+            @return The number of characters of the responses. */
+        public long getCharsIn()
+        {
+            return m_charsIn;
+        }
+
+        /** Get the number of characters sent.
+            @return The number of characters of the commands. */
+        public long getCharsOut()
+        {
+            return m_charsOut;
+        }
+
+        public int getCount()
+        {
+            return m_count;
+        }
+
+        /** Get the maximum latency.
+            @return The maximum latency in nanoseconds. */
+        public long getMaxTime()
+        {
+            return m_maxTime;
+        }
+
+        /** Get the mean latency.
+            @return The mean latency in nanoseconds. */
+        public double getMeanTime()
+        {
+            if (m_count == 0)
+                return 0;
+            return (double)m_totalTime / m_count;
+        }
+
+        public String getName()
+        {
+            return m_name;
+        }
+
+        public int getNumberErrors()
+        {
+            return m_numberErrors;
+        }
+
+        /** Get a percentile of the latency.
+            @param percent The percentile (0-100), e.g. 50 for the median.
+            @return The upper limit of the histogram interval containing the
+            percentile in nanoseconds, but not more than the maximum
+            latency. */
+        public long getPercentile(double percent)
+        {
+            if (m_count == 0)
+                return 0;
+            long target = (long)Math.ceil(percent / 100 * m_count);
+            target = Math.max(1, Math.min(m_count, target));
+            long sum = 0;
+            for (int i = 0; i < m_histogram.length; ++i)
+            {
+                sum += m_histogram[i];
+                if (sum >= target)
+                    return Math.min(getUpperLimit(i), m_maxTime);
+            }
+            return m_maxTime;
+        }
+
+        /** Get the sum of the latencies.
+            @return The total time in nanoseconds. */
+        public long getTotalTime()
+        {
+            return m_totalTime;
+        }
+
+        private int m_count;
+
+        private int m_numberErrors;
+
+        private long m_charsIn;
+
+        private long m_charsOut;
+
+        private long m_maxTime;
+
+        private long m_totalTime;
+
+        private final String m_name;
+
+        private final int[] m_histogram;
+
+        private CommandMetrics(String name)
+        {
+            m_name = name;
+            m_histogram = new int[NUMBER_INTERVALS];
+        }
+
+        private CommandMetrics(CommandMetrics metrics)
+        {
+            m_name = metrics.m_name;
+            m_count = metrics.m_count;
+            m_numberErrors = metrics.m_numberErrors;
+            m_charsIn = metrics.m_charsIn;
+            m_charsOut = metrics.m_charsOut;
+            m_maxTime = metrics.m_maxTime;
+            m_totalTime = metrics.m_totalTime;
+            m_histogram = metrics.m_histogram.clone();
+        }
+    }
+
+    /** Record a command.
+        @param command The command line (an optional ID is ignored for
+        determining the command name).
+        @param time The time from sending the command to receiving the
+        response in nanoseconds.
+        @param error true, if the response was a failure response.
+        @param charsOut The number of characters sent.
+        @param charsIn The number of characters received. */
+    public synchronized void add(String command, long time, boolean error,
+                                 int charsOut, int charsIn)
+    {
+        String name = getCommandName(command);
+        CommandMetrics metrics = m_commands.get(name);
+        if (metrics == null)
+        {
+            metrics = new CommandMetrics(name);
+            m_commands.put(name, metrics);
+        }
+        time = Math.max(0, time);
+        ++metrics.m_count;
+        if (error)
+            ++metrics.m_numberErrors;
+        metrics.m_charsIn += charsIn;
+        metrics.m_charsOut += charsOut;
+        metrics.m_maxTime = Math.max(metrics.m_maxTime, time);
+        metrics.m_totalTime += time;
+        ++metrics.m_histogram[getInterval(time)];
+    }
+
+    /** Record text written by the program to standard error.
+        @param n The number of characters. */
+    public synchronized void addStdErr(int n)
+    {
+        m_charsStdErr += n;
+    }
+
+    public synchronized void clear()
+    {
+        m_commands.clear();
+        m_charsStdErr = 0;
+    }
+
+    /** Get the statistics of all commands.
+        @return Copies of the statistics sorted by decreasing total time. */
+    public synchronized List<CommandMetrics> getCommands()
+    {
+        ArrayList<CommandMetrics> result =
+            new ArrayList<>(m_commands.size());
+        for (CommandMetrics metrics : m_commands.values())
+            result.add(new CommandMetrics(metrics));
+        Collections.sort(result, (m1, m2) ->
+                         Long.compare(m2.m_totalTime, m1.m_totalTime));
+        return result;
+    }
+
+    /** Get the statistics of a command.
+        @param name The command name.
+        @return A copy of the statistics or null, if the command was not
+        sent. */
+    public synchronized CommandMetrics getCommand(String name)
+    {
+        CommandMetrics metrics = m_commands.get(name);
+        if (metrics == null)
+            return null;
+        return new CommandMetrics(metrics);
+    }
+
+    public synchronized long getCharsStdErr()
+    {
+        return m_charsStdErr;
+    }
+
+    /** Print the statistics as a text table.
+        @param out The output stream.
+        @param title Title printed before the table, e.g. the name of the
+        program, or null. */
+    public void print(PrintStream out, String title)
+    {
+        List<CommandMetrics> commands = getCommands();
+        if (title != null)
+            out.println(title);
+        int width = 7;
+        for (CommandMetrics metrics : commands)
+            width = Math.max(width, metrics.getName().length());
+        String format = "%-" + width + "s %7s %6s %9s %8s %8s %8s %8s %8s"
+            + " %9s %9s\n";
+        out.print(String.format(Locale.ENGLISH, format, "Command", "Count",
+                                "Errors", "Total s", "Mean ms", "P50 ms",
+                                "P90 ms", "P99 ms", "Max ms", "Out kchar",
+                                "In kchar"));
+        long charsIn = 0;
+        long charsOut = 0;
+        for (CommandMetrics metrics : commands)
+        {
+            String[] row = getRow(metrics);
+            out.print(String.format(Locale.ENGLISH, format, (Object[])row));
+            charsIn += metrics.m_charsIn;
+            charsOut += metrics.m_charsOut;
+        }
+        out.print(String.format(Locale.ENGLISH,
+                                "Total out %.1f kchar, in %.1f kchar,"
+                                + " stderr %.1f kchar\n", charsOut / 1024.,
+                                charsIn / 1024., getCharsStdErr() / 1024.));
+    }
+
+    /** Convert the statistics to a table.
+        @return A table with one row per command name, sorted by decreasing
+        total time, and the number of characters of the standard error
+        output in the property CharsStdErr. */
+    public Table toTable()
+    {
+        ArrayList<String> columns = new ArrayList<>();
+        Collections.addAll(columns, "Command", "Count", "Errors", "TotalSec",
+                           "MeanMs", "P50Ms", "P90Ms", "P99Ms", "MaxMs",
+                           "OutKChars", "InKChars");
+        Table table = new Table(columns);
+        for (CommandMetrics metrics : getCommands())
+        {
+            table.startRow();
+            String[] row = getRow(metrics);
+            for (int i = 0; i < row.length; ++i)
+                table.set(i, row[i].trim());
+        }
+        table.setProperty("CharsStdErr", Long.toString(getCharsStdErr()));
+        return table;
+    }
+
+    /** Number of histogram intervals.
+        Covers all non-negative long values. */
+    private static final int NUMBER_INTERVALS = 60 * 16;
+
+    private long m_charsStdErr;
+
+    private final Map<String,CommandMetrics> m_commands = new TreeMap<>();
+
+    private static String getCommandName(String command)
+    {
+        String[] words = command.trim().split("\\s+", 3);
+        if (words.length > 1 && ! words[0].isEmpty()
+            && Character.isDigit(words[0].charAt(0)))
+            return words[1];
+        return words[0];
+    }
+
+    private static int getInterval(long time)
+    {
+        if (time < 32)
+            return (int)time;
+        int exponent = 63 - Long.numberOfLeadingZeros(time);
+        int sub = (int)(time >>> (exponent - 4)) & 15;
+        return (exponent - 3) * 16 + sub;
+    }
+
+    private static String[] getRow(CommandMetrics metrics)
+    {
+        return new String[] {
+            metrics.getName(),
+            Integer.toString(metrics.getCount()),
+            Integer.toString(metrics.getNumberErrors()),
+            String.format(Locale.ENGLISH, "%.3f",
+                          metrics.getTotalTime() / 1e9),
+            formatMillis(metrics.getMeanTime()),
+            formatMillis(metrics.getPercentile(50)),
+            formatMillis(metrics.getPercentile(90)),
+            formatMillis(metrics.getPercentile(99)),
+            formatMillis(metrics.getMaxTime()),
+            String.format(Locale.ENGLISH, "%.1f",
+                          metrics.getCharsOut() / 1024.),
+            String.format(Locale.ENGLISH, "%.1f",
+                          metrics.getCharsIn() / 1024.)
+        };
+    }
+
+    private static long getUpperLimit(int interval)
+    {
+        if (interval < 32)
+            return interval;
+        int exponent = interval / 16 + 3;
+        long sub = interval % 16;
+        long step = 1L << (exponent - 4);
+        return (16 + sub) * step + step - 1;
+    }
+
+    private static String formatMillis(double nanos)
+    {
+        return String.format(Locale.ENGLISH, "%.2f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,322 @@
+// GtpRecorder.java
+
+package net.sf.gogui.gtp;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Records a GTP session to a file.
+    Records the commands sent to a program, the responses and the standard
+    error output with the time relative to the start of the recording, such
+    that the session can be replayed with the original timing (see
+    gogui-replay).
+    The file is a text file with one event per line. A line starts with
+    a character for the type of the event ('&gt;' command, '&lt;' response,
+    '!' standard error), followed by a space, the time in microseconds, a
+    space and the text of the event. Backslashes, newlines and carriage
+    returns in the text are escaped with a backslash. Lines starting with
+    '#' are comments.
+    This class is thread-safe. */
+public class GtpRecorder
+{
+    /** A command and its response read from a recorded session. */
+    public static final class Exchange
+    {
+        /** Get the command line.
+            @return The command line without ID and with single spaces
+            between the words. */
+        public String getCommand()
+        {
+            return m_command;
+        }
+
+        /** Get the response text.
+            @return The response without status, ID and the terminating empty
+            line. */
+        public String getResponse()
+        {
+            return m_response;
+        }
+
+        /** Get the text written to standard error while the command was
+            executed.
+            @return The text, empty if there was no output. */
+        public String getStdErr()
+        {
+            return m_stdErr;
+        }
+
+        /** Get the time that the program needed for the command.
+            For commands that were sent before the response to the previous
+            command was received, the time starts at the previous response.
+            @return The time in nanoseconds. */
+        public long getTime()
+        {
+            return m_time;
+        }
+
+        /** Check if the response was a failure response.
+            @return true, if the response status was '?'. */
+        public boolean isError()
+        {
+            return m_isError;
+        }
+
+        private boolean m_isError;
+
+        private long m_time;
+
+        private final long m_timeSent;
+
+        private final String m_command;
+
+        private String m_response = "";
+
+        private String m_stdErr = "";
+
+        private Exchange(String command, long timeSent)
+        {
+            m_command = command;
+            m_timeSent = timeSent;
+        }
+    }
+
+    /** Start a recording.
+        @param file The file to write to.
+        @param program The command line of the program, written as a comment
+        to the file, or null.
+        @throws IOException If the file cannot be created. */
+    public GtpRecorder(File file, String program) throws IOException
+    {
+        m_out = new BufferedWriter(new OutputStreamWriter(
+                                       new FileOutputStream(file), "UTF-8"));
+        m_startTime = System.nanoTime();
+        m_out.write("# GTP session recorded by GoGui\n");
+        if (program != null)
+            m_out.write("# Program: " + program + "\n");
+        m_out.flush();
+    }
+
+    /** Close the file.
+        Further events are ignored. */
+    public synchronized void close()
+    {
+        if (m_out == null)
+            return;
+        try
+        {
+            m_out.close();
+        }
+        catch (IOException e)
+        {
+            printError(e);
+        }
+        m_out = null;
+    }
+
+    /** Record a command.
+        @param command The command line as sent, including the ID. */
+    public void sentCommand(String command)
+    {
+        write('>', command, false);
+    }
+
+    /** Record a response.
+        @param response The full response including status, ID and the
+        terminating empty line. */
+    public void receivedResponse(String response)
+    {
+        write('<', response, true);
+    }
+
+    /** Record text written by the program to standard error.
+        @param text The text. */
+    public void receivedStdErr(String text)
+    {
+        write('!', text, false);
+    }
+
+    /** Read a recorded session.
+        Assigns the responses to the commands in the order in which they
+        were sent. Standard error output is assigned to the oldest command
+        that was not answered yet at the time it was received, output
+        received while no command was pending is ignored.
+        @param file The file to read.
+        @return The commands with responses. Commands without response at
+        the end of the file are not included.
+        @throws IOException If reading fails or the file has an invalid
+        format. */
+    public static List<Exchange> read(File file) throws IOException
+    {
+        ArrayList<Exchange> result = new ArrayList<>();
+        ArrayDeque<Exchange> pending = new ArrayDeque<>();
+        long lastResponseTime = 0;
+        try (BufferedReader reader =
+             new BufferedReader(new InputStreamReader(
+                                    new FileInputStream(file), "UTF-8")))
+        {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null)
+            {
+                ++lineNumber;
+                if (line.isEmpty() || line.charAt(0) == '#')
+                    continue;
+                int index = line.indexOf(' ', 2);
+                long time;
+                try
+                {
+                    if (line.length() < 3 || line.charAt(1) != ' '
+                        || index < 0)
+                        throw new NumberFormatException();
+                    time = Long.parseLong(line.substring(2, index)) * 1000;
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new IOException(file + ":" + lineNumber
+                                          + ": invalid line");
+                }
+                String text = unescape(line.substring(index + 1));
+                switch (line.charAt(0))
+                {
+                case '>':
+                    pending.add(new Exchange(normalize(text), time));
+                    break;
+                case '<':
+                    {
+                        Exchange exchange = pending.poll();
+                        if (exchange == null)
+                            throw new IOException(file + ":" + lineNumber
+                                                  + ": response without"
+                                                  + " command");
+                        exchange.m_time =
+                            time - Math.max(exchange.m_timeSent,
+                                            lastResponseTime);
+                        lastResponseTime = time;
+                        setResponse(exchange, text);
+                        result.add(exchange);
+                    }
+                    break;
+                case '!':
+                    if (! pending.isEmpty())
+                        pending.peek().m_stdErr += text;
+                    break;
+                default:
+                    throw new IOException(file + ":" + lineNumber
+                                          + ": invalid event type");
+                }
+            }
+        }
+        return result;
+    }
+
+    private final long m_startTime;
+
+    private Writer m_out;
+
+    private static String escape(String text, boolean isResponse)
+    {
+        int length = text.length();
+        // Do not write the terminating empty line of responses
+        if (isResponse && text.endsWith("\n\n"))
+            length -= 2;
+        StringBuilder buffer = new StringBuilder(length + 8);
+        for (int i = 0; i < length; ++i)
+        {
+            char c = text.charAt(i);
+            if (c == '\\')
+                buffer.append("\\\\");
+            else if (c == '\n')
+                buffer.append("\\n");
+            else if (c == '\r')
+                buffer.append("\\r");
+            else
+                buffer.append(c);
+        }
+        return buffer.toString();
+    }
+
+    /** Remove the ID and extra whitespace from a command line. */
+    private static String normalize(String command)
+    {
+        if (command.trim().isEmpty())
+            return "";
+        return new GtpCommand(command).getLine().trim().replaceAll("\\s+",
+                                                                   " ");
+    }
+
+    private static void printError(IOException e)
+    {
+        System.err.println("GtpRecorder: " + e.getMessage());
+    }
+
+    private static void setResponse(Exchange exchange, String text)
+    {
+        exchange.m_isError = (text.isEmpty() || text.charAt(0) != '=');
+        int i = 1;
+        int length = text.length();
+        while (i < length && Character.isDigit(text.charAt(i)))
+            ++i;
+        if (i < length && text.charAt(i) == ' ')
+            ++i;
+        exchange.m_response = text.substring(Math.min(i, length));
+    }
+
+    private static String unescape(String text)
+    {
+        if (text.indexOf('\\') < 0)
+            return text;
+        int length = text.length();
+        StringBuilder buffer = new StringBuilder(length);
+        for (int i = 0; i < length; ++i)
+        {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < length)
+            {
+                c = text.charAt(++i);
+                if (c == 'n')
+                    c = '\n';
+                else if (c == 'r')
+                    c = '\r';
+            }
+            buffer.append(c);
+        }
+        return buffer.toString();
+    }
+
+    private synchronized void write(char type, String text,
+                                    boolean isResponse)
+    {
+        if (m_out == null)
+            return;
+        long time = (System.nanoTime() - m_startTime) / 1000;
+        try
+        {
+            m_out.write(type);
+            m_out.write(' ');
+            m_out.write(Long.toString(time));
+            m_out.write(' ');
+            m_out.write(escape(text, isResponse));
+            m_out.write('\n');
+            // Flush at responses to keep the file usable if the program
+            // or the controller crashes
+            if (isResponse)
+                m_out.flush();
+        }
+        catch (IOException e)
+        {
+            printError(e);
+            close();
+        }
+    }
+}
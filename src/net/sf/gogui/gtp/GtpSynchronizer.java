@@ -2,6 +2,9 @@
 
 package net.sf.gogui.gtp;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
 import net.sf.gogui.game.TimeSettings;
@@ -25,6 +28,11 @@ import net.sf.gogui.util.ObjectUtil;
     engine outside this class. */
 public class GtpSynchronizer
 {
+    /** Estimated cost of loadsgf in number of GTP commands.
+        Accounts for writing the temporary file and for the engine parsing
+        it and replaying all moves. */
+    public static final int COST_LOADSGF = 10;
+
     /** Callback that is called after each change in the engine's move
         number.
         Necessary, because sending multiple undo or play commands can be
@@ -77,22 +85,40 @@ public class GtpSynchronizer
         m_isOutOfSync = false;
     }
 
+    /** Synchronize the engine with a board.
+        Keeps the moves in common with the current engine state and chooses
+        the cheapest of undoing and playing the remaining moves, a full
+        initialization and (if supported) loadsgf of a temporary file by the
+        estimated number of commands.
+        @param board The board.
+        @param komi The komi.
+        @param timeSettings The time settings.
+        @throws GtpError If the synchronization failed. */
     public void synchronize(ConstBoard board, Komi komi,
                             TimeSettings timeSettings) throws GtpError
     {
         int size = board.getSize();
         ConstBoard targetState = computeTargetState(board);
-        if (m_engineState == null || size != m_engineState.getSize()
-            || isSetupDifferent(targetState))
+        if (m_engineState == null || size != m_engineState.getSize())
         {
             init(board, komi, timeSettings);
             return;
         }
         m_isOutOfSync = true;
         ArrayList<Move> moves = new ArrayList<>();
-        int numberUndo = computeToPlay(moves, targetState);
-        if (numberUndo == 0 || m_isSupportedUndo || m_isSupportedGGUndo)
+        int numberUndo = 0;
+        int costUndo = Integer.MAX_VALUE;
+        if (! isSetupDifferent(targetState))
+        {
+            numberUndo = computeToPlay(moves, targetState);
+            int cost = getCostUndo(numberUndo);
+            if (cost < Integer.MAX_VALUE)
+                costUndo = cost + getCostPlay(moves.size());
+        }
+        if (costUndo <= getCostInit(targetState)
+            && costUndo <= getCostLoadSgf())
         {
+            boolean undoFailed = false;
             try
             {
                 undo(numberUndo);
@@ -102,17 +128,25 @@ public class GtpSynchronizer
                 // According to the GTP standard, undo may fail even if it is
                 // supported and there were moves played. In this case, we
                 // fall back to a full initialization.
-                init(board, komi, timeSettings);
+                undoFailed = true;
+            }
+            if (! undoFailed)
+            {
+                // Send komi/time_settings before play commands, some engines
+                // cannot handle them otherwise
+                sendGameInfo(komi, timeSettings);
+                play(moves);
+                m_isOutOfSync = false;
                 return;
             }
-            // Send komi/time_settings before play commands, some engines
-            // cannot handle them otherwise
-            sendGameInfo(komi, timeSettings);
-            play(moves);
+        }
+        if (getCostLoadSgf() < getCostInit(targetState)
+            && loadSgf(targetState, komi, timeSettings))
+        {
             m_isOutOfSync = false;
+            return;
         }
-        else
-            init(board, komi, timeSettings);
+        init(board, komi, timeSettings);
     }
 
     /** *  Send human move to engine.The move is not played on the board yet.This function is useful,
@@ -146,6 +180,9 @@ public class GtpSynchronizer
     {
         Move move = board.getLastMove();
         assert move != null;
+        if (m_engineState == null)
+            // Out of sync after a failed command, see sendBatch()
+            return;
         m_engineState.play(move);
         try
         {
@@ -166,6 +203,8 @@ public class GtpSynchronizer
 
     private boolean m_isSupportedHandicap;
 
+    private boolean m_isSupportedLoadSgf;
+
     private boolean m_isSupportedPlaySequence;
 
     private boolean m_isSupportedSetupPlayer;
@@ -269,6 +308,56 @@ public class GtpSynchronizer
         return i;
     }
 
+    /** Estimated cost of a full initialization.
+        @return The number of commands sent by init(). */
+    private int getCostInit(ConstBoard targetState)
+    {
+        int cost = 2;
+        if (targetState.getSetup(BLACK).size() > 0
+            || targetState.getSetup(WHITE).size() > 0)
+        {
+            ++cost;
+            if (! targetState.isSetupHandicap()
+                && targetState.getSetupPlayer() != null
+                && m_isSupportedSetupPlayer)
+                ++cost;
+        }
+        return cost + getCostPlay(targetState.getNumberMoves());
+    }
+
+    /** Estimated cost of loadsgf.
+        @return COST_LOADSGF or Integer.MAX_VALUE, if loadsgf is not
+        supported or failed before. */
+    private int getCostLoadSgf()
+    {
+        if (! m_isSupportedLoadSgf)
+            return Integer.MAX_VALUE;
+        return COST_LOADSGF;
+    }
+
+    /** Estimated cost of play(ArrayList<Move>).
+        @return The number of commands. */
+    private int getCostPlay(int numberMoves)
+    {
+        if (numberMoves > 1 && m_isSupportedPlaySequence)
+            return 1;
+        return numberMoves;
+    }
+
+    /** Estimated cost of undo(int).
+        @return The number of commands or Integer.MAX_VALUE, if undo is not
+        supported. */
+    private int getCostUndo(int n)
+    {
+        if (n == 0)
+            return 0;
+        if (m_isSupportedGGUndo && (n > 1 || ! m_isSupportedUndo))
+            return 1;
+        if (m_isSupportedUndo)
+            return n;
+        return Integer.MAX_VALUE;
+    }
+
     private boolean isSetupDifferent(ConstBoard targetState)
     {
         if (m_engineState.isSetupHandicap() != targetState.isSetupHandicap())
@@ -288,6 +377,7 @@ public class GtpSynchronizer
         m_isSupportedSetup = isSupported("gogui-setup");
         m_isSupportedSetupPlayer = isSupported("gogui-setup_player");
         m_isSupportedHandicap = isSupported("set_free_handicap");
+        m_isSupportedLoadSgf = isSupported("loadsgf");
     }
 
     private boolean isSupported(String command)
@@ -295,6 +385,68 @@ public class GtpSynchronizer
         return m_gtp.isSupported(command);
     }
 
+    /** Initialize the engine with loadsgf of a temporary file.
+        The file contains the setup stones and moves of the target state.
+        If loadsgf fails (e.g. because the engine runs on a different
+        computer and cannot read the file), it is not used again for this
+        engine.
+        @return false, if loadsgf could not be used. The engine state is
+        unknown then and a full initialization is necessary. */
+    private boolean loadSgf(ConstBoard targetState, Komi komi,
+                            TimeSettings timeSettings)
+    {
+        File file;
+        try
+        {
+            file = File.createTempFile("gogui-", ".sgf");
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+        try
+        {
+            // GTP arguments cannot contain spaces
+            if (file.getPath().matches(".*\\s.*"))
+            {
+                m_isSupportedLoadSgf = false;
+                return false;
+            }
+            try (PrintStream out = new PrintStream(file, "UTF-8"))
+            {
+                writeSgf(out, targetState);
+            }
+            m_engineState = null;
+            m_gtp.send("loadsgf " + file.getPath());
+            int size = targetState.getSize();
+            m_engineState = new Board(size);
+            ConstPointList setupBlack = targetState.getSetup(BLACK);
+            ConstPointList setupWhite = targetState.getSetup(WHITE);
+            if (targetState.isSetupHandicap())
+                m_engineState.setupHandicap(setupBlack);
+            else if (setupBlack.size() > 0 || setupWhite.size() > 0)
+                m_engineState.setup(setupBlack, setupWhite,
+                                    targetState.getSetupPlayer());
+            for (int i = 0; i < targetState.getNumberMoves(); ++i)
+                m_engineState.play(targetState.getMove(i));
+            // The engine may have taken komi and time settings from the file
+            m_komi = null;
+            m_timeSettings = null;
+            sendGameInfo(komi, timeSettings);
+            updateListener();
+            return true;
+        }
+        catch (IOException | GtpError e)
+        {
+            m_isSupportedLoadSgf = false;
+            return false;
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
     private void play(Move move) throws GtpError
     {
         m_gtp.sendPlay(move);
@@ -314,11 +466,30 @@ public class GtpSynchronizer
         }
         else
         {
-            for (int i = 0; i < moves.size(); ++i)
-            {
-                play(moves.get(i));
-                updateListener();
-            }
+            ArrayList<String> commands = new ArrayList<>(moves.size());
+            for (Move move : moves)
+                commands.add(m_gtp.getCommandPlay(move));
+            sendBatch(commands);
+            for (Move move : moves)
+                m_engineState.play(move);
+            updateListener();
+        }
+    }
+
+    /** Send a sequence of play or undo commands.
+        The commands are pipelined, so the engine can have executed commands
+        after a failed one. In this case, the engine state is unknown and the
+        next synchronize() will do a full initialization. */
+    private void sendBatch(ArrayList<String> commands) throws GtpError
+    {
+        try
+        {
+            m_gtp.sendBatch(commands);
+        }
+        catch (GtpError e)
+        {
+            m_engineState = null;
+            throw e;
         }
     }
 
@@ -397,6 +568,44 @@ public class GtpSynchronizer
         }
     }
 
+    private static void writeSgf(PrintStream out, ConstBoard board)
+    {
+        int size = board.getSize();
+        out.print("(;FF[4]CA[UTF-8]GM[1]SZ[" + size + "]");
+        ConstPointList setupBlack = board.getSetup(BLACK);
+        if (board.isSetupHandicap())
+            out.print("HA[" + setupBlack.size() + "]");
+        for (GoColor c : BLACK_WHITE)
+        {
+            ConstPointList setup = board.getSetup(c);
+            if (setup.size() == 0)
+                continue;
+            out.print(c == BLACK ? "AB" : "AW");
+            for (GoPoint p : setup)
+                out.print("[" + getSgfPoint(p, size) + "]");
+        }
+        GoColor setupPlayer = board.getSetupPlayer();
+        if (setupPlayer != null)
+            out.print("PL[" + setupPlayer.getUppercaseLetter() + "]");
+        out.print("\n");
+        for (int i = 0; i < board.getNumberMoves(); ++i)
+        {
+            Move move = board.getMove(i);
+            out.print(";" + move.getColor().getUppercaseLetter() + "["
+                      + getSgfPoint(move.getPoint(), size) + "]\n");
+        }
+        out.print(")\n");
+    }
+
+    private static String getSgfPoint(GoPoint p, int size)
+    {
+        if (p == null)
+            return "";
+        char x = (char)('a' + p.getX());
+        char y = (char)('a' + size - 1 - p.getY());
+        return new String(new char[] { x, y });
+    }
+
     private void undo(int n) throws GtpError
     {
         if (n == 0)
@@ -409,12 +618,12 @@ public class GtpSynchronizer
         else
         {
             assert m_isSupportedUndo;
+            ArrayList<String> commands = new ArrayList<>(n);
             for (int i = 0; i < n; ++i)
-            {
-                m_gtp.send("undo");
-                m_engineState.undo();
-                updateListener();
-            }
+                commands.add("undo");
+            sendBatch(commands);
+            m_engineState.undo(n);
+            updateListener();
         }
     }
 
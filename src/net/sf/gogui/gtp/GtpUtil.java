@@ -92,17 +92,77 @@ public final class GtpUtil
                 || c.equals("white"));
     }
 
+    /** Parse a board of colors.
+        Like parseStringBoard(), but converts the values directly from the
+        response without creating strings.
+        @param response The response with one line per row, the top row
+        first.
+        @param boardSize The board size.
+        @param result Array indexed by GoPoint.getIndex() with at least
+        GoPoint.NUMBER_INDEXES elements. Gets BLACK for "b" or "black", WHITE
+        for "w" or "white" (ignoring case) and EMPTY for all other values.
+        Elements of points not on the board are not changed.
+        @throws GtpResponseFormatError If the board is incomplete. */
+    public static void parseBlackWhiteBoard(CharSequence response,
+                                            int boardSize, GoColor[] result)
+        throws GtpResponseFormatError
+    {
+        ResponseScanner scanner = new ResponseScanner(response);
+        boolean hasToken = scanner.next();
+        for (int y = boardSize - 1; y >= 0; --y)
+        {
+            for (int x = 0; x < boardSize; ++x)
+            {
+                if (! (x == 0 ? hasToken : scanner.nextInLine()))
+                    throw new GtpResponseFormatError("Incomplete board");
+                result[GoPoint.getIndex(x, y)] = scanner.parseBlackWhite();
+            }
+            hasToken = scanner.nextLine();
+        }
+    }
+
     public static double[][] parseDoubleBoard(String response, int boardSize)
         throws GtpResponseFormatError
     {
+        double values[] = new double[GoPoint.NUMBER_INDEXES];
+        parseDoubleBoard(response, boardSize, values);
+        double result[][] = new double[boardSize][boardSize];
+        for (int x = 0; x < boardSize; ++x)
+            for (int y = 0; y < boardSize; ++y)
+                result[x][y] = values[GoPoint.getIndex(x, y)];
+        return result;
+    }
+
+    /** Parse a board of floating point numbers.
+        Converts the numbers directly from the response without creating
+        strings, which matters for analyze commands that are sent
+        frequently.
+        @param response The response with one line per row, the top row
+        first.
+        @param boardSize The board size.
+        @param result Array indexed by GoPoint.getIndex() with at least
+        GoPoint.NUMBER_INDEXES elements. Elements of points not on the board
+        are not changed.
+        @throws GtpResponseFormatError If the board is incomplete or
+        contains a value that is not a number. */
+    public static void parseDoubleBoard(CharSequence response, int boardSize,
+                                        double[] result)
+        throws GtpResponseFormatError
+    {
+        ResponseScanner scanner = new ResponseScanner(response);
+        boolean hasToken = scanner.next();
         try
         {
-            double result[][] = new double[boardSize][boardSize];
-            String s[][] = parseStringBoard(response, boardSize);
-            for (int x = 0; x < boardSize; ++x)
-                for (int y = 0; y < boardSize; ++y)
-                    result[x][y] = Double.parseDouble(s[x][y]);
-            return result;
+            for (int y = boardSize - 1; y >= 0; --y)
+            {
+                for (int x = 0; x < boardSize; ++x)
+                {
+                    if (! (x == 0 ? hasToken : scanner.nextInLine()))
+                        throw new GtpResponseFormatError("Incomplete board");
+                    result[GoPoint.getIndex(x, y)] = scanner.parseDouble();
+                }
+                hasToken = scanner.nextLine();
+            }
         }
         catch (NumberFormatException e)
         {
@@ -129,6 +189,14 @@ public final class GtpUtil
     {
         try
         {
+            if (s.indexOf('"') < 0)
+            {
+                PointList list = new PointList();
+                ResponseScanner scanner = new ResponseScanner(s);
+                while (scanner.next())
+                    list.add(scanner.parsePoint(boardSize));
+                return list;
+            }
             return GoPoint.parsePointList(s, boardSize);
         }
         catch (InvalidPointException e)
@@ -181,6 +249,20 @@ public final class GtpUtil
     {
         pointList.clear();
         stringList.clear();
+        if (s.indexOf('"') < 0)
+        {
+            ResponseScanner scanner = new ResponseScanner(s);
+            while (scanner.next())
+            {
+                GoPoint point = parsePoint(scanner, boardsize);
+                if (! scanner.next())
+                    throw new GtpResponseFormatError("Missing string");
+                pointList.add(point);
+                stringList.add(scanner.getToken());
+            }
+            return;
+        }
+        // Quoted strings
         String array[] = StringUtil.splitArguments(s);
         boolean nextIsPoint = true;
         GoPoint point = null;
@@ -312,4 +394,19 @@ public final class GtpUtil
     private GtpUtil()
     {
     }
+
+    private static GoPoint parsePoint(ResponseScanner scanner, int boardSize)
+        throws GtpResponseFormatError
+    {
+        try
+        {
+            return scanner.parsePoint(boardSize);
+        }
+        catch (InvalidPointException e)
+        {
+            throw new GtpResponseFormatError("Invalid point "
+                                             + scanner.getToken() + " (size "
+                                             + boardSize + ")");
+        }
+    }
 }
@@ -0,0 +1,238 @@
+// ResponseScanner.java
+
+package net.sf.gogui.gtp;
+
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.InvalidPointException;
+
+/** Splits a response into whitespace-separated tokens without creating
+    strings.
+    Simple points and numbers are converted directly from the characters of
+    the response; other forms are converted by the functions of GoPoint and
+    Double with the same result as if the token were a string. Does not
+    handle quoted tokens. */
+final class ResponseScanner
+{
+    public ResponseScanner(CharSequence text)
+    {
+        m_text = text;
+        m_length = text.length();
+    }
+
+    /** Get the current token.
+        @return The current token as a string. */
+    public String getToken()
+    {
+        return m_text.subSequence(m_start, m_end).toString();
+    }
+
+    /** Move to the next token in the current line.
+        @return false, if there are no more tokens in the current line. */
+    public boolean nextInLine()
+    {
+        while (m_pos < m_length)
+        {
+            char c = m_text.charAt(m_pos);
+            if (c == '\n' || ! Character.isWhitespace(c))
+                break;
+            ++m_pos;
+        }
+        if (m_pos == m_length || m_text.charAt(m_pos) == '\n')
+            return false;
+        scanToken();
+        return true;
+    }
+
+    /** Move to the next token.
+        @return false, if there are no more tokens. */
+    public boolean next()
+    {
+        while (m_pos < m_length
+               && Character.isWhitespace(m_text.charAt(m_pos)))
+            ++m_pos;
+        if (m_pos == m_length)
+            return false;
+        scanToken();
+        return true;
+    }
+
+    /** Move to the first token of the next line that contains a token.
+        @return false, if there are no more tokens. */
+    public boolean nextLine()
+    {
+        while (m_pos < m_length && m_text.charAt(m_pos) != '\n')
+            ++m_pos;
+        return next();
+    }
+
+    /** Convert the current token to a color.
+        @return BLACK for "b" or "black", WHITE for "w" or "white" (ignoring
+        case), EMPTY otherwise. */
+    public GoColor parseBlackWhite()
+    {
+        if (tokenEqualsIgnoreCase("b") || tokenEqualsIgnoreCase("black"))
+            return BLACK;
+        if (tokenEqualsIgnoreCase("w") || tokenEqualsIgnoreCase("white"))
+            return WHITE;
+        return EMPTY;
+    }
+
+    /** Convert the current token to a floating point number.
+        @return The number as returned by Double.parseDouble().
+        @throws NumberFormatException If the token is not a number. */
+    public double parseDouble()
+    {
+        int i = m_start;
+        boolean negative = false;
+        char c = m_text.charAt(i);
+        if (c == '-' || c == '+')
+        {
+            negative = (c == '-');
+            ++i;
+        }
+        long mantissa = 0;
+        int numberDigits = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+        boolean afterPoint = false;
+        for ( ; i < m_end; ++i)
+        {
+            c = m_text.charAt(i);
+            if (c >= '0' && c <= '9')
+            {
+                anyDigits = true;
+                if (mantissa == 0 && c == '0')
+                {
+                    // Leading zeros are not significant
+                    if (afterPoint)
+                        --exponent;
+                    continue;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                ++numberDigits;
+                if (afterPoint)
+                    --exponent;
+            }
+            else if (c == '.' && ! afterPoint)
+                afterPoint = true;
+            else
+                break;
+        }
+        if (i < m_end && anyDigits && (c == 'e' || c == 'E'))
+        {
+            ++i;
+            boolean negativeExponent = false;
+            if (i < m_end && (m_text.charAt(i) == '-'
+                              || m_text.charAt(i) == '+'))
+                negativeExponent = (m_text.charAt(i++) == '-');
+            int value = 0;
+            int start = i;
+            for ( ; i < m_end && i - start < 4; ++i)
+            {
+                c = m_text.charAt(i);
+                if (c < '0' || c > '9')
+                    break;
+                value = value * 10 + (c - '0');
+            }
+            if (i == start)
+                anyDigits = false;
+            exponent += (negativeExponent ? -value : value);
+        }
+        // The result is exact if mantissa and power of ten can be
+        // represented exactly as double, otherwise use Double.parseDouble
+        if (i < m_end || ! anyDigits || numberDigits > MAX_EXACT_DIGITS
+            || exponent < -MAX_EXACT_POWER || exponent > MAX_EXACT_POWER)
+            return Double.parseDouble(getToken());
+        double result = mantissa;
+        if (exponent < 0)
+            result /= POWERS_OF_TEN[-exponent];
+        else
+            result *= POWERS_OF_TEN[exponent];
+        return negative ? -result : result;
+    }
+
+    /** Convert the current token to a point.
+        @param boardSize The board size.
+        @return The point or null for "pass" (as GoPoint.parsePoint()).
+        @throws InvalidPointException If the token is not a valid point. */
+    public GoPoint parsePoint(int boardSize) throws InvalidPointException
+    {
+        int length = m_end - m_start;
+        char xChar = Character.toUpperCase(m_text.charAt(m_start));
+        if (length >= 2 && length <= 3 && xChar >= 'A' && xChar <= 'Z')
+        {
+            int y = 0;
+            int i;
+            for (i = m_start + 1; i < m_end; ++i)
+            {
+                char c = m_text.charAt(i);
+                if (c < '0' || c > '9')
+                    break;
+                y = y * 10 + (c - '0');
+            }
+            if (i == m_end)
+            {
+                if (xChar >= 'J')
+                    --xChar;
+                int x = xChar - 'A';
+                --y;
+                if (x < 0 || x >= boardSize || y < 0 || y >= boardSize)
+                    throw new InvalidPointException(getToken());
+                return GoPoint.get(x, y);
+            }
+        }
+        return GoPoint.parsePoint(getToken(), boardSize);
+    }
+
+    /** Maximum number of significant digits that are converted directly.
+        10^15 is less than 2^53. */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    /** Maximum power of ten that can be represented exactly as double. */
+    private static final int MAX_EXACT_POWER = 22;
+
+    private static final double[] POWERS_OF_TEN =
+        new double[MAX_EXACT_POWER + 1];
+
+    static
+    {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_EXACT_POWER; ++i)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private int m_pos;
+
+    private int m_start;
+
+    private int m_end;
+
+    private final int m_length;
+
+    private final CharSequence m_text;
+
+    private void scanToken()
+    {
+        m_start = m_pos;
+        while (m_pos < m_length
+               && ! Character.isWhitespace(m_text.charAt(m_pos)))
+            ++m_pos;
+        m_end = m_pos;
+    }
+
+    private boolean tokenEqualsIgnoreCase(String s)
+    {
+        int length = s.length();
+        if (m_end - m_start != length)
+            return false;
+        for (int i = 0; i < length; ++i)
+            if (Character.toLowerCase(m_text.charAt(m_start + i))
+                != s.charAt(i))
+                return false;
+        return true;
+    }
+}
@@ -55,8 +55,8 @@ public final class AnalyzeShow
         {
         case BWBOARD:
             {
-                String b[][] = GtpUtil.parseStringBoard(response, size);
-                GuiBoardUtil.showBWBoard(guiBoard, b);
+                GtpUtil.parseBlackWhiteBoard(response, size, s_colorBoard);
+                GuiBoardUtil.showBWBoard(guiBoard, s_colorBoard);
             }
             break;
         case CBOARD:
@@ -67,8 +67,8 @@ public final class AnalyzeShow
             break;
         case DBOARD:
             {
-                double b[][] = GtpUtil.parseDoubleBoard(response, size);
-                GuiBoardUtil.showDoubleBoard(guiBoard, b);
+                GtpUtil.parseDoubleBoard(response, size, s_doubleBoard);
+                GuiBoardUtil.showDoubleBoard(guiBoard, s_doubleBoard);
             }
             break;
         case GFX:
@@ -428,6 +428,16 @@ public final class AnalyzeShow
     {
     }
 
+    /** Reused array for parsing BWBOARD responses.
+        Only used in the event dispatch thread. */
+    private static final GoColor[] s_colorBoard =
+        new GoColor[GoPoint.NUMBER_INDEXES];
+
+    /** Reused array for parsing DBOARD responses.
+        Only used in the event dispatch thread. */
+    private static final double[] s_doubleBoard =
+        new double[GoPoint.NUMBER_INDEXES];
+
     private static GoColor getColor(ConstBoard board, GoPoint pointArg,
                                     ConstPointList pointListArg)
     {
@@ -120,6 +120,20 @@ public final class GuiBoardUtil
         return result;
     }
 
+    public static PointList getSelected(GuiBoard guiBoard)
+    {
+        int size = guiBoard.getBoardSize();
+        PointList result = new PointList();
+        for (int x = 0; x < size; ++x)
+            for (int y = 0; y < size; ++y)
+            {
+                GoPoint point = GoPoint.get(x, y);
+                if (guiBoard.getSelect(point))
+                    result.add(point);
+            }
+        return result;
+    }
+
     public static boolean[][] getSelects(GuiBoard guiBoard)
     {
         int size = guiBoard.getBoardSize();
@@ -188,6 +202,19 @@ public final class GuiBoardUtil
             }
     }
 
+    /** Show a board of colors as territory.
+        @param guiBoard The board.
+        @param board The colors indexed by GoPoint.getIndex(), as returned
+        by GtpUtil.parseBlackWhiteBoard(). */
+    public static void showBWBoard(GuiBoard guiBoard, GoColor[] board)
+    {
+        int size = guiBoard.getBoardSize();
+        for (int x = 0; x < size; ++x)
+            for (int y = 0; y < size; ++y)
+                guiBoard.setTerritory(GoPoint.get(x, y),
+                                      board[GoPoint.getIndex(x, y)]);
+    }
+
     /**
      * @param guiBoard *  @deprecated This function was renamed to showMoves(). The forwarding
         functions may be removed in the future
@@ -215,6 +242,19 @@ public final class GuiBoardUtil
                 guiBoard.setInfluence(GoPoint.get(x, y), board[x][y]);
     }
 
+    /** Show a board of floating point numbers as influence.
+        @param guiBoard The board.
+        @param board The values indexed by GoPoint.getIndex(), as returned
+        by GtpUtil.parseDoubleBoard(). */
+    public static void showDoubleBoard(GuiBoard guiBoard, double[] board)
+    {
+        int size = guiBoard.getBoardSize();
+        for (int x = 0; x < size; ++x)
+            for (int y = 0; y < size; ++y)
+                guiBoard.setInfluence(GoPoint.get(x, y),
+                                      board[GoPoint.getIndex(x, y)]);
+    }
+
     public static void showStringBoard(GuiBoard guiBoard,
                                        String[][] board)
     {
@@ -4,6 +4,7 @@ package net.sf.gogui.gui;
 
 import java.awt.Component;
 import java.text.MessageFormat;
+import java.util.List;
 import javax.swing.SwingUtilities;
 import net.sf.gogui.game.TimeSettings;
 import net.sf.gogui.go.ConstBoard;
@@ -18,8 +19,8 @@ import static net.sf.gogui.gui.I18n.i18n;
 /** Wrapper around gtp.GtpClient to be used in a GUI environment.
     Allows to send fast commands with the GtpClientBase.send() function
     immediately in the event dispatch thread and potentially slow commands in
-    a separate thread with a callback in the event thread after the command
-    finished.
+    the I/O thread of GtpClientBase.sendAsync() with a callback in the event
+    thread after the command finished.
     Fast commands are ones that the Go engine is supposed to answer quickly
     (like boardsize, play and undo), however they have a timeout to
     prevent the GUI to hang, if the program does not respond.
@@ -37,41 +38,6 @@ public class GuiGtpClient
         m_owner = owner;
         m_messageDialogs = messageDialogs;
         m_gtpSynchronizer = new GtpSynchronizer(this, listener, false);
-        Thread thread;
-        thread = new Thread() {
-            @Override
-            public void run() {
-                synchronized (m_mutex)
-                {
-                    boolean firstWait = true;
-                    while (true)
-                    {
-                        try
-                        {
-                            if (m_command == null || ! firstWait)
-                                m_mutex.wait();
-                        }
-                        catch (InterruptedException e)
-                        {
-                            System.err.println("Interrupted");
-                        }
-                        firstWait = false;
-                        m_response = null;
-                        m_exception = null;
-                        try
-                        {
-                            m_response = m_gtp.send(m_command);
-                        }
-                        catch (GtpError e)
-                        {
-                            m_exception = e;
-                        }
-                        SwingUtilities.invokeLater(m_callback);
-                    }
-                }
-            }
-        };
-        thread.start();
     }
 
     @Override
@@ -153,17 +119,24 @@ public class GuiGtpClient
     /** Send asynchronous command.
      * @param command
      * @param callback */
-    public void send(String command, Runnable callback)
+    public void send(String command, final Runnable callback)
     {
         assert SwingUtilities.isEventDispatchThread();
         assert ! m_commandInProgress;
-        synchronized (m_mutex)
-        {
-            m_command = command;
-            m_callback = callback;
-            m_commandInProgress = true;
-            m_mutex.notifyAll();
-        }
+        m_commandInProgress = true;
+        sendAsync(command).whenComplete((response, e) -> {
+                synchronized (m_mutex)
+                {
+                    m_response = response;
+                    if (e == null)
+                        m_exception = null;
+                    else if (e instanceof GtpError)
+                        m_exception = (GtpError)e;
+                    else
+                        m_exception = new GtpError(e.toString());
+                }
+                SwingUtilities.invokeLater(callback);
+            });
     }
 
     @Override
@@ -184,6 +157,29 @@ public class GuiGtpClient
         return m_gtp.send(command, TIMEOUT, timeoutCallback);
     }
 
+    /** Send commands in event dispatch thread.
+        The commands are pipelined, see GtpClient#sendBatch.
+     * @return
+     * @throws net.sf.gogui.gtp.GtpError */
+    @Override
+    public String[] sendBatch(List<String> commands) throws GtpError
+    {
+        assert SwingUtilities.isEventDispatchThread();
+        assert ! m_commandInProgress;
+        TimeoutCallback timeoutCallback = new TimeoutCallback(null);
+        return m_gtp.sendBatch(commands, TIMEOUT, timeoutCallback);
+    }
+
+    /** Send command of sendAsync() with the wrapped client.
+        Asynchronous commands run in the I/O thread and must not use the
+        send functions of this class, which may only be called in the event
+        dispatch thread. */
+    @Override
+    protected String sendInIOThread(String command) throws GtpError
+    {
+        return m_gtp.send(command);
+    }
+
     public void setAutoNumber(boolean enable)
     {
         m_gtp.setAutoNumber(enable);
@@ -278,9 +274,5 @@ public class GuiGtpClient
 
     private final Object m_mutex = new Object();
 
-    private Runnable m_callback;
-
-    private String m_command;
-
     private String m_response;
 }
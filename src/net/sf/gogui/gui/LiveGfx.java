@@ -2,10 +2,14 @@
 
 package net.sf.gogui.gui;
 
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.SwingUtilities;
 
 /** Parse standard error of a GTP engine for GoGui live graphics commands.
-    See chapter "Live Graphics" in the GoGui documentation. */
+    See chapter "Live Graphics" in the GoGui documentation.
+    Each live graphics command replaces the previous one. If several
+    commands arrive before the event dispatch thread shows the first one,
+    only the last one is shown. */
 public class LiveGfx
 {
     public interface Listener
@@ -61,14 +65,20 @@ public class LiveGfx
 
     private boolean m_duringMultiLineResponse;
 
+    /** Text of the last command that was not shown yet or null. */
+    private final AtomicReference<String> m_pending =
+        new AtomicReference<>();
+
     private final Listener m_listener;
 
     private final StringBuilder m_response = new StringBuilder(1024);
 
-    private void showGfx(final String text)
+    private void showGfx(String text)
     {
+        if (m_pending.getAndSet(text) != null)
+            return;
         SwingUtilities.invokeLater(() -> {
-            m_listener.showLiveGfx(text);
+            m_listener.showLiveGfx(m_pending.getAndSet(null));
         });
     }
 }
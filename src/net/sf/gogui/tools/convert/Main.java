@@ -8,6 +8,7 @@ import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Locale;
+import net.sf.gogui.binary.BinaryWriter;
 import net.sf.gogui.game.ConstGameTree;
 import net.sf.gogui.gamefile.GameReader;
 import net.sf.gogui.sgf.SgfWriter;
@@ -19,7 +20,7 @@ import net.sf.gogui.util.StringUtil;
 import net.sf.gogui.version.Version;
 import net.sf.gogui.xml.XmlWriter;
 
-/** Convert SGF and Jago XML Go game files to other formats. */
+/** Convert SGF, Jago XML and binary Go game files to other formats. */
 public final class Main
 {
     /** Main function.
@@ -72,6 +73,7 @@ public final class Main
                     format =
                         FileUtil.getExtension(out).toLowerCase(Locale.ENGLISH);
                 if (! format.equals("sgf")
+                    && ! format.equals(GameReader.BINARY_EXTENSION)
                     && ! format.equals("tex")
                     && ! format.equals("xml"))
                     throw new ErrorMessage("Unknown format");
@@ -102,6 +104,10 @@ public final class Main
                         new SgfWriter(new FileOutputStream(out), tree,
                                 "gogui-convert", version);
                         break;
+                    case GameReader.BINARY_EXTENSION:
+                        new BinaryWriter(new FileOutputStream(out), tree,
+                                "gogui-convert:" + version);
+                        break;
                     case "tex":
                         new TexWriter(title, new FileOutputStream(out), tree);
                         break;
@@ -130,7 +136,7 @@ public final class Main
                   "-check   only check reading a file\n" +
                   "-config  config file\n" +
                   "-force   overwrite existing files\n" +
-                  "-format  output format (sgf,tex,xml)\n" +
+                  "-format  output format (ggb,sgf,tex,xml)\n" +
                   "-help    display this help and exit\n" +
                   "-title   use title\n" +
                   "-version print version and exit\n" +
@@ -314,9 +314,15 @@ public class Dummy
     @Override
     public void handleCommand(GtpCommand cmd) throws GtpError
     {
-        if (m_nextResponseFixed)
+        boolean nextResponseFixed;
+        // Synchronized, because concurrent commands can run in parallel
+        synchronized (this)
         {
+            nextResponseFixed = m_nextResponseFixed;
             m_nextResponseFixed = false;
+        }
+        if (nextResponseFixed)
+        {
             if (! m_nextStatus)
                 throw new GtpError(m_nextResponse);
             cmd.setResponse(m_nextResponse);
@@ -392,9 +398,9 @@ public class Dummy
         register("gogui-dummy-next_failure", this::cmdNextFailure);
         register("gogui-dummy-next_success", this::cmdNextSuccess);
         register("gogui-dummy-sboard", this::cmdSBoard);
-        register("gogui-dummy-sleep", this::cmdSleep);
-        register("echo", this::cmdEcho);
-        register("echo_err", this::cmdEchoErr);
+        registerConcurrent("gogui-dummy-sleep", this::cmdSleep);
+        registerConcurrent("echo", this::cmdEcho);
+        registerConcurrent("echo_err", this::cmdEchoErr);
         register("genmove", this::cmdGenmove);
         register("gogui-analyze_commands", this::cmdGoGuiAnalyzeCommands);
         register("gogui-interrupt", this::cmdInterrupt);
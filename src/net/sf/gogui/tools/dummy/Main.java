@@ -18,6 +18,7 @@ public final class Main
         try
         {
             String options[] = {
+                "concurrent:",
                 "config:",
                 "help",
                 "log:",
@@ -31,12 +32,13 @@ public final class Main
                 String helpText =
                     "Usage: gogui-dummy [options]\n" +
                     "\n" +
-                    "-config    config file\n" +
-                    "-help      display this help and exit\n" +
-                    "-log file  log GTP stream to file\n" +
-                    "-resign n  resign at n'th genmove\n" +
-                    "-srand n   random seed\n" +
-                    "-version   print version and exit\n";
+                    "-concurrent n run stateless commands in n threads\n" +
+                    "-config       config file\n" +
+                    "-help         display this help and exit\n" +
+                    "-log file     log GTP stream to file\n" +
+                    "-resign n     resign at n'th genmove\n" +
+                    "-srand n      random seed\n" +
+                    "-version      print version and exit\n";
                 System.out.print(helpText);
                 return;
             }
@@ -60,6 +62,7 @@ public final class Main
             }
             int resign = opt.getInteger("resign", -1);
             Dummy dummy = new Dummy(log, useRandomSeed, randomSeed, resign);
+            dummy.setConcurrent(opt.getInteger("concurrent", 0, 0), false);
             dummy.mainLoop(System.in, System.out);
             if (log != null)
                 log.close();
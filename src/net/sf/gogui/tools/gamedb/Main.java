@@ -0,0 +1,416 @@
+// Main.java
+
+package net.sf.gogui.tools.gamedb;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import net.sf.gogui.game.BoardUpdater;
+import net.sf.gogui.game.ConstNode;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.Node;
+import net.sf.gogui.game.NodeUtil;
+import net.sf.gogui.gamefile.GameIndex;
+import net.sf.gogui.gamefile.GameIndexer;
+import net.sf.gogui.gamefile.GameQuery;
+import net.sf.gogui.gamefile.GameReader;
+import net.sf.gogui.gamefile.LocalPattern;
+import net.sf.gogui.gamefile.OpeningTrie;
+import net.sf.gogui.gamefile.PatternSearch;
+import net.sf.gogui.go.Board;
+import net.sf.gogui.go.ConstBoard;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+import net.sf.gogui.sgf.SgfWriter;
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.util.Options;
+import net.sf.gogui.util.StringUtil;
+import net.sf.gogui.version.Version;
+
+/** Create, update and query an index of game files. */
+public final class Main
+{
+    public static void main(String[] args)
+    {
+        try
+        {
+            String options[] = {
+                "balance:",
+                "black:",
+                "buildtrie:",
+                "config:",
+                "count",
+                "date:",
+                "depth:",
+                "help",
+                "index:",
+                "length:",
+                "maxmoves:",
+                "mingames:",
+                "minmoves:",
+                "move:",
+                "number:",
+                "openings:",
+                "pattern:",
+                "player:",
+                "position:",
+                "quiet",
+                "result:",
+                "size:",
+                "threads:",
+                "trie:",
+                "update",
+                "version",
+                "white:"
+            };
+            Options opt = Options.parse(args, options);
+            if (opt.contains("help"))
+            {
+                printUsage(System.out);
+                return;
+            }
+            if (opt.contains("version"))
+            {
+                System.out.println("gogui-gamedb " + Version.get());
+                return;
+            }
+            if (opt.contains("trie"))
+            {
+                if (! opt.getArguments().isEmpty())
+                {
+                    printUsage(System.err);
+                    System.exit(1);
+                }
+                OpeningTrie trie =
+                    OpeningTrie.read(new File(opt.get("trie")));
+                printOpenings(opt, trie);
+                return;
+            }
+            if (! opt.contains("index"))
+            {
+                printUsage(System.err);
+                System.exit(1);
+            }
+            File indexFile = new File(opt.get("index"));
+            boolean quiet = opt.contains("quiet");
+            GameIndex index = GameIndex.read(indexFile);
+            ArrayList<String> arguments = opt.getArguments();
+            if (opt.contains("update"))
+            {
+                List<File> roots = new ArrayList<>();
+                for (String argument : arguments)
+                    roots.add(new File(argument));
+                GameIndexer indexer = new GameIndexer(index);
+                if (opt.contains("threads"))
+                    indexer.setNumberThreads(opt.getInteger("threads", 1, 1));
+                index = indexer.update(roots, null);
+                index.write(indexFile);
+                for (String warning : indexer.getWarnings())
+                    System.err.println(warning);
+                if (! quiet)
+                    System.err.println("Indexed files: "
+                                       + indexer.getNumberIndexedFiles()
+                                       + ", unchanged: "
+                                       + indexer.getNumberUnchangedFiles()
+                                       + ", removed: "
+                                       + indexer.getNumberRemovedFiles()
+                                       + ", games: " + index.size());
+                if (! hasQuery(opt))
+                    return;
+            }
+            else if (! arguments.isEmpty())
+            {
+                printUsage(System.err);
+                System.exit(1);
+            }
+            GameQuery query = new GameQuery();
+            query.setPlayer(opt.get("player", null));
+            query.setPlayer(BLACK, opt.get("black", null));
+            query.setPlayer(WHITE, opt.get("white", null));
+            query.setDate(opt.get("date", null));
+            query.setResult(opt.get("result", null));
+            query.setBoardSize(opt.getInteger("size", 0, 0,
+                                              GoPoint.MAX_SIZE));
+            query.setNumberMoves(opt.getInteger("minmoves", 0, 0),
+                                 opt.getInteger("maxmoves", -1, -1));
+            if (opt.contains("position"))
+            {
+                int move = -1;
+                if (opt.contains("move"))
+                    move = opt.getInteger("move", 0, 0);
+                ConstBoard board =
+                    readPosition(new File(opt.get("position")), move);
+                List<GameIndex.Match> matches = new ArrayList<>();
+                for (GameIndex.Match match : index.findPosition(board))
+                    if (query.matches(match.getEntry()))
+                        matches.add(match);
+                if (opt.contains("count"))
+                    System.out.println(matches.size());
+                else
+                    for (GameIndex.Match match : matches)
+                        System.out.println(format(match.getEntry()) + '\t'
+                                           + match.getMoveNumber());
+                return;
+            }
+            if (opt.contains("buildtrie"))
+            {
+                int size = opt.getInteger("size", GoPoint.DEFAULT_SIZE, 1,
+                                          GoPoint.MAX_SIZE);
+                OpeningTrie trie =
+                    new OpeningTrie(size, opt.getInteger("depth", 20, 1));
+                for (GameIndex.Entry entry : index.query(query))
+                    trie.add(entry);
+                trie.write(new File(opt.get("buildtrie")));
+                if (! quiet)
+                    System.err.println("Games: " + trie.getNumberGames()
+                                       + ", nodes: " + trie.getNumberNodes());
+                if (opt.contains("openings") || opt.contains("length"))
+                    printOpenings(opt, trie);
+                return;
+            }
+            if (opt.contains("pattern"))
+            {
+                PatternSearch search =
+                    new PatternSearch(readPattern(opt.get("pattern")));
+                if (opt.contains("threads"))
+                    search.setNumberThreads(opt.getInteger("threads", 1, 1));
+                search.search(index, query);
+                List<GameIndex.Match> matches = search.getMatches();
+                if (opt.contains("count"))
+                    System.out.println(matches.size());
+                else
+                    for (GameIndex.Match match : matches)
+                        System.out.println(format(match.getEntry()) + '\t'
+                                           + match.getMoveNumber());
+                if (! quiet)
+                {
+                    System.err.println("Continuations:");
+                    System.err.print(search.formatContinuations());
+                    System.err.println("Tenuki: " + search.getNumberTenuki()
+                                       + ", none: "
+                                       + search.getNumberNoContinuation());
+                }
+                return;
+            }
+            List<GameIndex.Entry> result = index.query(query);
+            if (opt.contains("count"))
+                System.out.println(result.size());
+            else
+                for (GameIndex.Entry entry : result)
+                    System.out.println(format(entry));
+        }
+        catch (ErrorMessage e)
+        {
+            StringUtil.printException(e);
+            System.exit(1);
+        }
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private Main()
+    {
+    }
+
+    /** Format entry as tab-separated line.
+        Columns: location (file, followed by the offset for games in SGF
+        collections), size, black, white, date, result, moves. */
+    private static String format(GameIndex.Entry entry)
+    {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(entry.getFile());
+        if (entry.getOffset() > 0)
+        {
+            buffer.append('@');
+            buffer.append(entry.getOffset());
+        }
+        buffer.append('\t');
+        buffer.append(entry.getBoardSize());
+        buffer.append('\t');
+        buffer.append(formatPlayer(entry, BLACK));
+        buffer.append('\t');
+        buffer.append(formatPlayer(entry, WHITE));
+        buffer.append('\t');
+        buffer.append(notNull(entry.getDate()));
+        buffer.append('\t');
+        buffer.append(notNull(entry.getResult()));
+        buffer.append('\t');
+        buffer.append(entry.getNumberMoves());
+        return buffer.toString();
+    }
+
+    private static String formatPlayer(GameIndex.Entry entry, GoColor c)
+    {
+        String name = notNull(entry.getPlayer(c));
+        String rank = entry.getRank(c);
+        if (rank == null || rank.trim().equals(""))
+            return name;
+        return name + " (" + rank.trim() + ")";
+    }
+
+    private static boolean hasQuery(Options opt)
+    {
+        String[] queryOptions = { "black", "buildtrie", "count", "date",
+                                  "maxmoves",
+                                  "minmoves", "pattern", "player", "position",
+                                  "result",
+                                  "size", "white" };
+        for (String option : queryOptions)
+            if (opt.contains(option))
+                return true;
+        return false;
+    }
+
+    private static String notNull(String s)
+    {
+        return (s == null ? "" : s);
+    }
+
+    /** Get the position after a move in the main variation of a game.
+        @param move The move number or -1 for the last position. */
+    private static ConstBoard readPosition(File file, int move)
+        throws ErrorMessage
+    {
+        GameTree tree = new GameReader(file).getTree();
+        ConstNode node = tree.getRootConst();
+        if (move < 0)
+            node = NodeUtil.getLast(node);
+        else if (move > 0)
+        {
+            node = NodeUtil.findByMoveNumber(node, move);
+            if (node == null)
+                throw new ErrorMessage("Game has no move " + move);
+        }
+        Board board = new Board(tree.getBoardSize());
+        new BoardUpdater().update(tree, node, board);
+        return board;
+    }
+
+    /** Print the balanced openings of a trie or write them as SGF files
+        usable with the -openings option of gogui-twogtp. */
+    private static void printOpenings(Options opt, OpeningTrie trie)
+        throws ErrorMessage
+    {
+        int length = opt.getInteger("length", Math.min(8, trie.getMaxDepth()),
+                                    1, trie.getMaxDepth());
+        int minGames = opt.getInteger("mingames", 10, 1);
+        double balance = opt.getDouble("balance", 0.1);
+        int number = opt.getInteger("number", 50, 1);
+        List<OpeningTrie.Opening> openings =
+            trie.getOpenings(length, minGames, balance, number);
+        if (! opt.contains("openings"))
+        {
+            for (OpeningTrie.Opening opening : openings)
+            {
+                StringBuilder buffer = new StringBuilder();
+                buffer.append(opening.getNumberGames());
+                buffer.append('\t');
+                buffer.append(opening.getBlackWins());
+                buffer.append('\t');
+                buffer.append(opening.getWhiteWins());
+                buffer.append('\t');
+                for (Move move : opening.getMoves())
+                {
+                    if (buffer.charAt(buffer.length() - 1) != '\t')
+                        buffer.append(' ');
+                    buffer.append(move.getPoint());
+                }
+                System.out.println(buffer);
+            }
+            return;
+        }
+        File directory = new File(opt.get("openings"));
+        if (! directory.isDirectory() && ! directory.mkdirs())
+            throw new ErrorMessage("Could not create directory "
+                                   + directory);
+        for (int i = 0; i < openings.size(); ++i)
+        {
+            OpeningTrie.Opening opening = openings.get(i);
+            GameTree tree = new GameTree(trie.getBoardSize(), null, null,
+                                         null, null);
+            Node node = tree.getRoot();
+            node.setComment("Games: " + opening.getNumberGames()
+                            + "\nBlack wins: " + opening.getBlackWins()
+                            + "\nWhite wins: " + opening.getWhiteWins());
+            for (Move move : opening.getMoves())
+            {
+                Node child = new Node(move);
+                node.append(child);
+                node = child;
+            }
+            // File names with leading zeros, Openings sorts by name
+            File file = new File(directory,
+                                 String.format("opening-%04d.sgf", i + 1));
+            try
+            {
+                new SgfWriter(new FileOutputStream(file), tree,
+                              "gogui-gamedb", Version.get());
+            }
+            catch (FileNotFoundException e)
+            {
+                throw new ErrorMessage("Could not write " + file + ": "
+                                       + e.getMessage());
+            }
+        }
+        if (! opt.contains("quiet"))
+            System.err.println("Openings: " + openings.size());
+    }
+
+    private static LocalPattern readPattern(String fileName)
+        throws ErrorMessage
+    {
+        try
+        {
+            byte[] bytes = Files.readAllBytes(new File(fileName).toPath());
+            return LocalPattern.parse(new String(bytes,
+                                                 StandardCharsets.UTF_8));
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Could not read pattern file \""
+                                   + fileName + "\": " + e.getMessage());
+        }
+    }
+
+    private static void printUsage(PrintStream out)
+    {
+        out.print("Usage: gogui-gamedb -index file [options] [file...]\n" +
+                  "       gogui-gamedb -trie file [options]\n" +
+                  "\n" +
+                  "-balance   max difference of Black win rate from 0.5\n" +
+                  "-black     black player contains text\n" +
+                  "-buildtrie create opening trie file from games\n" +
+                  "-config    config file\n" +
+                  "-count     print only the number of matching games\n" +
+                  "-date      date starts with text\n" +
+                  "-depth     maximum number of moves in opening trie\n" +
+                  "-help      display this help and exit\n" +
+                  "-index     index file\n" +
+                  "-length    number of moves of openings\n" +
+                  "-maxmoves  maximum number of moves\n" +
+                  "-mingames  minimum number of decided games of openings\n" +
+                  "-minmoves  minimum number of moves\n" +
+                  "-move      move number of position (default: last)\n" +
+                  "-number    maximum number of openings\n" +
+                  "-openings  write openings as SGF files to directory\n" +
+                  "-pattern   find games with local pattern from text file\n" +
+                  "-player    black or white player contains text\n" +
+                  "-position  find games with position from game file\n" +
+                  "-quiet     do not print statistics\n" +
+                  "-result    result starts with text\n" +
+                  "-size      board size\n" +
+                  "-threads   number of indexing or search threads\n" +
+                  "-trie      read opening trie file\n" +
+                  "-update    add or update files or directories\n" +
+                  "-version   print version and exit\n" +
+                  "-white     white player contains text\n");
+    }
+}
@@ -5,6 +5,7 @@ package net.sf.gogui.tools.regress;
 import java.io.File;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import net.sf.gogui.gtp.GtpMetrics;
 import net.sf.gogui.util.Options;
 import net.sf.gogui.util.StringUtil;
 import net.sf.gogui.version.Version;
@@ -21,6 +22,7 @@ public final class Main
                 "gtpfile:",
                 "help",
                 "long",
+                "metrics",
                 "output:",
                 "verbose",
                 "version"
@@ -52,8 +54,13 @@ public final class Main
             String program = arguments.get(0);
             ArrayList<String> tests = new ArrayList<>(arguments);
             tests.remove(0);
+            GtpMetrics metrics = null;
+            if (opt.contains("metrics"))
+                metrics = new GtpMetrics();
             Regress regress = new Regress(program, tests, output, longOutput,
-                                          verbose, gtpFile);
+                                          verbose, gtpFile, metrics);
+            if (metrics != null)
+                metrics.print(System.err, null);
             System.exit(regress.getResult() ? 0 : 1);
         }
         catch (Exception t)
@@ -77,6 +84,7 @@ public final class Main
                   "-gtpfile      GTP file to execute before each test\n" +
                   "-help         Display this help and exit\n" +
                   "-long         Longer output to standard out\n" +
+                  "-metrics      Print GTP command statistics to stderr\n" +
                   "-output       Output directory\n" +
                   "-verbose      Log GTP stream to stderr\n" +
                   "-version      Display this help and exit\n");
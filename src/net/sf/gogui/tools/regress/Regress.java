@@ -15,6 +15,7 @@ import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import net.sf.gogui.gtp.GtpClient;
+import net.sf.gogui.gtp.GtpMetrics;
 import net.sf.gogui.gtp.GtpError;
 import net.sf.gogui.gtp.GtpUtil;
 import net.sf.gogui.util.ErrorMessage;
@@ -40,6 +41,26 @@ public class Regress
                    boolean longOutput, boolean verbose, File gtpFile)
         throws Exception
     {
+        this(program, tests, output, longOutput, verbose, gtpFile, null);
+    }
+
+    /** Constructor with statistics of the GTP traffic.
+        @param program The program command.
+        @param tests The test files or test suites.
+        @param output The output directory or empty string.
+        @param longOutput Longer output to standard out.
+        @param verbose Log GTP stream to stderr.
+        @param gtpFile File with GTP commands to send at startup or
+        <code>null</code> for no file.
+        @param metrics Statistics of the GTP traffic of all tests are added
+        to this object, or <code>null</code>.
+        @throws java.lang.Exception */
+    public Regress(String program, ArrayList<String> tests, String output,
+                   boolean longOutput, boolean verbose, File gtpFile,
+                   GtpMetrics metrics)
+        throws Exception
+    {
+        m_metrics = metrics;
         this.m_testSummaries = new ArrayList<TestSummary>();
         tests = RegressUtil.expandTestSuites(tests);
         RegressUtil.checkFiles(tests);
@@ -256,6 +277,8 @@ public class Regress
 
     private GtpClient m_gtp;
 
+    private final GtpMetrics m_metrics;
+
     private void checkLastSgf(String line)
     {
         String regex =
@@ -763,6 +786,7 @@ public class Regress
         try
         (BufferedReader reader = new BufferedReader(fileReader)) {
             m_gtp = new GtpClient(m_program, testFileDir, m_verbose, this);
+            m_gtp.setMetrics(m_metrics);
             if (m_gtpFile != null)
                 sendGtpFile();
             m_lastSgf = null;
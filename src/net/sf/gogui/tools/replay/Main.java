@@ -0,0 +1,101 @@
+// Main.java
+
+package net.sf.gogui.tools.replay;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.util.Options;
+import net.sf.gogui.util.StringUtil;
+import net.sf.gogui.version.Version;
+
+/** Replay main function. */
+public final class Main
+{
+    /** Replay main function.
+     * @param args */
+    public static void main(String[] args)
+    {
+        try
+        {
+            String options[] = {
+                "config:",
+                "help",
+                "log:",
+                "record:",
+                "scale:",
+                "version"
+            };
+            Options opt = Options.parse(args, options);
+            if (opt.contains("help"))
+            {
+                printUsage(System.out);
+                return;
+            }
+            if (opt.contains("version"))
+            {
+                System.out.println("gogui-replay " + Version.get());
+                return;
+            }
+            ArrayList<String> arguments = opt.getArguments();
+            if (arguments.size() != 1)
+            {
+                printUsage(System.err);
+                System.exit(1);
+            }
+            PrintStream log = null;
+            if (opt.contains("log"))
+            {
+                File file = new File(opt.get("log"));
+                log = new PrintStream(file);
+            }
+            if (opt.contains("record"))
+            {
+                if (opt.contains("scale"))
+                    throw new ErrorMessage("Option -scale cannot be used with"
+                                           + " -record");
+                File file = new File(opt.get("record"));
+                Recorder recorder = new Recorder(arguments.get(0), file, log);
+                recorder.mainLoop(System.in, System.out);
+                recorder.close();
+            }
+            else
+            {
+                double scale = opt.getDouble("scale", 1);
+                if (scale < 0)
+                    throw new ErrorMessage("Scale must not be negative");
+                File file = new File(arguments.get(0));
+                Replay replay = new Replay(file, scale, log);
+                replay.mainLoop(System.in, System.out);
+            }
+            if (log != null)
+                log.close();
+        }
+        catch (Exception t)
+        {
+            StringUtil.printException(t);
+            System.exit(1);
+        }
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private Main()
+    {
+    }
+
+    private static void printUsage(PrintStream out)
+    {
+        String helpText =
+            "Usage: gogui-replay [options] file\n" +
+            "       gogui-replay -record file program\n" +
+            "\n" +
+            "-config       config file\n" +
+            "-help         display this help and exit\n" +
+            "-log file     log GTP stream to file\n" +
+            "-record file  run program and record session to file\n" +
+            "-scale x      multiply recorded command times by x\n" +
+            "-version      print version and exit\n";
+        out.print(helpText);
+    }
+}
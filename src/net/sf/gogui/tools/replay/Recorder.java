@@ -0,0 +1,102 @@
+// Recorder.java
+
+package net.sf.gogui.tools.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import net.sf.gogui.gtp.GtpClient;
+import net.sf.gogui.gtp.GtpCommand;
+import net.sf.gogui.gtp.GtpEngine;
+import net.sf.gogui.gtp.GtpError;
+import net.sf.gogui.gtp.GtpRecorder;
+import net.sf.gogui.util.ErrorMessage;
+
+/** GTP engine that forwards all commands to a Go program and records the
+    session.
+    Can be used as a wrapper around a program in any GTP controller to
+    record a session for replaying it with Replay. */
+public class Recorder
+    extends GtpEngine
+{
+    /** Constructor.
+        @param program Command line of the program.
+        @param file The file to record the session to.
+        @param log Log stream or null. */
+    public Recorder(String program, File file, PrintStream log)
+        throws ErrorMessage
+    {
+        super(log);
+        GtpClient.IOCallback callback = new GtpClient.IOCallback()
+            {
+                public void receivedInvalidResponse(String s)
+                {
+                }
+
+                public void receivedResponse(boolean error, String s)
+                {
+                }
+
+                public void receivedStdErr(String s)
+                {
+                    System.err.print(s);
+                    System.err.flush();
+                }
+
+                public void sentCommand(String s)
+                {
+                }
+            };
+        try
+        {
+            m_recorder = new GtpRecorder(file, program);
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Could not create " + file + ": "
+                                   + e.getMessage());
+        }
+        try
+        {
+            m_gtp = new GtpClient(program, null, false, callback);
+        }
+        catch (GtpClient.ExecFailed e)
+        {
+            m_recorder.close();
+            throw new ErrorMessage("Could not run " + program + ": "
+                                   + e.getMessage());
+        }
+        m_gtp.setRecorder(m_recorder);
+    }
+
+    /** Close the connection to the program and the recording. */
+    public void close()
+    {
+        m_gtp.close();
+        m_gtp.waitForExit();
+        m_recorder.close();
+    }
+
+    @Override
+    public void handleCommand(GtpCommand cmd) throws GtpError
+    {
+        if (cmd.getCommand().equals("quit"))
+            setQuit();
+        cmd.setResponse(m_gtp.send(cmd.getLine()));
+    }
+
+    /** Forward an interrupt to the program.
+        Programs that support interrupting by the comment line "# interrupt"
+        declare this with the command gogui-interrupt, which the controller
+        sends through this engine. Programs using SIGINT are interrupted by
+        the controller directly. */
+    @Override
+    public void interruptCommand()
+    {
+        m_gtp.sendComment("# interrupt");
+    }
+
+    private final GtpClient m_gtp;
+
+    private final GtpRecorder m_recorder;
+}
@@ -0,0 +1,198 @@
+// Replay.java
+
+package net.sf.gogui.tools.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import net.sf.gogui.gtp.GtpCommand;
+import net.sf.gogui.gtp.GtpEngine;
+import net.sf.gogui.gtp.GtpError;
+import net.sf.gogui.gtp.GtpRecorder;
+import net.sf.gogui.gtp.GtpRecorder.Exchange;
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.version.Version;
+
+/** GTP engine that answers commands with the responses of a recorded
+    session.
+    Commands are matched to the recorded commands in the order of the
+    recording. If a command does not match the next recorded command, the
+    following recorded commands are searched for it (up to MAX_SKIP
+    commands), and if it is not found there, the response to its first
+    occurrence in the recording is used without changing the position in the
+    recording. The standard error output recorded for a command is written
+    before waiting for the recorded time of the command and sending the
+    response. */
+public class Replay
+    extends GtpEngine
+{
+    /** Maximum number of recorded commands that are skipped to find a
+        command. */
+    public static final int MAX_SKIP = 100;
+
+    /** Constructor.
+        @param file The recorded session.
+        @param scale Factor for the recorded command times, 0 to respond
+        immediately.
+        @param log Log stream or null. */
+    public Replay(File file, double scale, PrintStream log)
+        throws ErrorMessage
+    {
+        super(log);
+        assert scale >= 0;
+        try
+        {
+            m_exchanges = GtpRecorder.read(file);
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage(e.getMessage());
+        }
+        if (m_exchanges.isEmpty())
+            throw new ErrorMessage("No commands in " + file);
+        m_scale = scale;
+        for (Exchange exchange : m_exchanges)
+        {
+            String command = exchange.getCommand();
+            if (! m_first.containsKey(command))
+                m_first.put(command, exchange);
+            m_commandNames.add(command.split(" ", 2)[0]);
+        }
+        setName(getRecordedResponse("name", "gogui-replay"));
+        setVersion(getRecordedResponse("version", Version.get()));
+    }
+
+    /** Answer known_command, if not recorded, from the command names in
+        the recording. */
+    @Override
+    public void cmdKnownCommand(GtpCommand cmd) throws GtpError
+    {
+        cmd.checkNuArg(1);
+        String name = cmd.getArg(0);
+        boolean known = (m_commandNames.contains(name) || isRegistered(name));
+        cmd.setResponse(known ? "true" : "false");
+    }
+
+    /** Answer list_commands, if not recorded, from the command names in
+        the recording. */
+    @Override
+    public void cmdListCommands(GtpCommand cmd) throws GtpError
+    {
+        cmd.checkArgNone();
+        TreeSet<String> names = new TreeSet<>(m_commandNames);
+        names.add("known_command");
+        names.add("list_commands");
+        names.add("name");
+        names.add("protocol_version");
+        names.add("quit");
+        names.add("version");
+        StringBuilder response = cmd.getResponse();
+        for (String name : names)
+        {
+            response.append(name);
+            response.append('\n');
+        }
+    }
+
+    @Override
+    public void handleCommand(GtpCommand cmd) throws GtpError
+    {
+        m_interrupted = false;
+        String line = cmd.getLine().trim().replaceAll("\\s+", " ");
+        Exchange exchange = findExchange(line);
+        if (exchange == null)
+        {
+            if (isRegistered(cmd.getCommand()))
+            {
+                super.handleCommand(cmd);
+                return;
+            }
+            throw new GtpError("command not in recording: " + line);
+        }
+        if (cmd.getCommand().equals("quit"))
+            setQuit();
+        String stdErr = exchange.getStdErr();
+        if (! stdErr.isEmpty())
+        {
+            System.err.print(stdErr);
+            System.err.flush();
+        }
+        sleep((long)(exchange.getTime() * m_scale));
+        if (exchange.isError())
+            throw new GtpError(exchange.getResponse());
+        cmd.setResponse(exchange.getResponse());
+    }
+
+    /** Interrupt waiting for the recorded time of the current command. */
+    @Override
+    public void interruptCommand()
+    {
+        m_interrupted = true;
+    }
+
+    private volatile boolean m_interrupted;
+
+    /** Index of the next recorded command. */
+    private int m_index;
+
+    private final double m_scale;
+
+    private final List<Exchange> m_exchanges;
+
+    /** First occurrence of each command line in the recording. */
+    private final Map<String,Exchange> m_first = new HashMap<>();
+
+    private final TreeSet<String> m_commandNames = new TreeSet<>();
+
+    private Exchange findExchange(String line)
+    {
+        int size = m_exchanges.size();
+        int max = Math.min(size, m_index + MAX_SKIP + 1);
+        for (int i = m_index; i < max; ++i)
+        {
+            Exchange exchange = m_exchanges.get(i);
+            if (exchange.getCommand().equals(line))
+            {
+                m_index = i + 1;
+                return exchange;
+            }
+        }
+        return m_first.get(line);
+    }
+
+    private String getRecordedResponse(String command, String defaultValue)
+    {
+        Exchange exchange = m_first.get(command);
+        if (exchange == null || exchange.isError())
+            return defaultValue;
+        return exchange.getResponse();
+    }
+
+    /** Wait for a time unless the command is interrupted.
+        @param time The time in nanoseconds. */
+    private void sleep(long time)
+    {
+        long end = System.nanoTime() + time;
+        while (! m_interrupted)
+        {
+            long remaining = end - System.nanoTime();
+            if (remaining <= 0)
+                return;
+            try
+            {
+                // Wake up regularly to check for interrupts
+                long millis = Math.min(remaining / 1000000L, 50);
+                int nanos = (int)(millis < 50 ? remaining % 1000000L : 0);
+                Thread.sleep(millis, nanos);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+        }
+    }
+}
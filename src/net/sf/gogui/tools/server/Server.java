@@ -2,6 +2,7 @@
 
 package net.sf.gogui.tools.server;
 
+import net.sf.gogui.util.IOThreads;
 import net.sf.gogui.util.Options;
 import net.sf.gogui.util.ProcessUtil;
 import net.sf.gogui.util.StreamCopy;
@@ -45,8 +46,7 @@ public final class Server
         {
             Process process
                 = runtime.exec(StringUtil.splitArguments(program));
-            Thread stdErrThread = new ProcessUtil.StdErrThread(process);
-            stdErrThread.start();
+            ProcessUtil.startStdErrThread(process);
             Socket socket;
             if (serverSocket == null)
                 socket = connectToRemote(remoteHost, port, userFile);
@@ -62,13 +62,17 @@ public final class Server
             if (timeout >= 0)
                 socket.setSoTimeout(timeout * 1000);
             Thread fromNet =
-                new Thread(new StreamCopy(verbose, socket.getInputStream(),
-                                          process.getOutputStream(), true));
+                IOThreads.start("fromNet",
+                                new StreamCopy(verbose,
+                                               socket.getInputStream(),
+                                               process.getOutputStream(),
+                                               true));
             Thread toNet =
-                new Thread(new StreamCopy(verbose, process.getInputStream(),
-                                          socket.getOutputStream(), false));
-            fromNet.start();
-            toNet.start();
+                IOThreads.start("toNet",
+                                new StreamCopy(verbose,
+                                               process.getInputStream(),
+                                               socket.getOutputStream(),
+                                               false));
             toNet.join();
             socket.shutdownOutput();
             fromNet.join();
@@ -95,6 +99,7 @@ public final class Server
                 "user:",
                 "verbose",
                 "version",
+                "virtualthreads:",
             };
             Options opt = Options.parse(args, options);
             boolean verbose = opt.contains("verbose");
@@ -123,6 +128,11 @@ public final class Server
             String remoteHost = opt.get("remote", null);
             String userFile = opt.get("user", null);
             int timeout = opt.getInteger("timeout", 0, 0);
+            if (opt.contains("virtualthreads")
+                && ! IOThreads.setMaxVirtual(opt.getInteger("virtualthreads",
+                                                            0, 0)))
+                System.err.println("Virtual threads not supported"
+                                   + " by this Java version");
             if (userFile != null && remoteHost == null)
             {
                 System.err.println("Option -user only valid with -remote");
@@ -175,14 +185,16 @@ public final class Server
     {
         out.print("Usage: gogui-server [options] program\n" +
                   "\n" +
-                  "-config  config file\n" +
-                  "-help    display this help and exit\n" +
-                  "-loop    restart after connection finished\n" +
-                  "-port    port of network connection\n" +
-                  "-remote  connect to remote host\n" +
-                  "-timeout timeout seconds for closing idle connections\n" +
-                  "-user    login information for remote host\n" +
-                  "-verbose print debugging messages\n" +
-                  "-version print version and exit\n");
+                  "-config          config file\n" +
+                  "-help            display this help and exit\n" +
+                  "-loop            restart after connection finished\n" +
+                  "-port            port of network connection\n" +
+                  "-remote          connect to remote host\n" +
+                  "-timeout         timeout seconds for closing idle"
+                  + " connections\n" +
+                  "-user            login information for remote host\n" +
+                  "-verbose         print debugging messages\n" +
+                  "-version         print version and exit\n" +
+                  "-virtualthreads n max. virtual threads for socket I/O\n");
     }
 }
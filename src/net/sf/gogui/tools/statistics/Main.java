@@ -6,6 +6,7 @@ import java.io.File;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.gtp.GtpMetrics;
 import net.sf.gogui.util.ErrorMessage;
 import net.sf.gogui.util.Options;
 import net.sf.gogui.util.StringUtil;
@@ -28,6 +29,7 @@ public final class Main
                 "force",
                 "help",
                 "max:",
+                "metrics",
                 "min:",
                 "output:",
                 "precision:",
@@ -104,6 +106,12 @@ public final class Main
                     throw new ErrorMessage("File \"" + output +
                                            "\" already exists");
                 Statistics statistics = new Statistics();
+                GtpMetrics metrics = null;
+                if (opt.contains("metrics"))
+                {
+                    metrics = new GtpMetrics();
+                    statistics.setMetrics(metrics);
+                }
                 statistics.setMin(min);
                 statistics.setMax(max);
                 statistics.setQuiet(quiet);
@@ -111,6 +119,8 @@ public final class Main
                                beginCommands, finalCommands, verbose,
                                allowSetup, backward, random);
                 statistics.saveTable(output);
+                if (metrics != null)
+                    metrics.print(System.err, null);
             }
         }
         catch (Exception t)
@@ -154,6 +164,7 @@ public final class Main
                   "-force        Overwrite existing file\n" +
                   "-help         Display this help and exit\n" +
                   "-max          Only positions with maximum move number\n" +
+                  "-metrics      Print GTP command statistics to stderr\n" +
                   "-min          Only positions with minimum move number\n" +
                   "-output       Filename prefix for output files\n" +
                   "-precision    Floating point precision for -analyze\n" +
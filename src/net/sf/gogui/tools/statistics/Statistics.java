@@ -25,6 +25,7 @@ import net.sf.gogui.go.Move;
 import net.sf.gogui.gtp.GtpClient;
 import net.sf.gogui.gtp.GtpClientBase;
 import net.sf.gogui.gtp.GtpError;
+import net.sf.gogui.gtp.GtpMetrics;
 import net.sf.gogui.gtp.GtpSynchronizer;
 import net.sf.gogui.sgf.SgfError;
 import net.sf.gogui.sgf.SgfReader;
@@ -43,9 +44,10 @@ public class Statistics
                     boolean allowSetup, boolean backward, boolean random)
         throws ErrorMessage, GtpError, IOException
     {
-        run(new GtpClient(program, null, verbose, null), program, sgfFiles,
-            size, commands, beginCommands, finalCommands, allowSetup,
-            backward, random);
+        GtpClient gtp = new GtpClient(program, null, verbose, null);
+        gtp.setMetrics(m_metrics);
+        run(gtp, program, sgfFiles, size, commands, beginCommands,
+            finalCommands, allowSetup, backward, random);
     }
 
     /** Construct with existing GTP engine.
@@ -110,6 +112,14 @@ public class Statistics
         m_table.setProperty("Random", random ? "yes" : "no");
     }
 
+    /** Record statistics of the GTP traffic.
+        Only used by run() with a program command.
+        @param metrics The statistics to add to or null. */
+    public void setMetrics(GtpMetrics metrics)
+    {
+        m_metrics = metrics;
+    }
+
     /** *  Set maximum move number for positions to run the commands on.Default is Integer.MAX_VALUE.
      * @param max */
     public void setMax(int max)
@@ -173,6 +183,8 @@ public class Statistics
 
     private GtpClientBase m_gtp;
 
+    private GtpMetrics m_metrics;
+
     private static final NumberFormat FORMAT1 = StringUtil.getNumberFormat(1);
 
     private static final NumberFormat FORMAT2 = StringUtil.getNumberFormat(2);
@@ -378,32 +390,40 @@ public class Statistics
         {
             m_table.set("File", name);
             m_table.set("Move", number);
+            // Send all commands for this position at once, the commands
+            // do not change the position and can be pipelined
+            ArrayList<Command> commands = new ArrayList<>();
             for (int i = 0; i < m_commands.size(); ++i)
             {
                 Command command = getCommand(i);
                 if (command.m_begin && beginCommands)
-                {
-                    String response = send(command.m_command, toMove, move);
-                    m_table.set(command.m_columnTitle, response);
-                }
+                    commands.add(command);
             }
             for (int i = 0; i < m_commands.size(); ++i)
             {
                 Command command = getCommand(i);
                 if (! command.m_begin && ! command.m_final && regularCommands)
-                {
-                    String response = send(command.m_command, toMove, move);
-                    m_table.set(command.m_columnTitle, response);
-                }
+                    commands.add(command);
             }
             for (int i = 0; i < m_commands.size(); ++i)
             {
                 Command command = getCommand(i);
                 if (command.m_final && finalCommands)
-                {
-                    String response = send(command.m_command, toMove, move);
-                    m_table.set(command.m_columnTitle, response);
-                }
+                    commands.add(command);
+            }
+            ArrayList<String> gtpCommands = new ArrayList<>(commands.size());
+            for (Command command : commands)
+                gtpCommands.add(convertCommand(command.m_command, toMove));
+            String[] responses = m_gtp.sendBatch(gtpCommands);
+            for (int i = 0; i < commands.size(); ++i)
+            {
+                Command command = commands.get(i);
+                String response = responses[i].trim();
+                response = response.replaceAll("\t", " ");
+                response = response.replaceAll("\n", " ");
+                response = convertResponse(command.m_command, response,
+                                           toMove, move);
+                m_table.set(command.m_columnTitle, response);
             }
         }
         catch (Table.InvalidLocation e)
@@ -490,16 +510,6 @@ public class Statistics
                            beginCommands, regularCommands, finalCommands);
     }
 
-    private String send(String command, GoColor toMove, Move move)
-        throws GtpError
-    {
-        String cmd = convertCommand(command, toMove);
-        String response = m_gtp.send(cmd).trim();
-        response = response.replaceAll("\t", " ");
-        response = response.replaceAll("\n", " ");
-        return convertResponse(command, response, toMove, move);
-    }
-
     private void synchronize(ConstGame game) throws GtpError
     {
         ConstNode node = game.getGameInfoNode();
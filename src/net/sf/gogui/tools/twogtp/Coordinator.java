@@ -0,0 +1,508 @@
+// Coordinator.java
+
+package net.sf.gogui.tools.twogtp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import net.sf.gogui.game.Game;
+import net.sf.gogui.go.Komi;
+import net.sf.gogui.gtp.GtpCommand;
+import net.sf.gogui.gtp.GtpEngine;
+import net.sf.gogui.gtp.GtpError;
+import net.sf.gogui.sgf.SgfError;
+import net.sf.gogui.sgf.SgfReader;
+import net.sf.gogui.sgf.SgfWriter;
+import net.sf.gogui.util.ErrorMessage;
+
+/** Distributes the games of a twogtp run to workers in other processes.
+    Workers connect with TCP and use GTP with the following commands to
+    get game indices and send results (see RemoteResults):
+    <pre>
+    twogtp_hello version size komi alternate [key value ...]
+    twogtp_next_game
+    twogtp_release_game index
+    twogtp_result index alternated moves error timeB timeW cpuB cpuW
+                  resultB resultW resultR errorMessage sgf
+    </pre>
+    String arguments are encoded with encode(). The key/value pairs of
+    twogtp_hello are the properties of the programs of the worker. The
+    result table and the game files are written with a ResultFile, which is
+    created when the first worker connects. Each TwoGtp instance of a worker
+    uses its own connection. If the connection is closed before the results
+    of all games assigned to it were received, the games are given back
+    and assigned to the next worker that asks for a game.
+    If all games are assigned, but other games are still being played,
+    twogtp_next_game waits until the games are finished or given back, such
+    that workers do not quit while games are left to repeat. */
+public class Coordinator
+{
+    /** Version of the protocol between coordinator and workers. */
+    public static final int PROTOCOL_VERSION = 1;
+
+    /** Constructor.
+        @param port The TCP port to listen on.
+        @param force Overwrite the table of an existing run.
+        @param numberGames The number of games or 0 for no limit.
+        @param size The board size.
+        @param komi The komi.
+        @param filePrefix The prefix for the table and game files.
+        @param alternate True, if colors are exchanged every second game.
+        @param useXml Save games in XML format instead of SGF.
+        @param sprt The sequential probability ratio test for ending the run
+        early or null.
+        @throws ErrorMessage If the port could not be opened. */
+    public Coordinator(int port, boolean force, int numberGames, int size,
+                       Komi komi, String filePrefix, boolean alternate,
+                       boolean useXml, Sprt sprt) throws ErrorMessage
+    {
+        m_force = force;
+        m_numberGames = numberGames;
+        m_size = size;
+        m_komi = komi;
+        m_filePrefix = filePrefix;
+        m_alternate = alternate;
+        m_useXml = useXml;
+        m_sprt = sprt;
+        try
+        {
+            m_serverSocket = new ServerSocket(port);
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Could not listen on port " + port + ": "
+                                   + e.getMessage());
+        }
+    }
+
+    /** Decode a string argument.
+        @param s The encoded string.
+        @return The decoded string.
+        @throws GtpError If the string is not a valid encoded string. */
+    public static String decode(String s) throws GtpError
+    {
+        if (s.equals("\\e"))
+            return "";
+        StringBuilder result = new StringBuilder(s.length());
+        int length = s.length();
+        for (int i = 0; i < length; ++i)
+        {
+            char c = s.charAt(i);
+            if (c != '\\')
+            {
+                result.append(c);
+                continue;
+            }
+            if (i + 5 >= length || s.charAt(i + 1) != 'u')
+                throw new GtpError("invalid string argument");
+            try
+            {
+                result.append((char)Integer.parseInt(s.substring(i + 2,
+                                                                 i + 6),
+                                                     16));
+            }
+            catch (NumberFormatException e)
+            {
+                throw new GtpError("invalid string argument");
+            }
+            i += 5;
+        }
+        return result.toString();
+    }
+
+    /** Encode a string as a single GTP argument.
+        Whitespace, backslashes, characters with a special meaning in GTP
+        command lines ('#' starts a comment, '"' quotes an argument), and
+        characters that are not printable ASCII characters are replaced by
+        \\uXXXX, the empty string by \\e.
+        @param s The string.
+        @return The encoded string. */
+    public static String encode(String s)
+    {
+        if (s.isEmpty())
+            return "\\e";
+        StringBuilder result = new StringBuilder(s.length());
+        int length = s.length();
+        for (int i = 0; i < length; ++i)
+        {
+            char c = s.charAt(i);
+            if (c > ' ' && c < 127 && c != '\\' && c != '#' && c != '"')
+                result.append(c);
+            else
+                result.append(String.format("\\u%04x", (int)c));
+        }
+        return result.toString();
+    }
+
+    /** Accept connections of workers until all games are played.
+        Without a limit of the number of games, returns only if an error
+        occurs.
+        @throws ErrorMessage If accepting connections fails. */
+    public void run() throws ErrorMessage
+    {
+        Thread acceptThread = new Thread(this::acceptConnections,
+                                         "Coordinator");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        synchronized (this)
+        {
+            while (! isFinished() && m_error == null)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                    break;
+                }
+            }
+            if (m_error != null)
+                throw new ErrorMessage(m_error);
+        }
+    }
+
+    /** Report results for monitoring.
+        @param status The status or null. */
+    public synchronized void setStatus(Status status)
+    {
+        m_status = status;
+    }
+
+    /** Close the server socket and the result file. */
+    public void close()
+    {
+        try
+        {
+            m_serverSocket.close();
+        }
+        catch (IOException e)
+        {
+        }
+        synchronized (this)
+        {
+            if (m_resultFile != null)
+                m_resultFile.close();
+        }
+    }
+
+    /** Connection to one TwoGtp instance of a worker. */
+    private class Connection
+        extends GtpEngine
+    {
+        public Connection(Socket socket)
+        {
+            super(null);
+            m_socket = socket;
+            register("twogtp_hello", this::cmdHello);
+            register("twogtp_next_game", this::cmdNextGame);
+            register("twogtp_release_game", this::cmdReleaseGame);
+            register("twogtp_result", this::cmdResult);
+            setName("gogui-twogtp-coordinator");
+        }
+
+        public void run()
+        {
+            try
+            {
+                mainLoop(m_socket.getInputStream(),
+                         m_socket.getOutputStream());
+            }
+            catch (IOException e)
+            {
+                System.err.println("Connection to "
+                                   + m_socket.getRemoteSocketAddress()
+                                   + " failed: " + e.getMessage());
+            }
+            finally
+            {
+                disconnected(m_assigned);
+                try
+                {
+                    m_socket.close();
+                }
+                catch (IOException e)
+                {
+                }
+            }
+        }
+
+        private boolean m_isInitialized;
+
+        private final Socket m_socket;
+
+        /** Games assigned to this connection without a result yet. */
+        private final TreeSet<Integer> m_assigned = new TreeSet<>();
+
+        private void checkInitialized() throws GtpError
+        {
+            if (! m_isInitialized)
+                throw new GtpError("use twogtp_hello first");
+        }
+
+        private void cmdHello(GtpCommand cmd) throws GtpError
+        {
+            int numberArgs = cmd.getNuArg();
+            if (numberArgs < 4 || numberArgs % 2 != 0)
+                throw new GtpError("wrong number of arguments");
+            int version = cmd.getIntArg(0);
+            if (version != PROTOCOL_VERSION)
+                throw new GtpError("coordinator uses protocol version "
+                                   + PROTOCOL_VERSION);
+            int size = cmd.getIntArg(1);
+            String komi = cmd.getArg(2);
+            boolean alternate = (cmd.getIntArg(3) != 0);
+            if (size != m_size || ! komi.equals(m_komi.toString())
+                || alternate != m_alternate)
+                throw new GtpError("coordinator plays size " + m_size
+                                   + ", komi " + m_komi
+                                   + (m_alternate ? ", alternate" : ""));
+            TreeMap<String,String> properties = new TreeMap<>();
+            for (int i = 4; i < numberArgs; i += 2)
+                properties.put(decode(cmd.getArg(i)),
+                               decode(cmd.getArg(i + 1)));
+            try
+            {
+                initResultFile(properties);
+            }
+            catch (ErrorMessage e)
+            {
+                throw new GtpError(e.getMessage());
+            }
+            m_isInitialized = true;
+        }
+
+        private void cmdNextGame(GtpCommand cmd) throws GtpError
+        {
+            cmd.checkArgNone();
+            checkInitialized();
+            int gameIndex = nextGame(m_assigned);
+            cmd.setResponse(Integer.toString(gameIndex));
+        }
+
+        private void cmdReleaseGame(GtpCommand cmd) throws GtpError
+        {
+            cmd.checkNuArg(1);
+            checkInitialized();
+            int gameIndex = cmd.getIntArg(0);
+            if (! m_assigned.contains(gameIndex))
+                throw new GtpError("game " + gameIndex + " not assigned");
+            boolean released = releaseGame(gameIndex);
+            if (released)
+                m_assigned.remove(gameIndex);
+            cmd.setResponse(released ? "true" : "false");
+        }
+
+        private void cmdResult(GtpCommand cmd) throws GtpError
+        {
+            cmd.checkNuArg(13);
+            checkInitialized();
+            int gameIndex = cmd.getIntArg(0);
+            if (! m_assigned.contains(gameIndex))
+                throw new GtpError("game " + gameIndex + " not assigned");
+            String sgf = decode(cmd.getArg(12));
+            Game game;
+            try
+            {
+                byte[] bytes = sgf.getBytes(SgfWriter.ENCODING);
+                SgfReader reader =
+                    new SgfReader(new ByteArrayInputStream(bytes), null,
+                                  null, bytes.length);
+                game = new Game(reader.getTree());
+            }
+            catch (SgfError | UnsupportedEncodingException e)
+            {
+                throw new GtpError("invalid game: " + e.getMessage());
+            }
+            try
+            {
+                m_resultFile.addResult(gameIndex, game,
+                                       decode(cmd.getArg(8)),
+                                       decode(cmd.getArg(9)),
+                                       decode(cmd.getArg(10)),
+                                       cmd.getIntArg(1) != 0,
+                                       cmd.getIntArg(2),
+                                       cmd.getIntArg(3) != 0,
+                                       decode(cmd.getArg(11)),
+                                       cmd.getDoubleArg(4),
+                                       cmd.getDoubleArg(5),
+                                       cmd.getDoubleArg(6),
+                                       cmd.getDoubleArg(7));
+            }
+            catch (ErrorMessage e)
+            {
+                setError(e.getMessage());
+                throw new GtpError(e.getMessage());
+            }
+            // Before finishedGame(), which can end run()
+            Status status = getStatus();
+            if (status != null)
+            {
+                // The number of moves of each program is not sent by the
+                // workers
+                int numberMoves = cmd.getIntArg(2);
+                status.addResult(decode(cmd.getArg(8)),
+                                 decode(cmd.getArg(9)),
+                                 decode(cmd.getArg(10)),
+                                 cmd.getIntArg(3) != 0, cmd.getDoubleArg(4),
+                                 cmd.getDoubleArg(5), (numberMoves + 1) / 2,
+                                 numberMoves / 2, cmd.getDoubleArg(6),
+                                 cmd.getDoubleArg(7));
+            }
+            m_assigned.remove(gameIndex);
+            finishedGame(gameIndex);
+        }
+    }
+
+    private final boolean m_alternate;
+
+    private final boolean m_force;
+
+    private final boolean m_useXml;
+
+    private final Sprt m_sprt;
+
+    private Status m_status;
+
+    private final int m_numberGames;
+
+    private final int m_size;
+
+    private final Komi m_komi;
+
+    private final String m_filePrefix;
+
+    /** Error that stops the coordinator or null. */
+    private String m_error;
+
+    private final ServerSocket m_serverSocket;
+
+    private ResultFile m_resultFile;
+
+    /** Games assigned to a worker without a result yet, including games
+        given back and not yet assigned again. */
+    private final TreeSet<Integer> m_outstanding = new TreeSet<>();
+
+    /** Set if the result file has no more new games. */
+    private boolean m_isExhausted;
+
+    private void acceptConnections()
+    {
+        while (true)
+        {
+            Socket socket;
+            try
+            {
+                socket = m_serverSocket.accept();
+            }
+            catch (IOException e)
+            {
+                if (! m_serverSocket.isClosed())
+                    setError("Could not accept connection: "
+                             + e.getMessage());
+                return;
+            }
+            Connection connection = new Connection(socket);
+            Thread thread = new Thread(connection::run, "Connection");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private synchronized void disconnected(TreeSet<Integer> assigned)
+    {
+        for (int gameIndex : assigned)
+            if (! m_resultFile.releaseGameIndex(gameIndex))
+            {
+                // Game was already repeated too often, leave it missing in
+                // the table; it is played again when the run is continued
+                System.err.println("Game " + gameIndex + " lost");
+                m_outstanding.remove(gameIndex);
+            }
+        assigned.clear();
+        notifyAll();
+    }
+
+    private synchronized void finishedGame(int gameIndex)
+    {
+        m_outstanding.remove(gameIndex);
+        notifyAll();
+    }
+
+    private synchronized void initResultFile(TreeMap<String,String>
+                                             properties)
+        throws ErrorMessage
+    {
+        if (m_resultFile != null)
+            return;
+        if (m_status != null)
+            m_status.setNames(properties.getOrDefault("BlackLabel", ""),
+                              properties.getOrDefault("WhiteLabel", ""));
+        m_resultFile = new ResultFile(m_force, properties, m_numberGames,
+                                      m_size, m_komi, m_filePrefix,
+                                      m_alternate, m_useXml, 1, m_sprt);
+        notifyAll();
+    }
+
+    private synchronized Status getStatus()
+    {
+        return m_status;
+    }
+
+    private synchronized boolean isFinished()
+    {
+        // Without a limit on the number of games, the result file is
+        // exhausted only if the SPRT is finished
+        return (m_resultFile != null && m_isExhausted
+                && m_outstanding.isEmpty());
+    }
+
+    /** Get the next game for a connection.
+        Waits while there are no games to assign, but games assigned to
+        other connections could still be given back. */
+    private synchronized int nextGame(TreeSet<Integer> assigned)
+    {
+        while (true)
+        {
+            int gameIndex = m_resultFile.getNextGameIndex();
+            if (gameIndex >= 0)
+            {
+                assigned.add(gameIndex);
+                m_outstanding.add(gameIndex);
+                return gameIndex;
+            }
+            m_isExhausted = true;
+            if (m_outstanding.isEmpty() || m_error != null)
+            {
+                notifyAll();
+                return -1;
+            }
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException e)
+            {
+                return -1;
+            }
+        }
+    }
+
+    private synchronized boolean releaseGame(int gameIndex)
+    {
+        boolean released = m_resultFile.releaseGameIndex(gameIndex);
+        notifyAll();
+        return released;
+    }
+
+    private synchronized void setError(String message)
+    {
+        if (m_error == null)
+            m_error = message;
+        notifyAll();
+    }
+}
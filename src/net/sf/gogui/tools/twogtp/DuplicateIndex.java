@@ -0,0 +1,285 @@
+// DuplicateIndex.java
+
+package net.sf.gogui.tools.twogtp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import net.sf.gogui.go.BoardUtil;
+
+/** Index of games for finding duplicates.
+    A game is a duplicate of another game if it is identical to a rotation
+    or mirroring of it, and nearly identical if less than a fifth of the
+    moves differ comparing moves by number (differences in length count as
+    different moves). Finding duplicates does not need comparing a game with
+    all previous games.
+    Exact duplicates are looked up by a hash of the move sequence that is
+    the same for all rotations (the minimum of the hashes of the eight
+    rotated sequences). Nearly identical games are looked up by a MinHash
+    sketch of the set of (move number, move) pairs, split into bands as in
+    locality-sensitive hashing; two games that differ in 20% of their moves
+    share at least one band with a probability of more than 99.9%, games
+    that differ in most moves almost never. All candidates are verified by
+    comparing the moves, so the result is never a false duplicate. Moves
+    are stored as one MoveCode integer each.
+    This class is not thread-safe. */
+public class DuplicateIndex
+{
+    /** Add a game.
+        @param gameNumber The game number.
+        @param moves The moves of the game.
+        @param size The board size. */
+    public void add(int gameNumber, ArrayList<Compare.Placement> moves,
+                    int size)
+    {
+        int[] game = encode(moves);
+        m_games.put(gameNumber, game);
+        int[] rotated = new int[game.length];
+        long minHash = Long.MAX_VALUE;
+        for (int rot = 0; rot < BoardUtil.NUMBER_ROTATIONS; ++rot)
+        {
+            rotate(game, rot, size, rotated);
+            minHash = Math.min(minHash, getSequenceHash(rotated));
+        }
+        m_exact.put(minHash, gameNumber);
+        long[] bands = new long[NUMBER_BANDS];
+        getBands(game, bands);
+        for (int i = 0; i < NUMBER_BANDS; ++i)
+            m_bands.put(bands[i], gameNumber);
+    }
+
+    /** Check if a game already exists in the index.
+        @param moves Moves of game to check.
+        @param size The board size.
+        @param useAlternate If true, assume that players are exchanged every
+        second game. Only check games where player played the same color.
+        @param isAlternated If useAlternate, indicate if game to check
+        had players exchanged.
+        @return The smallest number of an identical game, if there is none
+        the largest number of a nearly identical game with a question mark
+        appended, otherwise "-". */
+    public String check(ArrayList<Compare.Placement> moves, int size,
+                        boolean useAlternate, boolean isAlternated)
+    {
+        int[] game = encode(moves);
+        int[] rotated = new int[game.length];
+        long minHash = Long.MAX_VALUE;
+        TreeSet<Integer> candidates = new TreeSet<>();
+        long[] bands = new long[NUMBER_BANDS];
+        for (int rot = 0; rot < BoardUtil.NUMBER_ROTATIONS; ++rot)
+        {
+            rotate(game, rot, size, rotated);
+            minHash = Math.min(minHash, getSequenceHash(rotated));
+            // Nearly identical games need at least 10 moves, see compare()
+            if (game.length >= 10)
+            {
+                getBands(rotated, bands);
+                for (int i = 0; i < NUMBER_BANDS; ++i)
+                    m_bands.get(bands[i], candidates);
+            }
+        }
+        TreeSet<Integer> exact = new TreeSet<>();
+        m_exact.get(minHash, exact);
+        for (int gameNumber : exact)
+        {
+            if (useAlternate && ((gameNumber % 2 != 0) != isAlternated))
+                continue;
+            if (compare(game, m_games.get(gameNumber), size) == EXACT)
+                return Integer.toString(gameNumber);
+        }
+        for (int gameNumber : candidates.descendingSet())
+        {
+            if (useAlternate && ((gameNumber % 2 != 0) != isAlternated))
+                continue;
+            // Exact matches were found above unless the hash collided
+            int result = compare(game, m_games.get(gameNumber), size);
+            if (result == EXACT)
+                return Integer.toString(gameNumber);
+            if (result == NEARLY)
+                return Integer.toString(gameNumber) + "?";
+        }
+        return "-";
+    }
+
+    /** Get the number of games in the index.
+        @return The number of games. */
+    public int getNumberGames()
+    {
+        return m_games.size();
+    }
+
+    /** Simple open addressing hash table with long keys and multiple int
+        values per key. */
+    private static final class MultiMap
+    {
+        public void put(long key, int value)
+        {
+            if (2 * (m_size + 1) > m_keys.length)
+                grow();
+            int mask = m_keys.length - 1;
+            int i = (int)key & mask;
+            while (m_used[i])
+            {
+                if (m_keys[i] == key && m_values[i] == value)
+                    return;
+                i = (i + 1) & mask;
+            }
+            m_used[i] = true;
+            m_keys[i] = key;
+            m_values[i] = value;
+            ++m_size;
+        }
+
+        /** Add all values for a key to a set. */
+        public void get(long key, TreeSet<Integer> values)
+        {
+            int mask = m_keys.length - 1;
+            int i = (int)key & mask;
+            while (m_used[i])
+            {
+                if (m_keys[i] == key)
+                    values.add(m_values[i]);
+                i = (i + 1) & mask;
+            }
+        }
+
+        private int m_size;
+
+        private long[] m_keys = new long[256];
+
+        private int[] m_values = new int[256];
+
+        private boolean[] m_used = new boolean[256];
+
+        private void grow()
+        {
+            long[] keys = m_keys;
+            int[] values = m_values;
+            boolean[] used = m_used;
+            m_keys = new long[2 * keys.length];
+            m_values = new int[2 * keys.length];
+            m_used = new boolean[2 * keys.length];
+            m_size = 0;
+            for (int i = 0; i < keys.length; ++i)
+                if (used[i])
+                    put(keys[i], values[i]);
+        }
+    }
+
+    private static final int DIFFERENT = 0;
+
+    private static final int NEARLY = 1;
+
+    private static final int EXACT = 2;
+
+    /** Number of bands of the MinHash sketch. */
+    private static final int NUMBER_BANDS = 12;
+
+    /** Number of MinHash values per band. */
+    private static final int BAND_SIZE = 2;
+
+    /** Flag of the codes of setup stones. */
+    private static final int SETUP = 1 << MoveCode.FIRST_FREE_BIT;
+
+    private static final long[] SEEDS = new long[NUMBER_BANDS * BAND_SIZE];
+
+    static
+    {
+        long seed = 0x2545f4914f6cdd1dL;
+        for (int i = 0; i < SEEDS.length; ++i)
+        {
+            seed = mix(seed + 0x9e3779b97f4a7c15L);
+            SEEDS[i] = seed;
+        }
+    }
+
+    private final Map<Integer,int[]> m_games = new HashMap<>();
+
+    private final MultiMap m_exact = new MultiMap();
+
+    private final MultiMap m_bands = new MultiMap();
+
+    /** Compare two games under all rotations.
+        @return EXACT if game is identical to a rotation of other, NEARLY if
+        less than a fifth of the moves differ, DIFFERENT otherwise. */
+    private static int compare(int[] game, int[] other, int size)
+    {
+        int result = DIFFERENT;
+        for (int rot = 0; rot < BoardUtil.NUMBER_ROTATIONS; ++rot)
+        {
+            int numberDifferent = 0;
+            int moveNumber = game.length;
+            int maxDifferent = moveNumber / 5;
+            if (other.length != moveNumber)
+            {
+                numberDifferent = Math.abs(other.length - moveNumber);
+                moveNumber = Math.min(other.length, moveNumber);
+            }
+            for (int i = 0;
+                 numberDifferent <= maxDifferent && i < moveNumber; ++i)
+                if (game[i] != MoveCode.rotate(other[i], rot, size))
+                    ++numberDifferent;
+            if (numberDifferent == 0)
+                return EXACT;
+            else if (numberDifferent < maxDifferent)
+                result = NEARLY;
+        }
+        return result;
+    }
+
+    private static int[] encode(ArrayList<Compare.Placement> moves)
+    {
+        int[] result = new int[moves.size()];
+        for (int i = 0; i < result.length; ++i)
+        {
+            Compare.Placement move = moves.get(i);
+            int code = MoveCode.encode(move.m_color, move.m_point);
+            if (move.m_isSetup)
+                code |= SETUP;
+            result[i] = code;
+        }
+        return result;
+    }
+
+    /** Compute the MinHash sketch of a game and combine it into bands. */
+    private static void getBands(int[] game, long[] bands)
+    {
+        for (int i = 0; i < NUMBER_BANDS; ++i)
+        {
+            long band = i;
+            for (int j = 0; j < BAND_SIZE; ++j)
+            {
+                long seed = SEEDS[i * BAND_SIZE + j];
+                long min = Long.MAX_VALUE;
+                for (int k = 0; k < game.length; ++k)
+                    min = Math.min(min,
+                                   mix((((long)k << 32) | game[k]) ^ seed));
+                band = mix(band * 31 + min);
+            }
+            bands[i] = band;
+        }
+    }
+
+    private static long getSequenceHash(int[] game)
+    {
+        long hash = game.length;
+        for (int code : game)
+            hash = mix(hash * 31 + code);
+        return hash;
+    }
+
+    /** Finalizer of SplitMix64. */
+    private static long mix(long x)
+    {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    private static void rotate(int[] game, int rot, int size, int[] result)
+    {
+        for (int i = 0; i < game.length; ++i)
+            result[i] = MoveCode.rotate(game[i], rot, size);
+    }
+}
@@ -4,10 +4,13 @@ package net.sf.gogui.tools.twogtp;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Map;
 import net.sf.gogui.game.TimeSettings;
 import net.sf.gogui.go.GoPoint;
 import net.sf.gogui.go.Komi;
+import net.sf.gogui.gtp.GtpMetrics;
 import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.util.IOThreads;
 import net.sf.gogui.util.Options;
 import net.sf.gogui.util.StringUtil;
 import net.sf.gogui.version.Version;
@@ -29,26 +32,37 @@ public final class Main
                 "black:",
                 "compare",
                 "config:",
+                "connect:",
                 "debugtocomment",
                 "force",
                 "games:",
+                "gauntlet",
                 "help",
                 "komi:",
                 "maxmoves:",
+                "metrics",
                 "observer:",
                 "openings:",
                 "referee:",
+                "serve:",
                 "sgffile:",
                 "size:",
+                "sprt:",
+                "status:",
+                "statusport:",
                 "threads:",
                 "time:",
+                "timeout:",
+                "tournament:",
                 "verbose",
                 "version",
+                "virtualthreads:",
                 "white:",
                 "xml"
             };
             Options opt = Options.parse(args, options);
-            opt.checkNoArguments();
+            if (! opt.contains("compare"))
+                opt.checkNoArguments();
             if (opt.contains("help"))
             {
                 String helpText =
@@ -60,21 +74,31 @@ public final class Main
                    "-black          command for black program\n" +
                    "-compare        compare list of sgf files\n" +
                    "-config         config file\n" +
+                   "-connect host:port play games for coordinator\n" +
                    "-debugtocomment save stderr of programs in SGF comments\n" +
                    "-force          overwrite existing files\n" +
                    "-games          number of games (0=unlimited)\n" +
+                   "-gauntlet       play first program against all others\n" +
                    "-help           display this help and exit\n" +
                    "-komi           komi\n" +
                    "-maxmoves       move limit\n" +
+                   "-metrics        print GTP command statistics to stderr\n" +
                    "-observer       command for observer program\n" +
                    "-openings       directory with opening sgf files\n" +
                    "-referee        command for referee program\n" +
+                   "-serve port     coordinate games of workers\n" +
                    "-sgffile        filename prefix\n" +
                    "-size           board size for autoplay (default 19)\n" +
+                   "-sprt spec      stop by SPRT (elo0,elo1[,alpha,beta])\n" +
+                   "-status file    write live statistics to JSON file\n" +
+                   "-statusport n   serve live statistics on localhost:n\n" +
                    "-threads n      number of threads\n" +
                    "-time spec      set time limits (min[+min/moves])\n" +
+                   "-timeout sec    restart programs that do not respond\n" +
+                   "-tournament file play round-robin between programs\n" +
                    "-verbose        log GTP streams to stderr\n" +
                    "-version        print version and exit\n" +
+                   "-virtualthreads n max. virtual threads for socket I/O\n" +
                    "-white          command for white program\n" +
                    "-xml            save games in XML format\n";
                 System.out.print(helpText);
@@ -99,15 +123,13 @@ public final class Main
                 return;
             }
             boolean alternate = opt.contains("alternate");
-            boolean auto = opt.contains("auto");
+            boolean tournament = opt.contains("tournament");
+            // Tournaments are always played automatically
+            boolean auto = opt.contains("auto") || tournament;
             boolean debugToComment = opt.contains("debugtocomment");
             boolean verbose = opt.contains("verbose");
             String black = opt.get("black", "");
-            if (black.equals(""))
-                throw new ErrorMessage("No black program set");
             String white = opt.get("white", "");
-            if (white.equals(""))
-                throw new ErrorMessage("No white program set");
             String referee = opt.get("referee", "");
             String observer = opt.get("observer", "");
             int size = opt.getInteger("size", GoPoint.DEFAULT_SIZE, 1,
@@ -119,23 +141,139 @@ public final class Main
             TimeSettings timeSettings = null;
             if (opt.contains("time"))
                 timeSettings = TimeSettings.parse(opt.get("time"));
-            int defaultGames = (auto ? 1 : 0);
+            Sprt sprt = null;
+            if (opt.contains("sprt"))
+                sprt = Sprt.parse(opt.get("sprt"));
+            // With SPRT the run is usually ended by the test
+            int defaultGames = (auto && sprt == null ? 1 : 0);
             int numberGames = opt.getInteger("games", defaultGames, 0);
             int numberThreads = opt.getInteger("threads", 1, 1);
+            long timeout = -1;
+            if (opt.contains("timeout"))
+            {
+                double seconds = opt.getDouble("timeout");
+                if (seconds <= 0)
+                    throw new ErrorMessage("Timeout must be positive");
+                timeout = (long)(seconds * 1000);
+            }
             if (numberThreads > 1 && ! auto)
                 throw new ErrorMessage("Option -threads needs option -auto");
+            if (opt.contains("virtualthreads")
+                && ! IOThreads.setMaxVirtual(opt.getInteger("virtualthreads",
+                                                            0, 0)))
+                System.err.println("Virtual threads not supported"
+                                   + " by this Java version");
             String sgfFile = opt.get("sgffile", "");
             if (opt.contains("games") && sgfFile.equals(""))
                 throw new ErrorMessage("Use option -sgffile with -games");
+            if (sprt != null && opt.contains("connect"))
+                throw new ErrorMessage("Use option -sprt with -serve");
+            if (sprt != null && sgfFile.equals(""))
+                throw new ErrorMessage("Use option -sgffile with -sprt");
             Openings openings = null;
             if (opt.contains("openings"))
+            {
                 openings = new Openings(new File(opt.get("openings")));
+                if (verbose)
+                    System.err.println("Loaded " + openings.getNumber()
+                                       + " openings ("
+                                       + openings.getMemory() / 1024
+                                       + " KB)");
+            }
             boolean useXml = opt.contains("xml");
+            if (opt.contains("gauntlet") && ! tournament)
+                throw new ErrorMessage("Option -gauntlet needs option"
+                                       + " -tournament");
+            if (tournament)
+            {
+                for (String name : new String[] { "black", "white",
+                                                  "observer", "connect",
+                                                  "serve", "sprt", "status",
+                                                  "statusport", "metrics" })
+                    if (opt.contains(name))
+                        throw new ErrorMessage("Option -" + name
+                                               + " cannot be used with"
+                                               + " -tournament");
+                if (sgfFile.equals(""))
+                    throw new ErrorMessage("Use option -sgffile with"
+                                           + " -tournament");
+                if (numberGames == 0)
+                    throw new ErrorMessage("Option -tournament needs a"
+                                           + " limited number of games");
+                System.in.close();
+                Tournament t =
+                    new Tournament(new File(opt.get("tournament")),
+                                   opt.contains("gauntlet"), referee, size,
+                                   komi, numberGames, alternate, sgfFile,
+                                   force, useXml, numberThreads, openings,
+                                   timeSettings, verbose);
+                t.setMaxMoves(maxMoves);
+                t.setTimeout(timeout);
+                t.setDebugToComment(debugToComment);
+                t.run();
+                return;
+            }
+            Status status = null;
+            if (opt.contains("status") || opt.contains("statusport"))
+            {
+                File statusFile = null;
+                if (opt.contains("status"))
+                    statusFile = new File(opt.get("status"));
+                int statusPort = -1;
+                if (opt.contains("statusport"))
+                    statusPort = opt.getInteger("statusport", 0, 0, 65535);
+                status = new Status(statusFile, statusPort);
+            }
+            if (opt.contains("serve"))
+            {
+                if (sgfFile.equals(""))
+                    throw new ErrorMessage("Use option -sgffile with -serve");
+                int port = opt.getInteger("serve", 0, 0, 65535);
+                Coordinator coordinator =
+                    new Coordinator(port, force, numberGames, size, komi,
+                                    sgfFile, alternate, useXml, sprt);
+                coordinator.setStatus(status);
+                try
+                {
+                    coordinator.run();
+                }
+                finally
+                {
+                    coordinator.close();
+                    if (status != null)
+                        status.close();
+                }
+                return;
+            }
+            if (black.equals(""))
+                throw new ErrorMessage("No black program set");
+            if (white.equals(""))
+                throw new ErrorMessage("No white program set");
+            String coordinator = opt.get("connect", "");
+            if (! coordinator.equals(""))
+            {
+                if (! auto)
+                    throw new ErrorMessage("Option -connect needs option"
+                                           + " -auto");
+                if (! sgfFile.equals(""))
+                    throw new ErrorMessage("Option -connect cannot be used"
+                                           + " with -sgffile");
+            }
             if (auto)
                 System.in.close();
 
+            GtpMetrics[] metrics = null;
+            if (opt.contains("metrics"))
+            {
+                // Shared by all threads
+                metrics = new GtpMetrics[] { new GtpMetrics(),
+                                             new GtpMetrics(),
+                                             new GtpMetrics() };
+            }
+
             TwoGtp twoGtp[] = new TwoGtp[numberThreads];
             TwoGtpThread thread[] = new TwoGtpThread[numberThreads];
+            RemoteResults remoteResults[] = new RemoteResults[numberThreads];
             ResultFile resultFile = null;
             for (int i = 0; i < numberThreads; ++i)
             {
@@ -158,20 +296,44 @@ public final class Main
                 allPrograms.forEach((program) -> {
                     program.setLabel(allPrograms);
                 });
+                if (metrics != null)
+                    for (int j = 0; j < allPrograms.size(); ++j)
+                        allPrograms.get(j).setMetrics(metrics[j]);
+                for (Program program : allPrograms)
+                    program.setTimeout(timeout);
+                Map<String,String> properties =
+                    ResultFile.getProperties(blackProgram, whiteProgram,
+                                             refereeProgram, openings);
                 if (! sgfFile.equals("") && resultFile == null)
                     resultFile =
-                        new ResultFile(force, blackProgram, whiteProgram,
-                                       refereeProgram, numberGames, size,
-                                       komi, sgfFile, openings, alternate,
-                                       useXml, numberThreads);
+                        new ResultFile(force, properties, numberGames, size,
+                                       komi, sgfFile, alternate, useXml,
+                                       numberThreads, sprt);
+                ResultStore resultStore = resultFile;
+                if (! coordinator.equals(""))
+                {
+                    // Each instance needs its own connection, see
+                    // RemoteResults
+                    remoteResults[i] =
+                        new RemoteResults(coordinator, properties, size, komi,
+                                          alternate);
+                    resultStore = remoteResults[i];
+                }
                 if (i > 0)
                     verbose = false;
                 twoGtp[i] = new TwoGtp(blackProgram, whiteProgram,
                                        refereeProgram, observer, size, komi,
                                        numberGames, alternate, sgfFile,
                                        verbose, openings, timeSettings,
-                                       resultFile);
+                                       resultStore);
                 twoGtp[i].setMaxMoves(maxMoves);
+                if (status != null)
+                {
+                    if (i == 0)
+                        status.setNames(blackProgram.getLabel(),
+                                        whiteProgram.getLabel());
+                    twoGtp[i].setStatus(status);
+                }
                 if (debugToComment)
                     twoGtp[i].setDebugToComment(true);
                 if (auto)
@@ -190,11 +352,28 @@ public final class Main
                         StringUtil.printException(thread[i].getException());
                         exitError = true;
                     }
+                if (numberThreads > 1 || getNumberRestarts(twoGtp) > 0)
+                    printWorkers(twoGtp, thread);
             }
             else
                 twoGtp[0].mainLoop(System.in, System.out);
             if (resultFile != null)
                 resultFile.close();
+            if (status != null)
+                status.close();
+            for (RemoteResults r : remoteResults)
+                if (r != null)
+                    r.close();
+            if (metrics != null)
+            {
+                String[] title = { "Black", "White", "Referee" };
+                for (int i = 0; i < metrics.length; ++i)
+                    if (i < 2 || ! referee.equals(""))
+                    {
+                        metrics[i].print(System.err, title[i] + ":");
+                        System.err.println();
+                    }
+            }
         }
         catch (Exception t)
         {
@@ -209,6 +388,32 @@ public final class Main
     private Main()
     {
     }
+
+    private static int getNumberRestarts(TwoGtp[] twoGtp)
+    {
+        int result = 0;
+        for (TwoGtp t : twoGtp)
+            result += t.getNumberRestarts();
+        return result;
+    }
+
+    /** Print the number of games and throughput of each thread.
+        The threads take the next game index when they finish a game, so
+        faster threads play more games. */
+    private static void printWorkers(TwoGtp[] twoGtp, TwoGtpThread[] thread)
+    {
+        System.err.println("Thread Games Restarts  Time[s] Games/h");
+        for (int i = 0; i < twoGtp.length; ++i)
+        {
+            int games = twoGtp[i].getNumberGamesPlayed();
+            double time = thread[i].getTime();
+            double gamesPerHour = (time > 0 ? games * 3600 / time : 0);
+            System.err.println(String.format("%6d %5d %8d %8.1f %7.1f",
+                                             i + 1, games,
+                                             twoGtp[i].getNumberRestarts(),
+                                             time, gamesPerHour));
+        }
+    }
 }
 
 class TwoGtpThread
@@ -224,9 +429,17 @@ class TwoGtpThread
         return m_exception;
     }
 
+    /** Get the time the thread was playing games.
+        @return The time in seconds. */
+    public double getTime()
+    {
+        return m_time;
+    }
+
     @Override
     public void run()
     {
+        long startTime = System.nanoTime();
         try
         {
             m_twoGtp.autoPlay();
@@ -237,10 +450,13 @@ class TwoGtpThread
         }
         finally
         {
+            m_time = (System.nanoTime() - startTime) / 1e9;
             m_twoGtp.close();
         }
     }
 
+    private double m_time;
+
     private Exception m_exception;
 
     private final TwoGtp m_twoGtp;
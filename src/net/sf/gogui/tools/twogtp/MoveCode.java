@@ -0,0 +1,103 @@
+// MoveCode.java
+
+package net.sf.gogui.tools.twogtp;
+
+import net.sf.gogui.go.BoardUtil;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+import net.sf.gogui.go.GoPoint;
+
+/** Stores a color and a point in one integer.
+    Used for the compact storage of moves and setup stones in Openings and
+    DuplicateIndex. The point is stored in bits 0-15 (x in bits 0-7, y in
+    bits 8-15, all bits set for pass) and the color in bits 16-17 (0 for
+    no color or EMPTY, 1 for BLACK, 2 for WHITE). The bits starting at
+    FIRST_FREE_BIT can be used for flags by the caller. */
+final class MoveCode
+{
+    /** Mask of the point part. */
+    public static final int POINT_MASK = 0xffff;
+
+    /** Code of the point part for pass moves. */
+    public static final int PASS = POINT_MASK;
+
+    /** First bit not used by the color and the point. */
+    public static final int FIRST_FREE_BIT = 18;
+
+    /** Decode the color.
+        @param code The code.
+        @return The color, EMPTY if the code has no color. */
+    public static GoColor decodeColor(int code)
+    {
+        switch ((code >> 16) & 3)
+        {
+        case 1:
+            return BLACK;
+        case 2:
+            return WHITE;
+        default:
+            return EMPTY;
+        }
+    }
+
+    /** Decode the point.
+        @param code The code.
+        @return The point, null for pass. */
+    public static GoPoint decodePoint(int code)
+    {
+        int point = code & POINT_MASK;
+        if (point == PASS)
+            return null;
+        return GoPoint.get(point & 0xff, point >> 8);
+    }
+
+    /** Encode a color and a point.
+        @param c The color (null or EMPTY for no color).
+        @param p The point (null for pass).
+        @return The code. */
+    public static int encode(GoColor c, GoPoint p)
+    {
+        return encodeColor(c) | encodePoint(p);
+    }
+
+    /** Encode a color.
+        @param c The color (null or EMPTY for no color).
+        @return The code with the point part zero. */
+    public static int encodeColor(GoColor c)
+    {
+        if (c == BLACK)
+            return 1 << 16;
+        if (c == WHITE)
+            return 2 << 16;
+        return 0;
+    }
+
+    /** Rotate or mirror the point of a code.
+        @param code The code.
+        @param rot The rotation as in BoardUtil.rotate().
+        @param size The board size.
+        @return The code with the point rotated and all other bits
+        unchanged. */
+    public static int rotate(int code, int rot, int size)
+    {
+        GoPoint p = decodePoint(code);
+        if (p == null || rot == 0)
+            return code;
+        p = BoardUtil.rotate(rot, p, size);
+        return (code & ~POINT_MASK) | encodePoint(p);
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private MoveCode()
+    {
+    }
+
+    private static int encodePoint(GoPoint p)
+    {
+        if (p == null)
+            return PASS;
+        return (p.getY() << 8) | p.getX();
+    }
+}
@@ -2,14 +2,28 @@
 
 package net.sf.gogui.tools.twogtp;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.util.Arrays;
+import net.sf.gogui.binary.BinaryReader;
+import net.sf.gogui.binary.BinaryWriter;
+import net.sf.gogui.game.ConstGameInfo;
+import net.sf.gogui.game.ConstNode;
 import net.sf.gogui.game.GameInfo;
 import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.Node;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK_WHITE_EMPTY;
+import static net.sf.gogui.go.GoColor.EMPTY;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
 import net.sf.gogui.sgf.SgfError;
 import net.sf.gogui.sgf.SgfReader;
+import net.sf.gogui.sgf.SgfWriter;
 import net.sf.gogui.util.ErrorMessage;
 import net.sf.gogui.util.FileUtil;
 
@@ -23,7 +37,16 @@ class Filter
     }
 }
 
-/** Access opening SGF files from directory. */
+/** Opening SGF files from directory.
+    All files are read when the openings are created. Most opening files
+    contain only a main variation with moves, setup stones, comments and
+    the game information of the root node; they are stored in a compact
+    form. Files that contain more (variations, markup, labels or other
+    properties) are stored in the binary game format, which keeps all
+    information of the file. The stored openings are not modified
+    afterwards. Therefore an instance can be shared by all TwoGtp instances
+    of a run without synchronization. getTree() creates a new game tree for
+    every game, because the tree of a game is modified while playing. */
 public class Openings
 {
     public Openings(File directory) throws ErrorMessage
@@ -35,12 +58,17 @@ public class Openings
         if (m_files.length == 0)
             throw new ErrorMessage("No SGF files found in " + directory);
         sortFiles();
-        m_currentFile = -1;
+        m_openings = new Opening[m_files.length];
+        for (int i = 0; i < m_files.length; ++i)
+            m_openings[i] = readFile(m_files[i]);
     }
 
-    public int getBoardSize()
+    /** Get board size of an opening.
+        @param i The index of the opening.
+        @return The board size. */
+    public int getBoardSize(int i)
     {
-        return getTree().getBoardSize();
+        return m_openings[i].m_size;
     }
 
     /** Get name of directory.
@@ -50,25 +78,22 @@ public class Openings
         return m_directory.toString();
     }
 
-    /** Get name of currently loaded file.
-     * @return  */
-    public String getFilename()
+    /** Get file name of an opening.
+        @param i The index of the opening.
+        @return The file name. */
+    public String getFilename(int i)
     {
-        return m_files[m_currentFile].toString();
+        return m_files[i].toString();
     }
 
-    /** Get game information of currently loaded file.
-     * @return  */
-    public GameInfo getGameInfo()
+    /** Get estimated memory used by the openings.
+        @return The approximate number of bytes. */
+    public long getMemory()
     {
-        return m_tree.getGameInfo(m_tree.getRoot());
-    }
-
-    /** Get game tree of currently loaded file.
-     * @return  */
-    public GameTree getTree()
-    {
-        return m_tree;
+        long memory = 0;
+        for (Opening opening : m_openings)
+            memory += opening.getMemory();
+        return memory;
     }
 
     /** Get number of opening files in directory.
@@ -78,26 +103,211 @@ public class Openings
         return m_files.length;
     }
 
-    /** Load opening file number i.
-     * @param i
-     * @throws java.io.IOException
-     * @throws net.sf.gogui.sgf.SgfError */
-    public void loadFile(int i) throws IOException, SgfError
+    /** Create game tree of an opening.
+        @param i The index of the opening.
+        @return A new game tree with the content of the opening file.
+        @throws ErrorMessage If decoding an opening stored in the binary
+        format fails. */
+    public GameTree getTree(int i) throws ErrorMessage
     {
-        File file = m_files[i];
-        FileInputStream fileStream = new FileInputStream(file);
-        SgfReader reader = new SgfReader(fileStream, file, null, 0);
-        m_tree = reader.getTree();
-        m_currentFile = i;
+        return m_openings[i].createTree();
     }
 
-    private int m_currentFile;
+    /** Main variation of an opening file.
+        The nodes are stored in one integer array. Each node starts with a
+        header containing the number of setup stones (bits 0-15), the color
+        to play (bits 16-17) and a flag (bit 18) if the node has a move,
+        followed by the setup stones and the move. Stones and moves are
+        stored as MoveCode codes.
+        Openings that cannot be stored in this form are stored in the
+        binary game format instead. */
+    private static final class Opening
+    {
+        public Opening(int size, ConstGameInfo info, int[] nodes,
+                       int numberNodes, String[] comments)
+        {
+            m_size = size;
+            m_info = new GameInfo(info);
+            m_nodes = nodes;
+            m_numberNodes = numberNodes;
+            m_comments = comments;
+            m_binary = null;
+        }
+
+        public Opening(int size, byte[] binary)
+        {
+            m_size = size;
+            m_info = null;
+            m_nodes = null;
+            m_numberNodes = 0;
+            m_comments = null;
+            m_binary = binary;
+        }
+
+        public final int m_size;
+
+        public GameTree createTree() throws ErrorMessage
+        {
+            if (m_binary != null)
+                return new BinaryReader(new ByteArrayInputStream(m_binary),
+                                        null, 0).getTree();
+            Node root = new Node();
+            root.createGameInfo().copyFrom(m_info);
+            GameTree tree = new GameTree(m_size, root);
+            Node node = root;
+            int pos = 0;
+            for (int i = 0; i < m_numberNodes; ++i)
+            {
+                if (i > 0)
+                {
+                    Node child = new Node();
+                    node.append(child);
+                    node = child;
+                }
+                int header = m_nodes[pos++];
+                int numberSetup = header & MoveCode.POINT_MASK;
+                for (int j = 0; j < numberSetup; ++j)
+                {
+                    int code = m_nodes[pos++];
+                    node.addStone(MoveCode.decodeColor(code),
+                                  MoveCode.decodePoint(code));
+                }
+                GoColor player = MoveCode.decodeColor(header);
+                if (player != EMPTY)
+                    node.setPlayer(player);
+                if ((header & HAS_MOVE) != 0)
+                {
+                    int code = m_nodes[pos++];
+                    node.setMove(Move.get(MoveCode.decodeColor(code),
+                                          MoveCode.decodePoint(code)));
+                }
+                if (m_comments != null && m_comments[i] != null)
+                    node.setComment(m_comments[i]);
+            }
+            return tree;
+        }
+
+        public long getMemory()
+        {
+            // Rough estimate including the object headers
+            if (m_binary != null)
+                return 64 + 16 + m_binary.length;
+            long memory = 64 + 16 + 4L * m_nodes.length + GAME_INFO_MEMORY;
+            if (m_comments != null)
+            {
+                memory += 16 + 8L * m_comments.length;
+                for (String comment : m_comments)
+                    if (comment != null)
+                        memory += 40 + 2L * comment.length();
+            }
+            return memory;
+        }
+
+        private final int m_numberNodes;
+
+        private final int[] m_nodes;
+
+        /** Comments of the nodes or null if no node has a comment. */
+        private final String[] m_comments;
+
+        /** Never modified, only copied into the created trees. */
+        private final GameInfo m_info;
+
+        /** Opening in the binary format or null if stored in the compact
+            form. */
+        private final byte[] m_binary;
+    }
+
+    private static final int HAS_MOVE = 1 << MoveCode.FIRST_FREE_BIT;
+
+    /** Estimated memory of the game information of an opening. */
+    private static final int GAME_INFO_MEMORY = 256;
 
     private final File m_directory;
 
     private File[] m_files;
 
-    private GameTree m_tree;
+    private final Opening[] m_openings;
+
+    private static Opening readFile(File file) throws ErrorMessage
+    {
+        GameTree tree;
+        try (FileInputStream fileStream = new FileInputStream(file))
+        {
+            SgfReader reader = new SgfReader(fileStream, file, null, 0);
+            tree = reader.getTree();
+        }
+        catch (IOException | SgfError e)
+        {
+            throw new ErrorMessage("Could not read " + file + ": "
+                                   + e.getMessage());
+        }
+        ConstNode root = tree.getRootConst();
+        int numberNodes = 0;
+        int length = 0;
+        boolean hasComments = false;
+        for (ConstNode node = root; node != null;
+             node = node.getChildConst())
+        {
+            ++numberNodes;
+            ++length;
+            for (GoColor c : BLACK_WHITE_EMPTY)
+                length += node.getSetup(c).size();
+            if (node.getMove() != null)
+                ++length;
+            if (node.hasComment())
+                hasComments = true;
+        }
+        int[] nodes = new int[length];
+        String[] comments = (hasComments ? new String[numberNodes] : null);
+        int pos = 0;
+        int i = 0;
+        for (ConstNode node = root; node != null;
+             node = node.getChildConst())
+        {
+            int header = pos++;
+            int numberSetup = 0;
+            for (GoColor c : BLACK_WHITE_EMPTY)
+                for (GoPoint p : node.getSetup(c))
+                {
+                    nodes[pos++] = MoveCode.encode(c, p);
+                    ++numberSetup;
+                }
+            if (numberSetup > MoveCode.POINT_MASK)
+                throw new ErrorMessage("Too many setup stones in " + file);
+            nodes[header] =
+                numberSetup | MoveCode.encodeColor(node.getPlayer());
+            Move move = node.getMove();
+            if (move != null)
+            {
+                nodes[header] |= HAS_MOVE;
+                nodes[pos++] = MoveCode.encode(move.getColor(),
+                                               move.getPoint());
+            }
+            if (comments != null)
+                comments[i] = node.getComment();
+            ++i;
+        }
+        Opening opening =
+            new Opening(tree.getBoardSize(), tree.getGameInfoConst(root),
+                        nodes, numberNodes, comments);
+        // Keep all information, if the compact form does not reproduce the
+        // file content
+        if (! Arrays.equals(toSgf(tree), toSgf(opening.createTree())))
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new BinaryWriter(out, tree, null);
+            opening = new Opening(tree.getBoardSize(), out.toByteArray());
+        }
+        return opening;
+    }
+
+    private static byte[] toSgf(GameTree tree)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SgfWriter(out, tree, null, null);
+        return out.toByteArray();
+    }
 
     private void sortFiles()
     {
@@ -3,6 +3,7 @@
 package net.sf.gogui.tools.twogtp;
 
 import java.util.ArrayList;
+import java.util.Map;
 import net.sf.gogui.game.ConstNode;
 import net.sf.gogui.game.ConstGame;
 import net.sf.gogui.game.ConstGameInfo;
@@ -10,39 +11,19 @@ import net.sf.gogui.go.ConstBoard;
 import net.sf.gogui.go.GoColor;
 import net.sf.gogui.gtp.GtpClient;
 import net.sf.gogui.gtp.GtpError;
+import net.sf.gogui.gtp.GtpMetrics;
 import net.sf.gogui.gtp.GtpSynchronizer;
-import net.sf.gogui.util.Table;
 
 public class Program
 {
     public Program(String command, String defaultName, String logPrefix,
                    boolean verbose) throws GtpError
     {
+        m_command = command;
         m_defaultName = defaultName;
-        m_gtp = new GtpClient(command, null, verbose, null);
-        m_gtp.setLogPrefix(logPrefix);
-        m_synchronizer = new GtpSynchronizer(m_gtp);
-        m_gtp.queryProtocolVersion();
-        try
-        {
-            m_name = m_gtp.send("name");
-            if (m_name.trim().equals(""))
-                m_name = defaultName;
-        }
-        catch (GtpError e)
-        {
-            m_name = defaultName;
-        }
-        try
-        {
-            m_version = m_gtp.send("version");
-        }
-        catch (GtpError e)
-        {
-            m_version = "";
-        }
-        m_gtp.querySupportedCommands();
-        m_gtp.queryInterruptSupport();
+        m_logPrefix = logPrefix;
+        m_verbose = verbose;
+        start();
     }
 
     public void close()
@@ -98,7 +79,7 @@ public class Program
     {
         try
         {
-            return m_gtp.send("final_score");
+            return send("final_score");
         }
         catch (GtpError e)
         {
@@ -124,6 +105,13 @@ public class Program
         }
     }
 
+    /** Get the number of times the program was restarted.
+        @return The number of successful invocations of restart(). */
+    public int getNumberRestarts()
+    {
+        return m_numberRestarts;
+    }
+
     public boolean isOutOfSync()
     {
         return m_synchronizer.isOutOfSync();
@@ -139,9 +127,28 @@ public class Program
         return m_gtp.isSupported(command);
     }
 
+    /** Kill the program and run it again.
+        The new program process gets the same IO callback and metrics as
+        the old one. The label is kept, such that the results of the
+        restarted program are attributed to the same player. The board of
+        the new process is empty; use synchronizeInit() before sending
+        moves.
+        @throws GtpError If the program could not be started again. */
+    public void restart() throws GtpError
+    {
+        m_gtp.destroyProcess();
+        m_gtp.close();
+        m_gtp.waitForExit();
+        m_cpuTime = 0;
+        start();
+        ++m_numberRestarts;
+    }
+
     public String send(String command) throws GtpError
     {
-        return m_gtp.send(command);
+        if (m_timeout < 0)
+            return m_gtp.send(command);
+        return m_gtp.send(command, m_timeout, () -> false);
     }
 
     public String sendCommandGenmove(GoColor color) throws GtpError
@@ -162,8 +169,29 @@ public class Program
         }
     }
 
+    /** Record statistics of the GTP traffic.
+        @param metrics The statistics to add to or null.
+        @see GtpClient#setMetrics(GtpMetrics) */
+    public void setMetrics(GtpMetrics metrics)
+    {
+        m_metrics = metrics;
+        m_gtp.setMetrics(metrics);
+    }
+
+    /** Set a timeout for commands sent with send(), sendCommandGenmove()
+        and getResult().
+        If the program does not respond within the timeout, it is killed and
+        the command fails. Commands sent for synchronizing the board are not
+        affected.
+        @param timeout The timeout in milliseconds or -1 for no timeout. */
+    public void setTimeout(long timeout)
+    {
+        m_timeout = timeout;
+    }
+
     public void setIOCallback(GtpClient.IOCallback callback)
     {
+        m_callback = callback;
         m_gtp.setIOCallback(callback);
     }
 
@@ -176,6 +204,8 @@ public class Program
         program) */
     public void setLabel(ArrayList<Program> programs)
     {
+        if (m_isLabelFixed)
+            return;
         boolean isUnique = true;
         for (Program program : programs)
             if (program != this && program.m_name.equals(m_name))
@@ -192,12 +222,41 @@ public class Program
             m_label = m_name + "[" + (programs.indexOf(this) + 1) + "]";
     }
 
-    public void setTableProperties(Table table)
+    /** Set a fixed label.
+        Used for the programs of a tournament, which are identified by the
+        names in the engine file. Later calls of setLabel(ArrayList) do not
+        change the label.
+        @param label The label. */
+    public void setLabel(String label)
     {
-        table.setProperty(m_defaultName, m_name);
-        table.setProperty(m_defaultName + "Version", m_version);
-        table.setProperty(m_defaultName + "Label", m_label);
-        table.setProperty(m_defaultName + "Command", getProgramCommand());
+        m_label = label;
+        m_isLabelFixed = true;
+    }
+
+    /** Change the role of the program.
+        Used if the process of a program is reused for playing the other
+        color.
+        @param defaultName The name of the role (e.g. "Black"), used for
+        the keys of the table properties and as the name of the program if
+        it does not respond to the name command.
+        @param logPrefix The prefix for logging the GTP streams. */
+    public void setRole(String defaultName, String logPrefix)
+    {
+        if (m_name.equals(m_defaultName))
+            m_name = defaultName;
+        m_defaultName = defaultName;
+        m_logPrefix = logPrefix;
+        m_gtp.setLogPrefix(logPrefix);
+    }
+
+    /** Add the properties of this program for the result table.
+        @param properties The properties to add to. */
+    public void addTableProperties(Map<String,String> properties)
+    {
+        properties.put(m_defaultName, m_name);
+        properties.put(m_defaultName + "Version", m_version);
+        properties.put(m_defaultName + "Label", m_label);
+        properties.put(m_defaultName + "Command", getProgramCommand());
     }
 
     public void synchronize(ConstGame game) throws GtpError
@@ -235,17 +294,62 @@ public class Program
         m_synchronizer.updateAfterGenmove(board);
     }
 
+    private final boolean m_verbose;
+
+    private boolean m_isLabelFixed;
+
+    private int m_numberRestarts;
+
+    private long m_timeout = -1;
+
     private double m_cpuTime;
 
-    private final String m_defaultName;
+    private final String m_command;
+
+    private String m_defaultName;
 
     private String m_label;
 
-    private final GtpClient m_gtp;
+    private String m_logPrefix;
+
+    private GtpClient m_gtp;
+
+    private GtpClient.IOCallback m_callback;
+
+    private GtpMetrics m_metrics;
 
-    private final GtpSynchronizer m_synchronizer;
+    private GtpSynchronizer m_synchronizer;
 
     private String m_name;
 
     private String m_version;
+
+    private void start() throws GtpError
+    {
+        m_gtp = new GtpClient(m_command, null, m_verbose, m_callback);
+        m_gtp.setLogPrefix(m_logPrefix);
+        m_gtp.setMetrics(m_metrics);
+        m_synchronizer = new GtpSynchronizer(m_gtp);
+        m_gtp.queryProtocolVersion();
+        try
+        {
+            m_name = m_gtp.send("name");
+            if (m_name.trim().equals(""))
+                m_name = m_defaultName;
+        }
+        catch (GtpError e)
+        {
+            m_name = m_defaultName;
+        }
+        try
+        {
+            m_version = m_gtp.send("version");
+        }
+        catch (GtpError e)
+        {
+            m_version = "";
+        }
+        m_gtp.querySupportedCommands();
+        m_gtp.queryInterruptSupport();
+    }
 }
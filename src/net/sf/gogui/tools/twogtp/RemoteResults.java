@@ -0,0 +1,194 @@
+// RemoteResults.java
+
+package net.sf.gogui.tools.twogtp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.Socket;
+import java.util.Map;
+import net.sf.gogui.game.ConstGame;
+import net.sf.gogui.go.Komi;
+import net.sf.gogui.gtp.GtpClient;
+import net.sf.gogui.gtp.GtpError;
+import net.sf.gogui.sgf.SgfWriter;
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.version.Version;
+
+/** Gets game indices from a Coordinator and sends the results to it.
+    Used by TwoGtp instances of a worker instead of a ResultFile. Each
+    instance needs its own RemoteResults, because getNextGameIndex() can
+    wait until games of other workers are finished. */
+public class RemoteResults
+    implements ResultStore
+{
+    /** Connect to a coordinator.
+        @param address The address of the coordinator as host:port.
+        @param properties The properties of the programs, see
+        ResultFile.getProperties().
+        @param size The board size.
+        @param komi The komi.
+        @param alternate True, if colors are exchanged every second game.
+        @throws ErrorMessage If the connection fails or the coordinator
+        plays a match with different settings. */
+    public RemoteResults(String address, Map<String,String> properties,
+                         int size, Komi komi, boolean alternate)
+        throws ErrorMessage
+    {
+        int pos = address.lastIndexOf(':');
+        if (pos < 0)
+            throw new ErrorMessage("Invalid coordinator address (must be "
+                                   + "host:port): " + address);
+        String host = address.substring(0, pos);
+        int port;
+        try
+        {
+            port = Integer.parseInt(address.substring(pos + 1));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new ErrorMessage("Invalid port in: " + address);
+        }
+        try
+        {
+            m_socket = new Socket(host, port);
+            m_gtp = new GtpClient(m_socket.getInputStream(),
+                                  m_socket.getOutputStream(), false, null);
+        }
+        catch (IOException | GtpError e)
+        {
+            throw new ErrorMessage("Could not connect to " + address + ": "
+                                   + e.getMessage());
+        }
+        StringBuilder command = new StringBuilder("twogtp_hello ");
+        command.append(Coordinator.PROTOCOL_VERSION);
+        command.append(' ');
+        command.append(size);
+        command.append(' ');
+        command.append(komi);
+        command.append(alternate ? " 1" : " 0");
+        for (Map.Entry<String,String> entry : properties.entrySet())
+        {
+            command.append(' ');
+            command.append(Coordinator.encode(entry.getKey()));
+            command.append(' ');
+            command.append(Coordinator.encode(entry.getValue()));
+        }
+        try
+        {
+            m_gtp.send(command.toString());
+        }
+        catch (GtpError e)
+        {
+            close();
+            throw new ErrorMessage("Coordinator " + address + ": "
+                                   + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void addResult(int gameIndex, ConstGame game,
+                                       String resultBlack,
+                                       String resultWhite,
+                                       String resultReferee,
+                                       boolean alternated, int numberMoves,
+                                       boolean error, String errorMessage,
+                                       double timeBlack, double timeWhite,
+                                       double cpuTimeBlack,
+                                       double cpuTimeWhite)
+        throws ErrorMessage
+    {
+        String sgf;
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new SgfWriter(out, game.getTree(), "gogui-twogtp",
+                          Version.get());
+            sgf = out.toString(SgfWriter.ENCODING);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new ErrorMessage(e.getMessage());
+        }
+        // Times are sent with full precision, the coordinator formats them
+        // for the table
+        String command = "twogtp_result " + gameIndex
+            + (alternated ? " 1 " : " 0 ") + numberMoves
+            + (error ? " 1 " : " 0 ") + timeBlack + " " + timeWhite + " "
+            + cpuTimeBlack + " " + cpuTimeWhite + " "
+            + Coordinator.encode(resultBlack) + " "
+            + Coordinator.encode(resultWhite) + " "
+            + Coordinator.encode(resultReferee) + " "
+            + Coordinator.encode(errorMessage) + " "
+            + Coordinator.encode(sgf);
+        try
+        {
+            m_gtp.send(command);
+        }
+        catch (GtpError e)
+        {
+            throw new ErrorMessage("Could not send result of game "
+                                   + gameIndex + " to coordinator: "
+                                   + e.getMessage());
+        }
+    }
+
+    /** Close the connection.
+        Games that were assigned to this connection and have no result are
+        given back by the coordinator. */
+    public synchronized void close()
+    {
+        try
+        {
+            m_gtp.send("quit");
+        }
+        catch (GtpError e)
+        {
+        }
+        try
+        {
+            m_socket.close();
+        }
+        catch (IOException e)
+        {
+        }
+    }
+
+    /** Get the next game from the coordinator.
+        Prints an error message and returns -1, if the connection to the
+        coordinator fails. */
+    @Override
+    public synchronized int getNextGameIndex()
+    {
+        try
+        {
+            return Integer.parseInt(m_gtp.send("twogtp_next_game").trim());
+        }
+        catch (GtpError | NumberFormatException e)
+        {
+            System.err.println("Could not get game from coordinator: "
+                               + e.getMessage());
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized boolean releaseGameIndex(int gameIndex)
+    {
+        try
+        {
+            return m_gtp.send("twogtp_release_game " + gameIndex).trim()
+                .equals("true");
+        }
+        catch (GtpError e)
+        {
+            System.err.println("Could not give back game " + gameIndex
+                               + " to coordinator: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private final Socket m_socket;
+
+    private final GtpClient m_gtp;
+}
@@ -2,21 +2,29 @@
 
 package net.sf.gogui.tools.twogtp;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import net.sf.gogui.game.ConstNode;
 import net.sf.gogui.game.ConstGame;
+import net.sf.gogui.game.GameTree;
 import net.sf.gogui.go.Komi;
 import net.sf.gogui.sgf.SgfError;
 import net.sf.gogui.sgf.SgfReader;
@@ -28,31 +36,76 @@ import net.sf.gogui.util.Table;
 import net.sf.gogui.xml.XmlWriter;
 import net.sf.gogui.version.Version;
 
+/** Result table and game files of a twogtp run.
+    Each result is appended as a row to the log file prefix.dat.log, which is
+    flushed after each result and synchronized to the disk at most once per
+    SYNC_INTERVAL milliseconds. The complete table prefix.dat is written
+    when the log contains as many rows as a tenth of the table (but at least
+    COMPACT_MIN_ROWS), and when the result file is closed, after which the
+    log is deleted. This keeps the cost of adding a result independent of the
+    number of games played. A log left by an aborted run is merged into the
+    table when the run is continued.
+    If a sequential probability ratio test is used, the log-likelihood ratio
+    after each game is stored in the column LLR, no more game indices are
+    returned when the test is finished, and the result of the test is
+    stored in the property SprtResult. The test is applied to the score of
+    the black program (as given with -black) from the result of the
+    referee, or from the results of both programs if they agree. Games with
+    an error and duplicate games are not used for the test, as in the
+    analysis of the table. */
 public class ResultFile
+    implements ResultStore
 {
-    public ResultFile(boolean force, Program black, Program white,
-                      Program referee, int numberGames, int size, Komi komi,
-                      String filePrefix, Openings openings, boolean alternate,
-                      boolean useXml, int numberThreads) throws ErrorMessage
+    /** Maximum number of times the index of an unfinished game is given
+        back with releaseGameIndex(). */
+    public static final int MAX_RETRIES = 2;
+
+    /** Constructor.
+        Reads the table and games of an existing run with the same file
+        prefix unless force is true.
+        @param force Overwrite the table of an existing run.
+        @param properties Properties for a new table that describe the
+        programs, see getProperties().
+        @param numberGames The number of games or 0 for no limit.
+        @param size The board size.
+        @param komi The komi.
+        @param filePrefix The prefix for the table and game files.
+        @param alternate True, if colors are exchanged every second game.
+        @param useXml Save games in XML format instead of SGF.
+        @param numberThreads The number of threads adding results, only
+        used for sorting the table.
+        @param sprt The sequential probability ratio test for ending the run
+        early or null.
+        @throws ErrorMessage If the files could not be read or locked, or an
+        existing table was created with a different test. */
+    public ResultFile(boolean force, Map<String,String> properties,
+                      int numberGames, int size, Komi komi,
+                      String filePrefix, boolean alternate, boolean useXml,
+                      int numberThreads, Sprt sprt) throws ErrorMessage
     {
-        this.m_games = new TreeMap<>();
         m_filePrefix = filePrefix;
         m_alternate = alternate;
         m_numberGames = numberGames;
         m_useXml = useXml;
         m_numberThreads = numberThreads;
+        m_sprt = sprt;
         m_lockFile = new File(filePrefix + ".lock");
         acquireLock();
         m_tableFile = new File(filePrefix + ".dat");
+        m_logFile = new File(filePrefix + ".dat.log");
         if (force)
         {
             if (m_tableFile.exists() && ! m_tableFile.delete())
                 throw new ErrorMessage("Could not delete file '"
                                        + m_tableFile + "'");
+            if (m_logFile.exists() && ! m_logFile.delete())
+                throw new ErrorMessage("Could not delete file '"
+                                       + m_logFile + "'");
         }
-        if (m_tableFile.exists())
+        if (m_tableFile.exists() || m_logFile.exists())
         {
-            m_table = readTable(m_tableFile, numberGames, m_gameExists);
+            m_table = readTable(m_tableFile, m_logFile, numberGames,
+                                m_gameExists);
             m_nextGameIndex = 0;
             while (m_gameExists.contains(m_nextGameIndex))
             {
@@ -64,92 +117,111 @@ public class ResultFile
                 }
             }
             readGames();
+            if (sprt != null)
+                initSprt();
+            if (m_logFile.exists())
+                compact();
         }
         else
         {
-            m_table = createTable(black, white, referee, size, komi, openings);
+            m_table = createTable(properties, size, komi);
             m_nextGameIndex = 0;
         }
+        openLog();
     }
 
-    public synchronized void addResult(int gameIndex, ConstGame game,
-                                       String resultBlack, String resultWhite,
-                                       String resultReferee,
-                                       boolean alternated, int numberMoves,
-                                       boolean error, String errorMessage,
-                                       double timeBlack, double timeWhite,
-                                       double cpuTimeBlack,
-                                       double cpuTimeWhite)
+    @Override
+    public void addResult(int gameIndex, ConstGame game, String resultBlack,
+                          String resultWhite, String resultReferee,
+                          boolean alternated, int numberMoves, boolean error,
+                          String errorMessage, double timeBlack,
+                          double timeWhite, double cpuTimeBlack,
+                          double cpuTimeWhite)
         throws ErrorMessage
     {
         ArrayList<Compare.Placement> moves
             = Compare.getPlacements(game.getTree().getRootConst());
-        String duplicate =
-            Compare.checkDuplicate(game.getBoard(), moves, m_games,
-                                   m_alternate, alternated);
-        NumberFormat format = StringUtil.getNumberFormat(1);
-        m_table.startRow();
-        m_table.set("GAME", Integer.toString(gameIndex));
-        m_table.set("RES_B", resultBlack);
-        m_table.set("RES_W", resultWhite);
-        m_table.set("RES_R", resultReferee);
-        m_table.set("ALT", alternated ? "1" : "0");
-        m_table.set("DUP", duplicate);
-        m_table.set("LEN", numberMoves);
-        m_table.set("TIME_B", format.format(timeBlack));
-        m_table.set("TIME_W", format.format(timeWhite));
-        m_table.set("CPU_B", format.format(cpuTimeBlack));
-        m_table.set("CPU_W", format.format(cpuTimeWhite));
-        m_table.set("ERR", error ? "1" : "0");
-        m_table.set("ERR_MSG", errorMessage);
-
-        // The code does not rely on the table being sorted by game number,
-        // but it looks nicer for the user.
-        int rowEnd = m_table.getNumberRows();
-        int rowBegin = rowEnd - m_numberThreads;
-        if (rowBegin < 0)
-            rowBegin = 0;
-        // If the run was terminated and continued with a different number
-        // of threads, there could be a gap between gameIndex and
-        // getNumberRows() larger than m_numberThreads
-        if (gameIndex < rowBegin)
-            rowBegin = gameIndex;
-        m_table.sortByIntColumn("GAME", rowBegin, rowEnd);
-
-        File tmpFile = new File(m_tableFile.getAbsolutePath() + ".new");
-        try
-        {
-            m_table.save(tmpFile);
-            if (Platform.isWindows())
-                // File.renameTo() fails on Windows if target exists
-                m_tableFile.delete();
-            tmpFile.renameTo(m_tableFile);
-        }
-        catch (IOException e)
+        synchronized (this)
         {
-            throw new ErrorMessage("Could not write to: " + m_tableFile);
+            int size = game.getBoard().getSize();
+            String duplicate =
+                m_games.check(moves, size, m_alternate, alternated);
+            NumberFormat format = StringUtil.getNumberFormat(1);
+            m_table.startRow();
+            m_table.set("GAME", Integer.toString(gameIndex));
+            m_table.set("RES_B", resultBlack);
+            m_table.set("RES_W", resultWhite);
+            m_table.set("RES_R", resultReferee);
+            m_table.set("ALT", alternated ? "1" : "0");
+            m_table.set("DUP", duplicate);
+            m_table.set("LEN", numberMoves);
+            m_table.set("TIME_B", format.format(timeBlack));
+            m_table.set("TIME_W", format.format(timeWhite));
+            m_table.set("CPU_B", format.format(cpuTimeBlack));
+            m_table.set("CPU_W", format.format(cpuTimeWhite));
+            m_table.set("ERR", error ? "1" : "0");
+            m_table.set("ERR_MSG", errorMessage);
+            if (m_sprt != null)
+            {
+                if (! error && duplicate.equals("-"))
+                    addSprtResult(resultBlack, resultWhite, resultReferee);
+                m_table.set("LLR", StringUtil.getNumberFormat(2)
+                            .format(m_sprt.getLlr()));
+            }
+            appendLog(m_table.getNumberRows() - 1);
+
+            // The code does not rely on the table being sorted by game
+            // number, but it looks nicer for the user.
+            int rowEnd = m_table.getNumberRows();
+            int rowBegin = rowEnd - m_numberThreads;
+            if (rowBegin < 0)
+                rowBegin = 0;
+            // If the run was terminated and continued with a different
+            // number of threads, there could be a gap between gameIndex and
+            // getNumberRows() larger than m_numberThreads
+            if (gameIndex < rowBegin)
+                rowBegin = gameIndex;
+            m_table.sortByIntColumn("GAME", rowBegin, rowEnd);
+
+            if (m_numberLogRows >= Math.max(COMPACT_MIN_ROWS,
+                                            m_table.getNumberRows() / 10))
+            {
+                compact();
+                openLog();
+            }
+            m_games.add(gameIndex, moves, size);
         }
         File file = getFile(gameIndex);
-        try
+        try (OutputStream out = new FileOutputStream(file))
         {
-            OutputStream out = new FileOutputStream(file);
             if (m_useXml)
                 new XmlWriter(out, game.getTree(),
                               "gogui-twogtp:" + Version.get());
             else
                 new SgfWriter(out, game.getTree(),
                               "gogui-twogtp", Version.get());
-            m_games.put(gameIndex, moves);
         }
-        catch (FileNotFoundException e)
+        catch (IOException e)
         {
             throw new ErrorMessage("Could not save " + file + ": "
                                    + e.getMessage());
         }
     }
 
+    /** Write the complete table, delete the log and release the lock. */
     public void close()
     {
+        synchronized (this)
+        {
+            try
+            {
+                compact();
+            }
+            catch (ErrorMessage e)
+            {
+                System.err.println(e.getMessage());
+            }
+        }
         try
         {
             m_lockFileChannel.close();
@@ -162,8 +234,45 @@ public class ResultFile
             System.err.println("Could not delete '" + m_lockFile + "'");
     }
 
+    /** Get the properties of a new table that describe the programs.
+        @param black The black program.
+        @param white The white program.
+        @param referee The referee or null.
+        @param openings The openings or null.
+        @return The properties. */
+    public static Map<String,String> getProperties(Program black,
+                                                   Program white,
+                                                   Program referee,
+                                                   Openings openings)
+    {
+        Map<String,String> properties = new TreeMap<>();
+        black.addTableProperties(properties);
+        white.addTableProperties(properties);
+        if (referee == null)
+            properties.put("Referee", "-");
+        else
+            referee.addTableProperties(properties);
+        if (openings != null)
+            properties.put("Openings",
+                           openings.getDirectory() + " ("
+                           + openings.getNumber() + " files)");
+        return properties;
+    }
+
+    /** Get the next game index.
+        @return The game index or -1, if the number of games was reached or
+        the sequential probability ratio test is finished. */
+    @Override
     public synchronized int getNextGameIndex()
     {
+        if (m_sprt != null && m_sprt.isFinished())
+            return -1;
+        Integer released = m_released.pollFirst();
+        if (released != null)
+        {
+            m_gameExists.add(released);
+            return released;
+        }
         if (m_nextGameIndex != -1)
             while (m_gameExists.contains(m_nextGameIndex))
             {
@@ -179,12 +288,49 @@ public class ResultFile
         return m_nextGameIndex;
     }
 
+    /** Give back the index of a game that could not be finished.
+        Used if a program crashed or hung during the game. The index is
+        returned again by getNextGameIndex() before any new index, so the
+        game is repeated by the next thread that starts a game. An index is
+        given back at most MAX_RETRIES times, such that a game that always
+        makes a program crash is not repeated forever.
+        @param gameIndex The game index.
+        @return false, if the game was already repeated MAX_RETRIES times.
+        Then the index is not given back and the game should be added as an
+        error with addResult(). */
+    @Override
+    public synchronized boolean releaseGameIndex(int gameIndex)
+    {
+        Integer retries = m_retries.get(gameIndex);
+        int numberRetries = (retries == null ? 0 : retries);
+        if (numberRetries >= MAX_RETRIES)
+            return false;
+        m_retries.put(gameIndex, numberRetries + 1);
+        m_gameExists.remove(gameIndex);
+        m_released.add(gameIndex);
+        return true;
+    }
+
+    /** Minimum number of rows in the log before the table is written. */
+    private static final int COMPACT_MIN_ROWS = 100;
+
+    /** Minimum time between synchronizing the log to the disk in
+        milliseconds. */
+    private static final long SYNC_INTERVAL = 1000;
+
     private final boolean m_alternate;
 
     private final boolean m_useXml;
 
     private final TreeSet<Integer> m_gameExists = new TreeSet<>();
 
+    /** Indices given back with releaseGameIndex() and not yet returned
+        again by getNextGameIndex(). */
+    private final TreeSet<Integer> m_released = new TreeSet<>();
+
+    /** Number of times the index of a game was given back. */
+    private final HashMap<Integer,Integer> m_retries = new HashMap<>();
+
     private int m_nextGameIndex;
 
     private final int m_numberGames;
@@ -195,13 +341,28 @@ public class ResultFile
 
     private final File m_tableFile;
 
+    private final File m_logFile;
+
+    private FileOutputStream m_logStream;
+
+    private Writer m_log;
+
+    private int m_numberLogRows;
+
+    private long m_lastSync;
+
     private final File m_lockFile;
 
     private FileChannel m_lockFileChannel;
 
     private final Table m_table;
 
-    private final TreeMap<Integer, ArrayList<Compare.Placement>> m_games;
+    /** Accessed only while holding the lock of this object. */
+    private final Sprt m_sprt;
+
+    /** Games for finding duplicates.
+        Accessed only while holding the lock of this object. */
+    private final DuplicateIndex m_games = new DuplicateIndex();
 
     private void acquireLock() throws ErrorMessage
     {
@@ -223,8 +384,95 @@ public class ResultFile
         }
     }
 
-    private Table createTable(Program black, Program white, Program referee,
-                              int size, Komi komi, Openings openings)
+    /** Add the score of the black program to the test.
+        Sets the property SprtResult and prints the result, if the test is
+        finished by this result. */
+    private void addSprtResult(String resultBlack, String resultWhite,
+                               String resultReferee)
+    {
+        double score = getScore(resultBlack, resultWhite, resultReferee);
+        if (score < 0)
+            return;
+        boolean wasFinished = m_sprt.isFinished();
+        m_sprt.add(score);
+        if (! wasFinished && m_sprt.isFinished())
+        {
+            String result = m_sprt.getResult();
+            m_table.setProperty("SprtResult", result);
+            System.err.println("SPRT: " + result);
+        }
+    }
+
+    /** Append a row of the table to the log. */
+    private void appendLog(int row) throws ErrorMessage
+    {
+        try
+        {
+            m_table.saveRow(m_log, row);
+            m_log.flush();
+            ++m_numberLogRows;
+            long time = System.currentTimeMillis();
+            if (time - m_lastSync >= SYNC_INTERVAL)
+            {
+                m_logStream.getFD().sync();
+                m_lastSync = time;
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Could not write to: " + m_logFile);
+        }
+    }
+
+    /** Close the log, write the complete table and delete the log.
+        Does nothing if the log was already compacted. */
+    private void compact() throws ErrorMessage
+    {
+        if (m_log != null)
+        {
+            try
+            {
+                m_log.close();
+            }
+            catch (IOException e)
+            {
+                throw new ErrorMessage("Could not write to: " + m_logFile);
+            }
+            m_log = null;
+            m_logStream = null;
+        }
+        else if (! m_logFile.exists())
+            return;
+        File tmpFile = new File(m_tableFile.getAbsolutePath() + ".new");
+        try
+        {
+            // The table must be on the disk before the log is deleted
+            try (FileOutputStream stream = new FileOutputStream(tmpFile))
+            {
+                Writer out =
+                    new BufferedWriter(new OutputStreamWriter(stream));
+                m_table.save(out);
+                out.flush();
+                stream.getFD().sync();
+            }
+            if (Platform.isWindows())
+                // File.renameTo() fails on Windows if target exists
+                m_tableFile.delete();
+            if (! tmpFile.renameTo(m_tableFile))
+                throw new IOException();
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Could not write to: " + m_tableFile);
+        }
+        // If this fails, the rows in the log are ignored at the next start,
+        // because they are already in the table
+        m_logFile.delete();
+        m_numberLogRows = 0;
+    }
+
+    private Table createTable(Map<String,String> properties, int size,
+                              Komi komi)
     {
         ArrayList<String> columns = new ArrayList<>();
         columns.add("GAME");
@@ -240,25 +488,38 @@ public class ResultFile
         columns.add("CPU_W");
         columns.add("ERR");
         columns.add("ERR_MSG");
+        if (m_sprt != null)
+            columns.add("LLR");
         Table table = new Table(columns);
-        black.setTableProperties(table);
-        white.setTableProperties(table);
-        if (referee == null)
-            table.setProperty("Referee", "-");
-        else
-            referee.setTableProperties(table);
+        for (Map.Entry<String,String> entry : properties.entrySet())
+            table.setProperty(entry.getKey(), entry.getValue());
         table.setProperty("Size", Integer.toString(size));
         table.setProperty("Komi", komi.toString());
-        if (openings != null)
-            table.setProperty("Openings",
-                                openings.getDirectory() + " ("
-                                + openings.getNumber() + " files)");
         table.setProperty("Date", StringUtil.getDate());
         table.setProperty("Host", Platform.getHostInfo());
         table.setProperty("Xml", m_useXml ? "1" : "0");
+        if (m_sprt != null)
+            table.setProperty("Sprt", m_sprt.toString());
         return table;
     }
 
+    /** Create a new log file containing the header of the table. */
+    private void openLog() throws ErrorMessage
+    {
+        try
+        {
+            m_logStream = new FileOutputStream(m_logFile);
+            m_log = new BufferedWriter(new OutputStreamWriter(m_logStream));
+            m_table.saveHeader(m_log);
+            m_log.flush();
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Could not create: " + m_logFile);
+        }
+        m_numberLogRows = 0;
+    }
+
     private File getFile(int gameIndex)
     {
         if (m_useXml)
@@ -267,6 +528,70 @@ public class ResultFile
             return new File(m_filePrefix + "-" + gameIndex + ".sgf");
     }
 
+    /** Get the score of the black program from the results of a game.
+        Uses the result of the referee, or the results of both programs if
+        they agree.
+        @return 1 for a win, 0.5 for a draw, 0 for a loss, -1 if unknown. */
+    static double getScore(String resultBlack, String resultWhite,
+                           String resultReferee)
+    {
+        double score = getScore(resultReferee);
+        if (score < 0)
+        {
+            score = getScore(resultBlack);
+            if (score != getScore(resultWhite))
+                score = -1;
+        }
+        return score;
+    }
+
+    /** Read the results of a run.
+        Includes the rows in the log of an aborted run.
+        @param filePrefix The prefix for the table and game files.
+        @return The table or null, if the run has no table.
+        @throws ErrorMessage If the files could not be read. */
+    static Table readResults(String filePrefix) throws ErrorMessage
+    {
+        File tableFile = new File(filePrefix + ".dat");
+        File logFile = new File(filePrefix + ".dat.log");
+        if (! tableFile.exists() && ! logFile.exists())
+            return null;
+        return readTable(tableFile, logFile, 0, new TreeSet<>());
+    }
+
+    /** Get the score of the black program from a result.
+        @return 1 for a win, 0.5 for a draw, 0 for a loss, -1 if unknown. */
+    private static double getScore(String result)
+    {
+        String s = result.trim();
+        if (s.startsWith("B+"))
+            return 1;
+        if (s.startsWith("W+"))
+            return 0;
+        if (s.equals("0") || s.equals("Draw"))
+            return 0.5;
+        return -1;
+    }
+
+    /** Add the results of the existing table to the test. */
+    private void initSprt() throws ErrorMessage
+    {
+        String spec = m_table.getProperty("Sprt", "");
+        if (! spec.equals(m_sprt.toString()))
+            throw new ErrorMessage("File " + m_tableFile + " was created "
+                                   + (spec.equals("") ? "without -sprt"
+                                      : "with -sprt " + spec));
+        for (int i = 0; i < m_table.getNumberRows(); ++i)
+        {
+            String duplicate = m_table.get("DUP", i);
+            if (! m_table.get("ERR", i).equals("0")
+                || ! duplicate.equals("-"))
+                continue;
+            addSprtResult(m_table.get("RES_B", i), m_table.get("RES_W", i),
+                          m_table.get("RES_R", i));
+        }
+    }
+
     private void readGames()
     {
         for (int n = 0; n < m_numberGames; ++n)
@@ -285,8 +610,9 @@ public class ResultFile
             {
                 FileInputStream fileStream = new FileInputStream(file);
                 SgfReader reader = new SgfReader(fileStream, file, null, 0);
-                ConstNode root = reader.getTree().getRoot();
-                m_games.put(n, Compare.getPlacements(root));
+                GameTree tree = reader.getTree();
+                m_games.add(n, Compare.getPlacements(tree.getRoot()),
+                            tree.getBoardSize());
             }
             catch (SgfError e)
             {
@@ -301,18 +627,136 @@ public class ResultFile
         }
     }
 
-    private static Table readTable(File file, int numberGames,
+    /** Read the table and the rows in the log of an aborted run.
+        Rows in the log are ignored if the table already contains a row for
+        the same game, which can happen if the run was aborted while
+        compacting the log. Rows torn by a crash are ignored, see
+        readLog(). */
+    private static Table readTable(File tableFile, File logFile,
+                                   int numberGames,
+                                   TreeSet<Integer> gameExists)
+        throws ErrorMessage
+    {
+        Table table = null;
+        if (tableFile.exists())
+            table = readTable(tableFile, gameExists);
+        if (logFile.exists())
+        {
+            TreeSet<Integer> logGames = new TreeSet<>();
+            Table log = readLog(logFile, logGames);
+            // The rows in the log are in the order in which the games
+            // finished
+            if (table == null)
+            {
+                table = log;
+                gameExists.addAll(logGames);
+                table.sortByIntColumn("GAME", 0, table.getNumberRows());
+            }
+            else
+            {
+                int numberColumns = table.getNumberColumns();
+                if (! log.getColumnTitles().equals(table.getColumnTitles()))
+                    throw new ErrorMessage("Columns in " + logFile
+                                           + " do not match " + tableFile);
+                int rowBegin = table.getNumberRows();
+                for (int i = 0; i < log.getNumberRows(); ++i)
+                {
+                    int gameIndex = Integer.parseInt(log.get("GAME", i));
+                    if (! gameExists.add(gameIndex))
+                        continue;
+                    table.startRow();
+                    for (int j = 0; j < numberColumns; ++j)
+                        table.set(j, log.get(j, i));
+                }
+                table.sortByIntColumn("GAME", rowBegin,
+                                      table.getNumberRows());
+            }
+        }
+        int numberRows = table.getNumberRows();
+        if (numberGames > 0 && numberRows >= numberGames)
+            throw new ErrorMessage("File " + tableFile + " already contains "
+                                   + numberRows + " games");
+        return table;
+    }
+
+    /** Read the log of an aborted run.
+        The log is written without synchronization to the disk after each
+        row, so the last row can be torn by a crash. Such a row is dropped,
+        if it has no trailing newline or fewer columns than the header,
+        such that the game is played again. The log is rewritten without
+        the dropped rows, when the table is compacted. */
+    private static Table readLog(File file, TreeSet<Integer> gameExists)
+        throws ErrorMessage
+    {
+        StringBuilder text = new StringBuilder();
+        try (Reader reader = new FileReader(file))
+        {
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = reader.read(buffer)) > 0)
+                text.append(buffer, 0, n);
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new ErrorMessage(e.getMessage());
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Read error: " + file);
+        }
+        StringBuilder complete = new StringBuilder(text.length());
+        int numberTabs = -1;
+        int numberDropped = 0;
+        int begin = 0;
+        int end;
+        while ((end = text.indexOf("\n", begin)) >= 0)
+        {
+            // Comments precede the column titles, which are the last
+            // comment line
+            boolean isComment = (text.charAt(begin) == '#');
+            int tabs = 0;
+            for (int i = begin; i < end; ++i)
+                if (text.charAt(i) == '\t')
+                    ++tabs;
+            if (isComment)
+                numberTabs = tabs;
+            if (isComment || tabs == numberTabs)
+                complete.append(text, begin, end + 1);
+            else
+                ++numberDropped;
+            begin = end + 1;
+        }
+        if (begin < text.length())
+            ++numberDropped;
+        if (numberDropped > 0)
+            System.err.println("Ignoring " + numberDropped
+                               + " incomplete rows in " + file);
+        return readTable(new StringReader(complete.toString()), file,
+                         gameExists);
+    }
+
+    private static Table readTable(File file, TreeSet<Integer> gameExists)
+        throws ErrorMessage
+    {
+        try
+        {
+            return readTable(new FileReader(file), file, gameExists);
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new ErrorMessage(e.getMessage());
+        }
+    }
+
+    private static Table readTable(Reader reader, File file,
                                    TreeSet<Integer> gameExists)
         throws ErrorMessage
     {
         Table table = new Table();
         try
         {
-            table.read(file);
+            table.read(reader);
             int numberRows = table.getNumberRows();
-            if (numberGames > 0 && numberRows >= numberGames)
-                throw new ErrorMessage("File " + file + " already contains "
-                                       + numberRows + " games");
             for (int i = 0; i < numberRows; ++i)
             {
                 int gameIndex = Integer.parseInt(table.get("GAME", i));
@@ -325,10 +769,6 @@ public class ResultFile
         {
             throw new ErrorMessage("Invalid file format: " + file);
         }
-        catch (FileNotFoundException e)
-        {
-            throw new ErrorMessage(e.getMessage());
-        }
         catch (IOException e)
         {
             throw new ErrorMessage("Read error: " + file);
@@ -0,0 +1,47 @@
+// ResultStore.java
+
+package net.sf.gogui.tools.twogtp;
+
+import net.sf.gogui.game.ConstGame;
+import net.sf.gogui.util.ErrorMessage;
+
+/** Assigns games to TwoGtp instances and stores their results.
+    Implemented by ResultFile for games played in this process and by
+    RemoteResults for games played for a Coordinator in another process.
+    Implementations must be thread-safe. */
+public interface ResultStore
+{
+    /** Store the result of a game.
+        @param gameIndex The index of the game as returned by
+        getNextGameIndex().
+        @param game The game.
+        @param resultBlack The result according to the black program.
+        @param resultWhite The result according to the white program.
+        @param resultReferee The result according to the referee.
+        @param alternated True, if the programs played with exchanged
+        colors.
+        @param numberMoves The number of moves.
+        @param error True, if the game ended because of an error.
+        @param errorMessage The error message or an empty string.
+        @param timeBlack Real time used by Black in seconds.
+        @param timeWhite Real time used by White in seconds.
+        @param cpuTimeBlack CPU time used by Black in seconds.
+        @param cpuTimeWhite CPU time used by White in seconds.
+        @throws ErrorMessage If the result could not be stored. */
+    void addResult(int gameIndex, ConstGame game, String resultBlack,
+                   String resultWhite, String resultReferee,
+                   boolean alternated, int numberMoves, boolean error,
+                   String errorMessage, double timeBlack, double timeWhite,
+                   double cpuTimeBlack, double cpuTimeWhite)
+        throws ErrorMessage;
+
+    /** Get the index of the next game to play.
+        @return The game index or -1, if there are no more games to play. */
+    int getNextGameIndex();
+
+    /** Give back the index of a game that could not be finished.
+        @param gameIndex The game index.
+        @return false, if the game should not be repeated. Then the game
+        should be stored as an error with addResult(). */
+    boolean releaseGameIndex(int gameIndex);
+}
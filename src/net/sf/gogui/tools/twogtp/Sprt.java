@@ -0,0 +1,190 @@
+// Sprt.java
+
+package net.sf.gogui.tools.twogtp;
+
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.util.StringUtil;
+
+/** Sequential probability ratio test for the Elo difference of a match.
+    Tests the hypothesis H0 that the Elo difference of the first program to
+    the second is elo0 against the hypothesis H1 that it is elo1 after each
+    game, and ends the match as soon as one of them can be accepted with the
+    error probabilities alpha (accepting H1 although H0 is true) and beta
+    (accepting H0 although H1 is true). This usually needs much fewer games
+    than a match with a fixed number of games for the same error
+    probabilities.
+    The log-likelihood ratio is computed for the binomial distribution of
+    wins and losses with the winning probability given by the logistic Elo
+    model under each hypothesis. A draw counts as half a win and half a
+    loss, which is sufficient for Go, where draws are rare or impossible
+    with the usual komi, and avoids a model for the draw probability. The
+    test stops when the log-likelihood ratio is below
+    log(beta / (1 - alpha)) or above log((1 - beta) / alpha).
+    This class is not thread-safe. */
+public class Sprt
+{
+    /** Constructor.
+        @param elo0 The Elo difference of hypothesis H0.
+        @param elo1 The Elo difference of hypothesis H1 (larger than elo0).
+        @param alpha The probability of accepting H1 if H0 is true.
+        @param beta The probability of accepting H0 if H1 is true. */
+    public Sprt(double elo0, double elo1, double alpha, double beta)
+    {
+        assert elo0 < elo1;
+        assert alpha > 0 && alpha < 1;
+        assert beta > 0 && beta < 1;
+        m_elo0 = elo0;
+        m_elo1 = elo1;
+        m_alpha = alpha;
+        m_beta = beta;
+        double score0 = getExpectedScore(elo0);
+        double score1 = getExpectedScore(elo1);
+        m_winWeight = Math.log(score1 / score0);
+        m_lossWeight = Math.log((1 - score1) / (1 - score0));
+        m_lowerBound = Math.log(beta / (1 - alpha));
+        m_upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /** Parse a test specification.
+        @param spec The specification in the format elo0,elo1[,alpha,beta].
+        alpha and beta are 0.05, if omitted.
+        @return The test.
+        @throws ErrorMessage If the specification is invalid. */
+    public static Sprt parse(String spec) throws ErrorMessage
+    {
+        String[] args = spec.split(",");
+        if (args.length != 2 && args.length != 4)
+            throw new ErrorMessage("Invalid SPRT (must be"
+                                   + " elo0,elo1[,alpha,beta]): " + spec);
+        double elo0;
+        double elo1;
+        double alpha = 0.05;
+        double beta = 0.05;
+        try
+        {
+            elo0 = Double.parseDouble(args[0]);
+            elo1 = Double.parseDouble(args[1]);
+            if (args.length == 4)
+            {
+                alpha = Double.parseDouble(args[2]);
+                beta = Double.parseDouble(args[3]);
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            throw new ErrorMessage("Invalid number in SPRT: " + spec);
+        }
+        if (! (elo0 < elo1))
+            throw new ErrorMessage("SPRT needs elo0 < elo1: " + spec);
+        if (! (alpha > 0 && alpha < 1 && beta > 0 && beta < 1))
+            throw new ErrorMessage("SPRT needs alpha and beta between 0 and"
+                                   + " 1: " + spec);
+        return new Sprt(elo0, elo1, alpha, beta);
+    }
+
+    /** Add the result of a game.
+        @param score The score of the first program (1 for a win, 0.5 for a
+        draw, 0 for a loss). */
+    public void add(double score)
+    {
+        ++m_numberGames;
+        m_wins += score;
+    }
+
+    /** Get the log-likelihood ratio of H1 to H0.
+        @return The log-likelihood ratio. */
+    public double getLlr()
+    {
+        return m_wins * m_winWeight
+            + (m_numberGames - m_wins) * m_lossWeight;
+    }
+
+    /** Get the lower bound of the log-likelihood ratio.
+        @return log(beta / (1 - alpha)) */
+    public double getLowerBound()
+    {
+        return m_lowerBound;
+    }
+
+    /** Get the number of games added.
+        @return The number of games. */
+    public int getNumberGames()
+    {
+        return m_numberGames;
+    }
+
+    /** Get the result of the test.
+        @return A description of the accepted hypothesis or null, if the
+        test is not finished. */
+    public String getResult()
+    {
+        double llr = getLlr();
+        String hypothesis;
+        if (llr >= m_upperBound)
+            hypothesis = "H1 (Elo " + format(m_elo1) + ")";
+        else if (llr <= m_lowerBound)
+            hypothesis = "H0 (Elo " + format(m_elo0) + ")";
+        else
+            return null;
+        return "Accepted " + hypothesis + " after " + m_numberGames
+            + " games (LLR " + format(llr) + ")";
+    }
+
+    /** Get the upper bound of the log-likelihood ratio.
+        @return log((1 - beta) / alpha) */
+    public double getUpperBound()
+    {
+        return m_upperBound;
+    }
+
+    /** Check if one of the hypotheses can be accepted.
+        @return true, if the log-likelihood ratio is outside the bounds. */
+    public boolean isFinished()
+    {
+        double llr = getLlr();
+        return (llr <= m_lowerBound || llr >= m_upperBound);
+    }
+
+    /** Get the parameters of the test.
+        @return The parameters in the format of parse(). */
+    @Override
+    public String toString()
+    {
+        return format(m_elo0) + "," + format(m_elo1) + "," + m_alpha + ","
+            + m_beta;
+    }
+
+    private final double m_elo0;
+
+    private final double m_elo1;
+
+    private final double m_alpha;
+
+    private final double m_beta;
+
+    /** Contribution of a win to the log-likelihood ratio. */
+    private final double m_winWeight;
+
+    /** Contribution of a loss to the log-likelihood ratio. */
+    private final double m_lossWeight;
+
+    private final double m_lowerBound;
+
+    private final double m_upperBound;
+
+    private int m_numberGames;
+
+    /** Sum of the scores of the first program. */
+    private double m_wins;
+
+    private static String format(double value)
+    {
+        return StringUtil.getNumberFormat(2).format(value);
+    }
+
+    /** Get the expected score for an Elo difference (logistic model). */
+    private static double getExpectedScore(double elo)
+    {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+}
@@ -0,0 +1,335 @@
+// Status.java
+
+package net.sf.gogui.tools.twogtp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Timer;
+import java.util.TimerTask;
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.util.Platform;
+import net.sf.gogui.util.StringUtil;
+
+/** Live statistics of a twogtp run for monitoring.
+    Collects the results of the games finished in this process and writes
+    them in JSON format to a status file every STATUS_INTERVAL milliseconds
+    and when the run ends, and optionally serves them with HTTP on the
+    loopback interface. The file is replaced atomically, such that readers
+    never see a partially written file.
+    The statistics are: number of games and errors, games per hour since the
+    start, program restarts, and for each program the number of wins, the
+    average real time per move and the average CPU time per game. The win
+    rate of the black program (as given with -black) is given with a 95%
+    confidence interval. Results are taken from the referee, or from both
+    programs if they agree, as for the SPRT of ResultFile.
+    This class is thread-safe. */
+public class Status
+{
+    /** Interval for rewriting the status file in milliseconds. */
+    public static final long STATUS_INTERVAL = 5000;
+
+    /** Constructor.
+        @param file The status file or null.
+        @param port The port for HTTP on the loopback interface or -1.
+        @throws ErrorMessage If the HTTP server could not be started. */
+    public Status(File file, int port) throws ErrorMessage
+    {
+        m_file = file;
+        m_startTime = System.currentTimeMillis();
+        if (port >= 0)
+        {
+            try
+            {
+                InetSocketAddress address =
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                          port);
+                m_server = HttpServer.create(address, 0);
+            }
+            catch (IOException e)
+            {
+                throw new ErrorMessage("Could not listen on port " + port
+                                       + ": " + e.getMessage());
+            }
+            m_server.createContext("/", this::handleRequest);
+            m_server.start();
+        }
+        else
+            m_server = null;
+        if (file != null)
+        {
+            m_timer = new Timer("Status", true);
+            m_timer.schedule(new TimerTask() {
+                    @Override
+                    public void run()
+                    {
+                        write();
+                    }
+                }, STATUS_INTERVAL, STATUS_INTERVAL);
+        }
+        else
+            m_timer = null;
+    }
+
+    /** Add the result of a game.
+        @param resultBlack The result according to the black program.
+        @param resultWhite The result according to the white program.
+        @param resultReferee The result according to the referee.
+        @param error True, if the game ended because of an error.
+        @param timeBlack Real time used by the black program in seconds.
+        @param timeWhite Real time used by the white program in seconds.
+        @param movesBlack Number of moves generated by the black program.
+        @param movesWhite Number of moves generated by the white program.
+        @param cpuTimeBlack CPU time used by the black program in seconds.
+        @param cpuTimeWhite CPU time used by the white program in
+        seconds. */
+    public synchronized void addResult(String resultBlack,
+                                       String resultWhite,
+                                       String resultReferee, boolean error,
+                                       double timeBlack, double timeWhite,
+                                       int movesBlack, int movesWhite,
+                                       double cpuTimeBlack,
+                                       double cpuTimeWhite)
+    {
+        ++m_numberGames;
+        if (error)
+            ++m_numberErrors;
+        else
+        {
+            double score = ResultFile.getScore(resultBlack, resultWhite,
+                                               resultReferee);
+            if (score >= 0)
+            {
+                ++m_numberResults;
+                m_score += score;
+                m_scoreSq += score * score;
+            }
+        }
+        m_black.add(timeBlack, movesBlack, cpuTimeBlack);
+        m_white.add(timeWhite, movesWhite, cpuTimeWhite);
+    }
+
+    /** Count a restart of a program. */
+    public synchronized void addRestart()
+    {
+        ++m_numberRestarts;
+    }
+
+    /** Stop updating the status.
+        Writes the final status file, which has the value false for
+        running, and stops the HTTP server. */
+    public void close()
+    {
+        synchronized (this)
+        {
+            m_isRunning = false;
+        }
+        if (m_timer != null)
+        {
+            m_timer.cancel();
+            write();
+        }
+        if (m_server != null)
+            m_server.stop(0);
+    }
+
+    /** Get the status in JSON format.
+        @return The status. */
+    public synchronized String getJson()
+    {
+        double time = (System.currentTimeMillis() - m_startTime) / 1000.;
+        double gamesPerHour = (time > 0 ? m_numberGames * 3600 / time : 0);
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\n");
+        appendJson(json, "running", Boolean.toString(m_isRunning));
+        appendJson(json, "time", format(time));
+        appendJson(json, "games", Integer.toString(m_numberGames));
+        appendJson(json, "gamesPerHour", format(gamesPerHour));
+        appendJson(json, "errors", Integer.toString(m_numberErrors));
+        appendJson(json, "restarts", Integer.toString(m_numberRestarts));
+        appendJson(json, "results", Integer.toString(m_numberResults));
+        if (m_numberResults > 0)
+        {
+            double mean = m_score / m_numberResults;
+            double variance = m_scoreSq / m_numberResults - mean * mean;
+            double error =
+                1.96 * Math.sqrt(Math.max(variance, 0) / m_numberResults);
+            appendJson(json, "winRate", format(mean));
+            appendJson(json, "winRateLow", format(Math.max(mean - error, 0)));
+            appendJson(json, "winRateHigh",
+                       format(Math.min(mean + error, 1)));
+        }
+        appendJson(json, "black", m_black.getJson(m_score));
+        appendJson(json, "white",
+                   m_white.getJson(m_numberResults - m_score));
+        // Remove comma after last entry
+        json.setLength(json.length() - 2);
+        json.append("\n}\n");
+        return json.toString();
+    }
+
+    /** Set the names of the programs.
+        @param black The name of the black program.
+        @param white The name of the white program. */
+    public synchronized void setNames(String black, String white)
+    {
+        m_black.m_name = black;
+        m_white.m_name = white;
+    }
+
+    /** Statistics of one program. */
+    private static final class ProgramStatistics
+    {
+        public String m_name = "";
+
+        public void add(double time, int moves, double cpuTime)
+        {
+            m_time += time;
+            m_numberMoves += moves;
+            m_cpuTime += cpuTime;
+            ++m_numberGames;
+        }
+
+        public String getJson(double wins)
+        {
+            StringBuilder json = new StringBuilder(128);
+            json.append("{\n");
+            appendJson(json, "name", quote(m_name));
+            appendJson(json, "wins", format(wins));
+            appendJson(json, "moves", Integer.toString(m_numberMoves));
+            appendJson(json, "moveTime",
+                       format(m_numberMoves > 0 ? m_time / m_numberMoves
+                              : 0));
+            appendJson(json, "cpuTime",
+                       format(m_numberGames > 0 ? m_cpuTime / m_numberGames
+                              : 0));
+            json.setLength(json.length() - 2);
+            json.append("\n}");
+            return json.toString().replace("\n", "\n  ");
+        }
+
+        private int m_numberGames;
+
+        private int m_numberMoves;
+
+        private double m_time;
+
+        private double m_cpuTime;
+    }
+
+    private boolean m_isRunning = true;
+
+    private int m_numberErrors;
+
+    private int m_numberGames;
+
+    private int m_numberRestarts;
+
+    /** Number of games with known result. */
+    private int m_numberResults;
+
+    /** Sum of scores of the black program. */
+    private double m_score;
+
+    private double m_scoreSq;
+
+    private final long m_startTime;
+
+    private final File m_file;
+
+    private final HttpServer m_server;
+
+    private final ProgramStatistics m_black = new ProgramStatistics();
+
+    private final ProgramStatistics m_white = new ProgramStatistics();
+
+    private final Timer m_timer;
+
+    /** Lock for writing the status file. */
+    private final Object m_writeLock = new Object();
+
+    private static void appendJson(StringBuilder json, String key,
+                                   String value)
+    {
+        json.append("  \"");
+        json.append(key);
+        json.append("\": ");
+        json.append(value);
+        json.append(",\n");
+    }
+
+    private static String format(double value)
+    {
+        return StringUtil.getNumberFormat(3).format(value);
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException
+    {
+        byte[] response = getJson().getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type",
+                                          "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(response);
+        }
+    }
+
+    /** Quote a string for JSON. */
+    private static String quote(String s)
+    {
+        StringBuilder result = new StringBuilder(s.length() + 2);
+        result.append('"');
+        for (int i = 0; i < s.length(); ++i)
+        {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+            {
+                result.append('\\');
+                result.append(c);
+            }
+            else if (c < ' ')
+                result.append(String.format("\\u%04x", (int)c));
+            else
+                result.append(c);
+        }
+        result.append('"');
+        return result.toString();
+    }
+
+    /** Write the status file.
+        Errors are printed, but do not abort the run. */
+    private void write()
+    {
+        String json = getJson();
+        File tmpFile = new File(m_file.getAbsolutePath() + ".new");
+        synchronized (m_writeLock)
+        {
+            try
+            {
+                try (Writer out =
+                     new OutputStreamWriter(new FileOutputStream(tmpFile),
+                                            "UTF-8"))
+                {
+                    out.write(json);
+                }
+                if (Platform.isWindows())
+                    // File.renameTo() fails on Windows if target exists
+                    m_file.delete();
+                if (! tmpFile.renameTo(m_file))
+                    throw new IOException();
+            }
+            catch (IOException e)
+            {
+                System.err.println("Could not write to: " + m_file);
+            }
+        }
+    }
+}
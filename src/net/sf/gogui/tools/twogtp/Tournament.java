@@ -0,0 +1,655 @@
+// Tournament.java
+
+package net.sf.gogui.tools.twogtp;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Map;
+import net.sf.gogui.game.TimeSettings;
+import net.sf.gogui.go.Komi;
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.util.FileUtil;
+import net.sf.gogui.util.Platform;
+import net.sf.gogui.util.StringUtil;
+import net.sf.gogui.util.Table;
+
+/** Round-robin or gauntlet tournament between several programs.
+    The programs are read from an engine file, which contains one program
+    per line: a unique name without spaces followed by the command. Empty
+    lines and lines starting with # are ignored. In a round-robin
+    tournament, every program plays every other program; in a gauntlet,
+    the first program plays all others.
+    Each pairing is a twogtp run with its own result table and game files
+    with the prefix prefix-i-j, where i and j are the line numbers of the
+    programs in the engine file (without comments), such that the pairings
+    can be analyzed with -analyze and an aborted tournament can be
+    continued. The first program of a pairing is the black program of the
+    run.
+    The games are played by a fixed number of threads, which limits the
+    number of games played at the same time. A thread plays games of the
+    unfinished pairing with the fewest threads until the pairing is
+    finished. The program processes are not terminated after a pairing, but
+    kept in a pool for each program and reused for the next pairing of the
+    program, because the startup of some programs (loading networks or
+    opening books) takes longer than a game. Idle processes are terminated
+    when all pairings of their program are finished, or the least recently
+    used ones when there are more than two program processes per thread.
+    At the end, a crosstable with the scores of all pairings is printed and
+    saved to prefix-crosstable.dat. Results are taken from the referee, or
+    from both programs if they agree; games with an error and duplicate
+    games are not counted. */
+public class Tournament
+{
+    /** Constructor.
+        Pairings that already contain the number of games from an earlier
+        run are skipped, unless force is true.
+        @param engineFile The engine file.
+        @param gauntlet Play a gauntlet instead of a round-robin
+        tournament.
+        @param referee The command for the referee or "".
+        @param size The board size.
+        @param komi The komi.
+        @param numberGames The number of games of each pairing.
+        @param alternate True, if colors are exchanged every second game.
+        @param filePrefix The prefix for the table and game files.
+        @param force Overwrite the tables of an existing tournament.
+        @param useXml Save games in XML format instead of SGF.
+        @param numberThreads The number of games played at the same time.
+        @param openings The openings or null.
+        @param timeSettings The time settings or null.
+        @param verbose Log GTP streams to stderr.
+        @throws ErrorMessage If the engine file or the tables of an earlier
+        run could not be read. */
+    public Tournament(File engineFile, boolean gauntlet, String referee,
+                      int size, Komi komi, int numberGames,
+                      boolean alternate, String filePrefix, boolean force,
+                      boolean useXml, int numberThreads, Openings openings,
+                      TimeSettings timeSettings, boolean verbose)
+        throws ErrorMessage
+    {
+        assert numberGames > 0;
+        assert numberThreads > 0;
+        m_gauntlet = gauntlet;
+        m_referee = referee;
+        m_size = size;
+        m_komi = komi;
+        m_numberGames = numberGames;
+        m_alternate = alternate;
+        m_filePrefix = filePrefix;
+        m_force = force;
+        m_useXml = useXml;
+        m_numberThreads = numberThreads;
+        m_openings = openings;
+        m_timeSettings = timeSettings;
+        m_verbose = verbose;
+        m_engines = readEngines(engineFile);
+        m_pairings = new ArrayList<>();
+        for (int i = 0; i < m_engines.size(); ++i)
+            for (int j = i + 1; j < m_engines.size(); ++j)
+            {
+                if (gauntlet && i > 0)
+                    break;
+                Pairing pairing = new Pairing(i, j, filePrefix + "-"
+                                              + (i + 1) + "-" + (j + 1));
+                if (! force)
+                {
+                    Table table = ResultFile.readResults(pairing.m_filePrefix);
+                    if (table != null && table.getNumberRows() >= numberGames)
+                        pairing.m_isFinished = true;
+                }
+                m_pairings.add(pairing);
+            }
+    }
+
+    /** Play the tournament.
+        An error in a pairing is printed and ends the pairing, the other
+        pairings are still played.
+        @throws ErrorMessage If the crosstable could not be written or a
+        pairing ended with an error.
+        @throws InterruptedException If interrupted while waiting for the
+        threads. */
+    public void run() throws ErrorMessage, InterruptedException
+    {
+        Thread[] threads = new Thread[m_numberThreads];
+        for (int i = 0; i < threads.length; ++i)
+        {
+            threads[i] = new Thread(this::runThread);
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        Table crosstable = createCrosstable();
+        File file = new File(m_filePrefix + "-crosstable.dat");
+        try
+        {
+            crosstable.save(file);
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Could not write to: " + file);
+        }
+        printTable(crosstable);
+        if (m_numberErrors > 0)
+            throw new ErrorMessage(m_numberErrors + " pairings ended with"
+                                   + " an error");
+    }
+
+    /** Set a move limit for the games.
+        @param maxMoves The move limit or -1 for no limit. */
+    public void setMaxMoves(int maxMoves)
+    {
+        m_maxMoves = maxMoves;
+    }
+
+    /** Save the stderr output of the programs in the game comments.
+        @param enable True for saving the output. */
+    public void setDebugToComment(boolean enable)
+    {
+        m_debugToComment = enable;
+    }
+
+    /** Set a timeout for the commands of the programs.
+        @param timeout The timeout in milliseconds or -1 for no timeout.
+        @see Program#setTimeout(long) */
+    public void setTimeout(long timeout)
+    {
+        m_timeout = timeout;
+    }
+
+    /** Program of the engine file. */
+    private static final class Engine
+    {
+        public Engine(String name, String command)
+        {
+            m_name = name;
+            m_command = command;
+        }
+
+        public final String m_name;
+
+        public final String m_command;
+
+        /** Started processes that are not used by a thread. */
+        public final ArrayDeque<Program> m_pool = new ArrayDeque<>();
+    }
+
+    /** Games between two programs. */
+    private static final class Pairing
+    {
+        public Pairing(int first, int second, String filePrefix)
+        {
+            m_first = first;
+            m_second = second;
+            m_filePrefix = filePrefix;
+        }
+
+        /** Index of the program playing black in the run. */
+        public final int m_first;
+
+        public final int m_second;
+
+        public final String m_filePrefix;
+
+        /** No more threads should start playing this pairing. */
+        public boolean m_isFinished;
+
+        /** Number of threads playing this pairing. */
+        public int m_numberThreads;
+
+        /** Created by the first thread playing this pairing, closed when
+            the last thread stops playing it. */
+        public ResultFile m_resultFile;
+    }
+
+    private final boolean m_alternate;
+
+    private boolean m_debugToComment;
+
+    private final boolean m_force;
+
+    private final boolean m_gauntlet;
+
+    private final boolean m_useXml;
+
+    private final boolean m_verbose;
+
+    private int m_maxMoves = -1;
+
+    private int m_numberErrors;
+
+    /** Number of started processes of the programs that are not closed.
+        Does not include the referees. */
+    private int m_numberProcesses;
+
+    private final int m_numberGames;
+
+    private final int m_numberThreads;
+
+    private final int m_size;
+
+    private long m_timeout = -1;
+
+    private final Komi m_komi;
+
+    private final Openings m_openings;
+
+    private final String m_filePrefix;
+
+    private final String m_referee;
+
+    private final TimeSettings m_timeSettings;
+
+    private final ArrayList<Engine> m_engines;
+
+    private final ArrayList<Pairing> m_pairings;
+
+    /** Get a process of a program for a pairing.
+        Uses an idle process from the pool or starts a new one. Starting a
+        new one terminates idle processes of other programs if there would
+        be more than two processes per thread. */
+    private Program acquire(int engineIndex, String role, String logPrefix)
+        throws Exception
+    {
+        Engine engine = m_engines.get(engineIndex);
+        Program program;
+        ArrayList<Program> surplus;
+        synchronized (this)
+        {
+            program = engine.m_pool.pollFirst();
+            if (program == null)
+            {
+                ++m_numberProcesses;
+                surplus = removeSurplus();
+            }
+            else
+                surplus = null;
+        }
+        if (program != null)
+        {
+            program.setRole(role, logPrefix);
+            return program;
+        }
+        for (Program idle : surplus)
+            idle.close();
+        try
+        {
+            program = new Program(engine.m_command, role, logPrefix,
+                                  m_verbose);
+        }
+        catch (Exception e)
+        {
+            synchronized (this)
+            {
+                --m_numberProcesses;
+            }
+            throw e;
+        }
+        program.setLabel(engine.m_name);
+        program.setTimeout(m_timeout);
+        return program;
+    }
+
+    private synchronized void addError(Pairing pairing, Exception e)
+    {
+        ++m_numberErrors;
+        System.err.println(getName(pairing) + ": "
+                           + StringUtil.getErrorMessage(e));
+    }
+
+    private Table createCrosstable() throws ErrorMessage
+    {
+        int numberEngines = m_engines.size();
+        double[][] score = new double[numberEngines][numberEngines];
+        int[][] games = new int[numberEngines][numberEngines];
+        boolean[][] isPaired = new boolean[numberEngines][numberEngines];
+        for (Pairing pairing : m_pairings)
+        {
+            int i = pairing.m_first;
+            int j = pairing.m_second;
+            isPaired[i][j] = true;
+            isPaired[j][i] = true;
+            Table table = ResultFile.readResults(pairing.m_filePrefix);
+            if (table == null)
+                continue;
+            for (int row = 0; row < table.getNumberRows(); ++row)
+            {
+                if (! table.get("ERR", row).equals("0")
+                    || ! table.get("DUP", row).equals("-"))
+                    continue;
+                double s = ResultFile.getScore(table.get("RES_B", row),
+                                               table.get("RES_W", row),
+                                               table.get("RES_R", row));
+                if (s < 0)
+                    continue;
+                score[i][j] += s;
+                score[j][i] += 1 - s;
+                ++games[i][j];
+                ++games[j][i];
+            }
+        }
+        ArrayList<String> columns = new ArrayList<>();
+        columns.add("ENGINE");
+        columns.add("GAMES");
+        columns.add("SCORE");
+        columns.add("PERCENT");
+        for (Engine engine : m_engines)
+            columns.add(engine.m_name);
+        Table table = new Table(columns);
+        table.setProperty("Tournament",
+                          m_gauntlet ? "gauntlet" : "round-robin");
+        table.setProperty("Games", Integer.toString(m_numberGames));
+        table.setProperty("Size", Integer.toString(m_size));
+        table.setProperty("Komi", m_komi.toString());
+        table.setProperty("Date", StringUtil.getDate());
+        table.setProperty("Host", Platform.getHostInfo());
+        for (int i = 0; i < numberEngines; ++i)
+        {
+            double totalScore = 0;
+            int totalGames = 0;
+            for (int j = 0; j < numberEngines; ++j)
+            {
+                totalScore += score[i][j];
+                totalGames += games[i][j];
+            }
+            table.startRow();
+            table.set("ENGINE", m_engines.get(i).m_name);
+            table.set("GAMES", totalGames);
+            table.set("SCORE", format(totalScore));
+            if (totalGames > 0)
+                table.set("PERCENT", format(100 * totalScore / totalGames));
+            else
+                table.set("PERCENT", "-");
+            for (int j = 0; j < numberEngines; ++j)
+            {
+                String value = "-";
+                if (isPaired[i][j])
+                    value = format(score[i][j]) + "/" + games[i][j];
+                table.set(4 + j, value);
+            }
+        }
+        return table;
+    }
+
+    /** Stop playing a pairing in the current thread.
+        Closes the result file if no other thread plays the pairing and
+        the idle processes of programs that have no unfinished pairings. */
+    private void finishPairing(Pairing pairing)
+    {
+        ResultFile resultFile = null;
+        ArrayList<Program> idle = new ArrayList<>();
+        synchronized (this)
+        {
+            pairing.m_isFinished = true;
+            --pairing.m_numberThreads;
+            if (pairing.m_numberThreads == 0)
+            {
+                resultFile = pairing.m_resultFile;
+                pairing.m_resultFile = null;
+            }
+            for (int engineIndex : new int[] { pairing.m_first,
+                                               pairing.m_second })
+                if (! hasUnfinishedPairing(engineIndex))
+                {
+                    Engine engine = m_engines.get(engineIndex);
+                    idle.addAll(engine.m_pool);
+                    m_numberProcesses -= engine.m_pool.size();
+                    engine.m_pool.clear();
+                }
+        }
+        if (resultFile != null)
+            resultFile.close();
+        for (Program program : idle)
+            program.close();
+    }
+
+    private static String format(double value)
+    {
+        return StringUtil.getNumberFormat(1).format(value);
+    }
+
+    private String getName(Pairing pairing)
+    {
+        return m_engines.get(pairing.m_first).m_name + " - "
+            + m_engines.get(pairing.m_second).m_name;
+    }
+
+    private synchronized ResultFile getResultFile(Pairing pairing,
+                                                  Program black,
+                                                  Program white,
+                                                  Program referee)
+        throws ErrorMessage
+    {
+        if (pairing.m_resultFile == null)
+        {
+            Map<String,String> properties =
+                ResultFile.getProperties(black, white, referee, m_openings);
+            pairing.m_resultFile =
+                new ResultFile(m_force, properties, m_numberGames, m_size,
+                               m_komi, pairing.m_filePrefix, m_alternate,
+                               m_useXml, m_numberThreads, null);
+        }
+        return pairing.m_resultFile;
+    }
+
+    private boolean hasUnfinishedPairing(int engineIndex)
+    {
+        for (Pairing pairing : m_pairings)
+            if (! pairing.m_isFinished
+                && (pairing.m_first == engineIndex
+                    || pairing.m_second == engineIndex))
+                return true;
+        return false;
+    }
+
+    private void play(Pairing pairing, Program referee) throws Exception
+    {
+        Program black = acquire(pairing.m_first, "Black", "B");
+        Program white = null;
+        try
+        {
+            white = acquire(pairing.m_second, "White", "W");
+            ResultFile resultFile =
+                getResultFile(pairing, black, white, referee);
+            TwoGtp twoGtp =
+                new TwoGtp(black, white, referee, "", m_size, m_komi,
+                           m_numberGames, m_alternate, pairing.m_filePrefix,
+                           m_verbose, m_openings, m_timeSettings,
+                           resultFile);
+            twoGtp.setMaxMoves(m_maxMoves);
+            // Also removes the callbacks of a previous pairing
+            twoGtp.setDebugToComment(m_debugToComment);
+            twoGtp.autoPlay();
+        }
+        finally
+        {
+            release(pairing.m_first, black);
+            if (white != null)
+                release(pairing.m_second, white);
+        }
+    }
+
+    private static void printTable(Table table)
+    {
+        int numberColumns = table.getNumberColumns();
+        int[] width = new int[numberColumns];
+        for (int i = 0; i < numberColumns; ++i)
+        {
+            width[i] = table.getColumnTitle(i).length();
+            for (int row = 0; row < table.getNumberRows(); ++row)
+                width[i] = Math.max(width[i], table.get(i, row).length());
+        }
+        StringBuilder line = new StringBuilder(256);
+        for (int row = -1; row < table.getNumberRows(); ++row)
+        {
+            line.setLength(0);
+            for (int i = 0; i < numberColumns; ++i)
+            {
+                String value = (row < 0 ? table.getColumnTitle(i)
+                                : table.get(i, row));
+                if (i == 0)
+                    line.append(String.format("%-" + width[i] + "s", value));
+                else
+                    line.append(String.format(" %" + width[i] + "s", value));
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static ArrayList<Engine> readEngines(File file)
+        throws ErrorMessage
+    {
+        ArrayList<String> lines;
+        try
+        {
+            lines = FileUtil.readStringListFromFile(file);
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new ErrorMessage(e.getMessage());
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Read error: " + file);
+        }
+        ArrayList<Engine> engines = new ArrayList<>();
+        for (String line : lines)
+        {
+            String[] fields = line.split("\\s+", 2);
+            if (fields.length < 2)
+                throw new ErrorMessage("No command for " + fields[0]
+                                       + " in " + file);
+            for (Engine engine : engines)
+                if (engine.m_name.equals(fields[0]))
+                    throw new ErrorMessage("Duplicate name " + fields[0]
+                                           + " in " + file);
+            engines.add(new Engine(fields[0], fields[1]));
+        }
+        if (engines.size() < 2)
+            throw new ErrorMessage("File " + file + " must contain at least"
+                                   + " two programs");
+        return engines;
+    }
+
+    /** Give back a process after playing a pairing.
+        The process is kept in the pool if it is alive and the program has
+        unfinished pairings, otherwise it is terminated. Idle processes
+        are also terminated if there are more than two processes per
+        thread. */
+    private void release(int engineIndex, Program program)
+    {
+        boolean isPooled = false;
+        ArrayList<Program> surplus;
+        synchronized (this)
+        {
+            if (! program.isProgramDead()
+                && hasUnfinishedPairing(engineIndex))
+            {
+                m_engines.get(engineIndex).m_pool.addLast(program);
+                isPooled = true;
+            }
+            else
+                --m_numberProcesses;
+            surplus = removeSurplus();
+        }
+        if (! isPooled)
+            program.close();
+        for (Program idle : surplus)
+            idle.close();
+    }
+
+    /** Take idle processes out of the pools until there are at most two
+        processes per thread.
+        Takes the least recently used process of the program with the most
+        idle processes.
+        @return The removed processes, which the caller must close outside
+        the lock. */
+    private ArrayList<Program> removeSurplus()
+    {
+        assert Thread.holdsLock(this);
+        ArrayList<Program> surplus = new ArrayList<>();
+        while (m_numberProcesses > 2 * m_numberThreads)
+        {
+            Engine largest = null;
+            for (Engine engine : m_engines)
+                if (largest == null
+                    || engine.m_pool.size() > largest.m_pool.size())
+                    largest = engine;
+            if (largest.m_pool.isEmpty())
+                break;
+            surplus.add(largest.m_pool.pollFirst());
+            --m_numberProcesses;
+        }
+        return surplus;
+    }
+
+    private void runThread()
+    {
+        Program referee = null;
+        try
+        {
+            while (true)
+            {
+                Pairing pairing = startPairing();
+                if (pairing == null)
+                    break;
+                try
+                {
+                    if (referee == null && ! m_referee.equals(""))
+                    {
+                        referee = new Program(m_referee, "Referee", "R",
+                                              m_verbose);
+                        referee.setTimeout(m_timeout);
+                    }
+                    play(pairing, referee);
+                }
+                catch (Exception e)
+                {
+                    addError(pairing, e);
+                }
+                finishPairing(pairing);
+                if (referee != null && referee.isProgramDead())
+                {
+                    referee.close();
+                    referee = null;
+                }
+            }
+        }
+        finally
+        {
+            if (referee != null)
+                referee.close();
+        }
+    }
+
+    /** Choose a pairing for the current thread.
+        Takes the unfinished pairing with the fewest threads; among those,
+        a pairing with idle processes of its programs is preferred.
+        @return The pairing or null, if all pairings are finished. */
+    private synchronized Pairing startPairing()
+    {
+        Pairing best = null;
+        int bestIdle = 0;
+        for (Pairing pairing : m_pairings)
+        {
+            if (pairing.m_isFinished)
+                continue;
+            int idle =
+                Math.min(m_engines.get(pairing.m_first).m_pool.size(), 1)
+                + Math.min(m_engines.get(pairing.m_second).m_pool.size(), 1);
+            if (best == null
+                || pairing.m_numberThreads < best.m_numberThreads
+                || (pairing.m_numberThreads == best.m_numberThreads
+                    && idle > bestIdle))
+            {
+                best = pairing;
+                bestIdle = idle;
+            }
+        }
+        if (best != null)
+            ++best.m_numberThreads;
+        return best;
+    }
+}
@@ -2,7 +2,6 @@
 
 package net.sf.gogui.tools.twogtp;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import net.sf.gogui.game.ConstNode;
 import net.sf.gogui.game.ConstGameTree;
@@ -24,7 +23,6 @@ import net.sf.gogui.gtp.GtpEngine;
 import net.sf.gogui.gtp.GtpError;
 import net.sf.gogui.gtp.GtpResponseFormatError;
 import net.sf.gogui.gtp.GtpUtil;
-import net.sf.gogui.sgf.SgfError;
 import net.sf.gogui.util.ErrorMessage;
 import net.sf.gogui.util.ObjectUtil;
 import net.sf.gogui.util.Platform;
@@ -55,7 +53,7 @@ public class TwoGtp
                   String observer, int size, Komi komi, int numberGames,
                   boolean alternate, String filePrefix, boolean verbose,
                   Openings openings, TimeSettings timeSettings,
-                  ResultFile resultFile)
+                  ResultStore resultFile)
         throws Exception
     {
         super(null);
@@ -63,6 +61,7 @@ public class TwoGtp
                 new StringBuilder());
         this.m_games = new ArrayList<>(100);
         this.m_realTime = new BlackWhiteSet<>(0., 0.);
+        this.m_numberGenmoves = new BlackWhiteSet<>(0, 0);
         assert size > 0;
         assert size <= GoPoint.MAX_SIZE;
         assert komi != null;
@@ -114,7 +113,10 @@ public class TwoGtp
             {
                 if (m_gameIndex == -1)
                     break;
-                handleEndOfGame(true, e.getMessage());
+                if (isAnyProgramDead())
+                    handleProgramDied(e.getMessage());
+                else
+                    handleEndOfGame(true, e.getMessage());
             }
         }
         if (m_black.isProgramDead())
@@ -123,6 +125,25 @@ public class TwoGtp
             throw new ErrorMessage("White program died");
     }
 
+    /** Get the number of games finished by this instance.
+        @return The number of games with a result, including games that
+        ended with an error. */
+    public int getNumberGamesPlayed()
+    {
+        return m_numberGamesPlayed;
+    }
+
+    /** Get the number of program restarts.
+        @return The total number of times a program of this instance was
+        restarted after it died or did not respond. */
+    public int getNumberRestarts()
+    {
+        int result = 0;
+        for (Program program : m_allPrograms)
+            result += program.getNumberRestarts();
+        return result;
+    }
+
     public void close()
     {
         m_allPrograms.forEach((program) -> {
@@ -296,6 +317,14 @@ public class TwoGtp
         m_maxMoves = maxMoves;
     }
 
+    /** Report results and program restarts for monitoring.
+        @param status The status shared by all instances of a run or
+        null. */
+    public void setStatus(Status status)
+    {
+        m_status = status;
+    }
+
     private final boolean m_alternate;
 
     private boolean m_gameSaved;
@@ -306,6 +335,8 @@ public class TwoGtp
 
     private int m_gameIndex;
 
+    private int m_numberGamesPlayed;
+
     private boolean m_resigned;
 
     private final boolean m_verbose;
@@ -335,13 +366,18 @@ public class TwoGtp
 
     private final BlackWhiteSet<Double> m_realTime;
 
+    /** Number of moves generated by the programs in the current game. */
+    private final BlackWhiteSet<Integer> m_numberGenmoves;
+
     private String m_openingFile;
 
     private final String m_filePrefix;
 
     private final ArrayList<ArrayList<Compare.Placement>> m_games;
 
-    private final ResultFile m_resultFile;
+    private final ResultStore m_resultFile;
+
+    private Status m_status;
 
     private final TimeSettings m_timeSettings;
 
@@ -515,6 +551,8 @@ public class TwoGtp
         double cpuTimeWhite = m_white.getAndClearCpuTime();
         double realTimeBlack = m_realTime.get(BLACK);
         double realTimeWhite = m_realTime.get(WHITE);
+        int genmovesBlack = m_numberGenmoves.get(BLACK);
+        int genmovesWhite = m_numberGenmoves.get(WHITE);
         if (isAlternated())
         {
             resultBlack = inverseResult(resultBlack);
@@ -522,6 +560,8 @@ public class TwoGtp
             resultReferee = inverseResult(resultReferee);
             realTimeBlack = m_realTime.get(WHITE);
             realTimeWhite = m_realTime.get(BLACK);
+            genmovesBlack = m_numberGenmoves.get(WHITE);
+            genmovesWhite = m_numberGenmoves.get(BLACK);
         }
         // If a program is dead we wait for a few seconds, because it
         // could be because the TwoGtp process was killed and we don't
@@ -597,6 +637,47 @@ public class TwoGtp
                                    moveNumber, error, errorMessage,
                                    realTimeBlack, realTimeWhite, cpuTimeBlack,
                                    cpuTimeWhite);
+        if (m_status != null)
+            m_status.addResult(resultBlack, resultWhite, resultReferee, error,
+                               realTimeBlack, realTimeWhite, genmovesBlack,
+                               genmovesWhite, cpuTimeBlack, cpuTimeWhite);
+        ++m_numberGamesPlayed;
+    }
+
+    /** Handle a game that was aborted because a program died.
+        Programs die if they crash or if they were killed because they did
+        not respond within the timeout set with Program.setTimeout(). The
+        game index is given back to the result file, such that the game is
+        repeated by the next thread that starts a game, unless it was
+        already repeated ResultFile.MAX_RETRIES times; then the game is
+        saved as an error. The dead programs are restarted, such that this
+        instance can continue playing games.
+        @param errorMessage The error that aborted the game.
+        @throws ErrorMessage If a program could not be restarted. */
+    private void handleProgramDied(String errorMessage) throws ErrorMessage
+    {
+        if (m_resultFile == null
+            || ! m_resultFile.releaseGameIndex(m_gameIndex))
+            handleEndOfGame(true, errorMessage);
+        for (Program program : m_allPrograms)
+        {
+            if (! program.isProgramDead())
+                continue;
+            System.err.println(program.getLabel() + " died in game "
+                               + m_gameIndex + ": " + errorMessage);
+            try
+            {
+                program.restart();
+                if (m_status != null)
+                    m_status.addRestart();
+            }
+            catch (GtpError e)
+            {
+                throw new ErrorMessage("Could not restart "
+                                       + program.getLabel() + ": "
+                                       + e.getMessage());
+            }
+        }
     }
 
     private void initGame(int size) throws GtpError
@@ -604,6 +685,8 @@ public class TwoGtp
         m_game = new Game(size, m_komi, null, null, null);
         m_realTime.set(BLACK, 0.);
         m_realTime.set(WHITE, 0.);
+        m_numberGenmoves.set(BLACK, 0);
+        m_numberGenmoves.set(WHITE, 0);
         // Clock is not needed
         m_game.haltClock();
         m_resigned = false;
@@ -614,20 +697,19 @@ public class TwoGtp
                 openingFileIndex = (m_gameIndex / 2) % m_openings.getNumber();
             else
                 openingFileIndex = m_gameIndex % m_openings.getNumber();
+            m_openingFile = m_openings.getFilename(openingFileIndex);
+            if (m_verbose)
+                System.err.println("Using opening " + m_openingFile);
+            if (m_openings.getBoardSize(openingFileIndex) != size)
+                throw new GtpError("Wrong board size: " + m_openingFile);
             try
             {
-                m_openings.loadFile(openingFileIndex);
+                m_game.init(m_openings.getTree(openingFileIndex));
             }
-            catch (IOException | SgfError e)
+            catch (ErrorMessage e)
             {
                 throw new GtpError(e.getMessage());
             }
-            m_openingFile = m_openings.getFilename();
-            if (m_verbose)
-                System.err.println("Loaded opening " + m_openingFile);
-            if (m_openings.getBoardSize() != size)
-                throw new GtpError("Wrong board size: " + m_openingFile);
-            m_game.init(m_openings.getTree());
             m_game.setKomi(m_komi);
             m_lastOpeningNode = NodeUtil.getLast(getTree().getRootConst());
             // TODO: Check that root node contains no setup stones, if
@@ -648,6 +730,14 @@ public class TwoGtp
             return result;
     }
 
+    private boolean isAnyProgramDead()
+    {
+        for (Program program : m_allPrograms)
+            if (program.isProgramDead())
+                return true;
+        return false;
+    }
+
     private boolean isAlternated()
     {
         return (m_alternate && m_gameIndex % 2 != 0);
@@ -743,6 +833,7 @@ public class TwoGtp
         String responseGenmove = program.sendCommandGenmove(color);
         double time = (System.currentTimeMillis() - timeMillis) / 1000.;
         m_realTime.set(color, m_realTime.get(color) + time);
+        m_numberGenmoves.set(color, m_numberGenmoves.get(color) + 1);
         if (responseGenmove.equalsIgnoreCase("resign"))
         {
             response.append("resign");
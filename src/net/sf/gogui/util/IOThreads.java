@@ -0,0 +1,166 @@
+// IOThreads.java
+
+package net.sf.gogui.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Starts threads that spend most of their time blocked on reading the
+    streams of child processes or sockets.
+    By default, platform threads are used. If enabled with setMaxVirtual()
+    and supported by the Java runtime (Java 21 or newer), up to the given
+    number of threads are started as virtual threads instead. Threads
+    started after the limit is reached are platform threads again.
+    A virtual thread blocked on reading a socket uses no kernel thread.
+    Reading the pipe of a child process is file I/O, which pins the carrier
+    thread of the virtual thread, and the Java runtime compensates with an
+    additional platform thread, so virtual threads save nothing for
+    streams of child processes.
+    The virtual thread API is accessed by reflection, because GoGui is
+    compiled for older Java versions. */
+public final class IOThreads
+{
+    /** Enable virtual threads.
+        @param max The maximum number of virtual threads running at the same
+        time, 0 disables virtual threads.
+        @return false, if virtual threads are not supported by the Java
+        runtime (the limit is set anyway but has no effect). */
+    public static boolean setMaxVirtual(int max)
+    {
+        assert max >= 0;
+        s_maxVirtual = max;
+        return isVirtualSupported();
+    }
+
+    /** Get the maximum number of virtual threads.
+        @return The limit set with setMaxVirtual(). */
+    public static int getMaxVirtual()
+    {
+        return s_maxVirtual;
+    }
+
+    /** Get the number of currently running virtual threads started by this
+        class.
+        @return The number of virtual threads. */
+    public static int getNumberVirtual()
+    {
+        return s_numberVirtual.get();
+    }
+
+    /** Check if the Java runtime supports virtual threads.
+        @return true, if virtual threads are supported. */
+    public static boolean isVirtualSupported()
+    {
+        return s_builderStart != null;
+    }
+
+    /** Start a thread.
+        @param name The name of the thread.
+        @param runnable The code run by the thread.
+        @return The started thread, a virtual thread, if enabled and the
+        limit is not reached yet. */
+    public static Thread start(String name, final Runnable runnable)
+    {
+        if (acquireVirtual())
+        {
+            Runnable wrapped = new Runnable() {
+                    public void run()
+                    {
+                        try
+                        {
+                            runnable.run();
+                        }
+                        finally
+                        {
+                            s_numberVirtual.decrementAndGet();
+                        }
+                    }
+                };
+            Thread thread = startVirtual(name, wrapped);
+            if (thread != null)
+                return thread;
+            s_numberVirtual.decrementAndGet();
+        }
+        Thread thread = new Thread(runnable, name);
+        thread.start();
+        return thread;
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private IOThreads()
+    {
+    }
+
+    private static volatile int s_maxVirtual;
+
+    private static final AtomicInteger s_numberVirtual = new AtomicInteger();
+
+    /** Thread.ofVirtual() or null, if not supported. */
+    private static final Method s_ofVirtual;
+
+    /** Thread.Builder.name(String) or null, if not supported. */
+    private static final Method s_builderName;
+
+    /** Thread.Builder.start(Runnable) or null, if not supported. */
+    private static final Method s_builderStart;
+
+    static
+    {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderStart = null;
+        try
+        {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            builderName = builder.getMethod("name", String.class);
+            builderStart = builder.getMethod("start", Runnable.class);
+            // Fails on Java versions with virtual threads as preview
+            // feature, if preview features are not enabled
+            ofVirtual.invoke(null);
+        }
+        catch (ClassNotFoundException | NoSuchMethodException
+               | IllegalAccessException | InvocationTargetException
+               | RuntimeException e)
+        {
+            ofVirtual = null;
+            builderName = null;
+            builderStart = null;
+        }
+        s_ofVirtual = ofVirtual;
+        s_builderName = builderName;
+        s_builderStart = builderStart;
+    }
+
+    private static boolean acquireVirtual()
+    {
+        if (s_builderStart == null)
+            return false;
+        while (true)
+        {
+            int n = s_numberVirtual.get();
+            if (n >= s_maxVirtual)
+                return false;
+            if (s_numberVirtual.compareAndSet(n, n + 1))
+                return true;
+        }
+    }
+
+    /** Start a virtual thread.
+        @return The thread or null, if starting the thread failed. */
+    private static Thread startVirtual(String name, Runnable runnable)
+    {
+        try
+        {
+            Object builder = s_ofVirtual.invoke(null);
+            builder = s_builderName.invoke(builder, name);
+            return (Thread)s_builderStart.invoke(builder, runnable);
+        }
+        catch (IllegalAccessException | InvocationTargetException
+               | RuntimeException e)
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+// LineBatcher.java
+
+package net.sf.gogui.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/** Splits text received in chunks into lines and delivers them in batches.
+    Intended for output of child processes that is read in a different
+    thread than the thread that handles it, like the standard error of Go
+    programs displayed in the event dispatch thread.
+    Only one delivery task is scheduled with the executor at a time; all
+    lines that arrive before it runs are delivered together. If more than
+    the given capacity of lines are waiting, the oldest waiting lines are
+    dropped, such that a program writing faster than the lines can be
+    handled cannot block the reader or use unbounded memory.
+    This class is thread-safe. */
+public class LineBatcher
+{
+    /** Receiver of the lines. */
+    public interface Listener
+    {
+        /** Receive a batch of lines.
+            Invoked in the executor of the LineBatcher.
+            @param lines The lines without line terminators.
+            @param numberDropped The number of lines dropped since the last
+            batch because the queue was full. The dropped lines were received
+            before the lines in this batch. */
+        void receivedLines(List<String> lines, int numberDropped);
+    }
+
+    /** Maximum length of a line.
+        Longer lines are split, such that a program writing without line
+        terminators cannot use unbounded memory. */
+    public static final int MAX_LINE_LENGTH = 65536;
+
+    /** Constructor.
+        @param capacity The maximum number of lines waiting for delivery.
+        @param executor The executor for delivering the lines, e.g.
+        SwingUtilities::invokeLater.
+        @param listener The receiver of the lines. */
+    public LineBatcher(int capacity, Executor executor, Listener listener)
+    {
+        assert capacity > 0;
+        m_capacity = capacity;
+        m_executor = executor;
+        m_listener = listener;
+    }
+
+    /** Add text.
+        Complete lines are queued for delivery, the rest is kept until the
+        line is completed. Line terminators can be "\n" or "\r\n".
+        @param text The text. */
+    public synchronized void add(String text)
+    {
+        int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; ++i)
+        {
+            if (text.charAt(i) != '\n')
+                continue;
+            m_line.append(text, start, i);
+            addLine();
+            start = i + 1;
+        }
+        m_line.append(text, start, length);
+        if (m_line.length() >= MAX_LINE_LENGTH)
+            addLine();
+        schedule();
+    }
+
+    /** Deliver the current incomplete line.
+        Should be called after the end of the stream was reached, otherwise
+        the text after the last line terminator is never delivered. */
+    public synchronized void flush()
+    {
+        if (m_line.length() > 0)
+        {
+            addLine();
+            schedule();
+        }
+    }
+
+    private boolean m_isScheduled;
+
+    private final int m_capacity;
+
+    /** Lines dropped since the last delivery. */
+    private int m_dropped;
+
+    private final ArrayDeque<String> m_queue = new ArrayDeque<>();
+
+    private final Executor m_executor;
+
+    private final Listener m_listener;
+
+    private final StringBuilder m_line = new StringBuilder(256);
+
+    private final Runnable m_deliver = new Runnable() {
+            public void run()
+            {
+                deliver();
+            }
+        };
+
+    private void addLine()
+    {
+        int length = m_line.length();
+        if (length > 0 && m_line.charAt(length - 1) == '\r')
+            --length;
+        m_queue.add(m_line.substring(0, length));
+        m_line.setLength(0);
+        if (m_queue.size() > m_capacity)
+        {
+            m_queue.removeFirst();
+            ++m_dropped;
+        }
+    }
+
+    private void deliver()
+    {
+        List<String> lines;
+        int dropped;
+        synchronized (this)
+        {
+            m_isScheduled = false;
+            if (m_queue.isEmpty())
+                return;
+            lines = new ArrayList<>(m_queue);
+            m_queue.clear();
+            dropped = m_dropped;
+            m_dropped = 0;
+        }
+        m_listener.receivedLines(lines, dropped);
+    }
+
+    private void schedule()
+    {
+        if (m_isScheduled || m_queue.isEmpty())
+            return;
+        m_isScheduled = true;
+        m_executor.execute(m_deliver);
+    }
+}
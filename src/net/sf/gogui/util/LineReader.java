@@ -16,16 +16,15 @@ public class LineReader
      * @return  */
     public boolean hasLines()
     {
-        return m_buffer.toString().contains("\n");
+        return m_buffer.indexOf("\n") >= 0;
     }
 
     public String getLine()
     {
-        String s = m_buffer.toString();
-        int pos = s.indexOf('\n');
+        int pos = m_buffer.indexOf("\n");
         if (pos < 0)
             return "";
-        String result = s.substring(0, pos + 1);
+        String result = m_buffer.substring(0, pos + 1);
         m_buffer.delete(0, pos + 1);
         return result;
     }
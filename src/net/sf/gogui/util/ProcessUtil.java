@@ -67,6 +67,19 @@ public class ProcessUtil
         }
     }
 
+    /** Start a thread that copies standard error of a process to
+        System.err.
+        Like StdErrThread, but uses IOThreads, so the thread can be a
+        virtual thread.
+        @param process The process.
+        @return The started thread. */
+    public static Thread startStdErrThread(Process process)
+    {
+        return IOThreads.start("StdErrThread",
+                               new StreamCopy(false, process.getErrorStream(),
+                                              System.err, false));
+    }
+
     /** Run a process and return its standard output as a string.
      * @param cmdArray
      * @return 
@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -211,36 +212,52 @@ public class Table
     public void save(Writer out, boolean withHeader) throws IOException
     {
         if (withHeader)
+            saveHeader(out);
+        for (int i = 0; i < m_rows.size(); ++i)
+            saveRow(out, i);
+    }
+
+    /** Write the properties and column titles.
+        Together with saveRow(), this allows to write a table incrementally
+        in the format of save().
+        @param out The writer.
+        @throws IOException If writing fails. */
+    public void saveHeader(Writer out) throws IOException
+    {
+        for (Map.Entry<String,String> entry : m_properties.entrySet())
         {
-            for (Map.Entry<String,String> entry : m_properties.entrySet())
-            {
-                String key = entry.getKey();
-                String value = entry.getValue();
-                out.write("# " + key + ": " + value + "\n");
-            }
-            out.write("#\n#");
-            for (int i = 0; i < m_numberColumns; ++i)
-            {
-                out.write(getColumnTitle(i));
-                if (i < m_numberColumns - 1)
-                    out.write('\t');
-                else
-                    out.write('\n');
-            }
+            String key = entry.getKey();
+            String value = entry.getValue();
+            out.write("# " + key + ": " + value + "\n");
         }
-        for (int i = 0; i < m_rows.size(); ++i)
+        out.write("#\n#");
+        for (int i = 0; i < m_numberColumns; ++i)
         {
-            ArrayList<String> row = m_rows.get(i);
-            for (int j = 0; j < m_numberColumns; ++j)
-            {
-                String value = row.get(j);
-                if (value != null)
-                    out.write(value);
-                if (j < m_numberColumns - 1)
-                    out.write('\t');
-                else
-                    out.write('\n');
-            }
+            out.write(getColumnTitle(i));
+            if (i < m_numberColumns - 1)
+                out.write('\t');
+            else
+                out.write('\n');
+        }
+    }
+
+    /** Write a row.
+        @param out The writer.
+        @param index The index of the row.
+        @throws IOException If writing fails.
+        @see #saveHeader(Writer) */
+    public void saveRow(Writer out, int index) throws IOException
+    {
+        ArrayList<String> row = m_rows.get(index);
+        for (int j = 0; j < m_numberColumns; ++j)
+        {
+            String value = row.get(j);
+            if (value != null)
+                out.write(value);
+            if (j < m_numberColumns - 1)
+                out.write('\t');
+            else
+                out.write('\n');
         }
     }
 
@@ -293,14 +310,22 @@ public class Table
     public void sortByIntColumn(int column, int rowBegin,
                                 int rowEnd) throws InvalidElement
     {
-        for (int row1 = rowBegin; row1 < rowEnd - 1; ++row1)
-            for (int row2 = row1 + 1; row2 < rowEnd; ++row2)
-                if (getInt(column, row2) < getInt(column, row1))
-                {
-                    ArrayList<String> tmp = m_rows.get(row1);
-                    m_rows.set(row1, m_rows.get(row2));
-                    m_rows.set(row2, tmp);
-                }
+        int n = rowEnd - rowBegin;
+        if (n < 2)
+            return;
+        final int[] keys = new int[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; ++i)
+        {
+            keys[i] = getInt(column, rowBegin + i);
+            order[i] = i;
+        }
+        Arrays.sort(order, (i1, i2) -> Integer.compare(keys[i1], keys[i2]));
+        ArrayList<ArrayList<String>> sorted = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i)
+            sorted.add(m_rows.get(rowBegin + order[i]));
+        for (int i = 0; i < n; ++i)
+            m_rows.set(rowBegin + i, sorted.get(i));
     }
 
     public void sortByIntColumn(String columnTitle, int rowBegin,
@@ -2,21 +2,25 @@
 
 package net.sf.gogui.xml;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.File;
-import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 import java.util.TreeSet;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
@@ -52,10 +56,24 @@ import net.sf.gogui.util.ProgressShow;
     according to the go.dtd from the Jago webpage (10/2007) and also handles
     some deviations used by Jago or in the examples used on the Jago
     webpage, see also the appendix "XML Format" of the GoGui documentation.
-    The implementation uses SAX for memory efficient parsing of large files. */
+    The implementation uses a streaming parser for memory efficient parsing
+    of large files. By default, a StAX pull parser is used, which reads
+    element text directly from the parser's buffer into a reused buffer;
+    the SAX parser can still be selected. Both parsers produce the same
+    game trees and warnings. */
 public final class XmlReader
 {
-    /** Construct reader and read.
+    /** Parser used for reading. */
+    public enum Parser
+    {
+        /** Pull parser (javax.xml.stream). */
+        STAX,
+
+        /** SAX parser (org.xml.sax). */
+        SAX
+    }
+
+    /** Construct reader and read using the StAX parser.
      * @param in
         @param progressShow Callback to show progress, can be null
         @param streamSize Size of stream if progressShow != null
@@ -63,6 +81,19 @@ public final class XmlReader
     public XmlReader(InputStream in, ProgressShow progressShow,
                      long streamSize)
         throws ErrorMessage
+    {
+        this(in, progressShow, streamSize, Parser.STAX);
+    }
+
+    /** Construct reader and read.
+        @param in Stream to read from.
+        @param progressShow Callback to show progress, can be null
+        @param streamSize Size of stream if progressShow != null
+        @param parser The parser to use.
+        @throws ErrorMessage If reading fails. */
+    public XmlReader(InputStream in, ProgressShow progressShow,
+                     long streamSize, Parser parser)
+        throws ErrorMessage
     {
         m_progressShow = progressShow;
         m_streamSize = streamSize;
@@ -82,20 +113,10 @@ public final class XmlReader
             // might be truncated later
             m_info = new GameInfo();
             m_node = m_root;
-            XMLReader reader = XMLReaderFactory.createXMLReader();
-            try
-            {
-                reader.setFeature("http://xml.org/sax/features/validation",
-                                  false);
-            }
-            catch (SAXException e)
-            {
-            }
-            Handler handler = new Handler();
-            reader.setContentHandler(handler);
-            reader.setEntityResolver(handler);
-            reader.setErrorHandler(handler);
-            reader.parse(new InputSource(in));
+            if (parser == Parser.SAX)
+                parseSax(in);
+            else
+                parseStax(in);
             int size;
             if (m_isBoardSizeKnown)
                 size = m_boardSize;
@@ -106,13 +127,13 @@ public final class XmlReader
             if (m_gameName != null)
                 m_root.addSgfProperty("GN", m_gameName);
         }
-        catch (SAXException e)
+        catch (SAXException | IOException e)
         {
             throw new ErrorMessage(e.getMessage());
         }
-        catch (IOException e)
+        catch (XMLStreamException e)
         {
-            throw new ErrorMessage(e.getMessage());
+            throw new ErrorMessage(getMessage(e));
         }
         finally
         {
@@ -145,6 +166,179 @@ public final class XmlReader
         return result.toString();
     }
 
+    /** Element types.
+        Element names are mapped to a type once per element, so that the
+        element handling does not need to compare strings. */
+    private enum Element
+    {
+        ADD_BLACK("AddBlack"),
+
+        ADD_WHITE("AddWhite"),
+
+        ANNOTATION("Annotation"),
+
+        APPLICATION("Application"),
+
+        ARG("Arg"),
+
+        AT("at"),
+
+        BLACK("Black"),
+
+        BLACK_PLAYER("BlackPlayer"),
+
+        BLACK_RANK("BlackRank"),
+
+        BLACK_TEAM("BlackTeam"),
+
+        BLACK_TO_PLAY("BlackToPlay"),
+
+        BOARD_SIZE("BoardSize"),
+
+        COMMENT("Comment"),
+
+        COPYRIGHT("Copyright"),
+
+        DATE("Date"),
+
+        DELETE("Delete"),
+
+        GO("Go"),
+
+        GO_GAME("GoGame"),
+
+        HANDICAP("Handicap"),
+
+        INFORMATION("Information"),
+
+        KOMI("Komi"),
+
+        LINE("Line"),
+
+        MARK("Mark"),
+
+        NODE("Node"),
+
+        NODES("Nodes"),
+
+        P("P"),
+
+        RESULT("Result"),
+
+        ROUND("Round"),
+
+        RULES("Rules"),
+
+        SGF("SGF"),
+
+        SOURCE("Source"),
+
+        TIME("Time"),
+
+        USER("User"),
+
+        VARIATION("Variation"),
+
+        WHITE("White"),
+
+        WHITE_PLAYER("WhitePlayer"),
+
+        WHITE_RANK("WhiteRank"),
+
+        WHITE_TEAM("WhiteTeam"),
+
+        WHITE_TO_PLAY("WhiteToPlay"),
+
+        /** Element unknown to the reader. */
+        UNKNOWN(null);
+
+        Element(String name)
+        {
+            m_name = name;
+        }
+
+        public static Element get(String name)
+        {
+            Element element = ELEMENTS.get(name);
+            return element == null ? UNKNOWN : element;
+        }
+
+        private static final Map<String,Element> ELEMENTS = new HashMap<>();
+
+        static
+        {
+            for (Element element : values())
+                if (element.m_name != null)
+                    ELEMENTS.put(element.m_name, element);
+        }
+
+        private final String m_name;
+    }
+
+    /** Attributes of the current element.
+        Common interface for the attributes of the SAX and StAX parsers. */
+    private interface ElementAttributes
+    {
+        int getLength();
+
+        String getLocalName(int i);
+
+        String getValue(String name);
+    }
+
+    private static class SaxAttributes
+        implements ElementAttributes
+    {
+        public Attributes m_atts;
+
+        @Override
+        public int getLength()
+        {
+            return m_atts.getLength();
+        }
+
+        @Override
+        public String getLocalName(int i)
+        {
+            return m_atts.getLocalName(i);
+        }
+
+        @Override
+        public String getValue(String name)
+        {
+            return m_atts.getValue(name);
+        }
+    }
+
+    private static class StaxAttributes
+        implements ElementAttributes
+    {
+        public StaxAttributes(XMLStreamReader reader)
+        {
+            m_reader = reader;
+        }
+
+        @Override
+        public int getLength()
+        {
+            return m_reader.getAttributeCount();
+        }
+
+        @Override
+        public String getLocalName(int i)
+        {
+            return m_reader.getAttributeLocalName(i);
+        }
+
+        @Override
+        public String getValue(String name)
+        {
+            return m_reader.getAttributeValue(null, name);
+        }
+
+        private final XMLStreamReader m_reader;
+    }
+
     private class Handler
         extends DefaultHandler
     {
@@ -153,265 +347,15 @@ public final class XmlReader
                                  String qualifiedName, Attributes atts)
             throws SAXException
         {
-            if (m_progressShow != null)
-                showProgress();
-            checkNoCharacters();
-            m_element = name;
-            m_atts = atts;
-            if (m_isFirstElement)
-            {
-                if (! m_element.equals("Go"))
-                    throw new SAXException("Not a Go game");
-                m_isFirstElement = false;
-            }
-            switch (name) {
-                case "Annotation":
-                    startInfoElemWithoutFormat();
-                    break;
-                case "Application":
-                    startInfoElemWithFormat();
-                    break;
-                case "AddBlack":
-                    startSetup(BLACK);
-                    break;
-                case "AddWhite":
-                    startSetup(WHITE);
-                    break;
-                case "Arg":
-                    checkParent("SGF");
-                    break;
-                case "at":
-                    checkParent("Black", "White", "AddBlack", "AddWhite", "Delete",
-                            "Mark");
-                    break;
-                case "Black":
-                    startMove(BLACK);
-                    break;
-                case "BlackPlayer":
-                    startInfoElemWithFormat();
-                    break;
-                case "BlackRank":
-                    startInfoElemWithFormat();
-                    break;
-                case "BlackTeam":
-                    startInfoElemWithoutFormat();
-                    break;
-                case "BlackToPlay":
-                    startToPlay(BLACK);
-                    break;
-                case "BoardSize":
-                    startInfoElemWithFormat();
-                    break;
-                case "Comment":
-                    startComment();
-                    break;
-                case "Copyright":
-                    startCopyright();
-                    break;
-                case "Date":
-                    startInfoElemWithFormat();
-                    break;
-                case "Delete":
-                    startSetup(EMPTY);
-                    break;
-                case "Go":
-                    startGo();
-                    break;
-                case "GoGame":
-                    startGoGame();
-                    break;
-                case "Handicap":
-                    startInfoElemWithFormat();
-                    break;
-                case "Information":
-                    startInformation();
-                    break;
-                case "Line":
-                    startLine();
-                    break;
-                case "Komi":
-                    startInfoElemWithFormat();
-                    break;
-                case "Mark":
-                    startMark();
-                    break;
-                case "Node":
-                    startNode();
-                    break;
-                case "Nodes":
-                    startNodes();
-                    break;
-                case "P":
-                    startP();
-                    break;
-                case "Result":
-                    startInfoElemWithFormat();
-                    break;
-                case "Round":
-                    startInfoElemWithoutFormat();
-                    break;
-                case "Rules":
-                    startInfoElemWithFormat();
-                    break;
-                case "Source":
-                    startInfoElemWithFormat();
-                    break;
-                case "SGF":
-                    startSGF();
-                    break;
-                case "Time":
-                    startInfoElemWithFormat();
-                    break;
-                case "User":
-                    startInfoElemWithoutFormat();
-                    break;
-                case "Variation":
-                    startVariation();
-                    break;
-                case "White":
-                    startMove(WHITE);
-                    break;
-                case "WhitePlayer":
-                    startInfoElemWithFormat();
-                    break;
-                case "WhiteRank":
-                    startInfoElemWithFormat();
-                    break;
-                case "WhiteTeam":
-                    startInfoElemWithoutFormat();
-                    break;
-                case "WhiteToPlay":
-                    startToPlay(WHITE);
-                    break;
-                default:
-                    setWarning("Ignoring unknown element: " + name);
-                    break;
-            }
-            m_elementStack.push(name);
-            m_characters.setLength(0);
+            m_saxAttributes.m_atts = atts;
+            XmlReader.this.startElement(name, m_saxAttributes);
         }
 
         @Override
         public void endElement(String namespaceURI, String name,
                                String qualifiedName) throws SAXException
         {
-            m_element = m_elementStack.pop();
-            switch (name) {
-                case "AddBlack":
-                    endSetup(BLACK);
-                    break;
-                case "AddWhite":
-                    endSetup(WHITE);
-                    break;
-                case "Annotation":
-                    m_info.set(StringInfo.ANNOTATION, getCharacters());
-                    break;
-                case "Arg":
-                    m_sgfArgs.add(getCharacters());
-                    break;
-                case "at":
-                    endAt();
-                    break;
-                case "Black":
-                    endMove(BLACK);
-                    break;
-                case "BlackPlayer":
-                    m_info.set(StringInfoColor.NAME, BLACK, getCharacters());
-                    break;
-                case "BlackRank":
-                    m_info.set(StringInfoColor.RANK, BLACK, getCharacters());
-                    break;
-                case "BlackTeam":
-                    m_info.set(StringInfoColor.TEAM, BLACK, getCharacters());
-                    break;
-                case "BlackToPlay":
-                    endToPlay();
-                    break;
-                case "BoardSize":
-                    endBoardSize();
-                    break;
-                case "Comment":
-                    endComment();
-                    break;
-                case "Copyright":
-                    endCopyright();
-                    break;
-                case "Date":
-                    m_info.set(StringInfo.DATE, getCharacters());
-                    break;
-                case "Delete":
-                    endSetup(EMPTY);
-                    break;
-                case "Go":
-                    checkNoCharacters();
-                    break;
-                case "GoGame":
-                    checkNoCharacters();
-                    break;
-                case "Handicap":
-                    endHandicap();
-                    break;
-                case "Information":
-                    checkNoCharacters();
-                    break;
-                case "Komi":
-                    endKomi();
-                    break;
-                case "Mark":
-                    endMark();
-                    break;
-                case "Node":
-                    endNode();
-                    break;
-                case "Nodes":
-                    checkNoCharacters();
-                    break;
-                case "P":
-                    endP();
-                    break;
-                case "Result":
-                    m_info.set(StringInfo.RESULT, getCharacters());
-                    break;
-                case "Round":
-                    m_info.set(StringInfo.ROUND, getCharacters());
-                    break;
-                case "Rules":
-                    m_info.set(StringInfo.RULES, getCharacters());
-                    break;
-                case "SGF":
-                    endSgf();
-                    break;
-                case "Source":
-                    m_info.set(StringInfo.SOURCE, getCharacters());
-                    break;
-                case "Time":
-                    endTime();
-                    break;
-                case "User":
-                    m_info.set(StringInfo.USER, getCharacters());
-                    break;
-                case "White":
-                    endMove(WHITE);
-                    break;
-                case "WhitePlayer":
-                    m_info.set(StringInfoColor.NAME, WHITE, getCharacters());
-                    break;
-                case "WhiteRank":
-                    m_info.set(StringInfoColor.RANK, WHITE, getCharacters());
-                    break;
-                case "WhiteTeam":
-                    m_info.set(StringInfoColor.TEAM, WHITE, getCharacters());
-                    break;
-                case "WhiteToPlay":
-                    endToPlay();
-                    break;
-                case "Variation":
-                    endVariation();
-                    break;
-                default:
-                    break;
-            }
-            m_characters.setLength(0);
+            XmlReader.this.endElement(name);
         }
 
         @Override
@@ -495,12 +439,16 @@ public final class XmlReader
     private final long m_streamSize;
 
     /** Element stack. */
-    private Stack<String> m_elementStack = new Stack<>();
+    private final ArrayDeque<String> m_elementStack = new ArrayDeque<>();
+
+    /** Types of the elements in the element stack. */
+    private final ArrayDeque<Element> m_elementTypeStack =
+        new ArrayDeque<>();
 
     /** Current node. */
     private Node m_node;
 
-    private Stack<Node> m_variation = new Stack<>();
+    private final ArrayDeque<Node> m_variation = new ArrayDeque<>();
 
     private GameInfo m_info = new GameInfo();
 
@@ -512,7 +460,10 @@ public final class XmlReader
     private String m_element;
 
     /** Attributes of current element */
-    private Attributes m_atts;
+    private ElementAttributes m_atts;
+
+    /** Reused wrapper for the attributes of the SAX parser. */
+    private final SaxAttributes m_saxAttributes = new SaxAttributes();
 
     /** Type of current SGF element. */
     private String m_sgfType;
@@ -528,6 +479,9 @@ public final class XmlReader
 
     private Locator m_locator;
 
+    /** Stream reader if the StAX parser is used. */
+    private XMLStreamReader m_streamReader;
+
     /** Current mark type in Mark element. */
     private MarkType m_markType;
 
@@ -561,11 +515,10 @@ public final class XmlReader
 
     private void checkAttributes(String... atts) throws SAXException
     {
-        List<String> list = Arrays.asList(atts);
         for (int i = 0; i < m_atts.getLength(); ++i)
         {
             String name = m_atts.getLocalName(i);
-            if (! list.contains(name))
+            if (! contains(atts, name))
                 setWarning("Unknown attribute \"" + name + "\" for element \""
                            + m_element + "\"");
         }
@@ -573,7 +526,7 @@ public final class XmlReader
 
     private void checkNoCharacters() throws SAXException
     {
-        if (! getCharacters().trim().equals(""))
+        if (! isCharactersBlank())
             setWarning("Cannot handle text content in element \"" + m_element
                        + "\"");
     }
@@ -586,12 +539,22 @@ public final class XmlReader
                        + parent + "\"");
     }
 
-    private void checkParent(String... parents) throws SAXException
+    private void checkParent(Element... parents) throws SAXException
     {
-        String parent = parentElement();
-        if (! Arrays.asList(parents).contains(parent))
-            throwError("Element \"" + m_element + "\" cannot be child of \""
-                       + parent + "\"");
+        Element parent = parentElementType();
+        for (Element element : parents)
+            if (element == parent)
+                return;
+        throwError("Element \"" + m_element + "\" cannot be child of \""
+                   + parentElement() + "\"");
+    }
+
+    private static boolean contains(String[] array, String s)
+    {
+        for (String element : array)
+            if (element.equals(s))
+                return true;
+        return false;
     }
 
     private void createNode()
@@ -604,27 +567,147 @@ public final class XmlReader
         m_node = node;
     }
 
+    private void endElement(String name) throws SAXException
+    {
+        m_element = m_elementStack.pop();
+        switch (m_elementTypeStack.pop()) {
+            case ADD_BLACK:
+                endSetup(BLACK);
+                break;
+            case ADD_WHITE:
+                endSetup(WHITE);
+                break;
+            case ANNOTATION:
+                m_info.set(StringInfo.ANNOTATION, getCharacters());
+                break;
+            case ARG:
+                m_sgfArgs.add(getCharacters());
+                break;
+            case AT:
+                endAt();
+                break;
+            case BLACK:
+                endMove(BLACK);
+                break;
+            case BLACK_PLAYER:
+                m_info.set(StringInfoColor.NAME, BLACK, getCharacters());
+                break;
+            case BLACK_RANK:
+                m_info.set(StringInfoColor.RANK, BLACK, getCharacters());
+                break;
+            case BLACK_TEAM:
+                m_info.set(StringInfoColor.TEAM, BLACK, getCharacters());
+                break;
+            case BLACK_TO_PLAY:
+                endToPlay();
+                break;
+            case BOARD_SIZE:
+                endBoardSize();
+                break;
+            case COMMENT:
+                endComment();
+                break;
+            case COPYRIGHT:
+                endCopyright();
+                break;
+            case DATE:
+                m_info.set(StringInfo.DATE, getCharacters());
+                break;
+            case DELETE:
+                endSetup(EMPTY);
+                break;
+            case GO:
+                checkNoCharacters();
+                break;
+            case GO_GAME:
+                checkNoCharacters();
+                break;
+            case HANDICAP:
+                endHandicap();
+                break;
+            case INFORMATION:
+                checkNoCharacters();
+                break;
+            case KOMI:
+                endKomi();
+                break;
+            case MARK:
+                endMark();
+                break;
+            case NODE:
+                endNode();
+                break;
+            case NODES:
+                checkNoCharacters();
+                break;
+            case P:
+                endP();
+                break;
+            case RESULT:
+                m_info.set(StringInfo.RESULT, getCharacters());
+                break;
+            case ROUND:
+                m_info.set(StringInfo.ROUND, getCharacters());
+                break;
+            case RULES:
+                m_info.set(StringInfo.RULES, getCharacters());
+                break;
+            case SGF:
+                endSgf();
+                break;
+            case SOURCE:
+                m_info.set(StringInfo.SOURCE, getCharacters());
+                break;
+            case TIME:
+                endTime();
+                break;
+            case USER:
+                m_info.set(StringInfo.USER, getCharacters());
+                break;
+            case WHITE:
+                endMove(WHITE);
+                break;
+            case WHITE_PLAYER:
+                m_info.set(StringInfoColor.NAME, WHITE, getCharacters());
+                break;
+            case WHITE_RANK:
+                m_info.set(StringInfoColor.RANK, WHITE, getCharacters());
+                break;
+            case WHITE_TEAM:
+                m_info.set(StringInfoColor.TEAM, WHITE, getCharacters());
+                break;
+            case WHITE_TO_PLAY:
+                endToPlay();
+                break;
+            case VARIATION:
+                endVariation();
+                break;
+            default:
+                break;
+        }
+        m_characters.setLength(0);
+    }
+
     private void endAt() throws SAXException
     {
         GoPoint p = getPoint(getCharacters());
-        String parent = parentElement();
-        switch (parent) {
-            case "Black":
+        switch (parentElementType()) {
+            case BLACK:
                 m_node.setMove(Move.get(BLACK, p));
                 break;
-            case "White":
+            case WHITE:
                 m_node.setMove(Move.get(WHITE, p));
                 break;
-            case "AddBlack":
+            case ADD_BLACK:
                 m_node.addStone(BLACK, p);
                 break;
-            case "AddWhite":
+            case ADD_WHITE:
                 m_node.addStone(WHITE, p);
                 break;
-            case "Delete":
+            case DELETE:
                 m_node.addStone(EMPTY, p);
                 break;
-            case "Mark":
+            case MARK:
                 if (m_markType != null)
                     m_node.addMarked(p, m_markType);
                 if (m_label != null)
@@ -1018,7 +1101,7 @@ public final class XmlReader
 
     private void endToPlay() throws SAXException
     {
-        if (! getCharacters().trim().equals(""))
+        if (! isCharactersBlank())
             setWarning("Ignoring text content in element \"" + m_element
                        + "\"");
     }
@@ -1036,26 +1119,50 @@ public final class XmlReader
 
     private String getMergedLines()
     {
-        String chars = getCharacters();
-        StringBuilder result = new StringBuilder(chars.length());
-        BufferedReader reader = new BufferedReader(new StringReader(chars));
-        try
+        // Same result as joining the lines returned by
+        // BufferedReader.readLine() with single spaces
+        int length = m_characters.length();
+        StringBuilder result = new StringBuilder(length);
+        int i = 0;
+        while (i < length)
         {
-            String line;
-            while ((line = reader.readLine()) != null)
+            int start = i;
+            char c = 0;
+            while (i < length)
+            {
+                c = m_characters.charAt(i);
+                if (c == '\n' || c == '\r')
+                    break;
+                ++i;
+            }
+            if (result.length() > 0)
+                result.append(' ');
+            result.append(m_characters, start, i);
+            if (i < length)
             {
-                if (result.length() > 0)
-                    result.append(' ');
-                result.append(line);
+                ++i;
+                if (c == '\r' && i < length && m_characters.charAt(i) == '\n')
+                    ++i;
             }
         }
-        catch (IOException e)
-        {
-            assert(false);
-        }
         return result.toString();
     }
 
+    /** Format StAX error message like SAX parse errors. */
+    private static String getMessage(XMLStreamException e)
+    {
+        String message = e.getMessage();
+        Location location = e.getLocation();
+        if (message == null || location == null)
+            return message;
+        // The JDK parser prepends the location to the message
+        int pos = message.indexOf("Message: ");
+        if (pos >= 0)
+            message = message.substring(pos + "Message: ".length());
+        return "Line " + location.getLineNumber() + ":"
+            + location.getColumnNumber() + ": " + message;
+    }
+
     private String getParagraphElementText()
     {
         String text = m_paragraphElementText;
@@ -1169,16 +1276,159 @@ public final class XmlReader
         m_lastPercent = percent;
     }
 
+    private void startElement(String name, ElementAttributes atts)
+        throws SAXException
+    {
+        if (m_progressShow != null)
+            showProgress();
+        checkNoCharacters();
+        m_element = name;
+        m_atts = atts;
+        if (m_isFirstElement)
+        {
+            if (! m_element.equals("Go"))
+                throw new SAXException("Not a Go game");
+            m_isFirstElement = false;
+        }
+        Element type = Element.get(name);
+        switch (type) {
+            case ANNOTATION:
+                startInfoElemWithoutFormat();
+                break;
+            case APPLICATION:
+                startInfoElemWithFormat();
+                break;
+            case ADD_BLACK:
+                startSetup(BLACK);
+                break;
+            case ADD_WHITE:
+                startSetup(WHITE);
+                break;
+            case ARG:
+                checkParent(Element.SGF);
+                break;
+            case AT:
+                checkParent(Element.BLACK, Element.WHITE, Element.ADD_BLACK,
+                            Element.ADD_WHITE, Element.DELETE, Element.MARK);
+                break;
+            case BLACK:
+                startMove(BLACK);
+                break;
+            case BLACK_PLAYER:
+                startInfoElemWithFormat();
+                break;
+            case BLACK_RANK:
+                startInfoElemWithFormat();
+                break;
+            case BLACK_TEAM:
+                startInfoElemWithoutFormat();
+                break;
+            case BLACK_TO_PLAY:
+                startToPlay(BLACK);
+                break;
+            case BOARD_SIZE:
+                startInfoElemWithFormat();
+                break;
+            case COMMENT:
+                startComment();
+                break;
+            case COPYRIGHT:
+                startCopyright();
+                break;
+            case DATE:
+                startInfoElemWithFormat();
+                break;
+            case DELETE:
+                startSetup(EMPTY);
+                break;
+            case GO:
+                startGo();
+                break;
+            case GO_GAME:
+                startGoGame();
+                break;
+            case HANDICAP:
+                startInfoElemWithFormat();
+                break;
+            case INFORMATION:
+                startInformation();
+                break;
+            case LINE:
+                startLine();
+                break;
+            case KOMI:
+                startInfoElemWithFormat();
+                break;
+            case MARK:
+                startMark();
+                break;
+            case NODE:
+                startNode();
+                break;
+            case NODES:
+                startNodes();
+                break;
+            case P:
+                startP();
+                break;
+            case RESULT:
+                startInfoElemWithFormat();
+                break;
+            case ROUND:
+                startInfoElemWithoutFormat();
+                break;
+            case RULES:
+                startInfoElemWithFormat();
+                break;
+            case SOURCE:
+                startInfoElemWithFormat();
+                break;
+            case SGF:
+                startSGF();
+                break;
+            case TIME:
+                startInfoElemWithFormat();
+                break;
+            case USER:
+                startInfoElemWithoutFormat();
+                break;
+            case VARIATION:
+                startVariation();
+                break;
+            case WHITE:
+                startMove(WHITE);
+                break;
+            case WHITE_PLAYER:
+                startInfoElemWithFormat();
+                break;
+            case WHITE_RANK:
+                startInfoElemWithFormat();
+                break;
+            case WHITE_TEAM:
+                startInfoElemWithoutFormat();
+                break;
+            case WHITE_TO_PLAY:
+                startToPlay(WHITE);
+                break;
+            default:
+                setWarning("Ignoring unknown element: " + name);
+                break;
+        }
+        m_elementStack.push(name);
+        m_elementTypeStack.push(type);
+        m_characters.setLength(0);
+    }
+
     private void startComment() throws SAXException
     {
-        checkParent("Nodes", "Node", "Variation");
+        checkParent(Element.NODES, Element.NODE, Element.VARIATION);
         checkAttributes();
         m_paragraphElementText = "";
     }
 
     private void startCopyright() throws SAXException
     {
-        checkParent("Information");
+        checkParent(Element.INFORMATION);
         checkAttributes();
         m_paragraphElementText = "";
     }
@@ -1191,7 +1441,7 @@ public final class XmlReader
 
     private void startGoGame() throws SAXException
     {
-        checkParent("Go");
+        checkParent(Element.GO);
         checkAttributes("name");
         String name = m_atts.getValue("name");
         if (name != null)
@@ -1204,7 +1454,7 @@ public final class XmlReader
 
     private void startInfoElemWithFormat() throws SAXException
     {
-        checkParent("Information");
+        checkParent(Element.INFORMATION);
         checkAttributes("format");
         String format = m_atts.getValue("format");
         if (format == null)
@@ -1217,13 +1467,13 @@ public final class XmlReader
 
     private void startInfoElemWithoutFormat() throws SAXException
     {
-        checkParent("Information");
+        checkParent(Element.INFORMATION);
         checkAttributes();
     }
 
     private void startInformation() throws SAXException
     {
-        checkParent("GoGame");
+        checkParent(Element.GO_GAME);
         checkAttributes();
     }
 
@@ -1237,7 +1487,7 @@ public final class XmlReader
 
     private void startMark() throws SAXException
     {
-        checkParent("Node");
+        checkParent(Element.NODE);
         checkAttributes("at", "label", "territory", "type");
         m_markType = null;
         m_label = m_atts.getValue("label");
@@ -1289,8 +1539,8 @@ public final class XmlReader
 
     private void startMove(GoColor c) throws SAXException
     {
-        checkParent("Node", "Nodes", "Variation");
-        if (! parentElement().equals("Node"))
+        checkParent(Element.NODE, Element.NODES, Element.VARIATION);
+        if (parentElementType() != Element.NODE)
             createNode();
         checkAttributes("annotate", "at", "timeleft", "name", "number");
         String name = m_atts.getValue("name");
@@ -1320,7 +1570,7 @@ public final class XmlReader
 
     private void startNode() throws SAXException
     {
-        checkParent("Nodes", "Variation");
+        checkParent(Element.NODES, Element.VARIATION);
         // blacktime and whitetime are not allowed in the DTD, but used
         // by Jago 5.0
         checkAttributes("blacktime", "name", "whitetime");
@@ -1366,7 +1616,7 @@ public final class XmlReader
 
     private void startNodes() throws SAXException
     {
-        checkParent("GoGame");
+        checkParent(Element.GO_GAME);
         checkAttributes();
         if (++m_numberTrees > 1)
             throwError("More than one Nodes element in element GoGame");
@@ -1374,13 +1624,13 @@ public final class XmlReader
 
     private void startP() throws SAXException
     {
-        checkParent("Comment", "Copyright");
+        checkParent(Element.COMMENT, Element.COPYRIGHT);
         checkAttributes();
     }
 
     private void startSetup(GoColor c) throws SAXException
     {
-        checkParent("Node");
+        checkParent(Element.NODE);
         checkAttributes("at");
         String value = m_atts.getValue("at");
         if (value != null)
@@ -1389,7 +1639,7 @@ public final class XmlReader
 
     private void startSGF() throws SAXException
     {
-        checkParent("Node");
+        checkParent(Element.NODE);
         checkAttributes("type");
         m_sgfType = m_atts.getValue("type");
         m_sgfArgs.clear();
@@ -1401,14 +1651,14 @@ public final class XmlReader
         // occur in a valid document, because they have no legal parent.
         // I assume that they were meant to be child elements of Node
         // and set the player in setup positions
-        checkParent("Node");
+        checkParent(Element.NODE);
         checkAttributes();
         m_node.setPlayer(c);
     }
 
     private void startVariation() throws SAXException
     {
-        checkParent("Nodes", "Variation");
+        checkParent(Element.NODES, Element.VARIATION);
         checkAttributes();
         if (m_node == null)
             throwError("Variation without main node");
@@ -1417,6 +1667,16 @@ public final class XmlReader
         m_node = null;
     }
 
+    /** Check if the text content of the current element contains only
+        whitespace without creating a string. */
+    private boolean isCharactersBlank()
+    {
+        for (int i = 0; i < m_characters.length(); ++i)
+            if (m_characters.charAt(i) > ' ')
+                return false;
+        return true;
+    }
+
     private String parentElement()
     {
         if (m_elementStack.isEmpty())
@@ -1424,6 +1684,13 @@ public final class XmlReader
         return m_elementStack.peek();
     }
 
+    private Element parentElementType()
+    {
+        if (m_elementTypeStack.isEmpty())
+            return null;
+        return m_elementTypeStack.peek();
+    }
+
     private int parseInt() throws SAXException
     {
         try
@@ -1436,6 +1703,86 @@ public final class XmlReader
         }
     }
 
+    private void parseSax(InputStream in) throws SAXException, IOException
+    {
+        XMLReader reader = XMLReaderFactory.createXMLReader();
+        try
+        {
+            reader.setFeature("http://xml.org/sax/features/validation",
+                              false);
+        }
+        catch (SAXException e)
+        {
+        }
+        Handler handler = new Handler();
+        reader.setContentHandler(handler);
+        reader.setEntityResolver(handler);
+        reader.setErrorHandler(handler);
+        reader.parse(new InputSource(in));
+    }
+
+    /** Parse with the StAX parser.
+        The internal DTD subset is processed, so that entities declared in
+        the document are replaced. External entities and an external DTD
+        (like go.dtd) are replaced by empty input, because GoGui does not
+        validate the document anyway, which also avoids errors if a
+        referenced go.dtd does not exist. */
+    private void parseStax(InputStream in)
+        throws SAXException, XMLStreamException
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                            Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES,
+                            Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        factory.setXMLResolver(new XMLResolver() {
+                @Override
+                public Object resolveEntity(String publicId, String systemId,
+                                            String baseUri, String namespace)
+                {
+                    return new ByteArrayInputStream(new byte[0]);
+                }
+            });
+        XMLStreamReader reader = factory.createXMLStreamReader(in);
+        m_streamReader = reader;
+        StaxAttributes atts = new StaxAttributes(reader);
+        try
+        {
+            while (reader.hasNext())
+            {
+                switch (reader.next())
+                {
+                case XMLStreamConstants.START_ELEMENT:
+                    startElement(reader.getLocalName(), atts);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    endElement(reader.getLocalName());
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    // Copy directly from the parser's buffer
+                    m_characters.append(reader.getTextCharacters(),
+                                        reader.getTextStart(),
+                                        reader.getTextLength());
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    setWarning("Ignoring undeclared entity: "
+                               + reader.getLocalName());
+                    break;
+                default:
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
     private void setWarning(String message)
     {
         m_warnings.add(message);
@@ -1446,6 +1793,12 @@ public final class XmlReader
         if (m_locator != null)
             message = "Line " + m_locator.getLineNumber() + ":"
                 + m_locator.getColumnNumber() + ": " + message;
+        else if (m_streamReader != null)
+        {
+            Location location = m_streamReader.getLocation();
+            message = "Line " + location.getLineNumber() + ":"
+                + location.getColumnNumber() + ": " + message;
+        }
         throw new SAXException(message);
     }
 }
@@ -0,0 +1,203 @@
+// EngineFarmBenchmark.java
+
+package net.sf.gogui.gtp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+import net.sf.gogui.util.IOThreads;
+
+/** Measures the overhead of the I/O threads of many concurrent GtpClient
+    instances.
+    Usage: <code>java net.sf.gogui.gtp.EngineFarmBenchmark [-n engines]
+    [-c commands] [-t threads] [program]</code>
+    Starts the given number of engines (by default gogui-dummy run with the
+    current class path) with platform I/O threads and, if supported by the
+    Java runtime, again with virtual I/O threads. Prints the number of live
+    platform threads, the heap and resident memory with all engines
+    connected, and the time and number of context switches of the process
+    for sending the given number of commands to each engine from a small
+    pool of driver threads. Resident memory and context switches are only
+    available on Linux.
+    Compiled with <code>ant benchmark-compile</code>; needs build/classes
+    and build/benchmark in the class path. */
+public final class EngineFarmBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        int numberEngines = 64;
+        int numberCommands = 200;
+        int numberThreads = 4;
+        int i = 0;
+        while (i + 1 < args.length && args[i].startsWith("-"))
+        {
+            int value = Integer.parseInt(args[i + 1]);
+            if (args[i].equals("-n"))
+                numberEngines = value;
+            else if (args[i].equals("-c"))
+                numberCommands = value;
+            else if (args[i].equals("-t"))
+                numberThreads = value;
+            else
+                break;
+            i += 2;
+        }
+        if (i < args.length - 1 || (i < args.length
+                                    && args[i].startsWith("-")))
+        {
+            System.err.println("Usage: EngineFarmBenchmark [-n engines]"
+                               + " [-c commands] [-t threads] [program]");
+            System.exit(1);
+        }
+        String program;
+        if (i < args.length)
+            program = args[i];
+        else
+            program = "java -cp " + System.getProperty("java.class.path")
+                + " net.sf.gogui.tools.dummy.Main";
+        System.out.println(String.format(Locale.ENGLISH,
+                                         "%-8s %7s %9s %9s %9s %9s %9s",
+                                         "Mode", "Threads", "Heap KB",
+                                         "RSS KB", "Time ms", "Vol CS",
+                                         "Invol CS"));
+        IOThreads.setMaxVirtual(0);
+        run("platform", program, numberEngines, numberCommands,
+            numberThreads);
+        if (IOThreads.isVirtualSupported())
+        {
+            IOThreads.setMaxVirtual(2 * numberEngines);
+            run("virtual", program, numberEngines, numberCommands,
+                numberThreads);
+        }
+        else
+            System.out.println("(virtual threads not supported by this"
+                               + " Java version)");
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private EngineFarmBenchmark()
+    {
+    }
+
+    private static void run(String mode, String program, int numberEngines,
+                            int numberCommands, int numberThreads)
+        throws Exception
+    {
+        final GtpClient[] gtp = new GtpClient[numberEngines];
+        try
+        {
+            for (int i = 0; i < numberEngines; ++i)
+            {
+                gtp[i] = new GtpClient(program, null, false, null);
+                gtp[i].queryProtocolVersion();
+            }
+            System.gc();
+            int threads =
+                ManagementFactory.getThreadMXBean().getThreadCount();
+            long heap = ManagementFactory.getMemoryMXBean()
+                .getHeapMemoryUsage().getUsed();
+            long rss = getStatus(new File("/proc/self/status"), "VmRSS");
+            long voluntary = getContextSwitches("voluntary");
+            long involuntary = getContextSwitches("nonvoluntary");
+            long start = System.nanoTime();
+            final AtomicReference<GtpError> error = new AtomicReference<>();
+            Thread[] driver = new Thread[numberThreads];
+            for (int i = 0; i < numberThreads; ++i)
+            {
+                final int first = i;
+                final int threadCount = numberThreads;
+                final int commands = numberCommands;
+                driver[i] = new Thread() {
+                        @Override
+                        public void run()
+                        {
+                            try
+                            {
+                                for (int j = 0; j < commands; ++j)
+                                    for (int k = first; k < gtp.length;
+                                         k += threadCount)
+                                        gtp[k].send("name");
+                            }
+                            catch (GtpError e)
+                            {
+                                error.set(e);
+                            }
+                        }
+                    };
+                driver[i].start();
+            }
+            for (int i = 0; i < numberThreads; ++i)
+                driver[i].join();
+            if (error.get() != null)
+                throw error.get();
+            long time = System.nanoTime() - start;
+            if (voluntary >= 0)
+                voluntary = getContextSwitches("voluntary") - voluntary;
+            if (involuntary >= 0)
+                involuntary =
+                    getContextSwitches("nonvoluntary") - involuntary;
+            System.out.println(String.format(Locale.ENGLISH,
+                                             "%-8s %7d %9d %9d %9.1f %9d"
+                                             + " %9d", mode, threads,
+                                             heap / 1024, rss, time / 1e6,
+                                             voluntary, involuntary));
+        }
+        finally
+        {
+            for (GtpClient client : gtp)
+                if (client != null)
+                {
+                    client.close();
+                    client.waitForExit();
+                }
+        }
+    }
+
+    /** Get the number of context switches of all threads of the process.
+        @param type "voluntary" or "nonvoluntary"
+        @return The sum over all threads or -1, if not available. */
+    private static long getContextSwitches(String type)
+    {
+        File[] tasks = new File("/proc/self/task").listFiles();
+        if (tasks == null)
+            return -1;
+        long result = 0;
+        for (File task : tasks)
+        {
+            long n = getStatus(new File(task, "status"),
+                               type + "_ctxt_switches");
+            if (n >= 0)
+                result += n;
+        }
+        return result;
+    }
+
+    /** Get a numeric value from a status file in /proc.
+        @return The value (in KB for memory values) or -1, if not
+        available. */
+    private static long getStatus(File file, String key)
+    {
+        if (! file.exists())
+            return -1;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (! line.startsWith(key + ":"))
+                    continue;
+                String[] fields = line.substring(key.length() + 1).trim()
+                    .split("\\s+");
+                return Long.parseLong(fields[0]);
+            }
+        }
+        catch (IOException | NumberFormatException e)
+        {
+        }
+        return -1;
+    }
+}
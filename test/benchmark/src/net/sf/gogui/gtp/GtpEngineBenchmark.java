@@ -0,0 +1,182 @@
+// GtpEngineBenchmark.java
+
+package net.sf.gogui.gtp;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import net.sf.gogui.util.StringUtil;
+
+/** Measures the command throughput of GtpEngine over piped streams.
+    Usage: <code>java net.sf.gogui.gtp.GtpEngineBenchmark [-n commands]
+    </code>
+    Runs a GtpEngine in a separate thread, writes the commands from another
+    thread and reads the responses. Uses commands with a short response
+    (name), a multi-line response (list_commands) and a response with empty
+    lines that need to be replaced. Prints the time and, if supported by
+    the JVM, the number of bytes allocated by the engine thread per
+    command.
+    Compiled with <code>ant benchmark-compile</code>; needs build/classes
+    and build/benchmark in the class path. */
+public final class GtpEngineBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        int numberCommands = 200000;
+        if (args.length == 2 && args[0].equals("-n"))
+            numberCommands = Integer.parseInt(args[1]);
+        else if (args.length != 0)
+        {
+            System.err.println("Usage: GtpEngineBenchmark [-n commands]");
+            System.exit(1);
+        }
+        String[] commands = { "name", "list_commands", "empty_lines" };
+        // Warm-up run
+        run(commands, numberCommands / 10, null);
+        System.out.println(String.format(Locale.ENGLISH, "%-14s %9s %9s %9s",
+                                         "Command", "Time ms", "Cmd/s",
+                                         "Bytes/cmd"));
+        for (String command : commands)
+            run(new String[] { command }, numberCommands, command);
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private GtpEngineBenchmark()
+    {
+    }
+
+    private static class EngineThread
+        extends Thread
+    {
+        public EngineThread(PipedInputStream in, OutputStream out)
+        {
+            m_in = in;
+            m_out = out;
+            m_engine = new GtpEngine(null);
+            m_engine.setName("GtpEngineBenchmark");
+            m_engine.register("empty_lines", new GtpCallback() {
+                    public void run(GtpCommand cmd)
+                    {
+                        cmd.setResponse("a\n\nb\n\nc");
+                    }
+                });
+        }
+
+        public long getAllocatedBytes()
+        {
+            return m_allocatedBytes;
+        }
+
+        @Override
+        public void run()
+        {
+            long allocated = getThreadAllocatedBytes(getId());
+            try
+            {
+                m_engine.mainLoop(m_in, m_out);
+                m_out.close();
+            }
+            catch (IOException e)
+            {
+                StringUtil.printException(e);
+            }
+            if (allocated >= 0)
+                m_allocatedBytes =
+                    getThreadAllocatedBytes(getId()) - allocated;
+            else
+                m_allocatedBytes = -1;
+        }
+
+        private long m_allocatedBytes;
+
+        private final GtpEngine m_engine;
+
+        private final PipedInputStream m_in;
+
+        private final OutputStream m_out;
+    }
+
+    /** Bytes allocated by a thread or -1, if not supported. */
+    private static long getThreadAllocatedBytes(long threadId)
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (! (bean instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        return ((com.sun.management.ThreadMXBean)bean)
+            .getThreadAllocatedBytes(threadId);
+    }
+
+    private static void run(final String[] commands,
+                            final int numberCommands, String label)
+        throws Exception
+    {
+        final PipedOutputStream commandOut = new PipedOutputStream();
+        PipedInputStream commandIn = new PipedInputStream(commandOut, 65536);
+        PipedOutputStream responseOut = new PipedOutputStream();
+        PipedInputStream responseIn = new PipedInputStream(responseOut, 65536);
+        // Like System.out, which is passed to mainLoop() by the GTP tools
+        PrintStream engineOut = new PrintStream(responseOut, true);
+        EngineThread engine = new EngineThread(commandIn, engineOut);
+        Thread writer = new Thread() {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        StringBuilder buffer = new StringBuilder();
+                        for (int i = 0; i < numberCommands; ++i)
+                        {
+                            buffer.append(commands[i % commands.length]);
+                            buffer.append('\n');
+                            if (buffer.length() > 4096)
+                            {
+                                commandOut.write(buffer.toString()
+                                                 .getBytes("US-ASCII"));
+                                buffer.setLength(0);
+                            }
+                        }
+                        buffer.append("quit\n");
+                        commandOut.write(buffer.toString()
+                                         .getBytes("US-ASCII"));
+                        commandOut.flush();
+                    }
+                    catch (IOException e)
+                    {
+                        StringUtil.printException(e);
+                    }
+                }
+            };
+        long start = System.nanoTime();
+        engine.start();
+        writer.start();
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(responseIn, "US-ASCII"));
+        int numberResponses = 0;
+        String line;
+        while ((line = reader.readLine()) != null)
+            if (line.length() == 0)
+                ++numberResponses;
+        long time = System.nanoTime() - start;
+        writer.join();
+        engine.join();
+        if (numberResponses != numberCommands + 1)
+            throw new Exception("Expected " + (numberCommands + 1)
+                                + " responses, got " + numberResponses);
+        if (label == null)
+            return;
+        long allocated = engine.getAllocatedBytes();
+        System.out.println(String.format(Locale.ENGLISH,
+                                         "%-14s %9.1f %9.0f %9d", label,
+                                         time / 1e6,
+                                         numberCommands / (time / 1e9),
+                                         allocated < 0 ? -1 :
+                                         allocated / numberCommands));
+    }
+}
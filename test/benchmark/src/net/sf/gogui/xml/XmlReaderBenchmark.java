@@ -0,0 +1,92 @@
+// XmlReaderBenchmark.java
+
+package net.sf.gogui.xml;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import net.sf.gogui.util.ErrorMessage;
+
+/** Compares the SAX and StAX parsers of XmlReader.
+    Usage: <code>java net.sf.gogui.xml.XmlReaderBenchmark [-n repeat] file
+    ...</code>
+    Compiled with <code>ant benchmark-compile</code>; needs build/classes
+    and build/benchmark in the class path.
+    Reads all files with both parsers (after a warm-up run) and prints the
+    time and, if supported by the JVM, the number of bytes allocated per
+    run. */
+public final class XmlReaderBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        int repeat = 20;
+        int i = 0;
+        if (args.length > 1 && args[0].equals("-n"))
+        {
+            repeat = Integer.parseInt(args[1]);
+            i = 2;
+        }
+        if (i >= args.length)
+        {
+            System.err.println("Usage: XmlReaderBenchmark [-n repeat] file"
+                               + " ...");
+            System.exit(1);
+        }
+        File[] files = new File[args.length - i];
+        for (int j = 0; j < files.length; ++j)
+            files[j] = new File(args[i + j]);
+        for (XmlReader.Parser parser : XmlReader.Parser.values())
+            readAll(files, parser);
+        for (XmlReader.Parser parser : XmlReader.Parser.values())
+        {
+            long allocated = getAllocatedBytes();
+            long start = System.nanoTime();
+            for (int j = 0; j < repeat; ++j)
+                readAll(files, parser);
+            long time = System.nanoTime() - start;
+            allocated = getAllocatedBytes() - allocated;
+            System.out.print(String.format(Locale.ENGLISH, "%-5s %8.2f ms",
+                                           parser, time / 1e6 / repeat));
+            if (allocated >= 0)
+                System.out.print(String.format(Locale.ENGLISH, " %10d KB",
+                                               allocated / 1024 / repeat));
+            System.out.println();
+        }
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private XmlReaderBenchmark()
+    {
+    }
+
+    /** Bytes allocated by the current thread or -1, if not supported. */
+    private static long getAllocatedBytes()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (! (bean instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        return ((com.sun.management.ThreadMXBean)bean)
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void readAll(File[] files, XmlReader.Parser parser)
+        throws Exception
+    {
+        for (File file : files)
+        {
+            try (InputStream in =
+                 new BufferedInputStream(new FileInputStream(file)))
+            {
+                new XmlReader(in, null, 0, parser);
+            }
+            catch (ErrorMessage e)
+            {
+                throw new ErrorMessage(file + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+// GameJournalTest.java
+
+package net.sf.gogui.gamefile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import net.sf.gogui.game.ConstNode;
+import net.sf.gogui.game.Game;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.NodeUtil;
+import net.sf.gogui.game.StringInfo;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+import net.sf.gogui.sgf.SgfWriter;
+import net.sf.gogui.util.ErrorMessage;
+
+public final class GameJournalTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(GameJournalTest.class);
+    }
+
+    @Override
+    public void setUp() throws IOException
+    {
+        m_file = File.createTempFile("gogui", ".sgf");
+        m_journalFile = GameJournal.getJournalFile(m_file);
+        new SgfWriter(new FileOutputStream(m_file), new GameTree(), null,
+                      null);
+    }
+
+    @Override
+    public void tearDown()
+    {
+        m_journalFile.delete();
+        m_file.delete();
+    }
+
+    /** Test that records and compaction do not modify the game file. */
+    public void testGameFileNotModified() throws ErrorMessage
+    {
+        long length = m_file.length();
+        long lastModified = m_file.lastModified();
+        Game game = startSession(readFile());
+        play(game, BLACK, 2, 2);
+        game.keepOnlyMainVariation(); // Compacts the journal
+        play(game, WHITE, 3, 3);
+        m_journal.close();
+        assertEquals(length, m_file.length());
+        assertEquals(lastModified, m_file.lastModified());
+        assertEquals(2, getNumberMoves(replay()));
+    }
+
+    /** Test that changes of the game information are journaled. */
+    public void testGameInfo() throws ErrorMessage
+    {
+        Game game = startSession(readFile());
+        play(game, BLACK, 2, 2);
+        game.setResult("B+R");
+        m_journal.close();
+        GameTree tree = replay();
+        assertEquals("B+R", tree.getGameInfoConst(tree.getRootConst())
+                     .get(StringInfo.RESULT));
+    }
+
+    /** Test replaying records after a snapshot. */
+    public void testSnapshot() throws ErrorMessage
+    {
+        Game game = startSession(readFile());
+        play(game, BLACK, 2, 2);
+        m_journal.compact();
+        play(game, WHITE, 3, 3);
+        game.setComment("comment");
+        m_journal.close();
+        GameTree tree = replay();
+        assertEquals(2, getNumberMoves(tree));
+        assertEquals("comment", NodeUtil.getLast(tree.getRootConst())
+                     .getComment());
+    }
+
+    /** Test that a record torn by a crash is removed at replay, so that
+        the records appended in the next session are replayed. */
+    public void testTornRecordAppend() throws ErrorMessage, IOException
+    {
+        Game game = startSession(readFile());
+        play(game, BLACK, 2, 2);
+        play(game, WHITE, 3, 3);
+        game.setComment("comment");
+        m_journal.close();
+        // Crash in the middle of writing the comment record
+        try (RandomAccessFile file =
+             new RandomAccessFile(m_journalFile, "rw"))
+        {
+            file.setLength(file.length() - 3);
+        }
+        GameTree tree = replay();
+        assertEquals(2, getNumberMoves(tree));
+        assertNull(NodeUtil.getLast(tree.getRootConst()).getComment());
+        game = startSession(tree);
+        play(game, BLACK, 4, 4);
+        m_journal.close();
+        assertEquals(3, getNumberMoves(replay()));
+    }
+
+    private GameJournal m_journal;
+
+    private File m_file;
+
+    private File m_journalFile;
+
+    private static int getNumberMoves(GameTree tree)
+    {
+        int n = 0;
+        for (ConstNode node = tree.getRootConst(); node != null;
+             node = node.getChildConst())
+            if (node.getMove() != null)
+                ++n;
+        return n;
+    }
+
+    private static void play(Game game, GoColor c, int x, int y)
+    {
+        game.play(Move.get(c, GoPoint.get(x, y)));
+    }
+
+    private GameTree readFile() throws ErrorMessage
+    {
+        return new GameReader(m_file).getTree();
+    }
+
+    private GameTree replay() throws ErrorMessage
+    {
+        GameTree tree = GameJournal.replay(m_file, readFile());
+        assertNotNull(tree);
+        return tree;
+    }
+
+    /** Start a session like GoGui after loading the game file. */
+    private Game startSession(GameTree tree)
+    {
+        Game game = new Game(tree);
+        game.gotoNode(NodeUtil.getLast(game.getRoot()));
+        GameFile gameFile = new GameFile();
+        gameFile.m_file = m_file;
+        gameFile.m_format = GameFile.Format.SGF;
+        m_journal = new GameJournal(gameFile, game, "test", null);
+        game.setListener(m_journal);
+        return game;
+    }
+}
@@ -0,0 +1,42 @@
+// CoordinatorTest.java
+
+package net.sf.gogui.tools.twogtp;
+
+import net.sf.gogui.gtp.GtpCommand;
+import net.sf.gogui.gtp.GtpError;
+
+public final class CoordinatorTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(CoordinatorTest.class);
+    }
+
+    /** Test that encoded strings survive parsing as GTP command arguments.
+        Characters with a special meaning in GTP command lines ('#' starts
+        a comment, '"' quotes an argument) must not truncate or split the
+        argument. */
+    public void testEncodeRoundTrip() throws GtpError
+    {
+        checkRoundTrip("(;C[Black command: prog #1 --threads 2])");
+        checkRoundTrip("say \"hello\" # not a comment");
+        checkRoundTrip("back\\slash\ttab\nnewline \u00e9");
+        checkRoundTrip("");
+    }
+
+    private void checkRoundTrip(String s) throws GtpError
+    {
+        String line = "twogtp_hello " + Coordinator.encode(s) + " "
+            + Coordinator.encode(s);
+        GtpCommand cmd = new GtpCommand(line);
+        assertEquals(2, cmd.getNuArg());
+        assertEquals(s, Coordinator.decode(cmd.getArg(0)));
+        assertEquals(s, Coordinator.decode(cmd.getArg(1)));
+    }
+}
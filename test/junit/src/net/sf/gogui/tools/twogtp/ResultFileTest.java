@@ -0,0 +1,132 @@
+// ResultFileTest.java
+
+package net.sf.gogui.tools.twogtp;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.TreeMap;
+import net.sf.gogui.go.Komi;
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.util.Table;
+
+public final class ResultFileTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(ResultFileTest.class);
+    }
+
+    @Override
+    public void setUp() throws IOException
+    {
+        m_prefixFile = File.createTempFile("twogtp", "");
+        m_prefix = m_prefixFile.getPath();
+        m_tableFile = new File(m_prefix + ".dat");
+        m_logFile = new File(m_prefix + ".dat.log");
+    }
+
+    @Override
+    public void tearDown()
+    {
+        m_tableFile.delete();
+        m_logFile.delete();
+        new File(m_prefix + ".lock").delete();
+        m_prefixFile.delete();
+    }
+
+    /** Test merging a log without a table. */
+    public void testLogOnly() throws ErrorMessage, IOException
+    {
+        write(m_logFile, HEADER + row(1) + row(0));
+        ResultFile resultFile = createResultFile();
+        assertEquals(2, resultFile.getNextGameIndex());
+        resultFile.close();
+        assertFalse(m_logFile.exists());
+        Table table = ResultFile.readResults(m_prefix);
+        assertEquals(2, table.getNumberRows());
+        assertEquals("0", table.get("GAME", 0));
+        assertEquals("1", table.get("GAME", 1));
+    }
+
+    /** Test that rows in the log for games already in the table are
+        ignored. */
+    public void testDuplicateRow() throws ErrorMessage, IOException
+    {
+        write(m_tableFile, HEADER + row(0) + row(1));
+        write(m_logFile, HEADER + row(1) + row(2));
+        ResultFile resultFile = createResultFile();
+        assertEquals(3, resultFile.getNextGameIndex());
+        resultFile.close();
+        assertFalse(m_logFile.exists());
+        assertEquals(3, ResultFile.readResults(m_prefix).getNumberRows());
+    }
+
+    /** Test that rows torn by a crash are dropped and the games are
+        played again. */
+    public void testTornRow() throws ErrorMessage, IOException
+    {
+        write(m_tableFile, HEADER + row(0));
+        // Short row with newline and last row without newline
+        write(m_logFile, HEADER + "2\tB+\n" + row(1) + "3\tB+");
+        ResultFile resultFile = createResultFile();
+        Table table = ResultFile.readResults(m_prefix);
+        assertEquals(2, table.getNumberRows());
+        for (int i = 0; i < table.getNumberRows(); ++i)
+            assertEquals("0", table.get("ERR", i));
+        assertEquals(2, resultFile.getNextGameIndex());
+        assertEquals(3, resultFile.getNextGameIndex());
+        resultFile.close();
+    }
+
+    /** Test that a short row is not merged if the log is read without
+        continuing the run. */
+    public void testReadResultsTornRow() throws ErrorMessage, IOException
+    {
+        write(m_logFile, HEADER + row(0) + "1\tB+");
+        assertEquals(1, ResultFile.readResults(m_prefix).getNumberRows());
+        assertTrue(m_logFile.exists());
+    }
+
+    private static final String HEADER =
+        "# Komi: 6.5\n# Size: 9\n#\n"
+        + "#GAME\tRES_B\tRES_W\tRES_R\tALT\tDUP\tLEN\tTIME_B\tTIME_W"
+        + "\tCPU_B\tCPU_W\tERR\tERR_MSG\n";
+
+    private File m_logFile;
+
+    private File m_prefixFile;
+
+    private File m_tableFile;
+
+    private String m_prefix;
+
+    private ResultFile createResultFile() throws ErrorMessage
+    {
+        return new ResultFile(false, new TreeMap<String,String>(), 10, 9,
+                              new Komi(6.5), m_prefix, false, false, 1,
+                              null);
+    }
+
+    /** Row of a game without error and with empty last column. */
+    private static String row(int gameIndex)
+    {
+        return gameIndex
+            + "\tB+R\tB+R\t?\t0\t-\t42\t1.0\t1.0\t1.0\t1.0\t0\t\n";
+    }
+
+    private static void write(File file, String text) throws IOException
+    {
+        try (Writer out = new FileWriter(file))
+        {
+            out.write(text);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+// XmlReaderTest.java
+
+package net.sf.gogui.xml;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import net.sf.gogui.game.ConstNode;
+import net.sf.gogui.util.ErrorMessage;
+
+public final class XmlReaderTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(XmlReaderTest.class);
+    }
+
+    /** Test that both parsers replace entities declared in an internal
+        DTD subset. */
+    public void testInternalEntity() throws ErrorMessage
+    {
+        String text =
+            "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<!DOCTYPE Go SYSTEM \"go.dtd\" [ <!ENTITY foo \"bar\"> ]>\n"
+            + "<Go><GoGame><Nodes><Node>"
+            + "<Comment><P>x &foo; y</P></Comment>"
+            + "</Node></Nodes></GoGame></Go>\n";
+        for (XmlReader.Parser parser : XmlReader.Parser.values())
+        {
+            ConstNode root = read(text, parser).getTree().getRootConst();
+            assertEquals(parser.toString(), "x bar y", root.getComment());
+        }
+    }
+
+    /** Test that the StAX parser does not read external entities. */
+    public void testExternalEntityIgnored() throws ErrorMessage
+    {
+        String text =
+            "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<!DOCTYPE Go [ <!ENTITY ext SYSTEM \"file:///nonexistent\"> ]>\n"
+            + "<Go><GoGame><Nodes><Node>"
+            + "<Comment><P>x &ext; y</P></Comment>"
+            + "</Node></Nodes></GoGame></Go>\n";
+        XmlReader reader = read(text, XmlReader.Parser.STAX);
+        assertEquals("x  y", reader.getTree().getRootConst().getComment());
+    }
+
+    private static XmlReader read(String text, XmlReader.Parser parser)
+        throws ErrorMessage
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return new XmlReader(new ByteArrayInputStream(bytes), null, 0,
+                             parser);
+    }
+}